@@ -29,8 +29,8 @@ import com.google.android.exoplayer2.ExoPlayer;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.GlUtil;
+import com.google.android.exoplayer2.util.LockFreeTimedValueQueue;
 import com.google.android.exoplayer2.util.Log;
-import com.google.android.exoplayer2.util.TimedValueQueue;
 import com.google.android.exoplayer2.video.VideoFrameMetadataListener;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.microedition.khronos.egl.EGL10;
@@ -218,7 +218,7 @@ public final class VideoProcessingGLSurfaceView extends GLSurfaceView {
 
     private final VideoProcessor videoProcessor;
     private final AtomicBoolean frameAvailable;
-    private final TimedValueQueue<Long> sampleTimestampQueue;
+    private final LockFreeTimedValueQueue<Long> sampleTimestampQueue;
     private final float[] transformMatrix;
 
     private int texture;
@@ -232,7 +232,7 @@ public final class VideoProcessingGLSurfaceView extends GLSurfaceView {
     public VideoRenderer(VideoProcessor videoProcessor) {
       this.videoProcessor = videoProcessor;
       frameAvailable = new AtomicBoolean();
-      sampleTimestampQueue = new TimedValueQueue<>();
+      sampleTimestampQueue = new LockFreeTimedValueQueue<>();
       width = -1;
       height = -1;
       frameTimestampUs = C.TIME_UNSET;
@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.upstream;
 
 import com.google.android.exoplayer2.C;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /** Reads bytes from a data stream. */
 public interface DataReader {
@@ -37,4 +38,36 @@ public interface DataReader {
    * @throws IOException If an error occurs reading from the input.
    */
   int read(byte[] buffer, int offset, int length) throws IOException;
+
+  /**
+   * Reads up to {@code length} bytes of data from the input into a {@link ByteBuffer}, starting at
+   * its position, and advances its position by the number of bytes read.
+   *
+   * <p>The return value is as for {@link #read(byte[], int, int)}.
+   *
+   * <p>The default implementation reads into the buffer's backing array. If the buffer is direct,
+   * the data is read into a temporary array and then copied into the buffer, so implementations
+   * that can write into direct buffers without an intermediate copy should override this method.
+   *
+   * @param buffer The buffer into which data should be written. Must have at least {@code length}
+   *     bytes remaining.
+   * @param length The maximum number of bytes to read from the input.
+   * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the input has ended.
+   * @throws IOException If an error occurs reading from the input.
+   */
+  default int read(ByteBuffer buffer, int length) throws IOException {
+    if (buffer.hasArray()) {
+      int bytesRead = read(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+      if (bytesRead > 0) {
+        buffer.position(buffer.position() + bytesRead);
+      }
+      return bytesRead;
+    }
+    byte[] data = new byte[length];
+    int bytesRead = read(data, /* offset= */ 0, length);
+    if (bytesRead > 0) {
+      buffer.put(data, /* offset= */ 0, bytesRead);
+    }
+    return bytesRead;
+  }
 }
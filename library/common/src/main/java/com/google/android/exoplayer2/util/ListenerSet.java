@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer2.util;
 
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
 import static com.google.android.exoplayer2.util.Assertions.checkState;
 
 import android.os.Looper;
@@ -24,7 +25,7 @@ import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import java.util.ArrayDeque;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.Arrays;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 /**
@@ -39,6 +40,11 @@ import org.checkerframework.checker.nullness.qual.NonNull;
  * <p>All methods must be called on the {@link Looper} passed to the constructor unless indicated
  * otherwise.
  *
+ * <p>Queuing and sending events doesn't allocate memory once the set has been in use for a while:
+ * the listeners are held in an array that's replaced rather than modified when listeners are added
+ * or removed, so that it can be used as a snapshot of the listeners without copying it, and queued
+ * events are held in objects that are reused once the events have been sent.
+ *
  * @param <T> The listener type.
  */
 public final class ListenerSet<T extends @NonNull Object> {
@@ -73,13 +79,15 @@ public final class ListenerSet<T extends @NonNull Object> {
   }
 
   private static final int MSG_ITERATION_FINISHED = 0;
+  private static final int MAX_POOL_SIZE = 64;
 
   private final Clock clock;
   private final HandlerWrapper handler;
   private final IterationFinishedEvent<T> iterationFinishedEvent;
-  private final CopyOnWriteArraySet<ListenerHolder<T>> listeners;
-  private final ArrayDeque<Runnable> flushingEvents;
-  private final ArrayDeque<Runnable> queuedEvents;
+  private final ListenerHolderArray<T> listeners;
+  private final ArrayDeque<QueuedEvent<T>> flushingEvents;
+  private final ArrayDeque<QueuedEvent<T>> queuedEvents;
+  private final ArrayDeque<QueuedEvent<T>> queuedEventPool;
   private final Object releasedLock;
 
   @GuardedBy("releasedLock")
@@ -97,11 +105,11 @@ public final class ListenerSet<T extends @NonNull Object> {
    *     during one {@link Looper} message queue iteration were handled by the listeners.
    */
   public ListenerSet(Looper looper, Clock clock, IterationFinishedEvent<T> iterationFinishedEvent) {
-    this(/* listeners= */ new CopyOnWriteArraySet<>(), looper, clock, iterationFinishedEvent);
+    this(/* listeners= */ new ListenerHolderArray<>(), looper, clock, iterationFinishedEvent);
   }
 
   private ListenerSet(
-      CopyOnWriteArraySet<ListenerHolder<T>> listeners,
+      ListenerHolderArray<T> listeners,
       Looper looper,
       Clock clock,
       IterationFinishedEvent<T> iterationFinishedEvent) {
@@ -111,6 +119,7 @@ public final class ListenerSet<T extends @NonNull Object> {
     releasedLock = new Object();
     flushingEvents = new ArrayDeque<>();
     queuedEvents = new ArrayDeque<>();
+    queuedEventPool = new ArrayDeque<>();
     // It's safe to use "this" because we don't send a message before exiting the constructor.
     @SuppressWarnings("nullness:methodref.receiver.bound")
     HandlerWrapper handler = clock.createHandler(looper, this::handleMessage);
@@ -178,7 +187,7 @@ public final class ListenerSet<T extends @NonNull Object> {
    */
   public void remove(T listener) {
     verifyCurrentThread();
-    for (ListenerHolder<T> listenerHolder : listeners) {
+    for (ListenerHolder<T> listenerHolder : listeners.get()) {
       if (listenerHolder.listener.equals(listener)) {
         listenerHolder.release(iterationFinishedEvent);
         listeners.remove(listenerHolder);
@@ -195,7 +204,7 @@ public final class ListenerSet<T extends @NonNull Object> {
   /** Returns the number of added listeners. */
   public int size() {
     verifyCurrentThread();
-    return listeners.size();
+    return listeners.get().length;
   }
 
   /**
@@ -207,13 +216,12 @@ public final class ListenerSet<T extends @NonNull Object> {
    */
   public void queueEvent(int eventFlag, Event<T> event) {
     verifyCurrentThread();
-    CopyOnWriteArraySet<ListenerHolder<T>> listenerSnapshot = new CopyOnWriteArraySet<>(listeners);
-    queuedEvents.add(
-        () -> {
-          for (ListenerHolder<T> holder : listenerSnapshot) {
-            holder.invoke(eventFlag, event);
-          }
-        });
+    @Nullable QueuedEvent<T> queuedEvent = queuedEventPool.pollLast();
+    if (queuedEvent == null) {
+      queuedEvent = new QueuedEvent<>();
+    }
+    queuedEvent.set(listeners.get(), eventFlag, event);
+    queuedEvents.add(queuedEvent);
   }
 
   /** Notifies listeners of events previously enqueued with {@link #queueEvent(int, Event)}. */
@@ -226,15 +234,21 @@ public final class ListenerSet<T extends @NonNull Object> {
       handler.sendMessageAtFrontOfQueue(handler.obtainMessage(MSG_ITERATION_FINISHED));
     }
     boolean recursiveFlushInProgress = !flushingEvents.isEmpty();
-    flushingEvents.addAll(queuedEvents);
-    queuedEvents.clear();
+    // Move the events one by one, as ArrayDeque.addAll may allocate.
+    while (!queuedEvents.isEmpty()) {
+      flushingEvents.add(queuedEvents.removeFirst());
+    }
     if (recursiveFlushInProgress) {
       // Recursive call to flush. Let the outer call handle the flush queue.
       return;
     }
     while (!flushingEvents.isEmpty()) {
-      flushingEvents.peekFirst().run();
-      flushingEvents.removeFirst();
+      flushingEvents.peekFirst().invoke();
+      QueuedEvent<T> queuedEvent = flushingEvents.removeFirst();
+      queuedEvent.clear();
+      if (queuedEventPool.size() < MAX_POOL_SIZE) {
+        queuedEventPool.add(queuedEvent);
+      }
     }
   }
 
@@ -261,7 +275,7 @@ public final class ListenerSet<T extends @NonNull Object> {
     synchronized (releasedLock) {
       released = true;
     }
-    for (ListenerHolder<T> listenerHolder : listeners) {
+    for (ListenerHolder<T> listenerHolder : listeners.get()) {
       listenerHolder.release(iterationFinishedEvent);
     }
     listeners.clear();
@@ -281,7 +295,7 @@ public final class ListenerSet<T extends @NonNull Object> {
   }
 
   private boolean handleMessage(Message message) {
-    for (ListenerHolder<T> holder : listeners) {
+    for (ListenerHolder<T> holder : listeners.get()) {
       holder.iterationFinished(iterationFinishedEvent);
       if (handler.hasMessages(MSG_ITERATION_FINISHED)) {
         // The invocation above triggered new events (and thus scheduled a new message). We need
@@ -300,6 +314,85 @@ public final class ListenerSet<T extends @NonNull Object> {
     checkState(Thread.currentThread() == handler.getLooper().getThread());
   }
 
+  /**
+   * The listeners of a set and its copies, held in an array that's replaced rather than modified.
+   *
+   * <p>The methods of this class can be called from any thread.
+   */
+  private static final class ListenerHolderArray<T extends @NonNull Object> {
+
+    private volatile ListenerHolder<T>[] holders;
+
+    @SuppressWarnings("unchecked")
+    public ListenerHolderArray() {
+      holders = (ListenerHolder<T>[]) new ListenerHolder<?>[0];
+    }
+
+    /** Returns the current holders. The returned array must not be modified. */
+    public ListenerHolder<T>[] get() {
+      return holders;
+    }
+
+    /** Adds a holder, unless an {@link ListenerHolder#equals equal} holder is already present. */
+    public synchronized void add(ListenerHolder<T> holder) {
+      ListenerHolder<T>[] holders = this.holders;
+      for (ListenerHolder<T> existingHolder : holders) {
+        if (existingHolder.equals(holder)) {
+          return;
+        }
+      }
+      ListenerHolder<T>[] newHolders = Arrays.copyOf(holders, holders.length + 1);
+      newHolders[holders.length] = holder;
+      this.holders = newHolders;
+    }
+
+    /** Removes the given holder instance, if present. */
+    public synchronized void remove(ListenerHolder<T> holder) {
+      ListenerHolder<T>[] holders = this.holders;
+      for (int i = 0; i < holders.length; i++) {
+        if (holders[i] == holder) {
+          ListenerHolder<T>[] newHolders = Arrays.copyOf(holders, holders.length - 1);
+          System.arraycopy(holders, i + 1, newHolders, i, holders.length - i - 1);
+          this.holders = newHolders;
+          return;
+        }
+      }
+    }
+
+    /** Removes all holders. */
+    public synchronized void clear() {
+      holders = Arrays.copyOf(holders, 0);
+    }
+  }
+
+  /** An event that's queued for the listeners that were registered when it was queued. */
+  private static final class QueuedEvent<T extends @NonNull Object> {
+
+    @Nullable private ListenerHolder<T>[] listenerSnapshot;
+    private int eventFlag;
+    @Nullable private Event<T> event;
+
+    public void set(ListenerHolder<T>[] listenerSnapshot, int eventFlag, Event<T> event) {
+      this.listenerSnapshot = listenerSnapshot;
+      this.eventFlag = eventFlag;
+      this.event = event;
+    }
+
+    public void invoke() {
+      ListenerHolder<T>[] listenerSnapshot = checkNotNull(this.listenerSnapshot);
+      Event<T> event = checkNotNull(this.event);
+      for (ListenerHolder<T> holder : listenerSnapshot) {
+        holder.invoke(eventFlag, event);
+      }
+    }
+
+    /** Releases the references held by the event, so that it can be reused. */
+    public void clear() {
+      listenerSnapshot = null;
+      event = null;
+    }
+  }
+
   private static final class ListenerHolder<T extends @NonNull Object> {
 
     public final T listener;
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static java.lang.Math.max;
+
+import androidx.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicLong;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * A queue of values with timestamps, with the same semantics as {@link TimedValueQueue}, that can
+ * be used without locking by one producer thread and one consumer thread.
+ *
+ * <p>{@link #add(long, Object)} must only be called on the producer thread, and {@link
+ * #pollFirst()}, {@link #pollFloor(long)} and {@link #poll(long)} must only be called on the
+ * consumer thread. {@link #clear()} and {@link #size()} may be called on either thread. Both
+ * threads may be the same thread.
+ *
+ * <p>Values are stored in a ring buffer whose capacity is doubled when it's full. Once the buffer
+ * has reached the capacity needed by the producer, adding and polling values doesn't allocate.
+ */
+public final class LockFreeTimedValueQueue<V> {
+
+  private static final int INITIAL_BUFFER_SIZE = 16;
+
+  /**
+   * A ring buffer holding the values with indices from {@link #startIndex} until {@link
+   * #nextRingStartIndex}, or until the end of the queue if there's no next ring.
+   */
+  private static final class Ring<V> {
+
+    public final long startIndex;
+    public final int mask;
+    public final long[] timestamps;
+    public final @NullableType V[] values;
+
+    @Nullable public volatile Ring<V> nextRing;
+    public long nextRingStartIndex;
+
+    public Ring(long startIndex, int capacity) {
+      this.startIndex = startIndex;
+      mask = capacity - 1;
+      timestamps = new long[capacity];
+      values = newArray(capacity);
+    }
+  }
+
+  /** The index of the next value to be polled. Written only by the consumer. */
+  private volatile long headIndex;
+  /** The index of the next value to be added. Written only by the producer. */
+  private volatile long tailIndex;
+  /** The index before which all values have been cleared. */
+  private final AtomicLong clearedIndex;
+
+  // Owned by the producer.
+  private Ring<V> producerRing;
+  private boolean hasLastTimestamp;
+  private long lastTimestamp;
+
+  // Owned by the consumer.
+  private Ring<V> consumerRing;
+
+  public LockFreeTimedValueQueue() {
+    this(INITIAL_BUFFER_SIZE);
+  }
+
+  /**
+   * Creates a queue with the given initial buffer size, which is rounded up to a power of two.
+   *
+   * @param initialBufferSize The initial buffer size.
+   */
+  public LockFreeTimedValueQueue(int initialBufferSize) {
+    int capacity = Integer.highestOneBit(max(1, initialBufferSize) * 2 - 1);
+    producerRing = new Ring<>(/* startIndex= */ 0, capacity);
+    consumerRing = producerRing;
+    clearedIndex = new AtomicLong();
+  }
+
+  /**
+   * Associates the specified value with the specified timestamp. All new values should have a
+   * greater timestamp than the previously added values. Otherwise all values are removed before
+   * adding the new one.
+   *
+   * <p>Must only be called on the producer thread.
+   */
+  public void add(long timestamp, V value) {
+    long index = tailIndex;
+    if (hasLastTimestamp && timestamp <= lastTimestamp) {
+      clearBefore(index);
+    }
+    hasLastTimestamp = true;
+    lastTimestamp = timestamp;
+    Ring<V> ring = producerRing;
+    // The slot for the new value is free if the value that was stored in it has been polled.
+    if (index - max(headIndex, ring.startIndex) > ring.mask) {
+      Ring<V> nextRing = new Ring<>(index, (ring.mask + 1) * 2);
+      ring.nextRingStartIndex = index;
+      // Published to the consumer by the volatile write of the tail index below.
+      ring.nextRing = nextRing;
+      producerRing = nextRing;
+      ring = nextRing;
+    }
+    int slot = (int) index & ring.mask;
+    ring.timestamps[slot] = timestamp;
+    ring.values[slot] = value;
+    tailIndex = index + 1;
+  }
+
+  /**
+   * Removes all of the values.
+   *
+   * <p>If called on the producer thread, the values are dereferenced when the consumer next polls
+   * the queue.
+   */
+  public void clear() {
+    clearBefore(tailIndex);
+  }
+
+  /**
+   * Returns number of the values buffered. If called on the producer thread, values may be polled
+   * concurrently, so the returned value is an upper bound.
+   */
+  public int size() {
+    // The tail index is read last, so that it's not less than the other indices.
+    long firstIndex = max(headIndex, clearedIndex.get());
+    return (int) (tailIndex - firstIndex);
+  }
+
+  /**
+   * Removes and returns the first value in the queue, or null if the queue is empty.
+   *
+   * <p>Must only be called on the consumer thread.
+   */
+  @Nullable
+  public V pollFirst() {
+    skipClearedValues();
+    return headIndex == tailIndex ? null : popFirst();
+  }
+
+  /**
+   * Returns the value with the greatest timestamp which is less than or equal to the given
+   * timestamp. Removes all older values and the returned one from the buffer.
+   *
+   * <p>Must only be called on the consumer thread.
+   *
+   * @param timestamp The timestamp value.
+   * @return The value with the greatest timestamp which is less than or equal to the given
+   *     timestamp or null if there is no such value.
+   * @see #poll(long)
+   */
+  @Nullable
+  public V pollFloor(long timestamp) {
+    return poll(timestamp, /* onlyOlder= */ true);
+  }
+
+  /**
+   * Returns the value with the closest timestamp to the given timestamp. Removes all older values
+   * including the returned one from the buffer.
+   *
+   * <p>Must only be called on the consumer thread.
+   *
+   * @param timestamp The timestamp value.
+   * @return The value with the closest timestamp or null if the buffer is empty.
+   * @see #pollFloor(long)
+   */
+  @Nullable
+  public V poll(long timestamp) {
+    return poll(timestamp, /* onlyOlder= */ false);
+  }
+
+  /**
+   * Returns the value with the closest timestamp to the given timestamp. Removes all older values
+   * including the returned one from the buffer.
+   *
+   * @param timestamp The timestamp value.
+   * @param onlyOlder Whether this method can return a new value in case its timestamp value is
+   *     closest to {@code timestamp}.
+   * @return The value with the closest timestamp or null if the buffer is empty or there is no
+   *     older value and {@code onlyOlder} is true.
+   */
+  @Nullable
+  private V poll(long timestamp, boolean onlyOlder) {
+    skipClearedValues();
+    // Reading the tail index guarantees that the values added before it are visible.
+    long tailIndex = this.tailIndex;
+    @Nullable V value = null;
+    long previousTimeDiff = Long.MAX_VALUE;
+    while (headIndex != tailIndex) {
+      long timeDiff = timestamp - peekFirstTimestamp();
+      if (timeDiff < 0 && (onlyOlder || -timeDiff >= previousTimeDiff)) {
+        break;
+      }
+      previousTimeDiff = timeDiff;
+      value = popFirst();
+    }
+    return value;
+  }
+
+  /** Advances the cleared index to {@code index}, unless it's already greater. */
+  private void clearBefore(long index) {
+    while (true) {
+      long clearedIndex = this.clearedIndex.get();
+      if (clearedIndex >= index || this.clearedIndex.compareAndSet(clearedIndex, index)) {
+        return;
+      }
+    }
+  }
+
+  private void skipClearedValues() {
+    long clearedIndex = this.clearedIndex.get();
+    while (headIndex < clearedIndex) {
+      popFirst();
+    }
+  }
+
+  private long peekFirstTimestamp() {
+    Ring<V> ring = getConsumerRing();
+    return ring.timestamps[(int) headIndex & ring.mask];
+  }
+
+  @Nullable
+  private V popFirst() {
+    long index = headIndex;
+    Ring<V> ring = getConsumerRing();
+    int slot = (int) index & ring.mask;
+    @Nullable V value = ring.values[slot];
+    ring.values[slot] = null;
+    headIndex = index + 1;
+    return value;
+  }
+
+  /** Returns the ring holding the value at the head index, which must be before the tail index. */
+  private Ring<V> getConsumerRing() {
+    Ring<V> ring = consumerRing;
+    @Nullable Ring<V> nextRing = ring.nextRing;
+    if (nextRing != null && headIndex >= ring.nextRingStartIndex) {
+      consumerRing = nextRing;
+      ring = nextRing;
+    }
+    return ring;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V> @NullableType V[] newArray(int length) {
+    return (V[]) new Object[length];
+  }
+}
@@ -15,6 +15,8 @@
  */
 package com.google.android.exoplayer2.util;
 
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -25,6 +27,7 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import android.os.Looper;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.AllocationCounter;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InOrder;
@@ -389,6 +392,37 @@ public class ListenerSetTest {
     verifyNoMoreInteractions(listener1, listener2);
   }
 
+  @Test
+  public void sendEvent_afterWarmUp_doesNotAllocate() {
+    assumeTrue(AllocationCounter.isSupported());
+    ListenerSet<TestListener> listenerSet =
+        new ListenerSet<>(Looper.myLooper(), Clock.DEFAULT, TestListener::iterationFinished);
+    CountingTestListener listener1 = new CountingTestListener();
+    CountingTestListener listener2 = new CountingTestListener();
+    listenerSet.add(listener1);
+    listenerSet.add(listener2);
+    ListenerSet.Event<TestListener> event = TestListener::callback1;
+    int eventCount = 100_000;
+
+    // Warm up, so that the queues and the pool of queued events have reached their final sizes.
+    for (int i = 0; i < 1_000; i++) {
+      listenerSet.sendEvent(EVENT_ID_1, event);
+    }
+    long allocatedBytesBefore = AllocationCounter.getCurrentThreadAllocatedBytes();
+    for (int i = 0; i < eventCount; i++) {
+      listenerSet.queueEvent(EVENT_ID_1, event);
+      listenerSet.sendEvent(EVENT_ID_1, event);
+    }
+    long allocatedBytes =
+        AllocationCounter.getCurrentThreadAllocatedBytes() - allocatedBytesBefore;
+    ShadowLooper.idleMainLooper();
+
+    assertThat(listener1.callback1Count).isEqualTo(1_000 + 2 * eventCount);
+    assertThat(listener2.callback1Count).isEqualTo(1_000 + 2 * eventCount);
+    // Allow for the constant number of bytes allocated when counting allocations.
+    assertThat(allocatedBytes).isLessThan(eventCount);
+  }
+
   @Test
   public void release_preventsRegisteringNewListeners() {
     ListenerSet<TestListener> listenerSet =
@@ -412,6 +446,16 @@ public class ListenerSetTest {
     default void iterationFinished(FlagSet flags) {}
   }
 
+  private static final class CountingTestListener implements TestListener {
+
+    public int callback1Count;
+
+    @Override
+    public void callback1() {
+      callback1Count++;
+    }
+  }
+
   private static FlagSet createFlagSet(int... flagValues) {
     FlagSet.Builder flagsBuilder = new FlagSet.Builder();
     for (int value : flagValues) {
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.AllocationCounter;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link LockFreeTimedValueQueue}. */
+@RunWith(AndroidJUnit4.class)
+public class LockFreeTimedValueQueueTest {
+
+  private LockFreeTimedValueQueue<String> queue;
+
+  @Before
+  public void setUp() throws Exception {
+    queue = new LockFreeTimedValueQueue<>();
+  }
+
+  @Test
+  public void bufferCapacityIncreasesAutomatically() {
+    queue = new LockFreeTimedValueQueue<>(1);
+    for (int i = 0; i < 20; i++) {
+      queue.add(i, "" + i);
+      if ((i & 1) == 1) {
+        assertThat(queue.pollFirst()).isEqualTo("" + (i / 2));
+      }
+    }
+    assertThat(queue.size()).isEqualTo(10);
+    for (int i = 10; i < 20; i++) {
+      assertThat(queue.pollFirst()).isEqualTo("" + i);
+    }
+    assertThat(queue.pollFirst()).isNull();
+  }
+
+  @Test
+  public void timeDiscontinuityClearsValues() {
+    queue.add(1, "b");
+    queue.add(2, "c");
+    queue.add(0, "a");
+    assertThat(queue.size()).isEqualTo(1);
+    assertThat(queue.pollFirst()).isEqualTo("a");
+  }
+
+  @Test
+  public void timeDiscontinuityOnFullBufferClearsValues() {
+    queue = new LockFreeTimedValueQueue<>(2);
+    queue.add(1, "b");
+    queue.add(3, "c");
+    queue.add(2, "a");
+    assertThat(queue.size()).isEqualTo(1);
+    assertThat(queue.pollFirst()).isEqualTo("a");
+  }
+
+  @Test
+  public void clear_removesValues() {
+    queue.add(0, "a");
+    queue.add(1, "b");
+    queue.clear();
+    assertThat(queue.size()).isEqualTo(0);
+    assertThat(queue.pollFirst()).isNull();
+
+    queue.add(2, "c");
+    assertThat(queue.size()).isEqualTo(1);
+    assertThat(queue.pollFloor(2)).isEqualTo("c");
+  }
+
+  @Test
+  public void pollFirstReturnsValues() {
+    queue.add(0, "a");
+    queue.add(1, "b");
+    queue.add(2, "c");
+    assertThat(queue.pollFirst()).isEqualTo("a");
+    assertThat(queue.size()).isEqualTo(2);
+    assertThat(queue.pollFirst()).isEqualTo("b");
+    assertThat(queue.size()).isEqualTo(1);
+    assertThat(queue.pollFirst()).isEqualTo("c");
+    assertThat(queue.size()).isEqualTo(0);
+    assertThat(queue.pollFirst()).isEqualTo(null);
+    assertThat(queue.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void pollReturnsValues() {
+    queue.add(0, "a");
+    queue.add(1, "b");
+    queue.add(2, "c");
+    assertThat(queue.poll(0)).isEqualTo("a");
+    assertThat(queue.size()).isEqualTo(2);
+    assertThat(queue.poll(1)).isEqualTo("b");
+    assertThat(queue.size()).isEqualTo(1);
+    assertThat(queue.poll(2)).isEqualTo("c");
+    assertThat(queue.size()).isEqualTo(0);
+    assertThat(queue.pollFirst()).isEqualTo(null);
+    assertThat(queue.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void pollReturnsClosestValue() {
+    queue.add(0, "a");
+    queue.add(3, "b");
+    assertThat(queue.poll(2)).isEqualTo("b");
+    assertThat(queue.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void pollRemovesPreviousValues() {
+    queue.add(0, "a");
+    queue.add(1, "b");
+    queue.add(2, "c");
+    assertThat(queue.poll(1)).isEqualTo("b");
+    assertThat(queue.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void pollFloorReturnsClosestPreviousValue() {
+    queue.add(0, "a");
+    queue.add(3, "b");
+    assertThat(queue.pollFloor(2)).isEqualTo("a");
+    assertThat(queue.pollFloor(2)).isEqualTo(null);
+    assertThat(queue.pollFloor(3)).isEqualTo("b");
+    assertThat(queue.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void pollFloorRemovesPreviousValues() {
+    queue.add(0, "a");
+    queue.add(1, "b");
+    queue.add(2, "c");
+    assertThat(queue.pollFloor(1)).isEqualTo("b");
+    assertThat(queue.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void addAndPollOnDifferentThreads_pollsAllValuesInOrder() throws Exception {
+    LockFreeTimedValueQueue<Long> queue = new LockFreeTimedValueQueue<>(/* initialBufferSize= */ 1);
+    int valueCount = 200_000;
+    AtomicReference<Throwable> producerError = new AtomicReference<>();
+    Thread producer =
+        new Thread(
+            () -> {
+              try {
+                for (long i = 0; i < valueCount; i++) {
+                  queue.add(/* timestamp= */ i, /* value= */ i);
+                }
+              } catch (Throwable e) {
+                producerError.set(e);
+              }
+            });
+
+    producer.start();
+    long expectedValue = 0;
+    while (expectedValue < valueCount) {
+      @Nullable Long value = queue.pollFirst();
+      if (value != null) {
+        assertThat(value).isEqualTo(expectedValue);
+        expectedValue++;
+      }
+    }
+    producer.join();
+
+    assertThat(producerError.get()).isNull();
+    assertThat(queue.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void clearOnProducerThread_consumerPollsValuesInOrder() throws Exception {
+    LockFreeTimedValueQueue<Long> queue = new LockFreeTimedValueQueue<>(/* initialBufferSize= */ 1);
+    int batchCount = 10_000;
+    int batchSize = 10;
+    Thread producer =
+        new Thread(
+            () -> {
+              long timestamp = 0;
+              for (long batch = 0; batch < batchCount; batch++) {
+                // Values that are cleared are negative, and may be polled before they're cleared.
+                for (int i = 0; i < batchSize; i++) {
+                  queue.add(timestamp++, /* value= */ -1L);
+                }
+                queue.clear();
+                queue.add(timestamp++, /* value= */ batch);
+              }
+            });
+
+    producer.start();
+    long lastValue = -1;
+    while (lastValue < batchCount - 1) {
+      @Nullable Long value = queue.pollFloor(Long.MAX_VALUE);
+      if (value != null && value >= 0) {
+        assertThat(value).isAtLeast(lastValue);
+        lastValue = value;
+      }
+    }
+    producer.join();
+
+    assertThat(queue.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void addAndPollFloor_afterWarmUp_doesNotAllocate() {
+    assumeTrue(AllocationCounter.isSupported());
+    String value = "value";
+    int frameCount = 100_000;
+
+    // Warm up, so that the buffer has reached its final size.
+    for (int i = 0; i < 1_000; i++) {
+      queue.add(/* timestamp= */ i, value);
+      queue.pollFloor(/* timestamp= */ i - 5);
+    }
+    long allocatedBytesBefore = AllocationCounter.getCurrentThreadAllocatedBytes();
+    for (int i = 1_000; i < 1_000 + frameCount; i++) {
+      queue.add(/* timestamp= */ i, value);
+      queue.pollFloor(/* timestamp= */ i - 5);
+    }
+    long allocatedBytes =
+        AllocationCounter.getCurrentThreadAllocatedBytes() - allocatedBytesBefore;
+
+    assertThat(queue.size()).isEqualTo(5);
+    // Allow for the constant number of bytes allocated when counting allocations.
+    assertThat(allocatedBytes).isLessThan(frameCount);
+  }
+}
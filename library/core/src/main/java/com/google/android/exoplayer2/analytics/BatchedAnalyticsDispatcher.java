@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.analytics;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkIndex;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.analytics.AnalyticsListener.EventTime;
+import com.google.android.exoplayer2.decoder.DecoderCounters;
+import com.google.android.exoplayer2.util.ListenerSet;
+import com.google.android.exoplayer2.util.Log;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * Hands analytics events off to a dedicated consumer thread, on which they're delivered to a
+ * {@link Listener} in batches.
+ *
+ * <p>By default, {@link DefaultAnalyticsCollector} calls its {@link AnalyticsListener
+ * AnalyticsListeners} synchronously on the application thread, so that expensive listeners delay
+ * the other work of that thread. Listeners can instead be called from a dispatcher that's {@link
+ * DefaultAnalyticsCollector#setBatchedAnalyticsDispatcher set on the collector}. Each event is then
+ * written into a ring buffer that's allocated when the dispatcher is created, and the consumer
+ * thread drains all events that are in the buffer when it wakes up as one {@link EventBatch}.
+ *
+ * <p>If the buffer is full because the consumer doesn't keep up, new events are dropped and
+ * counted, rather than blocking the application thread. The counts are available from {@link
+ * #getDroppedEventCount()} and {@link EventBatch#getDroppedEventCount()}.
+ *
+ * <p>{@link AnalyticsListener#onEvents} isn't delivered through a dispatcher, as the {@link Player}
+ * must only be accessed from the application thread. Note that mutable event parameters, such as
+ * {@link DecoderCounters}, may be updated by the player while the listener reads them.
+ */
+public final class BatchedAnalyticsDispatcher {
+
+  /** A listener for batches of analytics events. */
+  public interface Listener {
+
+    /**
+     * Called on the consumer thread with a batch of events.
+     *
+     * <p>The batch is only valid for the duration of the call, and must not be kept. If the call
+     * throws a {@link RuntimeException}, the exception is logged and later batches are still
+     * delivered.
+     *
+     * @param batch The {@link EventBatch}.
+     */
+    void onEventsBatch(EventBatch batch);
+  }
+
+  /** A batch of consecutive analytics events, in the order in which they happened. */
+  public final class EventBatch {
+
+    private long startIndex;
+    private int size;
+    private long droppedEventCount;
+
+    private EventBatch() {}
+
+    /** Returns the number of events in the batch. */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Returns the number of events that were dropped because the buffer was full since the previous
+     * batch was delivered.
+     */
+    public long getDroppedEventCount() {
+      return droppedEventCount;
+    }
+
+    /**
+     * Returns the flag of an event.
+     *
+     * @param index The index of the event in the batch.
+     * @return The {@link AnalyticsListener.EventFlags event flag}, or {@link C#INDEX_UNSET} if the
+     *     event was reported without flag.
+     */
+    public int getEventFlag(int index) {
+      return eventFlags[getBufferIndex(index)];
+    }
+
+    /**
+     * Returns the {@link EventTime} of an event.
+     *
+     * @param index The index of the event in the batch.
+     * @return The {@link EventTime}.
+     */
+    public EventTime getEventTime(int index) {
+      return checkNotNull(eventTimes[getBufferIndex(index)]);
+    }
+
+    /**
+     * Calls the {@link AnalyticsListener} method that corresponds to an event.
+     *
+     * @param index The index of the event in the batch.
+     * @param listener The {@link AnalyticsListener}.
+     */
+    public void dispatch(int index, AnalyticsListener listener) {
+      checkNotNull(eventInvocations[getBufferIndex(index)]).invoke(listener);
+    }
+
+    /**
+     * Calls the {@link AnalyticsListener} methods that correspond to all events in the batch, in
+     * order.
+     *
+     * @param listener The {@link AnalyticsListener}.
+     */
+    public void dispatchAll(AnalyticsListener listener) {
+      for (int i = 0; i < size; i++) {
+        dispatch(i, listener);
+      }
+    }
+
+    private int getBufferIndex(int index) {
+      checkIndex(index, /* start= */ 0, /* limit= */ size);
+      return (int) ((startIndex + index) & indexMask);
+    }
+  }
+
+  private static final String TAG = "BatchedAnalyticsDisp";
+  private static final String THREAD_NAME = "ExoPlayer:BatchedAnalyticsDispatcher";
+
+  private final Listener listener;
+  private final int indexMask;
+  private final int[] eventFlags;
+  private final @NullableType EventTime[] eventTimes;
+  private final @NullableType ListenerSet.Event<AnalyticsListener>[] eventInvocations;
+  private final EventBatch batch;
+  private final AtomicBoolean consumerWaiting;
+  private final Thread consumerThread;
+
+  // Written by the producer and read by the consumer.
+  private volatile long writeIndex;
+  private volatile long droppedEventCount;
+  private volatile boolean released;
+
+  // Written by the consumer and read by the producer.
+  private volatile long readIndex;
+
+  // Only accessed by the producer.
+  private int maxQueuedEventCount;
+
+  // Only accessed by the consumer.
+  private long reportedDroppedEventCount;
+
+  /**
+   * Creates a dispatcher and starts its consumer thread.
+   *
+   * @param capacity The maximum number of events that can be waiting for the consumer. Must be a
+   *     power of two.
+   * @param listener The {@link Listener} called with the batches of events.
+   */
+  @SuppressWarnings({"unchecked", "nullness:method.invocation"})
+  public BatchedAnalyticsDispatcher(int capacity, Listener listener) {
+    checkArgument(capacity > 0 && Integer.bitCount(capacity) == 1);
+    this.listener = listener;
+    indexMask = capacity - 1;
+    eventFlags = new int[capacity];
+    eventTimes = new EventTime[capacity];
+    eventInvocations = (ListenerSet.Event<AnalyticsListener>[]) new ListenerSet.Event<?>[capacity];
+    batch = new EventBatch();
+    consumerWaiting = new AtomicBoolean();
+    consumerThread = new Thread(this::consumeEvents, THREAD_NAME);
+    consumerThread.start();
+  }
+
+  /**
+   * Writes an event into the buffer, or drops it if the buffer is full.
+   *
+   * <p>Must be called from a single thread, which is the application thread when the dispatcher is
+   * set on a {@link DefaultAnalyticsCollector}.
+   *
+   * @param eventTime The {@link EventTime} of the event.
+   * @param eventFlag The {@link AnalyticsListener.EventFlags event flag}, or {@link C#INDEX_UNSET}
+   *     to report the event without flag.
+   * @param eventInvocation The invocation of the {@link AnalyticsListener} method of the event.
+   * @return Whether the event was written into the buffer.
+   */
+  public boolean offer(
+      EventTime eventTime, int eventFlag, ListenerSet.Event<AnalyticsListener> eventInvocation) {
+    if (released) {
+      return false;
+    }
+    long writeIndex = this.writeIndex;
+    int queuedEventCount = (int) (writeIndex - readIndex);
+    if (queuedEventCount == eventFlags.length) {
+      droppedEventCount++;
+      return false;
+    }
+    int bufferIndex = (int) (writeIndex & indexMask);
+    eventFlags[bufferIndex] = eventFlag;
+    eventTimes[bufferIndex] = eventTime;
+    eventInvocations[bufferIndex] = eventInvocation;
+    // Publishes the event to the consumer.
+    this.writeIndex = writeIndex + 1;
+    maxQueuedEventCount = Math.max(maxQueuedEventCount, queuedEventCount + 1);
+    if (consumerWaiting.get()) {
+      LockSupport.unpark(consumerThread);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the total number of events that were dropped because the buffer was full. Must be
+   * called from the thread that calls {@link #offer}.
+   */
+  public long getDroppedEventCount() {
+    return droppedEventCount;
+  }
+
+  /**
+   * Returns the largest number of events that were waiting for the consumer at the same time. Must
+   * be called from the thread that calls {@link #offer}.
+   */
+  public int getMaxQueuedEventCount() {
+    return maxQueuedEventCount;
+  }
+
+  /**
+   * Releases the dispatcher. Events that were already written into the buffer are still delivered,
+   * after which the consumer thread ends. Later events are dropped without being counted.
+   *
+   * <p>This method doesn't block.
+   */
+  public void release() {
+    released = true;
+    LockSupport.unpark(consumerThread);
+  }
+
+  private void consumeEvents() {
+    while (true) {
+      long readIndex = this.readIndex;
+      long writeIndex = this.writeIndex;
+      if (readIndex == writeIndex) {
+        if (released) {
+          return;
+        }
+        consumerWaiting.set(true);
+        // Check again after announcing that the consumer waits, so that an event written just
+        // before the announcement isn't missed.
+        if (this.writeIndex == readIndex && !released) {
+          LockSupport.park(this);
+        }
+        consumerWaiting.set(false);
+        continue;
+      }
+      long droppedEventCount = this.droppedEventCount;
+      batch.startIndex = readIndex;
+      batch.size = (int) (writeIndex - readIndex);
+      batch.droppedEventCount = droppedEventCount - reportedDroppedEventCount;
+      reportedDroppedEventCount = droppedEventCount;
+      try {
+        listener.onEventsBatch(batch);
+      } catch (RuntimeException e) {
+        // Keep consuming, so that a failing batch doesn't stop the delivery of later events.
+        Log.e(TAG, "Listener failed to handle a batch of events", e);
+      }
+      for (long i = readIndex; i < writeIndex; i++) {
+        int bufferIndex = (int) (i & indexMask);
+        eventTimes[bufferIndex] = null;
+        eventInvocations[bufferIndex] = null;
+      }
+      // Hands the slots back to the producer.
+      this.readIndex = writeIndex;
+    }
+  }
+}
@@ -78,6 +78,7 @@ public class DefaultAnalyticsCollector implements AnalyticsCollector {
   private ListenerSet<AnalyticsListener> listeners;
   private @MonotonicNonNull Player player;
   private @MonotonicNonNull HandlerWrapper handler;
+  @Nullable private BatchedAnalyticsDispatcher batchedAnalyticsDispatcher;
   private boolean isSeeking;
 
   /**
@@ -108,6 +109,22 @@ public class DefaultAnalyticsCollector implements AnalyticsCollector {
     listeners.setThrowsWhenUsingWrongThread(throwsWhenUsingWrongThread);
   }
 
+  /**
+   * Sets a {@link BatchedAnalyticsDispatcher} to which all events are handed off, in addition to
+   * being sent to the {@link #addListener added listeners}. The dispatcher delivers the events to
+   * its own listener in batches on a dedicated thread, so that expensive listeners don't delay the
+   * application thread.
+   *
+   * <p>The dispatcher isn't released by this collector.
+   *
+   * @param batchedAnalyticsDispatcher The {@link BatchedAnalyticsDispatcher}, or null to stop
+   *     handing off events.
+   */
+  public void setBatchedAnalyticsDispatcher(
+      @Nullable BatchedAnalyticsDispatcher batchedAnalyticsDispatcher) {
+    this.batchedAnalyticsDispatcher = batchedAnalyticsDispatcher;
+  }
+
   @Override
   @CallSuper
   public void addListener(AnalyticsListener listener) {
@@ -902,6 +919,9 @@ public class DefaultAnalyticsCollector implements AnalyticsCollector {
       EventTime eventTime, int eventFlag, ListenerSet.Event<AnalyticsListener> eventInvocation) {
     eventTimes.put(eventFlag, eventTime);
     listeners.sendEvent(eventFlag, eventInvocation);
+    if (batchedAnalyticsDispatcher != null) {
+      batchedAnalyticsDispatcher.offer(eventTime, eventFlag, eventInvocation);
+    }
   }
 
   /** Generates an {@link EventTime} for the currently playing item in the player. */
@@ -959,6 +979,7 @@ public class DefaultAnalyticsCollector implements AnalyticsCollector {
         AnalyticsListener.EVENT_PLAYER_RELEASED,
         listener -> listener.onPlayerReleased(eventTime));
     listeners.release();
+    batchedAnalyticsDispatcher = null;
   }
 
   private EventTime generateEventTime(@Nullable MediaPeriodId mediaPeriodId) {
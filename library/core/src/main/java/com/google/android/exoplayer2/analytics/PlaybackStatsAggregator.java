@@ -0,0 +1,552 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.analytics;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.RequiresApi;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ParserException;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Aggregates the {@link PlaybackStats} of many playbacks into a fixed amount of memory.
+ *
+ * <p>{@link PlaybackStats#merge(PlaybackStats...)} needs all stats to be held in memory at the same
+ * time, and a {@link PlaybackStats} of a single playback usually holds the full history of its
+ * events. An aggregator instead keeps only the scalar fields of the added stats, as one primitive
+ * column per field, and histograms of the join time, the rebuffer time and the mean video bitrate
+ * of the added playbacks. Aggregators can be {@link #merge merged}, so that large numbers of stats
+ * can be {@link #aggregate(Iterable, ForkJoinPool) aggregated in parallel}, and can be serialized
+ * to a compact binary format with {@link #toByteArray()}.
+ *
+ * <p>This class isn't thread safe.
+ */
+public final class PlaybackStatsAggregator {
+
+  /**
+   * A histogram of non-negative values, with buckets whose width is at most an eighth of their
+   * lower bound. Values below 8 are counted exactly.
+   */
+  public static final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT =
+        SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final long[] bucketCounts;
+    private long totalCount;
+
+    private Histogram() {
+      bucketCounts = new long[BUCKET_COUNT];
+    }
+
+    /** Returns the number of values in the histogram. */
+    public long getCount() {
+      return totalCount;
+    }
+
+    /**
+     * Returns an estimate of a quantile of the values in the histogram.
+     *
+     * @param quantile The quantile, in the range [0, 1].
+     * @return The middle of the bucket holding the quantile, or {@link C#TIME_UNSET} if the
+     *     histogram is empty.
+     */
+    public long getQuantile(double quantile) {
+      checkArgument(quantile >= 0 && quantile <= 1);
+      if (totalCount == 0) {
+        return C.TIME_UNSET;
+      }
+      long rank = max(1, (long) Math.ceil(quantile * totalCount));
+      long count = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        count += bucketCounts[i];
+        if (count >= rank) {
+          return getBucketLowerBound(i) + getBucketWidth(i) / 2;
+        }
+      }
+      throw new IllegalStateException();
+    }
+
+    private void add(long value) {
+      bucketCounts[getBucketIndex(value)]++;
+      totalCount++;
+    }
+
+    private void merge(Histogram other) {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        bucketCounts[i] += other.bucketCounts[i];
+      }
+      totalCount += other.totalCount;
+    }
+
+    private static int getBucketIndex(long value) {
+      if (value < SUB_BUCKET_COUNT) {
+        return (int) value;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+      return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long getBucketLowerBound(int index) {
+      if (index < SUB_BUCKET_COUNT) {
+        return index;
+      }
+      int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+      int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+      return (long) (SUB_BUCKET_COUNT + subBucket) << shift;
+    }
+
+    private static long getBucketWidth(int index) {
+      return index < SUB_BUCKET_COUNT ? 1 : 1L << ((index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT);
+    }
+  }
+
+  /** The number of stats that {@link #aggregate} adds to an aggregator in a single task. */
+  private static final int CHUNK_SIZE = 4096;
+  /** The first bytes of the binary format, followed by its version. */
+  private static final int FORMAT_MAGIC = 0x50534167;
+  private static final int FORMAT_VERSION = 1;
+
+  // Column indices. The first PlaybackStats.PLAYBACK_STATE_COUNT columns hold the durations of the
+  // playback states. Columns are summed when merging unless they're listed in combine().
+  private static final int COLUMN_PLAYBACK_COUNT = PlaybackStats.PLAYBACK_STATE_COUNT;
+  private static final int COLUMN_FIRST_REPORTED_TIME_MS = COLUMN_PLAYBACK_COUNT + 1;
+  private static final int COLUMN_FOREGROUND_PLAYBACK_COUNT = COLUMN_PLAYBACK_COUNT + 2;
+  private static final int COLUMN_ABANDONED_BEFORE_READY_COUNT = COLUMN_PLAYBACK_COUNT + 3;
+  private static final int COLUMN_ENDED_COUNT = COLUMN_PLAYBACK_COUNT + 4;
+  private static final int COLUMN_BACKGROUND_JOINING_COUNT = COLUMN_PLAYBACK_COUNT + 5;
+  private static final int COLUMN_TOTAL_VALID_JOIN_TIME_MS = COLUMN_PLAYBACK_COUNT + 6;
+  private static final int COLUMN_VALID_JOIN_TIME_COUNT = COLUMN_PLAYBACK_COUNT + 7;
+  private static final int COLUMN_TOTAL_PAUSE_COUNT = COLUMN_PLAYBACK_COUNT + 8;
+  private static final int COLUMN_TOTAL_PAUSE_BUFFER_COUNT = COLUMN_PLAYBACK_COUNT + 9;
+  private static final int COLUMN_TOTAL_SEEK_COUNT = COLUMN_PLAYBACK_COUNT + 10;
+  private static final int COLUMN_TOTAL_REBUFFER_COUNT = COLUMN_PLAYBACK_COUNT + 11;
+  private static final int COLUMN_MAX_REBUFFER_TIME_MS = COLUMN_PLAYBACK_COUNT + 12;
+  private static final int COLUMN_AD_PLAYBACK_COUNT = COLUMN_PLAYBACK_COUNT + 13;
+  private static final int COLUMN_TOTAL_VIDEO_FORMAT_HEIGHT_TIME_MS = COLUMN_PLAYBACK_COUNT + 14;
+  private static final int COLUMN_TOTAL_VIDEO_FORMAT_HEIGHT_TIME_PRODUCT =
+      COLUMN_PLAYBACK_COUNT + 15;
+  private static final int COLUMN_TOTAL_VIDEO_FORMAT_BITRATE_TIME_MS = COLUMN_PLAYBACK_COUNT + 16;
+  private static final int COLUMN_TOTAL_VIDEO_FORMAT_BITRATE_TIME_PRODUCT =
+      COLUMN_PLAYBACK_COUNT + 17;
+  private static final int COLUMN_TOTAL_AUDIO_FORMAT_TIME_MS = COLUMN_PLAYBACK_COUNT + 18;
+  private static final int COLUMN_TOTAL_AUDIO_FORMAT_BITRATE_TIME_PRODUCT =
+      COLUMN_PLAYBACK_COUNT + 19;
+  private static final int COLUMN_INITIAL_VIDEO_FORMAT_HEIGHT_COUNT = COLUMN_PLAYBACK_COUNT + 20;
+  private static final int COLUMN_INITIAL_VIDEO_FORMAT_BITRATE_COUNT = COLUMN_PLAYBACK_COUNT + 21;
+  private static final int COLUMN_TOTAL_INITIAL_VIDEO_FORMAT_HEIGHT = COLUMN_PLAYBACK_COUNT + 22;
+  private static final int COLUMN_TOTAL_INITIAL_VIDEO_FORMAT_BITRATE = COLUMN_PLAYBACK_COUNT + 23;
+  private static final int COLUMN_INITIAL_AUDIO_FORMAT_BITRATE_COUNT = COLUMN_PLAYBACK_COUNT + 24;
+  private static final int COLUMN_TOTAL_INITIAL_AUDIO_FORMAT_BITRATE = COLUMN_PLAYBACK_COUNT + 25;
+  private static final int COLUMN_TOTAL_BANDWIDTH_TIME_MS = COLUMN_PLAYBACK_COUNT + 26;
+  private static final int COLUMN_TOTAL_BANDWIDTH_BYTES = COLUMN_PLAYBACK_COUNT + 27;
+  private static final int COLUMN_TOTAL_DROPPED_FRAMES = COLUMN_PLAYBACK_COUNT + 28;
+  private static final int COLUMN_TOTAL_AUDIO_UNDERRUNS = COLUMN_PLAYBACK_COUNT + 29;
+  private static final int COLUMN_FATAL_ERROR_PLAYBACK_COUNT = COLUMN_PLAYBACK_COUNT + 30;
+  private static final int COLUMN_FATAL_ERROR_COUNT = COLUMN_PLAYBACK_COUNT + 31;
+  private static final int COLUMN_NON_FATAL_ERROR_COUNT = COLUMN_PLAYBACK_COUNT + 32;
+  private static final int COLUMN_COUNT = COLUMN_PLAYBACK_COUNT + 33;
+
+  private final long[] columns;
+  private final long[] addedColumns;
+  private final Histogram joinTimeMsHistogram;
+  private final Histogram rebufferTimeMsHistogram;
+  private final Histogram videoFormatBitrateHistogram;
+
+  /** Creates an empty aggregator. */
+  public PlaybackStatsAggregator() {
+    columns = new long[COLUMN_COUNT];
+    readColumns(PlaybackStats.EMPTY, columns);
+    addedColumns = new long[COLUMN_COUNT];
+    joinTimeMsHistogram = new Histogram();
+    rebufferTimeMsHistogram = new Histogram();
+    videoFormatBitrateHistogram = new Histogram();
+  }
+
+  /**
+   * Aggregates {@link PlaybackStats} in parallel.
+   *
+   * <p>The stats are read on the calling thread in chunks, which are aggregated on the pool and
+   * merged into the result as they complete. At most twice as many chunks as the {@link
+   * ForkJoinPool#getParallelism() parallelism} of the pool are held at the same time, so the stats
+   * can be streamed from an {@link Iterable} that doesn't keep them in memory.
+   *
+   * @param playbackStats The {@link PlaybackStats} to aggregate.
+   * @param pool The {@link ForkJoinPool} on which to aggregate the stats.
+   * @return An aggregator to which all stats have been added.
+   */
+  @RequiresApi(21)
+  public static PlaybackStatsAggregator aggregate(
+      Iterable<PlaybackStats> playbackStats, ForkJoinPool pool) {
+    int maxPendingChunkCount = 2 * pool.getParallelism();
+    ArrayDeque<ForkJoinTask<PlaybackStatsAggregator>> pendingChunks = new ArrayDeque<>();
+    PlaybackStatsAggregator aggregator = new PlaybackStatsAggregator();
+    Iterator<PlaybackStats> iterator = playbackStats.iterator();
+    while (iterator.hasNext()) {
+      List<PlaybackStats> chunk = new ArrayList<>(CHUNK_SIZE);
+      while (chunk.size() < CHUNK_SIZE && iterator.hasNext()) {
+        chunk.add(iterator.next());
+      }
+      if (pendingChunks.size() == maxPendingChunkCount) {
+        aggregator.merge(pendingChunks.removeFirst().join());
+      }
+      pendingChunks.addLast(pool.submit(() -> aggregateChunk(chunk)));
+    }
+    while (!pendingChunks.isEmpty()) {
+      aggregator.merge(pendingChunks.removeFirst().join());
+    }
+    return aggregator;
+  }
+
+  /**
+   * Creates an aggregator from the output of {@link #toByteArray()}.
+   *
+   * @param data The serialized aggregator.
+   * @return The aggregator.
+   * @throws ParserException If the data isn't a serialized aggregator.
+   */
+  public static PlaybackStatsAggregator fromByteArray(byte[] data) throws ParserException {
+    PlaybackStatsAggregator aggregator = new PlaybackStatsAggregator();
+    VarintReader reader = new VarintReader(data);
+    if (reader.readUnsigned() != FORMAT_MAGIC || reader.readUnsigned() != FORMAT_VERSION) {
+      throw ParserException.createForMalformedDataOfUnknownType(
+          "Not a serialized PlaybackStatsAggregator", /* cause= */ null);
+    }
+    int columnCount = (int) reader.readUnsigned();
+    if (columnCount != COLUMN_COUNT) {
+      throw ParserException.createForMalformedDataOfUnknownType(
+          "Unexpected column count: " + columnCount, /* cause= */ null);
+    }
+    for (int i = 0; i < COLUMN_COUNT; i++) {
+      aggregator.columns[i] = reader.readSigned();
+    }
+    readHistogram(reader, aggregator.joinTimeMsHistogram);
+    readHistogram(reader, aggregator.rebufferTimeMsHistogram);
+    readHistogram(reader, aggregator.videoFormatBitrateHistogram);
+    if (!reader.isAtEnd()) {
+      throw ParserException.createForMalformedDataOfUnknownType("Trailing data", /* cause= */ null);
+    }
+    return aggregator;
+  }
+
+  /**
+   * Adds the {@link PlaybackStats} of a playback.
+   *
+   * <p>The histograms count each added {@link PlaybackStats} once, so the stats should be those of
+   * a single playback rather than already merged stats.
+   *
+   * @param playbackStats The {@link PlaybackStats} to add.
+   */
+  public void add(PlaybackStats playbackStats) {
+    readColumns(playbackStats, addedColumns);
+    mergeColumns(addedColumns);
+    long meanJoinTimeMs = playbackStats.getMeanJoinTimeMs();
+    if (meanJoinTimeMs != C.TIME_UNSET) {
+      joinTimeMsHistogram.add(meanJoinTimeMs);
+    }
+    rebufferTimeMsHistogram.add(playbackStats.getTotalRebufferTimeMs());
+    int meanVideoFormatBitrate = playbackStats.getMeanVideoFormatBitrate();
+    if (meanVideoFormatBitrate != C.LENGTH_UNSET) {
+      videoFormatBitrateHistogram.add(meanVideoFormatBitrate);
+    }
+  }
+
+  /**
+   * Merges another aggregator into this one.
+   *
+   * @param other The aggregator to merge. It isn't modified.
+   */
+  public void merge(PlaybackStatsAggregator other) {
+    mergeColumns(other.columns);
+    joinTimeMsHistogram.merge(other.joinTimeMsHistogram);
+    rebufferTimeMsHistogram.merge(other.rebufferTimeMsHistogram);
+    videoFormatBitrateHistogram.merge(other.videoFormatBitrateHistogram);
+  }
+
+  /**
+   * Returns a histogram of the mean join time of the playbacks with a valid join time, in
+   * milliseconds.
+   */
+  public Histogram getJoinTimeMsHistogram() {
+    return joinTimeMsHistogram;
+  }
+
+  /** Returns a histogram of the total rebuffer time of the playbacks, in milliseconds. */
+  public Histogram getRebufferTimeMsHistogram() {
+    return rebufferTimeMsHistogram;
+  }
+
+  /**
+   * Returns a histogram of the mean video format bitrate of the playbacks with a known video
+   * bitrate, in bits per second.
+   */
+  public Histogram getVideoFormatBitrateHistogram() {
+    return videoFormatBitrateHistogram;
+  }
+
+  /**
+   * Returns the combined {@link PlaybackStats} of all added stats. The result is equal to the
+   * result of {@link PlaybackStats#merge(PlaybackStats...)}, and also holds no event history.
+   */
+  public PlaybackStats toPlaybackStats() {
+    long[] playbackStateDurationsMs = new long[PlaybackStats.PLAYBACK_STATE_COUNT];
+    System.arraycopy(columns, 0, playbackStateDurationsMs, 0, playbackStateDurationsMs.length);
+    return new PlaybackStats(
+        (int) columns[COLUMN_PLAYBACK_COUNT],
+        playbackStateDurationsMs,
+        /* playbackStateHistory= */ Collections.emptyList(),
+        /* mediaTimeHistory= */ Collections.emptyList(),
+        columns[COLUMN_FIRST_REPORTED_TIME_MS],
+        (int) columns[COLUMN_FOREGROUND_PLAYBACK_COUNT],
+        (int) columns[COLUMN_ABANDONED_BEFORE_READY_COUNT],
+        (int) columns[COLUMN_ENDED_COUNT],
+        (int) columns[COLUMN_BACKGROUND_JOINING_COUNT],
+        columns[COLUMN_TOTAL_VALID_JOIN_TIME_MS],
+        (int) columns[COLUMN_VALID_JOIN_TIME_COUNT],
+        (int) columns[COLUMN_TOTAL_PAUSE_COUNT],
+        (int) columns[COLUMN_TOTAL_PAUSE_BUFFER_COUNT],
+        (int) columns[COLUMN_TOTAL_SEEK_COUNT],
+        (int) columns[COLUMN_TOTAL_REBUFFER_COUNT],
+        columns[COLUMN_MAX_REBUFFER_TIME_MS],
+        (int) columns[COLUMN_AD_PLAYBACK_COUNT],
+        /* videoFormatHistory= */ Collections.emptyList(),
+        /* audioFormatHistory= */ Collections.emptyList(),
+        columns[COLUMN_TOTAL_VIDEO_FORMAT_HEIGHT_TIME_MS],
+        columns[COLUMN_TOTAL_VIDEO_FORMAT_HEIGHT_TIME_PRODUCT],
+        columns[COLUMN_TOTAL_VIDEO_FORMAT_BITRATE_TIME_MS],
+        columns[COLUMN_TOTAL_VIDEO_FORMAT_BITRATE_TIME_PRODUCT],
+        columns[COLUMN_TOTAL_AUDIO_FORMAT_TIME_MS],
+        columns[COLUMN_TOTAL_AUDIO_FORMAT_BITRATE_TIME_PRODUCT],
+        (int) columns[COLUMN_INITIAL_VIDEO_FORMAT_HEIGHT_COUNT],
+        (int) columns[COLUMN_INITIAL_VIDEO_FORMAT_BITRATE_COUNT],
+        (int) columns[COLUMN_TOTAL_INITIAL_VIDEO_FORMAT_HEIGHT],
+        columns[COLUMN_TOTAL_INITIAL_VIDEO_FORMAT_BITRATE],
+        (int) columns[COLUMN_INITIAL_AUDIO_FORMAT_BITRATE_COUNT],
+        columns[COLUMN_TOTAL_INITIAL_AUDIO_FORMAT_BITRATE],
+        columns[COLUMN_TOTAL_BANDWIDTH_TIME_MS],
+        columns[COLUMN_TOTAL_BANDWIDTH_BYTES],
+        columns[COLUMN_TOTAL_DROPPED_FRAMES],
+        columns[COLUMN_TOTAL_AUDIO_UNDERRUNS],
+        (int) columns[COLUMN_FATAL_ERROR_PLAYBACK_COUNT],
+        (int) columns[COLUMN_FATAL_ERROR_COUNT],
+        (int) columns[COLUMN_NON_FATAL_ERROR_COUNT],
+        /* fatalErrorHistory= */ Collections.emptyList(),
+        /* nonFatalErrorHistory= */ Collections.emptyList());
+  }
+
+  /**
+   * Serializes the aggregator. Columns are written as variable-length integers and histograms as
+   * their non-empty buckets only, so that an aggregator typically takes a few hundred bytes.
+   *
+   * @return The serialized aggregator, which can be read with {@link #fromByteArray(byte[])}.
+   */
+  public byte[] toByteArray() {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    writeUnsigned(output, FORMAT_MAGIC);
+    writeUnsigned(output, FORMAT_VERSION);
+    writeUnsigned(output, COLUMN_COUNT);
+    for (long column : columns) {
+      writeSigned(output, column);
+    }
+    writeHistogram(output, joinTimeMsHistogram);
+    writeHistogram(output, rebufferTimeMsHistogram);
+    writeHistogram(output, videoFormatBitrateHistogram);
+    return output.toByteArray();
+  }
+
+  private void mergeColumns(long[] otherColumns) {
+    for (int i = 0; i < COLUMN_COUNT; i++) {
+      columns[i] = combine(i, columns[i], otherColumns[i]);
+    }
+  }
+
+  /** Combines the values of a column in the same way as {@link PlaybackStats#merge}. */
+  private static long combine(int column, long value, long otherValue) {
+    switch (column) {
+      case COLUMN_FIRST_REPORTED_TIME_MS:
+        return combineIfSet(value, otherValue, C.TIME_UNSET, min(value, otherValue));
+      case COLUMN_MAX_REBUFFER_TIME_MS:
+        return combineIfSet(value, otherValue, C.TIME_UNSET, max(value, otherValue));
+      case COLUMN_TOTAL_VALID_JOIN_TIME_MS:
+        return combineIfSet(value, otherValue, C.TIME_UNSET, value + otherValue);
+      case COLUMN_TOTAL_INITIAL_VIDEO_FORMAT_HEIGHT:
+      case COLUMN_TOTAL_INITIAL_VIDEO_FORMAT_BITRATE:
+      case COLUMN_TOTAL_INITIAL_AUDIO_FORMAT_BITRATE:
+        return combineIfSet(value, otherValue, C.LENGTH_UNSET, value + otherValue);
+      default:
+        return value + otherValue;
+    }
+  }
+
+  private static long combineIfSet(
+      long value, long otherValue, long unsetValue, long combinedValue) {
+    if (value == unsetValue) {
+      return otherValue;
+    } else if (otherValue == unsetValue) {
+      return value;
+    }
+    return combinedValue;
+  }
+
+  private static void readColumns(PlaybackStats stats, long[] columns) {
+    for (int i = 0; i < PlaybackStats.PLAYBACK_STATE_COUNT; i++) {
+      columns[i] = stats.getPlaybackStateDurationMs(i);
+    }
+    columns[COLUMN_PLAYBACK_COUNT] = stats.playbackCount;
+    columns[COLUMN_FIRST_REPORTED_TIME_MS] = stats.firstReportedTimeMs;
+    columns[COLUMN_FOREGROUND_PLAYBACK_COUNT] = stats.foregroundPlaybackCount;
+    columns[COLUMN_ABANDONED_BEFORE_READY_COUNT] = stats.abandonedBeforeReadyCount;
+    columns[COLUMN_ENDED_COUNT] = stats.endedCount;
+    columns[COLUMN_BACKGROUND_JOINING_COUNT] = stats.backgroundJoiningCount;
+    columns[COLUMN_TOTAL_VALID_JOIN_TIME_MS] = stats.totalValidJoinTimeMs;
+    columns[COLUMN_VALID_JOIN_TIME_COUNT] = stats.validJoinTimeCount;
+    columns[COLUMN_TOTAL_PAUSE_COUNT] = stats.totalPauseCount;
+    columns[COLUMN_TOTAL_PAUSE_BUFFER_COUNT] = stats.totalPauseBufferCount;
+    columns[COLUMN_TOTAL_SEEK_COUNT] = stats.totalSeekCount;
+    columns[COLUMN_TOTAL_REBUFFER_COUNT] = stats.totalRebufferCount;
+    columns[COLUMN_MAX_REBUFFER_TIME_MS] = stats.maxRebufferTimeMs;
+    columns[COLUMN_AD_PLAYBACK_COUNT] = stats.adPlaybackCount;
+    columns[COLUMN_TOTAL_VIDEO_FORMAT_HEIGHT_TIME_MS] = stats.totalVideoFormatHeightTimeMs;
+    columns[COLUMN_TOTAL_VIDEO_FORMAT_HEIGHT_TIME_PRODUCT] =
+        stats.totalVideoFormatHeightTimeProduct;
+    columns[COLUMN_TOTAL_VIDEO_FORMAT_BITRATE_TIME_MS] = stats.totalVideoFormatBitrateTimeMs;
+    columns[COLUMN_TOTAL_VIDEO_FORMAT_BITRATE_TIME_PRODUCT] =
+        stats.totalVideoFormatBitrateTimeProduct;
+    columns[COLUMN_TOTAL_AUDIO_FORMAT_TIME_MS] = stats.totalAudioFormatTimeMs;
+    columns[COLUMN_TOTAL_AUDIO_FORMAT_BITRATE_TIME_PRODUCT] =
+        stats.totalAudioFormatBitrateTimeProduct;
+    columns[COLUMN_INITIAL_VIDEO_FORMAT_HEIGHT_COUNT] = stats.initialVideoFormatHeightCount;
+    columns[COLUMN_INITIAL_VIDEO_FORMAT_BITRATE_COUNT] = stats.initialVideoFormatBitrateCount;
+    columns[COLUMN_TOTAL_INITIAL_VIDEO_FORMAT_HEIGHT] = stats.totalInitialVideoFormatHeight;
+    columns[COLUMN_TOTAL_INITIAL_VIDEO_FORMAT_BITRATE] = stats.totalInitialVideoFormatBitrate;
+    columns[COLUMN_INITIAL_AUDIO_FORMAT_BITRATE_COUNT] = stats.initialAudioFormatBitrateCount;
+    columns[COLUMN_TOTAL_INITIAL_AUDIO_FORMAT_BITRATE] = stats.totalInitialAudioFormatBitrate;
+    columns[COLUMN_TOTAL_BANDWIDTH_TIME_MS] = stats.totalBandwidthTimeMs;
+    columns[COLUMN_TOTAL_BANDWIDTH_BYTES] = stats.totalBandwidthBytes;
+    columns[COLUMN_TOTAL_DROPPED_FRAMES] = stats.totalDroppedFrames;
+    columns[COLUMN_TOTAL_AUDIO_UNDERRUNS] = stats.totalAudioUnderruns;
+    columns[COLUMN_FATAL_ERROR_PLAYBACK_COUNT] = stats.fatalErrorPlaybackCount;
+    columns[COLUMN_FATAL_ERROR_COUNT] = stats.fatalErrorCount;
+    columns[COLUMN_NON_FATAL_ERROR_COUNT] = stats.nonFatalErrorCount;
+  }
+
+  private static void writeHistogram(ByteArrayOutputStream output, Histogram histogram) {
+    int nonEmptyBucketCount = 0;
+    for (long bucketCount : histogram.bucketCounts) {
+      if (bucketCount != 0) {
+        nonEmptyBucketCount++;
+      }
+    }
+    writeUnsigned(output, nonEmptyBucketCount);
+    int previousIndex = -1;
+    for (int i = 0; i < Histogram.BUCKET_COUNT; i++) {
+      if (histogram.bucketCounts[i] != 0) {
+        // Bucket indices are written as the difference to the previous index, which is small.
+        writeUnsigned(output, i - previousIndex);
+        writeUnsigned(output, histogram.bucketCounts[i]);
+        previousIndex = i;
+      }
+    }
+  }
+
+  private static void readHistogram(VarintReader reader, Histogram histogram)
+      throws ParserException {
+    long nonEmptyBucketCount = reader.readUnsigned();
+    int index = -1;
+    for (long i = 0; i < nonEmptyBucketCount; i++) {
+      long indexDelta = reader.readUnsigned();
+      if (indexDelta <= 0 || index + indexDelta >= Histogram.BUCKET_COUNT) {
+        throw ParserException.createForMalformedDataOfUnknownType(
+            "Invalid histogram bucket", /* cause= */ null);
+      }
+      index += (int) indexDelta;
+      long bucketCount = reader.readUnsigned();
+      histogram.bucketCounts[index] = bucketCount;
+      histogram.totalCount += bucketCount;
+    }
+  }
+
+  private static void writeSigned(ByteArrayOutputStream output, long value) {
+    // Zigzag encoding, so that small negative values such as C.LENGTH_UNSET are short.
+    writeUnsigned(output, (value << 1) ^ (value >> 63));
+  }
+
+  private static void writeUnsigned(ByteArrayOutputStream output, long value) {
+    while ((value & ~0x7FL) != 0) {
+      output.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    output.write((int) value);
+  }
+
+  private static PlaybackStatsAggregator aggregateChunk(List<PlaybackStats> playbackStats) {
+    PlaybackStatsAggregator aggregator = new PlaybackStatsAggregator();
+    for (int i = 0; i < playbackStats.size(); i++) {
+      aggregator.add(playbackStats.get(i));
+    }
+    return aggregator;
+  }
+
+  /** Reads the variable-length integers written by {@link #writeUnsigned}. */
+  private static final class VarintReader {
+
+    private final byte[] data;
+    private int position;
+
+    public VarintReader(byte[] data) {
+      this.data = data;
+    }
+
+    public boolean isAtEnd() {
+      return position == data.length;
+    }
+
+    public long readSigned() throws ParserException {
+      long value = readUnsigned();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readUnsigned() throws ParserException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        if (position == data.length) {
+          throw ParserException.createForMalformedDataOfUnknownType(
+              "Unexpected end of data", /* cause= */ null);
+        }
+        int b = data[position++];
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw ParserException.createForMalformedDataOfUnknownType(
+          "Invalid varint", /* cause= */ null);
+    }
+  }
+}
@@ -26,10 +26,16 @@ import java.nio.ByteBuffer;
  * An {@link AudioProcessor} that applies a mapping from input channels onto specified output
  * channels. This can be used to reorder, duplicate or discard channels.
  */
-/* package */ final class ChannelMappingAudioProcessor extends BaseAudioProcessor {
+/* package */ final class ChannelMappingAudioProcessor extends BaseAudioProcessor
+    implements InPlaceAudioProcessor {
 
   @Nullable private int[] pendingOutputChannels;
   @Nullable private int[] outputChannels;
+  private short[] frame;
+
+  public ChannelMappingAudioProcessor() {
+    frame = new short[0];
+  }
 
   /**
    * Resets the channel mapping. After calling this method, call {@link #configure(AudioFormat)} to
@@ -88,9 +94,60 @@ import java.nio.ByteBuffer;
     buffer.flip();
   }
 
+  @Override
+  public int getMaxPrependedSize() {
+    return 0;
+  }
+
+  @Override
+  public int getMaxOutputSize(int inputSize) {
+    return inputSize / inputAudioFormat.bytesPerFrame * outputAudioFormat.bytesPerFrame;
+  }
+
+  @Override
+  public void processInPlace(ByteBuffer buffer) {
+    int[] outputChannels = Assertions.checkNotNull(this.outputChannels);
+    short[] frame = this.frame;
+    int inputBytesPerFrame = inputAudioFormat.bytesPerFrame;
+    int outputBytesPerFrame = outputAudioFormat.bytesPerFrame;
+    int position = buffer.position();
+    int frameCount = (buffer.limit() - position) / inputBytesPerFrame;
+    int outputLimit = position + frameCount * outputBytesPerFrame;
+    buffer.limit(buffer.capacity());
+    // Each frame is read completely before it's overwritten. If frames get larger, iterate
+    // backwards so that output frames don't overwrite input frames that haven't been read yet.
+    if (outputBytesPerFrame <= inputBytesPerFrame) {
+      for (int inputPosition = position; buffer.position() < outputLimit; ) {
+        for (int i = 0; i < outputChannels.length; i++) {
+          frame[i] = buffer.getShort(inputPosition + 2 * outputChannels[i]);
+        }
+        for (short sample : frame) {
+          buffer.putShort(sample);
+        }
+        inputPosition += inputBytesPerFrame;
+      }
+      buffer.position(position);
+    } else {
+      for (int frameIndex = frameCount - 1; frameIndex >= 0; frameIndex--) {
+        int inputPosition = position + frameIndex * inputBytesPerFrame;
+        for (int i = 0; i < outputChannels.length; i++) {
+          frame[i] = buffer.getShort(inputPosition + 2 * outputChannels[i]);
+        }
+        int outputPosition = position + frameIndex * outputBytesPerFrame;
+        for (int i = 0; i < frame.length; i++) {
+          buffer.putShort(outputPosition + 2 * i, frame[i]);
+        }
+      }
+    }
+    buffer.limit(outputLimit);
+  }
+
   @Override
   protected void onFlush() {
     outputChannels = pendingOutputChannels;
+    if (outputChannels != null && frame.length != outputChannels.length) {
+      frame = new short[outputChannels.length];
+    }
   }
 
   @Override
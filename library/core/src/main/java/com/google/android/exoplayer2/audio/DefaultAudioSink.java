@@ -221,6 +221,7 @@ public final class DefaultAudioSink implements AudioSink {
     @Nullable private com.google.android.exoplayer2.audio.AudioProcessorChain audioProcessorChain;
     private boolean enableFloatOutput;
     private boolean enableAudioTrackPlaybackParams;
+    private boolean enableNativeOutputSampleRate;
     private int offloadMode;
     AudioTrackBufferSizeProvider audioTrackBufferSizeProvider;
     @Nullable AudioOffloadListener audioOffloadListener;
@@ -276,8 +277,10 @@ public final class DefaultAudioSink implements AudioSink {
     /**
      * Sets whether to enable 32-bit float output or integer output. Where possible, 32-bit float
      * output will be used if the input is 32-bit float, and also if the input is high resolution
-     * (24-bit or 32-bit) integer PCM. Float output is supported from API level 21. Audio processing
-     * (for example, speed adjustment) will not be available when float output is in use.
+     * (24-bit or 32-bit) integer PCM. Float output is supported from API level 21. When float
+     * output is in use, speed and pitch adjustment are only available if the {@link
+     * #setAudioProcessorChain audio processor chain} contains a {@link SonicAudioProcessor}, and
+     * other audio processing (for example, silence skipping) will not be available.
      *
      * <p>The default value is {@code false}.
      */
@@ -301,6 +304,20 @@ public final class DefaultAudioSink implements AudioSink {
       return this;
     }
 
+    /**
+     * Sets whether to resample PCM audio to the native output sample rate of the device using a
+     * {@link PolyphaseResamplingAudioProcessor}. If set to {@code true}, the {@link AudioTrack} is
+     * created with the native sample rate, so the platform doesn't need to resample the audio.
+     * Resampling is not applied when offload or passthrough is in use.
+     *
+     * <p>The default value is {@code false}.
+     */
+    @CanIgnoreReturnValue
+    public Builder setEnableNativeOutputSampleRate(boolean enableNativeOutputSampleRate) {
+      this.enableNativeOutputSampleRate = enableNativeOutputSampleRate;
+      return this;
+    }
+
     /**
      * Sets the offload mode. If an audio format can be both played with offload and encoded audio
      * passthrough, it will be played in offload. Audio offload is supported from API level 29. Most
@@ -461,12 +478,15 @@ public final class DefaultAudioSink implements AudioSink {
   private final boolean enableFloatOutput;
   private final ChannelMappingAudioProcessor channelMappingAudioProcessor;
   private final TrimmingAudioProcessor trimmingAudioProcessor;
+  private final PolyphaseResamplingAudioProcessor polyphaseResamplingAudioProcessor;
   private final AudioProcessor[] toIntPcmAvailableAudioProcessors;
   private final AudioProcessor[] toFloatPcmAvailableAudioProcessors;
+  private final boolean canAdjustFloatOutputPlaybackParameters;
   private final ConditionVariable releasingConditionVariable;
   private final AudioTrackPositionTracker audioTrackPositionTracker;
   private final ArrayDeque<MediaPositionParameters> mediaPositionParametersCheckpoints;
   private final boolean enableAudioTrackPlaybackParams;
+  private final boolean enableNativeOutputSampleRate;
   private final @OffloadMode int offloadMode;
   private @MonotonicNonNull StreamEventCallbackV29 offloadStreamEventCallbackV29;
   private final PendingExceptionHolder<InitializationException>
@@ -600,6 +620,7 @@ public final class DefaultAudioSink implements AudioSink {
     audioProcessorChain = builder.audioProcessorChain;
     enableFloatOutput = Util.SDK_INT >= 21 && builder.enableFloatOutput;
     enableAudioTrackPlaybackParams = Util.SDK_INT >= 23 && builder.enableAudioTrackPlaybackParams;
+    enableNativeOutputSampleRate = builder.enableNativeOutputSampleRate;
     offloadMode = Util.SDK_INT >= 29 ? builder.offloadMode : OFFLOAD_MODE_DISABLED;
     audioTrackBufferSizeProvider = builder.audioTrackBufferSizeProvider;
     releasingConditionVariable = new ConditionVariable(Clock.DEFAULT);
@@ -607,15 +628,34 @@ public final class DefaultAudioSink implements AudioSink {
     audioTrackPositionTracker = new AudioTrackPositionTracker(new PositionTrackerListener());
     channelMappingAudioProcessor = new ChannelMappingAudioProcessor();
     trimmingAudioProcessor = new TrimmingAudioProcessor();
+    polyphaseResamplingAudioProcessor = new PolyphaseResamplingAudioProcessor();
     ArrayList<AudioProcessor> toIntPcmAudioProcessors = new ArrayList<>();
-    Collections.addAll(
-        toIntPcmAudioProcessors,
-        new ResamplingAudioProcessor(),
-        channelMappingAudioProcessor,
-        trimmingAudioProcessor);
+    // Resampling, channel mapping and trimming are applied in place in a single buffer.
+    toIntPcmAudioProcessors.add(
+        new FusedAudioProcessor(
+            new ResamplingAudioProcessor(), channelMappingAudioProcessor, trimmingAudioProcessor));
     Collections.addAll(toIntPcmAudioProcessors, audioProcessorChain.getAudioProcessors());
+    toIntPcmAudioProcessors.add(polyphaseResamplingAudioProcessor);
     toIntPcmAvailableAudioProcessors = toIntPcmAudioProcessors.toArray(new AudioProcessor[0]);
-    toFloatPcmAvailableAudioProcessors = new AudioProcessor[] {new FloatResamplingAudioProcessor()};
+    @Nullable SonicAudioProcessor sonicAudioProcessor = null;
+    for (AudioProcessor audioProcessor : audioProcessorChain.getAudioProcessors()) {
+      if (audioProcessor instanceof SonicAudioProcessor) {
+        sonicAudioProcessor = (SonicAudioProcessor) audioProcessor;
+      }
+    }
+    // SonicAudioProcessor handles float PCM directly, so speed and pitch can be adjusted without
+    // converting float output to 16-bit integers.
+    canAdjustFloatOutputPlaybackParameters = sonicAudioProcessor != null;
+    toFloatPcmAvailableAudioProcessors =
+        sonicAudioProcessor != null
+            ? new AudioProcessor[] {
+              new FloatResamplingAudioProcessor(),
+              sonicAudioProcessor,
+              polyphaseResamplingAudioProcessor
+            }
+            : new AudioProcessor[] {
+              new FloatResamplingAudioProcessor(), polyphaseResamplingAudioProcessor
+            };
     volume = 1f;
     audioAttributes = AudioAttributes.DEFAULT;
     audioSessionId = C.AUDIO_SESSION_ID_UNSET;
@@ -722,6 +762,15 @@ public final class DefaultAudioSink implements AudioSink {
         }
       }
       channelMappingAudioProcessor.setChannelMap(outputChannels);
+      int nativeOutputSampleRate =
+          enableNativeOutputSampleRate
+              ? AudioTrack.getNativeOutputSampleRate(
+                  Util.getStreamTypeForAudioUsage(audioAttributes.usage))
+              : 0;
+      polyphaseResamplingAudioProcessor.setOutputSampleRateHz(
+          nativeOutputSampleRate > 0
+              ? nativeOutputSampleRate
+              : PolyphaseResamplingAudioProcessor.SAMPLE_RATE_NO_CHANGE);
 
       AudioProcessor.AudioFormat outputFormat =
           new AudioProcessor.AudioFormat(
@@ -1595,7 +1644,7 @@ public final class DefaultAudioSink implements AudioSink {
             ? audioProcessorChain.applyPlaybackParameters(getAudioProcessorPlaybackParameters())
             : PlaybackParameters.DEFAULT;
     boolean skipSilenceEnabled =
-        shouldApplyAudioProcessorPlaybackParameters()
+        shouldApplyAudioProcessorSkipSilence()
             ? audioProcessorChain.applySkipSilenceEnabled(getSkipSilenceEnabled())
             : DEFAULT_SKIP_SILENCE;
     mediaPositionParametersCheckpoints.add(
@@ -1621,7 +1670,19 @@ public final class DefaultAudioSink implements AudioSink {
     //   https://github.com/google/ExoPlayer/issues/4803);
     // - when playing encoded audio via passthrough/offload, because modifying the audio stream
     //   would require decoding/re-encoding; and
-    // - when outputting float PCM audio, because SonicAudioProcessor outputs 16-bit integer PCM.
+    // - when outputting float PCM audio, unless the audio processor chain contains a
+    //   SonicAudioProcessor, which can then be applied to float PCM audio on its own.
+    return !tunneling
+        && MimeTypes.AUDIO_RAW.equals(configuration.inputFormat.sampleMimeType)
+        && (!shouldUseFloatOutput(configuration.inputFormat.pcmEncoding)
+            || canAdjustFloatOutputPlaybackParameters);
+  }
+
+  /** Returns whether silence skipping should be applied in the current configuration. */
+  private boolean shouldApplyAudioProcessorSkipSilence() {
+    // Silence skipping isn't applied in the cases where speed/pitch adjustment isn't applied, nor
+    // when outputting float PCM audio, because SilenceSkippingAudioProcessor only handles 16-bit
+    // integer PCM.
     return !tunneling
         && MimeTypes.AUDIO_RAW.equals(configuration.inputFormat.sampleMimeType)
         && !shouldUseFloatOutput(configuration.inputFormat.pcmEncoding);
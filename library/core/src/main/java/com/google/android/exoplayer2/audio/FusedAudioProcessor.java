@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static java.lang.Math.max;
+
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * An {@link AudioProcessor} that applies a sequence of {@link InPlaceAudioProcessor
+ * InPlaceAudioProcessors} to a single buffer.
+ *
+ * <p>Running the processors one after the other copies the audio into a new output buffer at every
+ * stage. This processor instead copies its input once into its output buffer, and has each active
+ * processor transform the audio in that buffer in place. The output is identical to the output of
+ * running the same processors one after the other.
+ */
+/* package */ final class FusedAudioProcessor extends BaseAudioProcessor {
+
+  private final InPlaceAudioProcessor[] audioProcessors;
+
+  private InPlaceAudioProcessor[] activeAudioProcessors;
+  private int headroomSize;
+  private int endOfStreamProcessorIndex;
+  private boolean endOfStreamQueuedToProcessor;
+
+  /**
+   * Creates a processor that applies the given processors in order.
+   *
+   * @param audioProcessors The {@link InPlaceAudioProcessor InPlaceAudioProcessors}.
+   */
+  public FusedAudioProcessor(InPlaceAudioProcessor... audioProcessors) {
+    this.audioProcessors = audioProcessors.clone();
+    activeAudioProcessors = new InPlaceAudioProcessor[0];
+  }
+
+  @Override
+  @CanIgnoreReturnValue
+  protected AudioFormat onConfigure(AudioFormat inputAudioFormat)
+      throws UnhandledAudioFormatException {
+    AudioFormat outputAudioFormat = inputAudioFormat;
+    boolean active = false;
+    for (InPlaceAudioProcessor audioProcessor : audioProcessors) {
+      AudioFormat nextAudioFormat = audioProcessor.configure(outputAudioFormat);
+      if (audioProcessor.isActive()) {
+        outputAudioFormat = nextAudioFormat;
+        active = true;
+      }
+    }
+    return active ? outputAudioFormat : AudioFormat.NOT_SET;
+  }
+
+  @Override
+  public void queueInput(ByteBuffer inputBuffer) {
+    int inputSize = inputBuffer.remaining();
+    int maxSize = inputSize;
+    int maxOutputSize = inputSize;
+    for (InPlaceAudioProcessor audioProcessor : activeAudioProcessors) {
+      maxOutputSize = audioProcessor.getMaxOutputSize(maxOutputSize);
+      maxSize = max(maxSize, maxOutputSize);
+    }
+    ByteBuffer buffer = replaceOutputBuffer(headroomSize + maxSize);
+    buffer.position(headroomSize);
+    buffer.put(inputBuffer);
+    processInPlace(buffer, /* firstProcessorIndex= */ 0);
+  }
+
+  @Override
+  public ByteBuffer getOutput() {
+    // Processors may output audio when the end of stream is queued. This is only done once all
+    // previous output has been read, as the output buffer is reused.
+    while (super.isEnded() && endOfStreamProcessorIndex < activeAudioProcessors.length) {
+      InPlaceAudioProcessor audioProcessor = activeAudioProcessors[endOfStreamProcessorIndex];
+      if (!endOfStreamQueuedToProcessor) {
+        audioProcessor.queueEndOfStream();
+        endOfStreamQueuedToProcessor = true;
+      }
+      ByteBuffer processorOutput = audioProcessor.getOutput();
+      boolean processorEnded = audioProcessor.isEnded();
+      if (processorEnded) {
+        endOfStreamProcessorIndex++;
+        endOfStreamQueuedToProcessor = false;
+      }
+      if (processorOutput.hasRemaining()) {
+        ByteBuffer buffer = replaceOutputBuffer(headroomSize + getMaxSize(processorOutput));
+        buffer.position(headroomSize);
+        buffer.put(processorOutput);
+        processInPlace(
+            buffer,
+            /* firstProcessorIndex= */ processorEnded
+                ? endOfStreamProcessorIndex
+                : endOfStreamProcessorIndex + 1);
+      } else if (!processorEnded) {
+        break;
+      }
+    }
+    return super.getOutput();
+  }
+
+  @Override
+  public boolean isEnded() {
+    return super.isEnded() && endOfStreamProcessorIndex == activeAudioProcessors.length;
+  }
+
+  @Override
+  protected void onFlush() {
+    ArrayList<InPlaceAudioProcessor> activeAudioProcessors = new ArrayList<>();
+    headroomSize = 0;
+    for (InPlaceAudioProcessor audioProcessor : audioProcessors) {
+      audioProcessor.flush();
+      if (audioProcessor.isActive()) {
+        activeAudioProcessors.add(audioProcessor);
+        headroomSize += audioProcessor.getMaxPrependedSize();
+      }
+    }
+    this.activeAudioProcessors = activeAudioProcessors.toArray(new InPlaceAudioProcessor[0]);
+    endOfStreamProcessorIndex = 0;
+    endOfStreamQueuedToProcessor = false;
+  }
+
+  @Override
+  protected void onReset() {
+    for (InPlaceAudioProcessor audioProcessor : audioProcessors) {
+      audioProcessor.reset();
+    }
+    activeAudioProcessors = new InPlaceAudioProcessor[0];
+    headroomSize = 0;
+  }
+
+  private int getMaxSize(ByteBuffer input) {
+    int maxSize = input.remaining();
+    int maxOutputSize = maxSize;
+    for (int i = endOfStreamProcessorIndex; i < activeAudioProcessors.length; i++) {
+      maxOutputSize = activeAudioProcessors[i].getMaxOutputSize(maxOutputSize);
+      maxSize = max(maxSize, maxOutputSize);
+    }
+    return maxSize;
+  }
+
+  /**
+   * Processes the data written to {@code buffer} after {@link #headroomSize} with the active
+   * processors starting from {@code firstProcessorIndex}, and leaves the output between the
+   * position and the limit of the buffer.
+   */
+  private void processInPlace(ByteBuffer buffer, int firstProcessorIndex) {
+    buffer.limit(buffer.position());
+    buffer.position(headroomSize);
+    for (int i = firstProcessorIndex; i < activeAudioProcessors.length; i++) {
+      activeAudioProcessors[i].processInPlace(buffer);
+    }
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link AudioProcessor} that can alternatively process audio in place, in a buffer that's
+ * shared with other processors by a {@link FusedAudioProcessor}.
+ *
+ * <p>When the processor is used through {@link #processInPlace(ByteBuffer)}, {@link
+ * #queueInput(ByteBuffer)} isn't called, and {@link #getOutput()} only returns output that's
+ * produced after {@link #queueEndOfStream()}.
+ */
+/* package */ interface InPlaceAudioProcessor extends AudioProcessor {
+
+  /**
+   * Returns the maximum number of bytes by which {@link #processInPlace(ByteBuffer)} may move the
+   * start of the data in the buffer back, for the current configuration. Only valid after the
+   * processor has been {@link #flush() flushed}.
+   */
+  int getMaxPrependedSize();
+
+  /**
+   * Returns the maximum size of the output of {@link #processInPlace(ByteBuffer)}, in bytes.
+   *
+   * @param inputSize The size of the input, in bytes.
+   * @return The maximum size of the output, in bytes.
+   */
+  int getMaxOutputSize(int inputSize);
+
+  /**
+   * Processes the input between the position and the limit of {@code buffer} in place. On return,
+   * the output is between the position and the limit of the buffer.
+   *
+   * <p>The position may be moved back by at most {@link #getMaxPrependedSize()} bytes, and the
+   * output must end at most {@link #getMaxOutputSize(int)} bytes after the original position.
+   *
+   * @param buffer The buffer holding the input, which must have enough capacity for the output.
+   */
+  void processInPlace(ByteBuffer buffer);
+}
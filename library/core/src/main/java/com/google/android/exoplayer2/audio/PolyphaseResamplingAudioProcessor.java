@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Util;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An {@link AudioProcessor} that converts the sample rate of audio using a bandlimited polyphase
+ * filter.
+ *
+ * <p>The conversion ratio is reduced to a ratio of integers {@code L/M}. Conceptually, the input is
+ * upsampled by {@code L}, lowpass filtered and decimated by {@code M}. Only the filter taps that
+ * contribute to each output sample are evaluated, using one of {@code L} precomputed filter phases.
+ * The filter is a Kaiser-windowed sinc whose cutoff is just below the lower of the input and output
+ * Nyquist frequencies, so aliasing is attenuated by about 80 dB.
+ *
+ * <p>The processor accepts {@link C#ENCODING_PCM_16BIT} and {@link C#ENCODING_PCM_FLOAT} input, and
+ * outputs audio with the same encoding. It's only active if the output sample rate differs from
+ * the input sample rate, and if the reduced ratio is small enough for its filter phases to be
+ * precomputed (for example, it's not active when converting 44100 Hz to 48001 Hz). Output samples
+ * are aligned with the input, and the number of output frames after the end of the stream is
+ * {@code ceil(inputFrames * L / M)}.
+ */
+public final class PolyphaseResamplingAudioProcessor extends BaseAudioProcessor {
+
+  /** Indicates that the output sample rate should be the same as the input. */
+  public static final int SAMPLE_RATE_NO_CHANGE = -1;
+
+  /** The number of zero crossings of the sinc on either side of its center, when upsampling. */
+  private static final int ZERO_CROSSING_COUNT = 32;
+  /** The Kaiser window shape parameter, giving a stopband attenuation of about 80 dB. */
+  private static final double KAISER_BETA = 8.0;
+  /** The cutoff frequency of the filter, relative to the lower of the two Nyquist frequencies. */
+  private static final double CUTOFF = 0.92;
+  /** The maximum number of filter coefficients, which limits the supported conversion ratios. */
+  private static final int MAX_FILTER_SIZE = 1 << 20;
+  /** The number of input frames that are buffered in addition to the filter length. */
+  private static final int BUFFER_SIZE_FRAMES = 1024;
+
+  private int pendingOutputSampleRate;
+
+  private int upsamplingFactor;
+  private int downsamplingFactor;
+  private int tapCount;
+  private float[] filter;
+
+  private boolean isFloat;
+  private int channelCount;
+  private int bytesPerFrame;
+  private float[][] inputFrames;
+  private int inputFrameCount;
+  private int inputFrameIndex;
+  private int phase;
+  private long queuedInputFrameCount;
+  private long outputFrameCount;
+  private long maxOutputFrameCount;
+
+  /** Creates a new polyphase resampling audio processor. */
+  public PolyphaseResamplingAudioProcessor() {
+    pendingOutputSampleRate = SAMPLE_RATE_NO_CHANGE;
+    filter = new float[0];
+    inputFrames = new float[0][];
+  }
+
+  /**
+   * Sets the sample rate for output audio, in Hertz. Pass {@link #SAMPLE_RATE_NO_CHANGE} to output
+   * audio at the same sample rate as the input. After calling this method, call {@link
+   * #configure(AudioFormat)} to configure the processor with the new sample rate.
+   *
+   * @param sampleRateHz The sample rate for output audio, in Hertz.
+   * @see #configure(AudioFormat)
+   */
+  public void setOutputSampleRateHz(int sampleRateHz) {
+    pendingOutputSampleRate = sampleRateHz;
+  }
+
+  @Override
+  @CanIgnoreReturnValue
+  protected AudioFormat onConfigure(AudioFormat inputAudioFormat)
+      throws UnhandledAudioFormatException {
+    if (pendingOutputSampleRate == SAMPLE_RATE_NO_CHANGE
+        || pendingOutputSampleRate == inputAudioFormat.sampleRate) {
+      return AudioFormat.NOT_SET;
+    }
+    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT
+        && inputAudioFormat.encoding != C.ENCODING_PCM_FLOAT) {
+      throw new UnhandledAudioFormatException(inputAudioFormat);
+    }
+    int gcd = gcd(inputAudioFormat.sampleRate, pendingOutputSampleRate);
+    int upsamplingFactor = pendingOutputSampleRate / gcd;
+    int downsamplingFactor = inputAudioFormat.sampleRate / gcd;
+    if ((long) upsamplingFactor * getTapCount(upsamplingFactor, downsamplingFactor)
+        > MAX_FILTER_SIZE) {
+      // The filter phases for the ratio are too large to precompute, so leave the audio as is.
+      return AudioFormat.NOT_SET;
+    }
+    return new AudioFormat(
+        pendingOutputSampleRate, inputAudioFormat.channelCount, inputAudioFormat.encoding);
+  }
+
+  @Override
+  public void queueInput(ByteBuffer inputBuffer) {
+    int frameCount = inputBuffer.remaining() / bytesPerFrame;
+    if (frameCount == 0) {
+      return;
+    }
+    queuedInputFrameCount += frameCount;
+    ByteBuffer outputBuffer =
+        replaceOutputBuffer(getMaxOutputFrameCount(inputFrameCount + frameCount) * bytesPerFrame);
+    while (inputBuffer.remaining() >= bytesPerFrame) {
+      int framesToRead =
+          min(inputBuffer.remaining() / bytesPerFrame, inputFrames[0].length - inputFrameCount);
+      readFrames(inputBuffer, framesToRead);
+      resample(outputBuffer);
+    }
+    outputBuffer.flip();
+  }
+
+  @Override
+  protected void onQueueEndOfStream() {
+    // Output the frames whose filter extends past the end of the input, assuming silence there.
+    maxOutputFrameCount =
+        Util.ceilDivide(queuedInputFrameCount * upsamplingFactor, downsamplingFactor);
+    int remainingOutputFrameCount = (int) (maxOutputFrameCount - outputFrameCount);
+    if (remainingOutputFrameCount <= 0) {
+      return;
+    }
+    ByteBuffer outputBuffer = replaceOutputBuffer(remainingOutputFrameCount * bytesPerFrame);
+    int remainingSilenceFrameCount = tapCount / 2;
+    while (remainingSilenceFrameCount > 0) {
+      int silenceFrameCount =
+          min(remainingSilenceFrameCount, inputFrames[0].length - inputFrameCount);
+      for (float[] channelFrames : inputFrames) {
+        Arrays.fill(channelFrames, inputFrameCount, inputFrameCount + silenceFrameCount, 0f);
+      }
+      inputFrameCount += silenceFrameCount;
+      remainingSilenceFrameCount -= silenceFrameCount;
+      resample(outputBuffer);
+    }
+    outputBuffer.flip();
+  }
+
+  @Override
+  protected void onFlush() {
+    if (!isActive()) {
+      return;
+    }
+    int gcd = gcd(inputAudioFormat.sampleRate, outputAudioFormat.sampleRate);
+    int upsamplingFactor = outputAudioFormat.sampleRate / gcd;
+    int downsamplingFactor = inputAudioFormat.sampleRate / gcd;
+    if (upsamplingFactor != this.upsamplingFactor
+        || downsamplingFactor != this.downsamplingFactor) {
+      this.upsamplingFactor = upsamplingFactor;
+      this.downsamplingFactor = downsamplingFactor;
+      tapCount = getTapCount(upsamplingFactor, downsamplingFactor);
+      filter = createFilter(upsamplingFactor, downsamplingFactor, tapCount);
+    }
+    isFloat = inputAudioFormat.encoding == C.ENCODING_PCM_FLOAT;
+    bytesPerFrame = inputAudioFormat.bytesPerFrame;
+    int bufferSizeFrames = tapCount + BUFFER_SIZE_FRAMES;
+    channelCount = inputAudioFormat.channelCount;
+    if (inputFrames.length != channelCount || inputFrames[0].length != bufferSizeFrames) {
+      inputFrames = new float[channelCount][bufferSizeFrames];
+    }
+    // Prime the buffer with silence, so that the first output frame is centered on the first
+    // input frame.
+    inputFrameCount = tapCount / 2 - 1;
+    for (float[] channelFrames : inputFrames) {
+      Arrays.fill(channelFrames, 0, inputFrameCount, 0f);
+    }
+    inputFrameIndex = 0;
+    phase = 0;
+    queuedInputFrameCount = 0;
+    outputFrameCount = 0;
+    maxOutputFrameCount = Long.MAX_VALUE;
+  }
+
+  @Override
+  protected void onReset() {
+    pendingOutputSampleRate = SAMPLE_RATE_NO_CHANGE;
+    upsamplingFactor = 0;
+    downsamplingFactor = 0;
+    tapCount = 0;
+    filter = new float[0];
+    channelCount = 0;
+    inputFrames = new float[0][];
+  }
+
+  private int getMaxOutputFrameCount(int inputFrameCount) {
+    long maxOutputFrameCount =
+        Util.ceilDivide((long) inputFrameCount * upsamplingFactor, downsamplingFactor);
+    return (int) maxOutputFrameCount + 1;
+  }
+
+  /** Deinterleaves {@code frameCount} frames from {@code inputBuffer} into the input frames. */
+  private void readFrames(ByteBuffer inputBuffer, int frameCount) {
+    int endFrameIndex = inputFrameCount + frameCount;
+    if (isFloat) {
+      for (int i = inputFrameCount; i < endFrameIndex; i++) {
+        for (int channel = 0; channel < channelCount; channel++) {
+          inputFrames[channel][i] = inputBuffer.getFloat();
+        }
+      }
+    } else {
+      for (int i = inputFrameCount; i < endFrameIndex; i++) {
+        for (int channel = 0; channel < channelCount; channel++) {
+          inputFrames[channel][i] = inputBuffer.getShort();
+        }
+      }
+    }
+    inputFrameCount = endFrameIndex;
+  }
+
+  /**
+   * Writes as many output frames as can be computed from the buffered input frames to {@code
+   * outputBuffer}, then discards the input frames that are no longer needed.
+   */
+  private void resample(ByteBuffer outputBuffer) {
+    int lastInputFrameIndex = inputFrameCount - tapCount;
+    int inputFrameStep = downsamplingFactor / upsamplingFactor;
+    int phaseStep = downsamplingFactor % upsamplingFactor;
+    while (inputFrameIndex <= lastInputFrameIndex && outputFrameCount < maxOutputFrameCount) {
+      int filterOffset = phase * tapCount;
+      for (int channel = 0; channel < channelCount; channel++) {
+        float[] channelFrames = inputFrames[channel];
+        float sum = 0;
+        for (int i = 0; i < tapCount; i++) {
+          sum += filter[filterOffset + i] * channelFrames[inputFrameIndex + i];
+        }
+        if (isFloat) {
+          outputBuffer.putFloat(sum);
+        } else {
+          int sample = (int) (sum >= 0 ? sum + 0.5f : sum - 0.5f);
+          sample = Util.constrainValue(sample, Short.MIN_VALUE, Short.MAX_VALUE);
+          outputBuffer.putShort((short) sample);
+        }
+      }
+      outputFrameCount++;
+      inputFrameIndex += inputFrameStep;
+      phase += phaseStep;
+      if (phase >= upsamplingFactor) {
+        phase -= upsamplingFactor;
+        inputFrameIndex++;
+      }
+    }
+    int discardedFrameCount = min(inputFrameIndex, inputFrameCount);
+    if (discardedFrameCount > 0) {
+      int remainingFrameCount = inputFrameCount - discardedFrameCount;
+      for (float[] channelFrames : inputFrames) {
+        System.arraycopy(channelFrames, discardedFrameCount, channelFrames, 0, remainingFrameCount);
+      }
+      inputFrameCount = remainingFrameCount;
+      inputFrameIndex -= discardedFrameCount;
+    }
+  }
+
+  /** Returns the number of filter taps per phase, which is even. */
+  private static int getTapCount(int upsamplingFactor, int downsamplingFactor) {
+    // When downsampling, the cutoff is lowered so the filter is stretched in time.
+    int zeroCrossingCount =
+        (int)
+            Util.ceilDivide(
+                (long) ZERO_CROSSING_COUNT * max(upsamplingFactor, downsamplingFactor),
+                upsamplingFactor);
+    return 2 * zeroCrossingCount;
+  }
+
+  /**
+   * Returns the coefficients of the filter phases, with the {@code tapCount} coefficients of each
+   * phase stored contiguously. The coefficients of each phase are normalized to a gain of one.
+   *
+   * <p>Phase {@code p} computes an output frame at {@code p / upsamplingFactor} input frames after
+   * the first input frame its filter is centered on, and tap {@code i} applies to the input frame
+   * at offset {@code i - tapCount / 2 + 1} from that frame.
+   */
+  private static float[] createFilter(int upsamplingFactor, int downsamplingFactor, int tapCount) {
+    double cutoff = CUTOFF * min(1.0, (double) upsamplingFactor / downsamplingFactor);
+    double halfLength = tapCount / 2.0;
+    double kaiserNormalization = 1 / besselI0(KAISER_BETA);
+    float[] filter = new float[upsamplingFactor * tapCount];
+    double[] phaseCoefficients = new double[tapCount];
+    for (int phase = 0; phase < upsamplingFactor; phase++) {
+      double phaseOffset = (double) phase / upsamplingFactor;
+      double sum = 0;
+      for (int i = 0; i < tapCount; i++) {
+        double t = i - halfLength + 1 - phaseOffset;
+        double x = t / halfLength;
+        double window =
+            x * x < 1 ? besselI0(KAISER_BETA * Math.sqrt(1 - x * x)) * kaiserNormalization : 0;
+        phaseCoefficients[i] = sinc(cutoff * t) * window;
+        sum += phaseCoefficients[i];
+      }
+      for (int i = 0; i < tapCount; i++) {
+        filter[phase * tapCount + i] = (float) (phaseCoefficients[i] / sum);
+      }
+    }
+    return filter;
+  }
+
+  private static double sinc(double x) {
+    if (x == 0) {
+      return 1;
+    }
+    double piX = Math.PI * x;
+    return Math.sin(piX) / piX;
+  }
+
+  /** Returns the zeroth order modified Bessel function of the first kind. */
+  private static double besselI0(double x) {
+    double sum = 1;
+    double term = 1;
+    double halfX = x / 2;
+    for (int k = 1; term > sum * 1e-12; k++) {
+      term *= (halfX / k) * (halfX / k);
+      sum += term;
+    }
+    return sum;
+  }
+
+  private static int gcd(int a, int b) {
+    while (b != 0) {
+      int remainder = a % b;
+      a = b;
+      b = remainder;
+    }
+    return a;
+  }
+}
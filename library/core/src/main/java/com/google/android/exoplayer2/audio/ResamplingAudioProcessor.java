@@ -34,7 +34,8 @@ import java.nio.ByteBuffer;
  *   <li>{@link C#ENCODING_PCM_FLOAT}
  * </ul>
  */
-/* package */ final class ResamplingAudioProcessor extends BaseAudioProcessor {
+/* package */ final class ResamplingAudioProcessor extends BaseAudioProcessor
+    implements InPlaceAudioProcessor {
 
   @Override
   @CanIgnoreReturnValue
@@ -57,61 +58,99 @@ import java.nio.ByteBuffer;
 
   @Override
   public void queueInput(ByteBuffer inputBuffer) {
-    // Prepare the output buffer.
     int position = inputBuffer.position();
     int limit = inputBuffer.limit();
-    int size = limit - position;
-    int resampledSize;
+    int resampledSize = getResampledSize(limit - position);
+    ByteBuffer buffer = replaceOutputBuffer(resampledSize);
+    resample(inputBuffer, position, limit, buffer, /* outputPosition= */ 0);
+    inputBuffer.position(limit);
+    buffer.limit(resampledSize);
+  }
+
+  @Override
+  public int getMaxPrependedSize() {
+    return 0;
+  }
+
+  @Override
+  public int getMaxOutputSize(int inputSize) {
+    return getResampledSize(inputSize);
+  }
+
+  @Override
+  public void processInPlace(ByteBuffer buffer) {
+    int position = buffer.position();
+    int limit = buffer.limit();
+    int resampledSize = getResampledSize(limit - position);
+    buffer.limit(buffer.capacity());
+    resample(buffer, position, limit, buffer, /* outputPosition= */ position);
+    buffer.limit(position + resampledSize);
+  }
+
+  private int getResampledSize(int size) {
     switch (inputAudioFormat.encoding) {
       case C.ENCODING_PCM_8BIT:
-        resampledSize = size * 2;
-        break;
+        return size * 2;
       case C.ENCODING_PCM_16BIT_BIG_ENDIAN:
-        resampledSize = size;
-        break;
+        return size;
       case C.ENCODING_PCM_24BIT:
-        resampledSize = (size / 3) * 2;
-        break;
+        return (size / 3) * 2;
       case C.ENCODING_PCM_32BIT:
       case C.ENCODING_PCM_FLOAT:
-        resampledSize = size / 2;
-        break;
+        return size / 2;
       case C.ENCODING_PCM_16BIT:
       case C.ENCODING_INVALID:
       case Format.NO_VALUE:
       default:
         throw new IllegalStateException();
     }
+  }
 
-    // Resample the little endian input and update the input/output buffers.
-    ByteBuffer buffer = replaceOutputBuffer(resampledSize);
+  /**
+   * Resamples the little endian input between {@code position} and {@code limit} of {@code
+   * inputBuffer}, and writes the output to {@code outputBuffer} starting at {@code outputPosition}.
+   * The buffers may be the same buffer, as long as {@code outputPosition} is equal to {@code
+   * position}. The positions and limits of the buffers are not changed, but the limit of {@code
+   * outputBuffer} must leave enough space for the output.
+   */
+  private void resample(
+      ByteBuffer inputBuffer,
+      int position,
+      int limit,
+      ByteBuffer outputBuffer,
+      int outputPosition) {
+    outputBuffer.position(outputPosition);
     switch (inputAudioFormat.encoding) {
       case C.ENCODING_PCM_8BIT:
-        // 8 -> 16 bit resampling. Shift each byte from [0, 256) to [-128, 128) and scale up.
-        for (int i = position; i < limit; i++) {
-          buffer.put((byte) 0);
-          buffer.put((byte) ((inputBuffer.get(i) & 0xFF) - 128));
+        // 8 -> 16 bit resampling. Shift each byte from [0, 256) to [-128, 128) and scale up. The
+        // output is larger than the input, so iterate backwards to support resampling in place.
+        for (int i = limit - 1; i >= position; i--) {
+          int o = outputPosition + 2 * (i - position);
+          byte value = (byte) ((inputBuffer.get(i) & 0xFF) - 128);
+          outputBuffer.put(o, (byte) 0);
+          outputBuffer.put(o + 1, value);
         }
         break;
       case C.ENCODING_PCM_16BIT_BIG_ENDIAN:
         // Big endian to little endian resampling. Swap the byte order.
         for (int i = position; i < limit; i += 2) {
-          buffer.put(inputBuffer.get(i + 1));
-          buffer.put(inputBuffer.get(i));
+          byte first = inputBuffer.get(i);
+          outputBuffer.put(inputBuffer.get(i + 1));
+          outputBuffer.put(first);
         }
         break;
       case C.ENCODING_PCM_24BIT:
         // 24 -> 16 bit resampling. Drop the least significant byte.
         for (int i = position; i < limit; i += 3) {
-          buffer.put(inputBuffer.get(i + 1));
-          buffer.put(inputBuffer.get(i + 2));
+          outputBuffer.put(inputBuffer.get(i + 1));
+          outputBuffer.put(inputBuffer.get(i + 2));
         }
         break;
       case C.ENCODING_PCM_32BIT:
         // 32 -> 16 bit resampling. Drop the two least significant bytes.
         for (int i = position; i < limit; i += 4) {
-          buffer.put(inputBuffer.get(i + 2));
-          buffer.put(inputBuffer.get(i + 3));
+          outputBuffer.put(inputBuffer.get(i + 2));
+          outputBuffer.put(inputBuffer.get(i + 3));
         }
         break;
       case C.ENCODING_PCM_FLOAT:
@@ -123,8 +162,8 @@ import java.nio.ByteBuffer;
           float floatValue =
               Util.constrainValue(inputBuffer.getFloat(i), /* min= */ -1, /* max= */ 1);
           short shortValue = (short) (floatValue * Short.MAX_VALUE);
-          buffer.put((byte) (shortValue & 0xFF));
-          buffer.put((byte) ((shortValue >> 8) & 0xFF));
+          outputBuffer.put((byte) (shortValue & 0xFF));
+          outputBuffer.put((byte) ((shortValue >> 8) & 0xFF));
         }
         break;
       case C.ENCODING_PCM_16BIT:
@@ -134,7 +173,6 @@ import java.nio.ByteBuffer;
         // Never happens.
         throw new IllegalStateException();
     }
-    inputBuffer.position(inputBuffer.limit());
-    buffer.flip();
+    outputBuffer.position(outputPosition);
   }
 }
@@ -23,7 +23,8 @@ import com.google.android.exoplayer2.util.Util;
 import java.nio.ByteBuffer;
 
 /** Audio processor for trimming samples from the start/end of data. */
-/* package */ final class TrimmingAudioProcessor extends BaseAudioProcessor {
+/* package */ final class TrimmingAudioProcessor extends BaseAudioProcessor
+    implements InPlaceAudioProcessor {
 
   private static final @C.PcmEncoding int OUTPUT_ENCODING = C.ENCODING_PCM_16BIT;
 
@@ -128,6 +129,61 @@ import java.nio.ByteBuffer;
     buffer.flip();
   }
 
+  @Override
+  public int getMaxPrependedSize() {
+    return endBuffer.length;
+  }
+
+  @Override
+  public int getMaxOutputSize(int inputSize) {
+    // Bytes from endBuffer are only output when the same number of input bytes is kept back.
+    return inputSize;
+  }
+
+  @Override
+  public void processInPlace(ByteBuffer buffer) {
+    int position = buffer.position();
+    int limit = buffer.limit();
+    int remaining = limit - position;
+
+    if (remaining == 0) {
+      return;
+    }
+
+    // Trim any pending start bytes from the buffer.
+    int trimBytes = min(remaining, pendingTrimStartBytes);
+    trimmedFrameCount += trimBytes / inputAudioFormat.bytesPerFrame;
+    pendingTrimStartBytes -= trimBytes;
+    if (pendingTrimStartBytes > 0) {
+      // Nothing to output yet.
+      buffer.position(limit);
+      return;
+    }
+    position += trimBytes;
+    remaining -= trimBytes;
+
+    // Determine the output as in queueInput. The surplus bytes of endBuffer are written in front of
+    // the input, so that the surplus input bytes don't need to be moved.
+    int remainingBytesToOutput = endBufferSize + remaining - endBuffer.length;
+    int endBufferBytesToOutput = Util.constrainValue(remainingBytesToOutput, 0, endBufferSize);
+    remainingBytesToOutput -= endBufferBytesToOutput;
+    int inputBufferBytesToOutput = Util.constrainValue(remainingBytesToOutput, 0, remaining);
+    int outputPosition = position - endBufferBytesToOutput;
+    buffer.position(outputPosition);
+    buffer.put(endBuffer, 0, endBufferBytesToOutput);
+    remaining -= inputBufferBytesToOutput;
+
+    // Compact endBuffer, then repopulate it using the rest of the input.
+    endBufferSize -= endBufferBytesToOutput;
+    System.arraycopy(endBuffer, endBufferBytesToOutput, endBuffer, 0, endBufferSize);
+    buffer.position(position + inputBufferBytesToOutput);
+    buffer.get(endBuffer, endBufferSize, remaining);
+    endBufferSize += remaining;
+
+    buffer.position(outputPosition);
+    buffer.limit(position + inputBufferBytesToOutput);
+  }
+
   @Override
   public ByteBuffer getOutput() {
     if (super.isEnded() && endBufferSize > 0) {
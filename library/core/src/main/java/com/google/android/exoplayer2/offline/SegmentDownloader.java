@@ -31,6 +31,7 @@ import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
 import com.google.android.exoplayer2.upstream.cache.CacheWriter;
 import com.google.android.exoplayer2.upstream.cache.ContentMetadata;
 import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.ConditionVariable;
 import com.google.android.exoplayer2.util.PriorityTaskManager;
 import com.google.android.exoplayer2.util.PriorityTaskManager.PriorityTooLowException;
 import com.google.android.exoplayer2.util.RunnableFutureTask;
@@ -85,6 +86,7 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
   @Nullable private final PriorityTaskManager priorityTaskManager;
   private final Executor executor;
   private final long maxMergedSegmentStartTimeDiffUs;
+  private final int maxParallelSegmentDownloadsPerHost;
 
   /**
    * The currently active runnables.
@@ -134,6 +136,38 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
       CacheDataSource.Factory cacheDataSourceFactory,
       Executor executor,
       long maxMergedSegmentStartTimeDiffMs) {
+    this(
+        mediaItem,
+        manifestParser,
+        cacheDataSourceFactory,
+        executor,
+        maxMergedSegmentStartTimeDiffMs,
+        /* maxParallelSegmentDownloadsPerHost= */ Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param mediaItem The {@link MediaItem} to be downloaded.
+   * @param manifestParser A parser for manifests belonging to the media to be downloaded.
+   * @param cacheDataSourceFactory A {@link CacheDataSource.Factory} for the cache into which the
+   *     download will be written.
+   * @param executor An {@link Executor} used to make requests for the media being downloaded.
+   *     Providing an {@link Executor} that uses multiple threads will speed up the download by
+   *     allowing parts of it to be executed in parallel.
+   * @param maxMergedSegmentStartTimeDiffMs The maximum difference of the start time of two
+   *     segments, up to which the segments (of the same URI) should be merged into a single
+   *     download segment, in milliseconds.
+   * @param maxParallelSegmentDownloadsPerHost The maximum number of segments that are downloaded
+   *     in parallel from a single host, or {@link Integer#MAX_VALUE} for no limit. Segments from
+   *     other hosts may be downloaded out of order whilst this limit is reached.
+   */
+  public SegmentDownloader(
+      MediaItem mediaItem,
+      Parser<M> manifestParser,
+      CacheDataSource.Factory cacheDataSourceFactory,
+      Executor executor,
+      long maxMergedSegmentStartTimeDiffMs,
+      int maxParallelSegmentDownloadsPerHost) {
+    Assertions.checkArgument(maxParallelSegmentDownloadsPerHost > 0);
     checkNotNull(mediaItem.localConfiguration);
     this.manifestDataSpec = getCompressibleDataSpec(mediaItem.localConfiguration.uri);
     this.manifestParser = manifestParser;
@@ -145,12 +179,15 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     priorityTaskManager = cacheDataSourceFactory.getUpstreamPriorityTaskManager();
     activeRunnables = new ArrayList<>();
     maxMergedSegmentStartTimeDiffUs = Util.msToUs(maxMergedSegmentStartTimeDiffMs);
+    this.maxParallelSegmentDownloadsPerHost = maxParallelSegmentDownloadsPerHost;
   }
 
   @Override
   public final void download(@Nullable ProgressListener progressListener)
       throws IOException, InterruptedException {
-    ArrayDeque<Segment> pendingSegments = new ArrayDeque<>();
+    HashMap<String, HostDownloads> hostDownloads = new HashMap<>();
+    int pendingSegmentCount = 0;
+    ConditionVariable segmentDownloadFinished = new ConditionVariable();
     ArrayDeque<SegmentDownloadRunnable> recycledRunnables = new ArrayDeque<>();
     if (priorityTaskManager != null) {
       priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
@@ -213,48 +250,74 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
                   bytesDownloaded,
                   segmentsDownloaded)
               : null;
-      pendingSegments.addAll(segments);
-      while (!isCanceled && !pendingSegments.isEmpty()) {
+      for (int i = 0; i < segments.size(); i++) {
+        Segment segment = segments.get(i);
+        getHostDownloads(hostDownloads, segment).pendingSegments.addLast(segment);
+      }
+      pendingSegmentCount = segments.size();
+      while (!isCanceled && pendingSegmentCount > 0) {
         // Block until there aren't any higher priority tasks.
         if (priorityTaskManager != null) {
           priorityTaskManager.proceed(C.PRIORITY_DOWNLOAD);
         }
 
-        // Create and execute a runnable to download the next segment.
-        CacheDataSource segmentDataSource;
-        byte[] temporaryBuffer;
-        if (!recycledRunnables.isEmpty()) {
-          SegmentDownloadRunnable recycledRunnable = recycledRunnables.removeFirst();
-          segmentDataSource = recycledRunnable.dataSource;
-          temporaryBuffer = recycledRunnable.temporaryBuffer;
-        } else {
-          segmentDataSource = cacheDataSourceFactory.createDataSourceForDownloading();
-          temporaryBuffer = new byte[BUFFER_SIZE_BYTES];
+        // Create and execute a runnable to download the next segment, unless all of the pending
+        // segments are from hosts that have reached their limit of parallel downloads.
+        @Nullable SegmentDownloadRunnable downloadRunnable = null;
+        @Nullable HostDownloads nextHostDownloads = getNextHostDownloads(hostDownloads);
+        if (nextHostDownloads != null) {
+          CacheDataSource segmentDataSource;
+          byte[] temporaryBuffer;
+          if (!recycledRunnables.isEmpty()) {
+            SegmentDownloadRunnable recycledRunnable = recycledRunnables.removeFirst();
+            segmentDataSource = recycledRunnable.dataSource;
+            temporaryBuffer = recycledRunnable.temporaryBuffer;
+          } else {
+            segmentDataSource = cacheDataSourceFactory.createDataSourceForDownloading();
+            temporaryBuffer = new byte[BUFFER_SIZE_BYTES];
+          }
+          Segment segment = nextHostDownloads.pendingSegments.removeFirst();
+          pendingSegmentCount--;
+          nextHostDownloads.activeSegmentCount++;
+          SegmentDownloadRunnable runnable =
+              new SegmentDownloadRunnable(
+                  segment, segmentDataSource, progressNotifier, temporaryBuffer);
+          addActiveRunnable(runnable);
+          executor.execute(
+              () -> {
+                runnable.run();
+                segmentDownloadFinished.open();
+              });
+          downloadRunnable = runnable;
         }
-        Segment segment = pendingSegments.removeFirst();
-        SegmentDownloadRunnable downloadRunnable =
-            new SegmentDownloadRunnable(
-                segment, segmentDataSource, progressNotifier, temporaryBuffer);
-        addActiveRunnable(downloadRunnable);
-        executor.execute(downloadRunnable);
-
-        // Clean up runnables that have finished.
+
+        // Clean up runnables that have finished. The condition is closed first so that a runnable
+        // finishing after it has been checked will cause the wait below to return.
+        segmentDownloadFinished.close();
+        boolean removedActiveRunnable = false;
         for (int j = activeRunnables.size() - 1; j >= 0; j--) {
           SegmentDownloadRunnable activeRunnable = (SegmentDownloadRunnable) activeRunnables.get(j);
           // Only block until the runnable has finished if we don't have any more pending segments
           // to start. If we do have pending segments to start then only process the runnable if
           // it's already finished.
-          if (pendingSegments.isEmpty() || activeRunnable.isDone()) {
+          if (pendingSegmentCount == 0 || activeRunnable.isDone()) {
+            HostDownloads activeHostDownloads =
+                getHostDownloads(hostDownloads, activeRunnable.segment);
             try {
               activeRunnable.get();
               removeActiveRunnable(j);
+              activeHostDownloads.activeSegmentCount--;
+              removedActiveRunnable = true;
               recycledRunnables.addLast(activeRunnable);
             } catch (ExecutionException e) {
               Throwable cause = Assertions.checkNotNull(e.getCause());
               if (cause instanceof PriorityTooLowException) {
                 // We need to schedule this segment again in a future loop iteration.
-                pendingSegments.addFirst(activeRunnable.segment);
+                activeHostDownloads.pendingSegments.addFirst(activeRunnable.segment);
+                pendingSegmentCount++;
                 removeActiveRunnable(j);
+                activeHostDownloads.activeSegmentCount--;
+                removedActiveRunnable = true;
                 recycledRunnables.addLast(activeRunnable);
               } else if (cause instanceof IOException) {
                 throw (IOException) cause;
@@ -266,9 +329,14 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
           }
         }
 
-        // Don't move on to the next segment until the runnable for this segment has started. This
-        // drip feeds runnables to the executor, rather than providing them all up front.
-        downloadRunnable.blockUntilStarted();
+        if (downloadRunnable != null) {
+          // Don't move on to the next segment until the runnable for this segment has started.
+          // This drip feeds runnables to the executor, rather than providing them all up front.
+          downloadRunnable.blockUntilStarted();
+        } else if (!removedActiveRunnable) {
+          // Wait for a download to finish, so that another segment can be started.
+          segmentDownloadFinished.block();
+        }
       }
     } finally {
       // If one of the runnables has thrown an exception, then it's possible there are other active
@@ -438,6 +506,38 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     }
   }
 
+  @Nullable
+  private HostDownloads getNextHostDownloads(HashMap<String, HostDownloads> hostDownloads) {
+    // Segments are sorted by start time, so pick the earliest pending segment whose host hasn't
+    // reached its limit of parallel downloads.
+    @Nullable HostDownloads nextHostDownloads = null;
+    long nextSegmentStartTimeUs = Long.MAX_VALUE;
+    for (HostDownloads downloads : hostDownloads.values()) {
+      @Nullable Segment segment = downloads.pendingSegments.peekFirst();
+      if (segment != null
+          && downloads.activeSegmentCount < maxParallelSegmentDownloadsPerHost
+          && (nextHostDownloads == null || segment.startTimeUs < nextSegmentStartTimeUs)) {
+        nextHostDownloads = downloads;
+        nextSegmentStartTimeUs = segment.startTimeUs;
+      }
+    }
+    return nextHostDownloads;
+  }
+
+  private static HostDownloads getHostDownloads(
+      HashMap<String, HostDownloads> hostDownloads, Segment segment) {
+    @Nullable String host = segment.dataSpec.uri.getHost();
+    if (host == null) {
+      host = "";
+    }
+    @Nullable HostDownloads downloads = hostDownloads.get(host);
+    if (downloads == null) {
+      downloads = new HostDownloads();
+      hostDownloads.put(host, downloads);
+    }
+    return downloads;
+  }
+
   private static void mergeSegments(
       List<Segment> segments, CacheKeyFactory keyFactory, long maxMergedSegmentStartTimeDiffUs) {
     HashMap<String, Integer> lastIndexByCacheKey = new HashMap<>();
@@ -477,6 +577,17 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
         && dataSpec1.httpRequestHeaders.equals(dataSpec2.httpRequestHeaders);
   }
 
+  /** The pending and active segment downloads for a single host. */
+  private static final class HostDownloads {
+
+    public final ArrayDeque<Segment> pendingSegments;
+    public int activeSegmentCount;
+
+    public HostDownloads() {
+      pendingSegments = new ArrayDeque<>();
+    }
+  }
+
   private static final class SegmentDownloadRunnable extends RunnableFutureTask<Void, IOException> {
 
     public final Segment segment;
@@ -536,13 +647,16 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
       this.segmentsDownloaded = segmentsDownloaded;
     }
 
+    // Segments may be downloaded in parallel, so progress updates are synchronized to aggregate the
+    // progress of all of them.
+
     @Override
-    public void onProgress(long requestLength, long bytesCached, long newBytesCached) {
+    public synchronized void onProgress(long requestLength, long bytesCached, long newBytesCached) {
       bytesDownloaded += newBytesCached;
       progressListener.onProgress(contentLength, bytesDownloaded, getPercentDownloaded());
     }
 
-    public void onSegmentDownloaded() {
+    public synchronized void onSegmentDownloaded() {
       segmentsDownloaded++;
       progressListener.onProgress(contentLength, bytesDownloaded, getPercentDownloaded());
     }
@@ -57,6 +57,7 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.ConditionVariable;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.ReleasableExecutor;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 import java.io.InterruptedIOException;
@@ -112,6 +113,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   @Nullable private final String customCacheKey;
   private final long continueLoadingCheckIntervalBytes;
   private final Loader loader;
+  private final boolean suspendLoadsWhileWaiting;
   private final ProgressiveMediaExtractor progressiveMediaExtractor;
   private final ConditionVariable loadCondition;
   private final Runnable maybeFinishPrepareRunnable;
@@ -162,6 +164,52 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * @param continueLoadingCheckIntervalBytes The number of bytes that should be loaded between each
    *     invocation of {@link Callback#onContinueLoadingRequested(SequenceableLoader)}.
    */
+  public ProgressiveMediaPeriod(
+      Uri uri,
+      DataSource dataSource,
+      ProgressiveMediaExtractor progressiveMediaExtractor,
+      DrmSessionManager drmSessionManager,
+      DrmSessionEventListener.EventDispatcher drmEventDispatcher,
+      LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+      MediaSourceEventListener.EventDispatcher mediaSourceEventDispatcher,
+      Listener listener,
+      Allocator allocator,
+      @Nullable String customCacheKey,
+      int continueLoadingCheckIntervalBytes) {
+    this(
+        uri,
+        dataSource,
+        progressiveMediaExtractor,
+        drmSessionManager,
+        drmEventDispatcher,
+        loadErrorHandlingPolicy,
+        mediaSourceEventDispatcher,
+        listener,
+        allocator,
+        customCacheKey,
+        continueLoadingCheckIntervalBytes,
+        /* downloadExecutor= */ null);
+  }
+
+  /**
+   * @param uri The {@link Uri} of the media stream.
+   * @param dataSource The data source to read the media.
+   * @param progressiveMediaExtractor The {@link ProgressiveMediaExtractor} to use to read the data
+   *     source.
+   * @param drmSessionManager A {@link DrmSessionManager} to allow DRM interactions.
+   * @param drmEventDispatcher A dispatcher to notify of {@link DrmSessionEventListener} events.
+   * @param loadErrorHandlingPolicy The {@link LoadErrorHandlingPolicy}.
+   * @param mediaSourceEventDispatcher A dispatcher to notify of {@link MediaSourceEventListener}
+   *     events.
+   * @param listener A listener to notify when information about the period changes.
+   * @param allocator An {@link Allocator} from which to obtain media buffer allocations.
+   * @param customCacheKey A custom key that uniquely identifies the original stream. Used for cache
+   *     indexing. May be null.
+   * @param continueLoadingCheckIntervalBytes The number of bytes that should be loaded between each
+   *     invocation of {@link Callback#onContinueLoadingRequested(SequenceableLoader)}.
+   * @param downloadExecutor An optional {@link ReleasableExecutor} on which to load the media, or
+   *     {@code null} to load on a dedicated thread.
+   */
   // maybeFinishPrepare is not posted to the handler until initialization completes.
   @SuppressWarnings({"nullness:argument", "nullness:methodref.receiver.bound"})
   public ProgressiveMediaPeriod(
@@ -175,7 +223,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       Listener listener,
       Allocator allocator,
       @Nullable String customCacheKey,
-      int continueLoadingCheckIntervalBytes) {
+      int continueLoadingCheckIntervalBytes,
+      @Nullable ReleasableExecutor downloadExecutor) {
     this.uri = uri;
     this.dataSource = dataSource;
     this.drmSessionManager = drmSessionManager;
@@ -186,7 +235,12 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     this.allocator = allocator;
     this.customCacheKey = customCacheKey;
     this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
-    loader = new Loader("ProgressiveMediaPeriod");
+    loader =
+        downloadExecutor != null
+            ? new Loader(downloadExecutor)
+            : new Loader("ProgressiveMediaPeriod");
+    // Loads on a shared executor mustn't occupy a thread whilst they're waiting to continue.
+    suspendLoadsWhileWaiting = downloadExecutor != null;
     this.progressiveMediaExtractor = progressiveMediaExtractor;
     loadCondition = new ConditionVariable();
     maybeFinishPrepareRunnable = this::maybeFinishPrepare;
@@ -351,6 +405,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       return false;
     }
     boolean continuedLoading = loadCondition.open();
+    if (continuedLoading) {
+      loader.resumeLoading();
+    }
     if (!loader.isLoading()) {
       startLoading();
       continuedLoading = true;
@@ -793,7 +850,12 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private void startLoading() {
     ExtractingLoadable loadable =
         new ExtractingLoadable(
-            uri, dataSource, progressiveMediaExtractor, /* extractorOutput= */ this, loadCondition);
+            uri,
+            dataSource,
+            progressiveMediaExtractor,
+            /* extractorOutput= */ this,
+            loadCondition,
+            suspendLoadsWhileWaiting);
     if (prepared) {
       Assertions.checkState(isPendingReset());
       if (durationUs != C.TIME_UNSET && pendingResetPositionUs > durationUs) {
@@ -960,10 +1022,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     private final ProgressiveMediaExtractor progressiveMediaExtractor;
     private final ExtractorOutput extractorOutput;
     private final ConditionVariable loadCondition;
+    private final boolean suspendWhileWaiting;
     private final PositionHolder positionHolder;
 
     private volatile boolean loadCanceled;
 
+    private boolean loadSuspended;
+    private long suspendedLoadCheckPosition;
     private boolean pendingExtractorSeek;
     private long seekTimeUs;
     private DataSpec dataSpec;
@@ -976,12 +1041,14 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         DataSource dataSource,
         ProgressiveMediaExtractor progressiveMediaExtractor,
         ExtractorOutput extractorOutput,
-        ConditionVariable loadCondition) {
+        ConditionVariable loadCondition,
+        boolean suspendWhileWaiting) {
       this.uri = uri;
       this.dataSource = new StatsDataSource(dataSource);
       this.progressiveMediaExtractor = progressiveMediaExtractor;
       this.extractorOutput = extractorOutput;
       this.loadCondition = loadCondition;
+      this.suspendWhileWaiting = suspendWhileWaiting;
       this.positionHolder = new PositionHolder();
       this.pendingExtractorSeek = true;
       loadTaskId = LoadEventInfo.getNewId();
@@ -998,39 +1065,26 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     @Override
     public void load() throws IOException {
       int result = Extractor.RESULT_CONTINUE;
+      boolean resumingSuspendedLoad = loadSuspended;
+      loadSuspended = false;
       while (result == Extractor.RESULT_CONTINUE && !loadCanceled) {
         try {
-          long position = positionHolder.position;
-          dataSpec = buildDataSpec(position);
-          long length = dataSource.open(dataSpec);
-          if (length != C.LENGTH_UNSET) {
-            length += position;
-            onLengthKnown();
-          }
-          icyHeaders = IcyHeaders.parse(dataSource.getResponseHeaders());
-          DataSource extractorDataSource = dataSource;
-          if (icyHeaders != null && icyHeaders.metadataInterval != C.LENGTH_UNSET) {
-            extractorDataSource = new IcyDataSource(dataSource, icyHeaders.metadataInterval, this);
-            icyTrackOutput = icyTrack();
-            icyTrackOutput.format(ICY_FORMAT);
-          }
-          progressiveMediaExtractor.init(
-              extractorDataSource,
-              uri,
-              dataSource.getResponseHeaders(),
-              position,
-              length,
-              extractorOutput);
-
-          if (icyHeaders != null) {
-            progressiveMediaExtractor.disableSeekingOnMp3Streams();
-          }
-
-          if (pendingExtractorSeek) {
-            progressiveMediaExtractor.seek(position, seekTimeUs);
-            pendingExtractorSeek = false;
+          long position;
+          if (resumingSuspendedLoad) {
+            // The data source is still open and the extractor is initialized, so carry on reading.
+            resumingSuspendedLoad = false;
+            position = suspendedLoadCheckPosition;
+          } else {
+            position = positionHolder.position;
+            openAndInitExtractor(position);
           }
           while (result == Extractor.RESULT_CONTINUE && !loadCanceled) {
+            if (suspendWhileWaiting && !loadCondition.isOpen()) {
+              // Give the loading thread back until the load is resumed.
+              loadSuspended = true;
+              suspendedLoadCheckPosition = position;
+              return;
+            }
             try {
               loadCondition.block();
             } catch (InterruptedException e) {
@@ -1045,14 +1099,28 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
             }
           }
         } finally {
-          if (result == Extractor.RESULT_SEEK) {
-            result = Extractor.RESULT_CONTINUE;
-          } else if (progressiveMediaExtractor.getCurrentInputPosition() != C.POSITION_UNSET) {
-            positionHolder.position = progressiveMediaExtractor.getCurrentInputPosition();
+          if (!loadSuspended) {
+            if (result == Extractor.RESULT_SEEK) {
+              result = Extractor.RESULT_CONTINUE;
+            } else if (progressiveMediaExtractor.getCurrentInputPosition() != C.POSITION_UNSET) {
+              positionHolder.position = progressiveMediaExtractor.getCurrentInputPosition();
+            }
+            DataSourceUtil.closeQuietly(dataSource);
           }
-          DataSourceUtil.closeQuietly(dataSource);
         }
       }
+      if (resumingSuspendedLoad) {
+        // The load was canceled whilst it was suspended.
+        if (progressiveMediaExtractor.getCurrentInputPosition() != C.POSITION_UNSET) {
+          positionHolder.position = progressiveMediaExtractor.getCurrentInputPosition();
+        }
+        DataSourceUtil.closeQuietly(dataSource);
+      }
+    }
+
+    @Override
+    public boolean isLoadSuspended() {
+      return loadSuspended;
     }
 
     // IcyDataSource.Listener
@@ -1075,6 +1143,38 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
     // Internal methods.
 
+    private void openAndInitExtractor(long position) throws IOException {
+      dataSpec = buildDataSpec(position);
+      long length = dataSource.open(dataSpec);
+      if (length != C.LENGTH_UNSET) {
+        length += position;
+        onLengthKnown();
+      }
+      icyHeaders = IcyHeaders.parse(dataSource.getResponseHeaders());
+      DataSource extractorDataSource = dataSource;
+      if (icyHeaders != null && icyHeaders.metadataInterval != C.LENGTH_UNSET) {
+        extractorDataSource = new IcyDataSource(dataSource, icyHeaders.metadataInterval, this);
+        icyTrackOutput = icyTrack();
+        icyTrackOutput.format(ICY_FORMAT);
+      }
+      progressiveMediaExtractor.init(
+          extractorDataSource,
+          uri,
+          dataSource.getResponseHeaders(),
+          position,
+          length,
+          extractorOutput);
+
+      if (icyHeaders != null) {
+        progressiveMediaExtractor.disableSeekingOnMp3Streams();
+      }
+
+      if (pendingExtractorSeek) {
+        progressiveMediaExtractor.seek(position, seekTimeUs);
+        pendingExtractorSeek = false;
+      }
+    }
+
     private DataSpec buildDataSpec(long position) {
       // Disable caching if the content length cannot be resolved, since this is indicative of a
       // progressive live stream.
@@ -33,7 +33,10 @@ import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.ReleasableExecutor;
+import com.google.common.base.Supplier;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 
 /**
@@ -62,6 +65,7 @@ public final class ProgressiveMediaSource extends BaseMediaSource
     private int continueLoadingCheckIntervalBytes;
     @Nullable private String customCacheKey;
     @Nullable private Object tag;
+    @Nullable private Supplier<ReleasableExecutor> downloadExecutorSupplier;
 
     /**
      * Creates a new factory for {@link ProgressiveMediaSource}s.
@@ -195,6 +199,24 @@ public final class ProgressiveMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets a supplier of the {@link ReleasableExecutor} on which each {@link MediaPeriod} loads its
+     * media. The supplier is called once per period, and the executor is released when the period
+     * is released. By default, each period loads on a dedicated thread.
+     *
+     * <p>Use {@link LoaderThreadPool#createExecutor()} to share a bounded pool of threads between
+     * periods, for example across multiple players.
+     *
+     * @param downloadExecutorSupplier A supplier of {@link ReleasableExecutor ReleasableExecutors}
+     *     that run tasks sequentially and in order.
+     * @return This factory, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Factory setDownloadExecutor(Supplier<ReleasableExecutor> downloadExecutorSupplier) {
+      this.downloadExecutorSupplier = downloadExecutorSupplier;
+      return this;
+    }
+
     /**
      * Returns a new {@link ProgressiveMediaSource} using the current parameters.
      *
@@ -221,7 +243,8 @@ public final class ProgressiveMediaSource extends BaseMediaSource
           progressiveMediaExtractorFactory,
           drmSessionManagerProvider.get(mediaItem),
           loadErrorHandlingPolicy,
-          continueLoadingCheckIntervalBytes);
+          continueLoadingCheckIntervalBytes,
+          downloadExecutorSupplier);
     }
 
     @Override
@@ -243,6 +266,7 @@ public final class ProgressiveMediaSource extends BaseMediaSource
   private final DrmSessionManager drmSessionManager;
   private final LoadErrorHandlingPolicy loadableLoadErrorHandlingPolicy;
   private final int continueLoadingCheckIntervalBytes;
+  @Nullable private final Supplier<ReleasableExecutor> downloadExecutorSupplier;
 
   private boolean timelineIsPlaceholder;
   private long timelineDurationUs;
@@ -256,7 +280,8 @@ public final class ProgressiveMediaSource extends BaseMediaSource
       ProgressiveMediaExtractor.Factory progressiveMediaExtractorFactory,
       DrmSessionManager drmSessionManager,
       LoadErrorHandlingPolicy loadableLoadErrorHandlingPolicy,
-      int continueLoadingCheckIntervalBytes) {
+      int continueLoadingCheckIntervalBytes,
+      @Nullable Supplier<ReleasableExecutor> downloadExecutorSupplier) {
     this.localConfiguration = checkNotNull(mediaItem.localConfiguration);
     this.mediaItem = mediaItem;
     this.dataSourceFactory = dataSourceFactory;
@@ -264,6 +289,7 @@ public final class ProgressiveMediaSource extends BaseMediaSource
     this.drmSessionManager = drmSessionManager;
     this.loadableLoadErrorHandlingPolicy = loadableLoadErrorHandlingPolicy;
     this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
+    this.downloadExecutorSupplier = downloadExecutorSupplier;
     this.timelineIsPlaceholder = true;
     this.timelineDurationUs = C.TIME_UNSET;
   }
@@ -304,7 +330,8 @@ public final class ProgressiveMediaSource extends BaseMediaSource
         this,
         allocator,
         localConfiguration.customCacheKey,
-        continueLoadingCheckIntervalBytes);
+        continueLoadingCheckIntervalBytes,
+        downloadExecutorSupplier != null ? downloadExecutorSupplier.get() : null);
   }
 
   @Override
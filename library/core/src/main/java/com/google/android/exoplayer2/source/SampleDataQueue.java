@@ -35,7 +35,14 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-/** A queue of media sample data. */
+/**
+ * A queue of media sample data.
+ *
+ * <p>The queue supports {@link Allocation}s backed by either heap arrays or direct buffers. When
+ * direct buffers are used, data from a {@link DataReader} is read straight into them, and sample
+ * data read into a direct {@link DecoderInputBuffer#data} is copied directly between off-heap
+ * buffers.
+ */
 /* package */ class SampleDataQueue {
 
   private static final int INITIAL_SCRATCH_SIZE = 32;
@@ -174,11 +181,17 @@ import java.util.Arrays;
 
   public int sampleData(DataReader input, int length, boolean allowEndOfInput) throws IOException {
     length = preAppend(length);
-    int bytesAppended =
-        input.read(
-            writeAllocationNode.allocation.data,
-            writeAllocationNode.translateOffset(totalBytesWritten),
-            length);
+    @Nullable ByteBuffer writeBuffer = writeAllocationNode.getWriteBuffer(totalBytesWritten);
+    int bytesAppended;
+    if (writeBuffer == null) {
+      bytesAppended =
+          input.read(
+              writeAllocationNode.allocation.data,
+              writeAllocationNode.translateOffset(totalBytesWritten),
+              length);
+    } else {
+      bytesAppended = input.read(writeBuffer, length);
+    }
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
       if (allowEndOfInput) {
         return C.RESULT_END_OF_INPUT;
@@ -192,10 +205,15 @@ import java.util.Arrays;
   public void sampleData(ParsableByteArray buffer, int length) {
     while (length > 0) {
       int bytesAppended = preAppend(length);
-      buffer.readBytes(
-          writeAllocationNode.allocation.data,
-          writeAllocationNode.translateOffset(totalBytesWritten),
-          bytesAppended);
+      @Nullable ByteBuffer writeBuffer = writeAllocationNode.getWriteBuffer(totalBytesWritten);
+      if (writeBuffer == null) {
+        buffer.readBytes(
+            writeAllocationNode.allocation.data,
+            writeAllocationNode.translateOffset(totalBytesWritten),
+            bytesAppended);
+      } else {
+        buffer.readBytes(writeBuffer, bytesAppended);
+      }
       length -= bytesAppended;
       postAppend(bytesAppended);
     }
@@ -404,8 +422,13 @@ import java.util.Arrays;
     int remaining = length;
     while (remaining > 0) {
       int toCopy = min(remaining, (int) (allocationNode.endPosition - absolutePosition));
-      Allocation allocation = allocationNode.allocation;
-      target.put(allocation.data, allocationNode.translateOffset(absolutePosition), toCopy);
+      @Nullable ByteBuffer readBuffer = allocationNode.getReadBuffer(absolutePosition, toCopy);
+      if (readBuffer == null) {
+        Allocation allocation = allocationNode.allocation;
+        target.put(allocation.data, allocationNode.translateOffset(absolutePosition), toCopy);
+      } else {
+        target.put(readBuffer);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == allocationNode.endPosition) {
@@ -430,13 +453,18 @@ import java.util.Arrays;
     int remaining = length;
     while (remaining > 0) {
       int toCopy = min(remaining, (int) (allocationNode.endPosition - absolutePosition));
-      Allocation allocation = allocationNode.allocation;
-      System.arraycopy(
-          allocation.data,
-          allocationNode.translateOffset(absolutePosition),
-          target,
-          length - remaining,
-          toCopy);
+      @Nullable ByteBuffer readBuffer = allocationNode.getReadBuffer(absolutePosition, toCopy);
+      if (readBuffer == null) {
+        Allocation allocation = allocationNode.allocation;
+        System.arraycopy(
+            allocation.data,
+            allocationNode.translateOffset(absolutePosition),
+            target,
+            length - remaining,
+            toCopy);
+      } else {
+        readBuffer.get(target, length - remaining, toCopy);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == allocationNode.endPosition) {
@@ -475,6 +503,11 @@ import java.util.Arrays;
      */
     @Nullable public AllocationNode next;
 
+    // Views of a direct allocation's buffer, so that positions aren't shared between the loading
+    // and consuming threads, or with other allocations in the same buffer.
+    @Nullable private ByteBuffer writeBuffer;
+    @Nullable private ByteBuffer readBuffer;
+
     /**
      * @param startPosition See {@link #startPosition}.
      * @param allocationLength The length of the {@link Allocation} with which this node will be
@@ -505,6 +538,10 @@ import java.util.Arrays;
     public void initialize(Allocation allocation, AllocationNode next) {
       this.allocation = allocation;
       this.next = next;
+      if (allocation.buffer != null) {
+        writeBuffer = allocation.buffer.duplicate();
+        readBuffer = allocation.buffer.duplicate();
+      }
     }
 
     /**
@@ -518,6 +555,43 @@ import java.util.Arrays;
       return (int) (absolutePosition - startPosition) + allocation.offset;
     }
 
+    /**
+     * Returns a view of the direct allocation's buffer positioned at the specified absolute
+     * position and limited to the end of the allocation, or {@code null} if the allocation is
+     * backed by an array.
+     *
+     * <p>Must only be called by the loading thread.
+     */
+    @Nullable
+    public ByteBuffer getWriteBuffer(long absolutePosition) {
+      @Nullable ByteBuffer writeBuffer = this.writeBuffer;
+      if (writeBuffer == null) {
+        return null;
+      }
+      int offset = translateOffset(absolutePosition);
+      writeBuffer.limit(offset + (int) (endPosition - absolutePosition));
+      writeBuffer.position(offset);
+      return writeBuffer;
+    }
+
+    /**
+     * Returns a view of the direct allocation's buffer containing {@code length} bytes from the
+     * specified absolute position, or {@code null} if the allocation is backed by an array.
+     *
+     * <p>Must only be called by the consuming thread.
+     */
+    @Nullable
+    public ByteBuffer getReadBuffer(long absolutePosition, int length) {
+      @Nullable ByteBuffer readBuffer = this.readBuffer;
+      if (readBuffer == null) {
+        return null;
+      }
+      int offset = translateOffset(absolutePosition);
+      readBuffer.limit(offset + length);
+      readBuffer.position(offset);
+      return readBuffer;
+    }
+
     /**
      * Clears {@link #allocation} and {@link #next}.
      *
@@ -525,6 +599,8 @@ import java.util.Arrays;
      */
     public AllocationNode clear() {
       allocation = null;
+      writeBuffer = null;
+      readBuffer = null;
       AllocationNode temp = next;
       next = null;
       return temp;
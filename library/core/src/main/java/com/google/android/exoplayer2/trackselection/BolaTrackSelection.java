@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.BurstAwareBandwidthMeter;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.Iterables;
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * An adaptive {@link ExoTrackSelection} that combines the buffer occupancy based BOLA algorithm
+ * with a bandwidth estimate.
+ *
+ * <p>Once enough media is buffered, the selected track is the one that maximizes the BOLA
+ * objective, which selects the lowest quality when {@link Factory#Factory(int, int, float, Clock)
+ * minBufferMs} of media is buffered and the highest quality when the buffer target is reached. To
+ * avoid oscillating between qualities, the selection doesn't switch up beyond both the previously
+ * selected track and the track that the bandwidth estimate can sustain. Below the minimum buffer,
+ * as well as for the initial selection, the track is selected from the bandwidth estimate alone.
+ *
+ * <p>For live streams, the buffer target is limited to a fraction of the duration between the
+ * playback position and the live edge, so that the whole range of qualities can be selected in
+ * low-latency playbacks.
+ *
+ * <p>This selection is intended to be used with a {@link BurstAwareBandwidthMeter}, which
+ * measures the available bandwidth from the byte arrivals of chunked transfers rather than from
+ * their durations, whose estimate isn't biased by the idle periods of low-latency streams.
+ *
+ * <p>See <a href="https://arxiv.org/abs/1601.06748">BOLA: Near-Optimal Bitrate Adaptation for
+ * Online Videos</a>.
+ */
+public class BolaTrackSelection extends BaseTrackSelection {
+
+  /** Factory for {@link BolaTrackSelection} instances. */
+  public static class Factory implements ExoTrackSelection.Factory {
+
+    private final int minBufferMs;
+    private final int bufferTargetMs;
+    private final float bandwidthFraction;
+    private final Clock clock;
+
+    /** Creates a factory with default parameters. */
+    public Factory() {
+      this(
+          DEFAULT_MIN_BUFFER_MS,
+          DEFAULT_BUFFER_TARGET_MS,
+          DEFAULT_BANDWIDTH_FRACTION,
+          Clock.DEFAULT);
+    }
+
+    /**
+     * Creates a factory.
+     *
+     * @param minBufferMs The duration of buffered media below which the lowest quality is
+     *     preferred by BOLA, and below which tracks are selected from the bandwidth estimate alone.
+     * @param bufferTargetMs The duration of buffered media from which the highest quality is
+     *     preferred by BOLA. Must be greater than {@code minBufferMs}.
+     * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+     *     consider available for use. Setting to a value less than 1 is recommended to account for
+     *     inaccuracies in the bandwidth estimator.
+     * @param clock A {@link Clock}.
+     */
+    public Factory(int minBufferMs, int bufferTargetMs, float bandwidthFraction, Clock clock) {
+      this.minBufferMs = minBufferMs;
+      this.bufferTargetMs = bufferTargetMs;
+      this.bandwidthFraction = bandwidthFraction;
+      this.clock = clock;
+    }
+
+    @Override
+    public @NullableType ExoTrackSelection[] createTrackSelections(
+        @NullableType Definition[] definitions,
+        BandwidthMeter bandwidthMeter,
+        MediaPeriodId mediaPeriodId,
+        Timeline timeline) {
+      return TrackSelectionUtil.createTrackSelectionsForDefinitions(
+          definitions,
+          definition ->
+              definition.tracks.length == 1
+                  ? new FixedTrackSelection(definition.group, definition.tracks[0], definition.type)
+                  : new BolaTrackSelection(
+                      definition.group,
+                      definition.tracks,
+                      definition.type,
+                      bandwidthMeter,
+                      minBufferMs,
+                      bufferTargetMs,
+                      bandwidthFraction,
+                      clock));
+    }
+  }
+
+  public static final int DEFAULT_MIN_BUFFER_MS = 2_000;
+  public static final int DEFAULT_BUFFER_TARGET_MS = 15_000;
+  public static final float DEFAULT_BANDWIDTH_FRACTION = 0.9f;
+
+  /**
+   * The fraction of the duration between the playback position and the live edge that's used as
+   * the buffer target of live streams.
+   */
+  private static final float LIVE_BUFFER_TARGET_FRACTION = 0.75f;
+
+  private final BandwidthMeter bandwidthMeter;
+  private final long minBufferUs;
+  private final long bufferTargetUs;
+  private final float bandwidthFraction;
+  private final Clock clock;
+  /** The logarithmic utility of each track, relative to the lowest bitrate track. */
+  private final double[] utilities;
+
+  private float playbackSpeed;
+  private int selectedIndex;
+  private @C.SelectionReason int reason;
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   */
+  public BolaTrackSelection(TrackGroup group, int[] tracks, BandwidthMeter bandwidthMeter) {
+    this(
+        group,
+        tracks,
+        TrackSelection.TYPE_UNSET,
+        bandwidthMeter,
+        DEFAULT_MIN_BUFFER_MS,
+        DEFAULT_BUFFER_TARGET_MS,
+        DEFAULT_BANDWIDTH_FRACTION,
+        Clock.DEFAULT);
+  }
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param type The type that will be returned from {@link TrackSelection#getType()}.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param minBufferMs The duration of buffered media below which the lowest quality is preferred
+   *     by BOLA, and below which tracks are selected from the bandwidth estimate alone.
+   * @param bufferTargetMs The duration of buffered media from which the highest quality is
+   *     preferred by BOLA. Must be greater than {@code minBufferMs}.
+   * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+   *     consider available for use.
+   * @param clock The {@link Clock}.
+   */
+  protected BolaTrackSelection(
+      TrackGroup group,
+      int[] tracks,
+      @Type int type,
+      BandwidthMeter bandwidthMeter,
+      long minBufferMs,
+      long bufferTargetMs,
+      float bandwidthFraction,
+      Clock clock) {
+    super(group, tracks, type);
+    this.bandwidthMeter = bandwidthMeter;
+    this.minBufferUs = minBufferMs * 1000;
+    this.bufferTargetUs = max(bufferTargetMs, minBufferMs + 1) * 1000;
+    this.bandwidthFraction = bandwidthFraction;
+    this.clock = clock;
+    utilities = new double[length];
+    double lowestBitrate = getBitrate(length - 1);
+    for (int i = 0; i < length; i++) {
+      utilities[i] = Math.log(getBitrate(i) / lowestBitrate);
+    }
+    playbackSpeed = 1f;
+    reason = C.SELECTION_REASON_UNKNOWN;
+  }
+
+  @Override
+  public void onPlaybackSpeed(float playbackSpeed) {
+    this.playbackSpeed = playbackSpeed;
+  }
+
+  @Override
+  public void updateSelectedTrack(
+      long playbackPositionUs,
+      long bufferedDurationUs,
+      long availableDurationUs,
+      List<? extends MediaChunk> queue,
+      MediaChunkIterator[] mediaChunkIterators) {
+    long nowMs = clock.elapsedRealtime();
+    int throughputIndex = determineThroughputIndex(nowMs);
+
+    // Make initial selection
+    if (reason == C.SELECTION_REASON_UNKNOWN) {
+      reason = C.SELECTION_REASON_INITIAL;
+      selectedIndex = throughputIndex;
+      return;
+    }
+
+    int previousSelectedIndex = selectedIndex;
+    @C.SelectionReason int previousReason = reason;
+    int formatIndexOfPreviousChunk =
+        queue.isEmpty() ? C.INDEX_UNSET : indexOf(Iterables.getLast(queue).trackFormat);
+    if (formatIndexOfPreviousChunk != C.INDEX_UNSET) {
+      previousSelectedIndex = formatIndexOfPreviousChunk;
+      previousReason = Iterables.getLast(queue).trackSelectionReason;
+    }
+
+    long bufferedPlayoutDurationUs =
+        Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
+    long bufferTargetUs = getBufferTargetUs(availableDurationUs);
+    long minBufferUs = min(this.minBufferUs, bufferTargetUs / 2);
+    int newSelectedIndex;
+    if (bufferedPlayoutDurationUs < minBufferUs || utilities[0] == 0) {
+      newSelectedIndex = throughputIndex;
+    } else {
+      newSelectedIndex =
+          determineBolaIndex(nowMs, bufferedPlayoutDurationUs, minBufferUs, bufferTargetUs);
+      if (newSelectedIndex < previousSelectedIndex && newSelectedIndex < throughputIndex) {
+        // BOLA would switch up beyond what the bandwidth can sustain, which is likely to be
+        // followed by a switch down once the buffer drains. Only switch up as far as the
+        // bandwidth allows, if at all.
+        newSelectedIndex = min(previousSelectedIndex, throughputIndex);
+      }
+    }
+    if (isBlacklisted(newSelectedIndex, nowMs)) {
+      newSelectedIndex = throughputIndex;
+    }
+    // If we adapted, update the trigger.
+    reason =
+        newSelectedIndex == previousSelectedIndex ? previousReason : C.SELECTION_REASON_ADAPTIVE;
+    selectedIndex = newSelectedIndex;
+  }
+
+  @Override
+  public int getSelectedIndex() {
+    return selectedIndex;
+  }
+
+  @Override
+  public @C.SelectionReason int getSelectionReason() {
+    return reason;
+  }
+
+  @Override
+  @Nullable
+  public Object getSelectionData() {
+    return null;
+  }
+
+  /**
+   * Returns the index of the highest quality track that isn't excluded and whose bitrate can be
+   * sustained by the bandwidth estimate, or the lowest quality track that isn't excluded if there
+   * is none.
+   */
+  private int determineThroughputIndex(long nowMs) {
+    long effectiveBitrate =
+        (long) (bandwidthMeter.getBitrateEstimate() * bandwidthFraction / playbackSpeed);
+    int lowestBitrateAllowedIndex = 0;
+    for (int i = 0; i < length; i++) {
+      if (!isBlacklisted(i, nowMs)) {
+        if (getFormat(i).bitrate <= effectiveBitrate) {
+          return i;
+        }
+        lowestBitrateAllowedIndex = i;
+      }
+    }
+    return lowestBitrateAllowedIndex;
+  }
+
+  /**
+   * Returns the index of the track that isn't excluded and maximizes the BOLA objective for the
+   * given buffer level.
+   */
+  private int determineBolaIndex(
+      long nowMs, long bufferedDurationUs, long minBufferUs, long bufferTargetUs) {
+    // The parameters are chosen such that the lowest quality track is selected up to minBufferUs
+    // and the highest quality track is selected from bufferTargetUs, with utilities shifted so
+    // that the utility of the lowest quality track is 1.
+    double gamma = utilities[0] / ((double) bufferTargetUs / minBufferUs - 1);
+    double v = minBufferUs / gamma;
+    int bestIndex = C.INDEX_UNSET;
+    double bestScore = 0;
+    for (int i = 0; i < length; i++) {
+      if (isBlacklisted(i, nowMs)) {
+        continue;
+      }
+      double score = (v * (utilities[i] + 1 + gamma) - bufferedDurationUs) / getBitrate(i);
+      if (bestIndex == C.INDEX_UNSET || score >= bestScore) {
+        bestIndex = i;
+        bestScore = score;
+      }
+    }
+    return bestIndex == C.INDEX_UNSET ? length - 1 : bestIndex;
+  }
+
+  private long getBufferTargetUs(long availableDurationUs) {
+    if (availableDurationUs == C.TIME_UNSET) {
+      return bufferTargetUs;
+    }
+    long availablePlayoutDurationUs =
+        Util.getPlayoutDurationForMediaDuration(availableDurationUs, playbackSpeed);
+    return max(
+        min(bufferTargetUs, (long) (availablePlayoutDurationUs * LIVE_BUFFER_TARGET_FRACTION)), 2);
+  }
+
+  private double getBitrate(int index) {
+    return max(1, getFormat(index).bitrate);
+  }
+}
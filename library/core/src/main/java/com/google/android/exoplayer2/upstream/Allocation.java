@@ -15,8 +15,12 @@
  */
 package com.google.android.exoplayer2.upstream;
 
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+
 /**
- * An allocation within a byte array.
+ * An allocation within a byte array, or within a direct {@link ByteBuffer}.
  *
  * <p>The allocation's length is obtained by calling {@link
  * Allocator#getIndividualAllocationLength()} on the {@link Allocator} from which it was obtained.
@@ -24,12 +28,21 @@ package com.google.android.exoplayer2.upstream;
 public final class Allocation {
 
   /**
-   * The array containing the allocated space. The allocated space might not be at the start of the
-   * array, and so {@link #offset} must be used when indexing into it.
+   * The array containing the allocated space, or an empty array if the allocation is backed by
+   * {@link #buffer}. The allocated space might not be at the start of the array, and so {@link
+   * #offset} must be used when indexing into it.
    */
   public final byte[] data;
 
-  /** The offset of the allocated space in {@link #data}. */
+  /**
+   * The direct buffer containing the allocated space, or {@code null} if the allocation is backed
+   * by {@link #data}. The buffer may be shared with other allocations, so its position and limit
+   * must not be modified. Use {@link ByteBuffer#duplicate()} to obtain an independent view, and
+   * {@link #offset} to index into it.
+   */
+  @Nullable public final ByteBuffer buffer;
+
+  /** The offset of the allocated space in {@link #data} or {@link #buffer}. */
   public final int offset;
 
   /**
@@ -38,6 +51,17 @@ public final class Allocation {
    */
   public Allocation(byte[] data, int offset) {
     this.data = data;
+    this.buffer = null;
+    this.offset = offset;
+  }
+
+  /**
+   * @param buffer The direct buffer containing the allocated space.
+   * @param offset The offset of the allocated space in {@code buffer}.
+   */
+  public Allocation(ByteBuffer buffer, int offset) {
+    this.data = Util.EMPTY_BYTE_ARRAY;
+    this.buffer = buffer;
     this.offset = offset;
   }
 }
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import android.os.Handler;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BandwidthMeter.EventListener.EventDispatcher;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+
+/**
+ * Estimates bandwidth from the arrival times of the bytes of data transfers, counting only the
+ * time during which bytes arrive in bursts.
+ *
+ * <p>When media is loaded with chunked transfer encoding from the live edge of a low-latency
+ * stream, such as a CMAF low-latency DASH or HLS stream, the server sends each chunk as soon as it
+ * has been encoded. A transfer is then made of bursts of bytes separated by idle periods during
+ * which the network isn't the bottleneck, and dividing the bytes of the transfer by its duration
+ * gives the bitrate of the media rather than the available bandwidth. For this reason, {@link
+ * DefaultBandwidthMeter} ignores transfers flagged with {@link
+ * DataSpec#FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED}.
+ *
+ * <p>This meter instead records the time at which each {@link
+ * TransferListener#onBytesTransferred(DataSource, DataSpec, boolean, int)} callback is received.
+ * Consecutive callbacks that are at most {@link Builder#setBurstGapThresholdMs(long) a threshold}
+ * apart are considered to belong to the same burst, and larger gaps are excluded from the
+ * measurement along with the bytes of the callback that ends them, whose transfer started at an
+ * unknown time during the gap. A sample is added after each burst rather than after each transfer,
+ * so that the estimate follows the network during long transfers. Transfers flagged with {@link
+ * DataSpec#FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED} are included.
+ *
+ * <p>The samples are kept in a {@link DecayingQuantileSketch}, and the estimate is a quantile of
+ * the burst transfer rates observed recently.
+ */
+public final class BurstAwareBandwidthMeter implements BandwidthMeter, TransferListener {
+
+  /** Default maximum time between byte arrivals that belong to the same burst, in milliseconds. */
+  public static final long DEFAULT_BURST_GAP_THRESHOLD_MS = 50;
+
+  /** Default minimum duration of the bursts in a sample, in milliseconds. */
+  public static final long DEFAULT_MIN_SAMPLE_DURATION_MS = 20;
+
+  /**
+   * Default quantile of the burst transfer rates that's returned by {@link #getBitrateEstimate()}.
+   */
+  public static final float DEFAULT_ESTIMATE_QUANTILE = 0.5f;
+
+  /** Default half-life of the weight of a sample, in milliseconds. */
+  public static final long DEFAULT_HALF_LIFE_MS = 8_000;
+
+  /** Builder for a bandwidth meter. */
+  public static final class Builder {
+
+    private long initialBitrateEstimate;
+    private long burstGapThresholdMs;
+    private long minSampleDurationMs;
+    private float estimateQuantile;
+    private long halfLifeMs;
+    private Clock clock;
+
+    /** Creates a builder with default parameters. */
+    public Builder() {
+      initialBitrateEstimate = DefaultBandwidthMeter.DEFAULT_INITIAL_BITRATE_ESTIMATE;
+      burstGapThresholdMs = DEFAULT_BURST_GAP_THRESHOLD_MS;
+      minSampleDurationMs = DEFAULT_MIN_SAMPLE_DURATION_MS;
+      estimateQuantile = DEFAULT_ESTIMATE_QUANTILE;
+      halfLifeMs = DEFAULT_HALF_LIFE_MS;
+      clock = Clock.DEFAULT;
+    }
+
+    /**
+     * Sets the initial bitrate estimate in bits per second that should be assumed when a bandwidth
+     * estimate is unavailable. The default value is {@link
+     * DefaultBandwidthMeter#DEFAULT_INITIAL_BITRATE_ESTIMATE}.
+     *
+     * @param initialBitrateEstimate The initial bitrate estimate in bits per second.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setInitialBitrateEstimate(long initialBitrateEstimate) {
+      this.initialBitrateEstimate = initialBitrateEstimate;
+      return this;
+    }
+
+    /**
+     * Sets the maximum time between two byte arrivals for them to be considered part of the same
+     * burst. Should be larger than the time between reads while bytes are flowing, and smaller
+     * than the idle time between the chunks of a low-latency stream. The default value is {@link
+     * #DEFAULT_BURST_GAP_THRESHOLD_MS}.
+     *
+     * @param burstGapThresholdMs The threshold, in milliseconds.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setBurstGapThresholdMs(long burstGapThresholdMs) {
+      checkArgument(burstGapThresholdMs >= 0);
+      this.burstGapThresholdMs = burstGapThresholdMs;
+      return this;
+    }
+
+    /**
+     * Sets the minimum total duration of the bursts that are combined into a sample. Shorter
+     * bursts are combined with the following ones, so that the sampled rates aren't dominated by
+     * the resolution of the clock. The default value is {@link #DEFAULT_MIN_SAMPLE_DURATION_MS}.
+     *
+     * @param minSampleDurationMs The minimum duration, in milliseconds.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMinSampleDurationMs(long minSampleDurationMs) {
+      checkArgument(minSampleDurationMs > 0);
+      this.minSampleDurationMs = minSampleDurationMs;
+      return this;
+    }
+
+    /**
+     * Sets the quantile of the burst transfer rates that's returned by {@link
+     * #getBitrateEstimate()}. The default value is {@link #DEFAULT_ESTIMATE_QUANTILE}.
+     *
+     * @param estimateQuantile The quantile, in the range [0, 1].
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setEstimateQuantile(float estimateQuantile) {
+      checkArgument(estimateQuantile >= 0 && estimateQuantile <= 1);
+      this.estimateQuantile = estimateQuantile;
+      return this;
+    }
+
+    /**
+     * Sets the time after which the weight of a sample has decayed to half of its initial weight.
+     * The default value is {@link #DEFAULT_HALF_LIFE_MS}.
+     *
+     * @param halfLifeMs The half-life, in milliseconds.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setHalfLifeMs(long halfLifeMs) {
+      checkArgument(halfLifeMs > 0);
+      this.halfLifeMs = halfLifeMs;
+      return this;
+    }
+
+    /**
+     * Sets the clock used to estimate bandwidth from data transfers. Should only be set for testing
+     * purposes.
+     *
+     * @param clock The clock used to estimate bandwidth from data transfers.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /**
+     * Builds the bandwidth meter.
+     *
+     * @return A bandwidth meter with the configured properties.
+     */
+    public BurstAwareBandwidthMeter build() {
+      return new BurstAwareBandwidthMeter(this);
+    }
+  }
+
+  /**
+   * The maximum duration of the bursts in a sample, in milliseconds. A continuous transfer is split
+   * into samples of this duration, so that the estimate follows the network while it lasts.
+   */
+  private static final long MAX_SAMPLE_DURATION_MS = 500;
+  private static final int BURST_MILLIS_FOR_ESTIMATE = 250;
+  private static final int BYTES_TRANSFERRED_FOR_ESTIMATE = 128 * 1024;
+  private static final double RELATIVE_ACCURACY = 0.02;
+  /** The smallest transfer rate that's distinguished, in bits per second. */
+  private static final double MIN_BITRATE = 1_000;
+  /** The largest transfer rate that's distinguished, in bits per second. */
+  private static final double MAX_BITRATE = 100_000_000_000d;
+
+  private final long burstGapThresholdMs;
+  private final long minSampleDurationMs;
+  private final float estimateQuantile;
+  private final DecayingQuantileSketch sketch;
+  private final EventDispatcher eventDispatcher;
+  private final Clock clock;
+
+  private int streamCount;
+  private long lastArrivalTimeMs;
+  private long sampleBurstTimeMs;
+  private long sampleBytesTransferred;
+  private long totalBurstTimeMs;
+  private long totalBytesTransferred;
+  private long bitrateEstimate;
+
+  private BurstAwareBandwidthMeter(Builder builder) {
+    burstGapThresholdMs = builder.burstGapThresholdMs;
+    minSampleDurationMs = builder.minSampleDurationMs;
+    estimateQuantile = builder.estimateQuantile;
+    clock = builder.clock;
+    sketch =
+        new DecayingQuantileSketch(RELATIVE_ACCURACY, builder.halfLifeMs, MIN_BITRATE, MAX_BITRATE);
+    eventDispatcher = new EventDispatcher();
+    lastArrivalTimeMs = C.TIME_UNSET;
+    bitrateEstimate = builder.initialBitrateEstimate;
+  }
+
+  @Override
+  public synchronized long getBitrateEstimate() {
+    return bitrateEstimate;
+  }
+
+  @Override
+  public TransferListener getTransferListener() {
+    return this;
+  }
+
+  @Override
+  public void addEventListener(Handler eventHandler, EventListener eventListener) {
+    Assertions.checkNotNull(eventHandler);
+    Assertions.checkNotNull(eventListener);
+    eventDispatcher.addListener(eventHandler, eventListener);
+  }
+
+  @Override
+  public void removeEventListener(EventListener eventListener) {
+    eventDispatcher.removeListener(eventListener);
+  }
+
+  @Override
+  public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    // Do nothing.
+  }
+
+  @Override
+  public synchronized void onTransferStart(
+      DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (!isNetwork) {
+      return;
+    }
+    streamCount++;
+  }
+
+  @Override
+  public synchronized void onBytesTransferred(
+      DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+    if (!isNetwork) {
+      return;
+    }
+    long nowMs = clock.elapsedRealtime();
+    if (lastArrivalTimeMs != C.TIME_UNSET && nowMs - lastArrivalTimeMs <= burstGapThresholdMs) {
+      sampleBurstTimeMs += nowMs - lastArrivalTimeMs;
+      sampleBytesTransferred += bytesTransferred;
+      if (sampleBurstTimeMs >= MAX_SAMPLE_DURATION_MS) {
+        maybeAddSample(nowMs);
+      }
+    } else {
+      // These bytes end an idle period, during which the time at which they started arriving is
+      // unknown. The previous burst, if any, has ended.
+      maybeAddSample(nowMs);
+    }
+    lastArrivalTimeMs = nowMs;
+  }
+
+  @Override
+  public synchronized void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (!isNetwork) {
+      return;
+    }
+    Assertions.checkState(streamCount > 0);
+    streamCount--;
+    if (streamCount == 0) {
+      maybeAddSample(clock.elapsedRealtime());
+      // The next transfer starts with the time to first byte, which isn't part of a burst.
+      lastArrivalTimeMs = C.TIME_UNSET;
+    }
+  }
+
+  private void maybeAddSample(long nowMs) {
+    if (sampleBurstTimeMs < minSampleDurationMs) {
+      // Carry any bursts forward into the next sample.
+      return;
+    }
+    double bitsPerSecond = (sampleBytesTransferred * 8000d) / sampleBurstTimeMs;
+    sketch.addSample(Math.sqrt(sampleBytesTransferred), bitsPerSecond, nowMs);
+    totalBurstTimeMs += sampleBurstTimeMs;
+    totalBytesTransferred += sampleBytesTransferred;
+    if (totalBurstTimeMs >= BURST_MILLIS_FOR_ESTIMATE
+        || totalBytesTransferred >= BYTES_TRANSFERRED_FOR_ESTIMATE) {
+      bitrateEstimate = (long) sketch.getQuantile(estimateQuantile);
+    }
+    eventDispatcher.bandwidthSample(
+        (int) sampleBurstTimeMs, sampleBytesTransferred, bitrateEstimate);
+    sampleBurstTimeMs = 0;
+    sampleBytesTransferred = 0;
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import java.util.Arrays;
+
+/**
+ * Estimates quantiles of a stream of weighted values, in which the weight of each value decays
+ * exponentially with the time since it was added.
+ *
+ * <p>Values are counted in a fixed number of buckets whose bounds grow geometrically, so that the
+ * estimated quantiles have a bounded relative error. Adding a value takes constant time and
+ * doesn't allocate. Estimating quantiles takes time proportional to the number of buckets that
+ * are in use, and any number of quantiles can be estimated in a single pass.
+ *
+ * <p>Time decay is applied by increasing the weight of new values, rather than by decreasing the
+ * weight of old ones, so that existing buckets don't need to be updated when a value is added. The
+ * bucket weights are rescaled once in a while to prevent them from overflowing. Since all weights
+ * decay at the same rate, the estimated quantiles don't depend on the time at which they're
+ * queried.
+ *
+ * <p>This class can be used for bandwidth estimation as an alternative to {@link
+ * SlidingPercentile}, whose cost of adding values and estimating a percentile grows with the size
+ * of its window.
+ *
+ * <p>See the following papers:
+ *
+ * <ul>
+ *   <li><a href="https://arxiv.org/abs/1908.10693">DDSketch: A fast and fully-mergeable quantile
+ *       sketch with relative-error guarantees</a>
+ *   <li><a href="https://dimacs.rutgers.edu/~graham/pubs/papers/fwddecay.pdf">Forward decay: A
+ *       practical time decay model for streaming systems</a>
+ * </ul>
+ */
+public final class DecayingQuantileSketch {
+
+  /**
+   * The maximum number of half-lives between the current decay reference time and a new value
+   * before the bucket weights are rescaled.
+   */
+  private static final int MAX_HALF_LIVES_BEFORE_RESCALE = 64;
+
+  /**
+   * The fraction of the total weight below which the lowest and highest buckets are discarded, so
+   * that the buckets of values that have decayed don't need to be visited by queries.
+   */
+  private static final double NEGLIGIBLE_WEIGHT_FRACTION = 1e-6;
+
+  private final double minValue;
+  private final double maxValue;
+  private final double gamma;
+  private final double inverseLogGamma;
+  private final int minIndex;
+  private final long halfLifeMs;
+  private final double[] bucketWeights;
+
+  private long referenceTimeMs;
+  private double totalWeight;
+  private int lowestBucket;
+  private int highestBucket;
+
+  /**
+   * Creates an instance.
+   *
+   * @param relativeAccuracy The maximum relative error of the estimated quantiles, in the range
+   *     (0, 1).
+   * @param halfLifeMs The time after which the weight of a value has decayed to half of its
+   *     initial weight, in milliseconds.
+   * @param minValue The smallest value that can be distinguished. Smaller values are counted as
+   *     this value. Must be positive.
+   * @param maxValue The largest value that can be distinguished. Larger values are counted as this
+   *     value.
+   */
+  public DecayingQuantileSketch(
+      double relativeAccuracy, long halfLifeMs, double minValue, double maxValue) {
+    checkArgument(relativeAccuracy > 0 && relativeAccuracy < 1);
+    checkArgument(halfLifeMs > 0);
+    checkArgument(minValue > 0 && maxValue > minValue);
+    this.halfLifeMs = halfLifeMs;
+    this.minValue = minValue;
+    this.maxValue = maxValue;
+    gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+    inverseLogGamma = 1 / Math.log(gamma);
+    minIndex = getUnshiftedBucketIndex(minValue);
+    bucketWeights = new double[getUnshiftedBucketIndex(maxValue) - minIndex + 1];
+    reset();
+  }
+
+  /** Removes all values. */
+  public void reset() {
+    Arrays.fill(bucketWeights, 0);
+    totalWeight = 0;
+    lowestBucket = bucketWeights.length;
+    highestBucket = -1;
+  }
+
+  /** Returns whether no values have been added since creation or the last {@link #reset()}. */
+  public boolean isEmpty() {
+    return highestBucket < 0;
+  }
+
+  /**
+   * Adds a weighted value.
+   *
+   * @param weight The weight of the value. Must be positive.
+   * @param value The value.
+   * @param timeMs The time at which the value was observed, in milliseconds. Values should be
+   *     added in increasing order of time.
+   */
+  public void addSample(double weight, double value, long timeMs) {
+    if (isEmpty()) {
+      referenceTimeMs = timeMs;
+    }
+    long elapsedTimeMs = timeMs - referenceTimeMs;
+    if (elapsedTimeMs > MAX_HALF_LIVES_BEFORE_RESCALE * halfLifeMs) {
+      rescale(timeMs);
+      elapsedTimeMs = 0;
+    }
+    double decayedWeight = weight * Math.pow(2, (double) elapsedTimeMs / halfLifeMs);
+    int bucket = getBucketIndex(value);
+    bucketWeights[bucket] += decayedWeight;
+    totalWeight += decayedWeight;
+    lowestBucket = Math.min(lowestBucket, bucket);
+    highestBucket = Math.max(highestBucket, bucket);
+    discardNegligibleBuckets();
+  }
+
+  /**
+   * Returns an estimate of a quantile of the values.
+   *
+   * @param quantile The quantile, in the range [0, 1].
+   * @return The estimated quantile, or {@link Double#NaN} if no values have been added.
+   */
+  public double getQuantile(double quantile) {
+    if (isEmpty()) {
+      return Double.NaN;
+    }
+    double desiredWeight = quantile * totalWeight;
+    int bucket = lowestBucket;
+    double accumulatedWeight = bucketWeights[bucket];
+    while (accumulatedWeight < desiredWeight && bucket < highestBucket) {
+      bucket++;
+      accumulatedWeight += bucketWeights[bucket];
+    }
+    return getBucketValue(bucket);
+  }
+
+  /**
+   * Estimates several quantiles of the values in a single pass.
+   *
+   * @param quantiles The quantiles, in ascending order and in the range [0, 1].
+   * @param values An array of the same length as {@code quantiles} into which the estimated
+   *     quantiles are written. The values are {@link Double#NaN} if no values have been added.
+   */
+  public void getQuantiles(double[] quantiles, double[] values) {
+    checkArgument(values.length >= quantiles.length);
+    if (isEmpty()) {
+      Arrays.fill(values, 0, quantiles.length, Double.NaN);
+      return;
+    }
+    int bucket = lowestBucket;
+    double accumulatedWeight = bucketWeights[bucket];
+    for (int i = 0; i < quantiles.length; i++) {
+      checkArgument(i == 0 || quantiles[i] >= quantiles[i - 1]);
+      double desiredWeight = quantiles[i] * totalWeight;
+      while (accumulatedWeight < desiredWeight && bucket < highestBucket) {
+        bucket++;
+        accumulatedWeight += bucketWeights[bucket];
+      }
+      values[i] = getBucketValue(bucket);
+    }
+  }
+
+  private void discardNegligibleBuckets() {
+    double negligibleWeight = totalWeight * NEGLIGIBLE_WEIGHT_FRACTION;
+    while (lowestBucket < highestBucket && bucketWeights[lowestBucket] < negligibleWeight) {
+      totalWeight -= bucketWeights[lowestBucket];
+      bucketWeights[lowestBucket++] = 0;
+    }
+    while (highestBucket > lowestBucket && bucketWeights[highestBucket] < negligibleWeight) {
+      totalWeight -= bucketWeights[highestBucket];
+      bucketWeights[highestBucket--] = 0;
+    }
+  }
+
+  private void rescale(long timeMs) {
+    double scale = Math.pow(2, -(double) (timeMs - referenceTimeMs) / halfLifeMs);
+    for (int i = lowestBucket; i <= highestBucket; i++) {
+      bucketWeights[i] *= scale;
+    }
+    totalWeight *= scale;
+    referenceTimeMs = timeMs;
+  }
+
+  private int getBucketIndex(double value) {
+    double clampedValue = Math.max(minValue, Math.min(maxValue, value));
+    return getUnshiftedBucketIndex(clampedValue) - minIndex;
+  }
+
+  private int getUnshiftedBucketIndex(double value) {
+    return (int) Math.ceil(Math.log(value) * inverseLogGamma);
+  }
+
+  /**
+   * Returns the value representing a bucket, which is within the relative accuracy of all values
+   * in the bucket.
+   */
+  private double getBucketValue(int bucket) {
+    double upperBound = Math.pow(gamma, bucket + minIndex);
+    return Math.max(minValue, Math.min(maxValue, 2 * upperBound / (gamma + 1)));
+  }
+}
@@ -16,25 +16,60 @@
 package com.google.android.exoplayer2.upstream;
 
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.checkerframework.checker.nullness.compatqual.NullableType;
 
-/** Default implementation of {@link Allocator}. */
+/**
+ * Default implementation of {@link Allocator}.
+ *
+ * <p>By default all operations synchronize on the allocator. Instances can optionally be created
+ * with per-thread caches of available allocations. In this mode {@link #allocate()} and {@link
+ * #release(Allocation)} only access state that's confined to the calling thread in the common case,
+ * and move allocations to and from the shared pool in batches. This reduces contention when
+ * multiple loading threads and the playback thread use the same allocator. Each thread's cache
+ * holds at most {@link #THREAD_CACHE_CAPACITY} allocations, which are not discarded by {@link
+ * #trim()}.
+ *
+ * <p>Instances can also be created to back allocations with direct {@link ByteBuffer}s rather than
+ * heap arrays, in which case {@link Allocation#buffer} is set. This keeps buffered media out of the
+ * Java heap. Direct allocations are created in slabs of {@link
+ * #DIRECT_BUFFER_SLAB_ALLOCATION_COUNT} allocations, and the memory of a slab is only freed once
+ * all of its allocations have been discarded. Media loaded by a {@link FileDataSource} is read
+ * straight into direct allocations. Data from a {@link DataReader} that doesn't override {@link
+ * DataReader#read(ByteBuffer, int)} is copied into them through a temporary array.
+ */
 public final class DefaultAllocator implements Allocator {
 
+  /**
+   * The maximum number of available allocations held by each thread when using per-thread caches.
+   */
+  public static final int THREAD_CACHE_CAPACITY = 16;
+
+  /** The number of allocations in each direct buffer slab when using direct buffers. */
+  public static final int DIRECT_BUFFER_SLAB_ALLOCATION_COUNT = 16;
+
   private static final int AVAILABLE_EXTRA_CAPACITY = 100;
+  /** The number of allocations moved between a thread's cache and the shared pool at once. */
+  private static final int THREAD_CACHE_TRANSFER_COUNT = THREAD_CACHE_CAPACITY / 2;
 
   private final boolean trimOnReset;
   private final int individualAllocationSize;
+  private final boolean useDirectBuffers;
   @Nullable private final byte[] initialAllocationBlock;
+  @Nullable private final ByteBuffer initialDirectAllocationBlock;
+  @Nullable private final ThreadLocal<ThreadCache> threadCaches;
+  private final AtomicInteger allocatedCount;
 
   private int targetBufferSize;
-  private int allocatedCount;
   private int availableCount;
+  private int threadCacheCount;
   private @NullableType Allocation[] availableAllocations;
 
   /**
@@ -60,21 +95,86 @@ public final class DefaultAllocator implements Allocator {
    */
   public DefaultAllocator(
       boolean trimOnReset, int individualAllocationSize, int initialAllocationCount) {
+    this(
+        trimOnReset,
+        individualAllocationSize,
+        initialAllocationCount,
+        /* useThreadCaches= */ false);
+  }
+
+  /**
+   * Constructs an instance with some {@link Allocation}s created up front.
+   *
+   * <p>Note: {@link Allocation}s created up front will never be discarded by {@link #trim()}.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param initialAllocationCount The number of allocations to create up front.
+   * @param useThreadCaches Whether to cache available allocations per thread, to reduce contention
+   *     when the allocator is used from multiple threads.
+   */
+  public DefaultAllocator(
+      boolean trimOnReset,
+      int individualAllocationSize,
+      int initialAllocationCount,
+      boolean useThreadCaches) {
+    this(
+        trimOnReset,
+        individualAllocationSize,
+        initialAllocationCount,
+        useThreadCaches,
+        /* useDirectBuffers= */ false);
+  }
+
+  /**
+   * Constructs an instance with some {@link Allocation}s created up front.
+   *
+   * <p>Note: {@link Allocation}s created up front will never be discarded by {@link #trim()}.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param initialAllocationCount The number of allocations to create up front.
+   * @param useThreadCaches Whether to cache available allocations per thread, to reduce contention
+   *     when the allocator is used from multiple threads.
+   * @param useDirectBuffers Whether allocations are backed by direct {@link ByteBuffer}s rather
+   *     than heap arrays.
+   */
+  public DefaultAllocator(
+      boolean trimOnReset,
+      int individualAllocationSize,
+      int initialAllocationCount,
+      boolean useThreadCaches,
+      boolean useDirectBuffers) {
     Assertions.checkArgument(individualAllocationSize > 0);
     Assertions.checkArgument(initialAllocationCount >= 0);
     this.trimOnReset = trimOnReset;
     this.individualAllocationSize = individualAllocationSize;
+    this.useDirectBuffers = useDirectBuffers;
     this.availableCount = initialAllocationCount;
     this.availableAllocations = new Allocation[initialAllocationCount + AVAILABLE_EXTRA_CAPACITY];
-    if (initialAllocationCount > 0) {
+    if (initialAllocationCount > 0 && useDirectBuffers) {
+      initialAllocationBlock = null;
+      initialDirectAllocationBlock =
+          ByteBuffer.allocateDirect(initialAllocationCount * individualAllocationSize);
+      for (int i = 0; i < initialAllocationCount; i++) {
+        int allocationOffset = i * individualAllocationSize;
+        availableAllocations[i] = new Allocation(initialDirectAllocationBlock, allocationOffset);
+      }
+    } else if (initialAllocationCount > 0) {
       initialAllocationBlock = new byte[initialAllocationCount * individualAllocationSize];
+      initialDirectAllocationBlock = null;
       for (int i = 0; i < initialAllocationCount; i++) {
         int allocationOffset = i * individualAllocationSize;
         availableAllocations[i] = new Allocation(initialAllocationBlock, allocationOffset);
       }
     } else {
       initialAllocationBlock = null;
+      initialDirectAllocationBlock = null;
     }
+    threadCaches = useThreadCaches ? new ThreadLocal<>() : null;
+    allocatedCount = new AtomicInteger();
   }
 
   public synchronized void reset() {
@@ -92,53 +192,60 @@ public final class DefaultAllocator implements Allocator {
   }
 
   @Override
-  public synchronized Allocation allocate() {
-    allocatedCount++;
-    Allocation allocation;
-    if (availableCount > 0) {
-      allocation = Assertions.checkNotNull(availableAllocations[--availableCount]);
-      availableAllocations[availableCount] = null;
-    } else {
-      allocation = new Allocation(new byte[individualAllocationSize], 0);
-      if (allocatedCount > availableAllocations.length) {
-        // Make availableAllocations be large enough to contain all allocations made by this
-        // allocator so that release() does not need to grow the availableAllocations array. See
-        // [Internal ref: b/209801945].
-        availableAllocations = Arrays.copyOf(availableAllocations, availableAllocations.length * 2);
-      }
+  public Allocation allocate() {
+    if (threadCaches == null) {
+      return allocateFromPool();
     }
-    return allocation;
+    ThreadCache threadCache = getThreadCache(threadCaches);
+    if (threadCache.size == 0) {
+      allocatedCount.incrementAndGet();
+      return refillThreadCache(threadCache);
+    }
+    allocatedCount.incrementAndGet();
+    return threadCache.pop();
   }
 
   @Override
-  public synchronized void release(Allocation allocation) {
-    availableAllocations[availableCount++] = allocation;
-    allocatedCount--;
-    // Wake up threads waiting for the allocated size to drop.
-    notifyAll();
+  public void release(Allocation allocation) {
+    if (threadCaches == null) {
+      releaseToPool(allocation);
+      return;
+    }
+    ThreadCache threadCache = getThreadCache(threadCaches);
+    if (threadCache.size == THREAD_CACHE_CAPACITY) {
+      flushThreadCache(threadCache);
+    }
+    threadCache.push(allocation);
+    allocatedCount.decrementAndGet();
   }
 
   @Override
-  public synchronized void release(@Nullable AllocationNode allocationNode) {
+  public void release(@Nullable AllocationNode allocationNode) {
+    if (threadCaches == null) {
+      releaseToPool(allocationNode);
+      return;
+    }
+    ThreadCache threadCache = getThreadCache(threadCaches);
     while (allocationNode != null) {
-      availableAllocations[availableCount++] = allocationNode.getAllocation();
-      allocatedCount--;
+      if (threadCache.size == THREAD_CACHE_CAPACITY) {
+        flushThreadCache(threadCache);
+      }
+      threadCache.push(allocationNode.getAllocation());
+      allocatedCount.decrementAndGet();
       allocationNode = allocationNode.next();
     }
-    // Wake up threads waiting for the allocated size to drop.
-    notifyAll();
   }
 
   @Override
   public synchronized void trim() {
     int targetAllocationCount = Util.ceilDivide(targetBufferSize, individualAllocationSize);
-    int targetAvailableCount = max(0, targetAllocationCount - allocatedCount);
+    int targetAvailableCount = max(0, targetAllocationCount - allocatedCount.get());
     if (targetAvailableCount >= availableCount) {
       // We're already at or below the target.
       return;
     }
 
-    if (initialAllocationBlock != null) {
+    if (initialAllocationBlock != null || initialDirectAllocationBlock != null) {
       // Some allocations are backed by an initial block. We need to make sure that we hold onto all
       // such allocations. Re-order the available allocations so that the ones backed by the initial
       // block come first.
@@ -146,11 +253,11 @@ public final class DefaultAllocator implements Allocator {
       int highIndex = availableCount - 1;
       while (lowIndex <= highIndex) {
         Allocation lowAllocation = Assertions.checkNotNull(availableAllocations[lowIndex]);
-        if (lowAllocation.data == initialAllocationBlock) {
+        if (isBackedByInitialAllocationBlock(lowAllocation)) {
           lowIndex++;
         } else {
           Allocation highAllocation = Assertions.checkNotNull(availableAllocations[highIndex]);
-          if (highAllocation.data != initialAllocationBlock) {
+          if (!isBackedByInitialAllocationBlock(highAllocation)) {
             highIndex--;
           } else {
             availableAllocations[lowIndex++] = highAllocation;
@@ -172,12 +279,138 @@ public final class DefaultAllocator implements Allocator {
   }
 
   @Override
-  public synchronized int getTotalBytesAllocated() {
-    return allocatedCount * individualAllocationSize;
+  public int getTotalBytesAllocated() {
+    return allocatedCount.get() * individualAllocationSize;
   }
 
   @Override
   public int getIndividualAllocationLength() {
     return individualAllocationSize;
   }
+
+  private synchronized Allocation allocateFromPool() {
+    allocatedCount.incrementAndGet();
+    if (availableCount > 0) {
+      Allocation allocation = Assertions.checkNotNull(availableAllocations[--availableCount]);
+      availableAllocations[availableCount] = null;
+      return allocation;
+    }
+    return createAllocation();
+  }
+
+  private synchronized void releaseToPool(Allocation allocation) {
+    availableAllocations[availableCount++] = allocation;
+    allocatedCount.decrementAndGet();
+    // Wake up threads waiting for the allocated size to drop.
+    notifyAll();
+  }
+
+  private synchronized void releaseToPool(@Nullable AllocationNode allocationNode) {
+    while (allocationNode != null) {
+      availableAllocations[availableCount++] = allocationNode.getAllocation();
+      allocatedCount.decrementAndGet();
+      allocationNode = allocationNode.next();
+    }
+    // Wake up threads waiting for the allocated size to drop.
+    notifyAll();
+  }
+
+  /**
+   * Moves a batch of available allocations from the shared pool into an empty thread cache, and
+   * returns one of them. Creates a new allocation if none are available.
+   */
+  private synchronized Allocation refillThreadCache(ThreadCache threadCache) {
+    if (availableCount == 0) {
+      return createAllocation();
+    }
+    int transferCount = min(availableCount, THREAD_CACHE_TRANSFER_COUNT);
+    for (int i = 0; i < transferCount - 1; i++) {
+      threadCache.push(Assertions.checkNotNull(availableAllocations[--availableCount]));
+      availableAllocations[availableCount] = null;
+    }
+    Allocation allocation = Assertions.checkNotNull(availableAllocations[--availableCount]);
+    availableAllocations[availableCount] = null;
+    return allocation;
+  }
+
+  /** Moves a batch of allocations from a full thread cache into the shared pool. */
+  private synchronized void flushThreadCache(ThreadCache threadCache) {
+    for (int i = 0; i < THREAD_CACHE_TRANSFER_COUNT; i++) {
+      availableAllocations[availableCount++] = threadCache.pop();
+    }
+    // Wake up threads waiting for the allocated size to drop.
+    notifyAll();
+  }
+
+  /**
+   * Creates a new allocation. If using direct buffers, the other allocations in the same slab are
+   * made available. Must be called whilst holding the lock.
+   */
+  private Allocation createAllocation() {
+    int newAllocationCount = useDirectBuffers ? DIRECT_BUFFER_SLAB_ALLOCATION_COUNT : 1;
+    // Allocations held in thread caches may be flushed back to the shared pool at any time, so
+    // availableAllocations needs room for them too.
+    int maxAvailableCount =
+        allocatedCount.get()
+            + availableCount
+            + newAllocationCount
+            - 1
+            + threadCacheCount * THREAD_CACHE_CAPACITY;
+    if (maxAvailableCount > availableAllocations.length) {
+      // Make availableAllocations be large enough to contain all allocations made by this
+      // allocator so that release() does not need to grow the availableAllocations array. See
+      // [Internal ref: b/209801945].
+      availableAllocations =
+          Arrays.copyOf(
+              availableAllocations, max(availableAllocations.length * 2, maxAvailableCount));
+    }
+    if (!useDirectBuffers) {
+      return new Allocation(new byte[individualAllocationSize], 0);
+    }
+    ByteBuffer slab = ByteBuffer.allocateDirect(newAllocationCount * individualAllocationSize);
+    for (int i = newAllocationCount - 1; i > 0; i--) {
+      availableAllocations[availableCount++] = new Allocation(slab, i * individualAllocationSize);
+    }
+    return new Allocation(slab, /* offset= */ 0);
+  }
+
+  private boolean isBackedByInitialAllocationBlock(Allocation allocation) {
+    return initialDirectAllocationBlock != null
+        ? allocation.buffer == initialDirectAllocationBlock
+        : allocation.data == initialAllocationBlock;
+  }
+
+  private ThreadCache getThreadCache(ThreadLocal<ThreadCache> threadCaches) {
+    @Nullable ThreadCache threadCache = threadCaches.get();
+    if (threadCache == null) {
+      threadCache = new ThreadCache();
+      threadCaches.set(threadCache);
+      synchronized (this) {
+        threadCacheCount++;
+      }
+    }
+    return threadCache;
+  }
+
+  /** Available allocations that are only accessed by a single thread. */
+  private static final class ThreadCache {
+
+    private final @NullableType Allocation[] allocations;
+
+    private int size;
+
+    public ThreadCache() {
+      allocations = new Allocation[THREAD_CACHE_CAPACITY];
+    }
+
+    public void push(Allocation allocation) {
+      allocations[size++] = allocation;
+    }
+
+    public Allocation pop() {
+      Allocation allocation = Assertions.checkNotNull(allocations[--size]);
+      allocations[size] = null;
+      return allocation;
+    }
+  }
 }
@@ -227,7 +227,8 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
           resetOnNetworkTypeChange);
     }
 
-    private static Map<Integer, Long> getInitialBitrateEstimatesForCountry(String countryCode) {
+    /* package */ static Map<Integer, Long> getInitialBitrateEstimatesForCountry(
+        String countryCode) {
       int[] groupIndices = getInitialBitrateCountryGroupAssignment(countryCode);
       Map<Integer, Long> result = new HashMap<>(/* initialCapacity= */ 8);
       result.put(C.NETWORK_TYPE_UNKNOWN, DEFAULT_INITIAL_BITRATE_ESTIMATE);
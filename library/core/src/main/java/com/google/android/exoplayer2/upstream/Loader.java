@@ -23,11 +23,13 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 import android.os.SystemClock;
+import androidx.annotation.GuardedBy;
 import androidx.annotation.IntDef;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.ReleasableExecutor;
 import com.google.android.exoplayer2.util.TraceUtil;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
@@ -78,6 +80,21 @@ public final class Loader implements LoaderErrorThrower {
      * @throws IOException If the input could not be loaded.
      */
     void load() throws IOException;
+
+    /**
+     * Returns whether the last call to {@link #load()} returned before the load completed, so that
+     * the loadable can wait to be allowed to continue loading without occupying the loading
+     * thread.
+     *
+     * <p>A suspended load is resumed by calling {@link #load()} again once {@link
+     * Loader#resumeLoading()} is called. If the load is canceled whilst it's suspended, {@link
+     * #load()} is also called again, so that the loadable can release any resources it holds.
+     *
+     * <p>The default implementation returns false.
+     */
+    default boolean isLoadSuspended() {
+      return false;
+    }
   }
 
   /** A callback to be notified of {@link Loader} events. */
@@ -195,7 +212,7 @@ public final class Loader implements LoaderErrorThrower {
     }
   }
 
-  private final ExecutorService downloadExecutorService;
+  private final ReleasableExecutor downloadExecutor;
 
   @Nullable private LoadTask<? extends Loadable> currentTask;
   @Nullable private IOException fatalError;
@@ -205,8 +222,19 @@ public final class Loader implements LoaderErrorThrower {
    *     component using the loader.
    */
   public Loader(String threadNameSuffix) {
-    this.downloadExecutorService =
-        Util.newSingleThreadExecutor(THREAD_NAME_PREFIX + threadNameSuffix);
+    this(
+        new ExecutorServiceReleasableExecutor(
+            Util.newSingleThreadExecutor(THREAD_NAME_PREFIX + threadNameSuffix)));
+  }
+
+  /**
+   * @param downloadExecutor The {@link ReleasableExecutor} on which loads are run. It must run
+   *     tasks sequentially and in the order that they're passed to it, and is released when the
+   *     loader is released. See {@link LoaderThreadPool} for executors that share a pool of
+   *     threads between loaders.
+   */
+  public Loader(ReleasableExecutor downloadExecutor) {
+    this.downloadExecutor = downloadExecutor;
   }
 
   /**
@@ -263,6 +291,17 @@ public final class Loader implements LoaderErrorThrower {
     return currentTask != null;
   }
 
+  /**
+   * Resumes the current load if its {@link Loadable} is {@link Loadable#isLoadSuspended()
+   * suspended}, or if it becomes suspended before checking whether it can continue loading again.
+   * Does nothing if the loader isn't loading.
+   */
+  public void resumeLoading() {
+    if (currentTask != null) {
+      currentTask.resume();
+    }
+  }
+
   /**
    * Cancels the current load.
    *
@@ -288,9 +327,9 @@ public final class Loader implements LoaderErrorThrower {
       currentTask.cancel(true);
     }
     if (callback != null) {
-      downloadExecutorService.execute(new ReleaseTask(callback));
+      downloadExecutor.execute(new ReleaseTask(callback));
     }
-    downloadExecutorService.shutdown();
+    downloadExecutor.release();
   }
 
   // LoaderErrorThrower implementation.
@@ -335,6 +374,16 @@ public final class Loader implements LoaderErrorThrower {
     private boolean canceled;
     private volatile boolean released;
 
+    // Whether the loadable is suspended and the task isn't queued on the executor.
+    @GuardedBy("this")
+    private boolean suspended;
+    // Whether the task is queued on the executor to resume a suspended loadable.
+    @GuardedBy("this")
+    private boolean resuming;
+    // Whether a resume was requested whilst the loadable was loading.
+    @GuardedBy("this")
+    private boolean resumeRequested;
+
     public LoadTask(
         Looper looper,
         T loadable,
@@ -376,6 +425,7 @@ public final class Loader implements LoaderErrorThrower {
         }
       } else {
         // The task has been given to the executor.
+        boolean resumeSuspendedLoad;
         synchronized (this) {
           canceled = true;
           loadable.cancelLoad();
@@ -383,6 +433,13 @@ public final class Loader implements LoaderErrorThrower {
           if (executorThread != null) {
             executorThread.interrupt();
           }
+          // Resume a suspended load, so that it can release its resources and then finish.
+          resumeSuspendedLoad = suspended;
+          suspended = false;
+          resuming |= resumeSuspendedLoad;
+        }
+        if (resumeSuspendedLoad) {
+          downloadExecutor.execute(this);
         }
       }
       if (released) {
@@ -398,12 +455,28 @@ public final class Loader implements LoaderErrorThrower {
       }
     }
 
+    public void resume() {
+      boolean resumeSuspendedLoad;
+      synchronized (this) {
+        resumeSuspendedLoad = suspended;
+        suspended = false;
+        resuming |= resumeSuspendedLoad;
+        resumeRequested = !resumeSuspendedLoad;
+      }
+      if (resumeSuspendedLoad) {
+        downloadExecutor.execute(this);
+      }
+    }
+
     @Override
     public void run() {
       try {
         boolean shouldLoad;
         synchronized (this) {
-          shouldLoad = !canceled;
+          // A suspended load is always resumed, so that it can release its resources if canceled.
+          shouldLoad = !canceled || resuming;
+          resuming = false;
+          resumeRequested = false;
           executorThread = Thread.currentThread();
         }
         if (shouldLoad) {
@@ -414,10 +487,25 @@ public final class Loader implements LoaderErrorThrower {
             TraceUtil.endSection();
           }
         }
+        boolean loadSuspended = shouldLoad && loadable.isLoadSuspended();
+        boolean resumeSuspendedLoad = false;
         synchronized (this) {
           executorThread = null;
           // Clear the interrupted flag if set, to avoid it leaking into a subsequent task.
           Thread.interrupted();
+          if (loadSuspended) {
+            // Resume straight away if the load was canceled or resumed whilst it was suspending.
+            resumeSuspendedLoad = canceled || resumeRequested;
+            suspended = !resumeSuspendedLoad;
+            resuming = resumeSuspendedLoad;
+          }
+        }
+        if (loadSuspended) {
+          // Give the thread back to the executor until the load is resumed.
+          if (resumeSuspendedLoad) {
+            downloadExecutor.execute(this);
+          }
+          return;
         }
         if (!released) {
           sendEmptyMessage(MSG_FINISH);
@@ -507,7 +595,7 @@ public final class Loader implements LoaderErrorThrower {
 
     private void execute() {
       currentError = null;
-      downloadExecutorService.execute(Assertions.checkNotNull(currentTask));
+      downloadExecutor.execute(Assertions.checkNotNull(currentTask));
     }
 
     private void finish() {
@@ -519,6 +607,25 @@ public final class Loader implements LoaderErrorThrower {
     }
   }
 
+  private static final class ExecutorServiceReleasableExecutor implements ReleasableExecutor {
+
+    private final ExecutorService executorService;
+
+    public ExecutorServiceReleasableExecutor(ExecutorService executorService) {
+      this.executorService = executorService;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      executorService.execute(command);
+    }
+
+    @Override
+    public void release() {
+      executorService.shutdown();
+    }
+  }
+
   private static final class ReleaseTask implements Runnable {
 
     private final ReleaseCallback callback;
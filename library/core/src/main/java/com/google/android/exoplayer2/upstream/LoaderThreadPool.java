@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static java.lang.Math.max;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.ReleasableExecutor;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of threads that can be shared by multiple {@link Loader Loaders}, for example
+ * across several player instances.
+ *
+ * <p>Each {@link ReleasableExecutor} returned by {@link #createExecutor()} runs its tasks
+ * sequentially and in order, as required by {@link Loader}, whilst the tasks of different executors
+ * run in parallel on up to {@code maxThreadCount} threads. Tasks wait for a thread in first-in
+ * first-out order, and since a {@link Loader} only has one load in progress at a time, the threads
+ * are shared fairly between loaders.
+ *
+ * <p>A load occupies a thread whilst it's reading data. Loads that wait to be allowed to continue
+ * loading, such as those of {@link com.google.android.exoplayer2.source.ProgressiveMediaPeriod},
+ * are {@link Loader.Loadable#isLoadSuspended() suspended} instead, so that they give their thread
+ * back to the pool until {@link Loader#resumeLoading()} is called. The queue wait time metrics can
+ * be used to detect when the pool has too few threads for the number of concurrent loads.
+ */
+public final class LoaderThreadPool {
+
+  private static final String THREAD_NAME_PREFIX = "ExoPlayer:Loader:Pool-";
+  private static final long KEEP_ALIVE_TIME_MS = 10_000;
+
+  private final ThreadPoolExecutor threadPool;
+  private final Clock clock;
+
+  @GuardedBy("this")
+  private long executedTaskCount;
+
+  @GuardedBy("this")
+  private long totalQueueWaitTimeMs;
+
+  @GuardedBy("this")
+  private long maxQueueWaitTimeMs;
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxThreadCount The maximum number of threads in the pool. Threads are created when
+   *     needed, and are terminated once they've been idle for a while.
+   */
+  public LoaderThreadPool(int maxThreadCount) {
+    this(maxThreadCount, Clock.DEFAULT);
+  }
+
+  @VisibleForTesting
+  /* package */ LoaderThreadPool(int maxThreadCount, Clock clock) {
+    Assertions.checkArgument(maxThreadCount > 0);
+    this.clock = clock;
+    AtomicInteger threadCount = new AtomicInteger();
+    threadPool =
+        new ThreadPoolExecutor(
+            /* corePoolSize= */ maxThreadCount,
+            /* maximumPoolSize= */ maxThreadCount,
+            KEEP_ALIVE_TIME_MS,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> new Thread(runnable, THREAD_NAME_PREFIX + threadCount.incrementAndGet()));
+    threadPool.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Returns a new {@link ReleasableExecutor} that runs its tasks sequentially on the pool. The
+   * returned executor can be passed to {@link Loader#Loader(ReleasableExecutor)}. Releasing it
+   * doesn't affect the pool.
+   */
+  public ReleasableExecutor createExecutor() {
+    return new SequentialExecutor(MoreExecutors.newSequentialExecutor(this::executeOnPool));
+  }
+
+  /** Returns the number of tasks that have started running on the pool. */
+  public synchronized long getExecutedTaskCount() {
+    return executedTaskCount;
+  }
+
+  /**
+   * Returns the average time that tasks have waited for a thread before starting to run, in
+   * milliseconds, or 0 if no tasks have run.
+   */
+  public synchronized long getAverageQueueWaitTimeMs() {
+    return executedTaskCount == 0 ? 0 : totalQueueWaitTimeMs / executedTaskCount;
+  }
+
+  /** Returns the longest time that a task has waited for a thread before running, in ms. */
+  public synchronized long getMaxQueueWaitTimeMs() {
+    return maxQueueWaitTimeMs;
+  }
+
+  /** Returns the number of tasks that are currently waiting for a thread. */
+  public int getQueuedTaskCount() {
+    return threadPool.getQueue().size();
+  }
+
+  /**
+   * Releases the pool. Tasks that have already been submitted will still run, but executors
+   * created by this pool must not be used afterwards.
+   */
+  public void release() {
+    threadPool.shutdown();
+  }
+
+  private void executeOnPool(Runnable task) {
+    long queuedTimeMs = clock.elapsedRealtime();
+    threadPool.execute(
+        () -> {
+          onTaskStarted(/* queueWaitTimeMs= */ clock.elapsedRealtime() - queuedTimeMs);
+          task.run();
+        });
+  }
+
+  private synchronized void onTaskStarted(long queueWaitTimeMs) {
+    executedTaskCount++;
+    totalQueueWaitTimeMs += queueWaitTimeMs;
+    maxQueueWaitTimeMs = max(maxQueueWaitTimeMs, queueWaitTimeMs);
+  }
+
+  private static final class SequentialExecutor implements ReleasableExecutor {
+
+    private final Executor executor;
+
+    public SequentialExecutor(Executor executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      executor.execute(command);
+    }
+
+    @Override
+    public void release() {
+      // Do nothing. The threads belong to the pool.
+    }
+  }
+}
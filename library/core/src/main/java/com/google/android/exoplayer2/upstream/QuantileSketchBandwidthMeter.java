@@ -0,0 +1,437 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import android.content.Context;
+import android.os.Handler;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BandwidthMeter.EventListener.EventDispatcher;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.NetworkTypeObserver;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.base.Ascii;
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estimates bandwidth by listening to data transfers, using a {@link DecayingQuantileSketch} of
+ * the observed transfer rates.
+ *
+ * <p>Compared to {@link DefaultBandwidthMeter}, adding a transfer and updating the estimate take
+ * constant time, the weight of past transfers decays with their age rather than with the amount of
+ * data transferred since, and any quantile of the transfer rates can be queried, for example to
+ * obtain both a conservative and an optimistic estimate.
+ *
+ * <p>Separate state is kept for each network type. When the network type changes, the estimate
+ * continues from the transfers previously observed on the new network type, if there are enough
+ * of them, and falls back to an initial estimate otherwise. Initial estimates are configured in the
+ * same way as for {@link DefaultBandwidthMeter}.
+ */
+public final class QuantileSketchBandwidthMeter implements BandwidthMeter, TransferListener {
+
+  /** Default quantile of the transfer rates that's returned by {@link #getBitrateEstimate()}. */
+  public static final float DEFAULT_ESTIMATE_QUANTILE = 0.5f;
+
+  /** Default half-life of the weight of a transfer, in milliseconds. */
+  public static final long DEFAULT_HALF_LIFE_MS = 8_000;
+
+  /** Default maximum relative error of the estimated quantiles. */
+  public static final double DEFAULT_RELATIVE_ACCURACY = 0.02;
+
+  /** Builder for a bandwidth meter. */
+  public static final class Builder {
+
+    private final Context context;
+
+    private Map<Integer, Long> initialBitrateEstimates;
+    private float estimateQuantile;
+    private long halfLifeMs;
+    private double relativeAccuracy;
+    private Clock clock;
+
+    /**
+     * Creates a builder with default parameters and without listener.
+     *
+     * @param context A context.
+     */
+    public Builder(Context context) {
+      this.context = context.getApplicationContext();
+      initialBitrateEstimates =
+          DefaultBandwidthMeter.Builder.getInitialBitrateEstimatesForCountry(
+              Util.getCountryCode(context));
+      estimateQuantile = DEFAULT_ESTIMATE_QUANTILE;
+      halfLifeMs = DEFAULT_HALF_LIFE_MS;
+      relativeAccuracy = DEFAULT_RELATIVE_ACCURACY;
+      clock = Clock.DEFAULT;
+    }
+
+    /**
+     * Sets the quantile of the transfer rates that's returned by {@link #getBitrateEstimate()}.
+     * The default value is {@link #DEFAULT_ESTIMATE_QUANTILE}.
+     *
+     * @param estimateQuantile The quantile, in the range [0, 1].
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setEstimateQuantile(float estimateQuantile) {
+      checkArgument(estimateQuantile >= 0 && estimateQuantile <= 1);
+      this.estimateQuantile = estimateQuantile;
+      return this;
+    }
+
+    /**
+     * Sets the time after which the weight of a transfer has decayed to half of its initial
+     * weight. The default value is {@link #DEFAULT_HALF_LIFE_MS}.
+     *
+     * @param halfLifeMs The half-life, in milliseconds.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setHalfLifeMs(long halfLifeMs) {
+      checkArgument(halfLifeMs > 0);
+      this.halfLifeMs = halfLifeMs;
+      return this;
+    }
+
+    /**
+     * Sets the maximum relative error of the estimated quantiles. Smaller values make estimating
+     * quantiles slower and use more memory. The default value is {@link
+     * #DEFAULT_RELATIVE_ACCURACY}.
+     *
+     * @param relativeAccuracy The maximum relative error, in the range (0, 1).
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setRelativeAccuracy(double relativeAccuracy) {
+      checkArgument(relativeAccuracy > 0 && relativeAccuracy < 1);
+      this.relativeAccuracy = relativeAccuracy;
+      return this;
+    }
+
+    /**
+     * Sets the initial bitrate estimate in bits per second that should be assumed when a bandwidth
+     * estimate is unavailable.
+     *
+     * @param initialBitrateEstimate The initial bitrate estimate in bits per second.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setInitialBitrateEstimate(long initialBitrateEstimate) {
+      for (Integer networkType : initialBitrateEstimates.keySet()) {
+        setInitialBitrateEstimate(networkType, initialBitrateEstimate);
+      }
+      return this;
+    }
+
+    /**
+     * Sets the initial bitrate estimate in bits per second that should be assumed when a bandwidth
+     * estimate is unavailable and the current network connection is of the specified type.
+     *
+     * @param networkType The {@link C.NetworkType} this initial estimate is for.
+     * @param initialBitrateEstimate The initial bitrate estimate in bits per second.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setInitialBitrateEstimate(
+        @C.NetworkType int networkType, long initialBitrateEstimate) {
+      initialBitrateEstimates.put(networkType, initialBitrateEstimate);
+      return this;
+    }
+
+    /**
+     * Sets the initial bitrate estimates to the default values of the specified country. The
+     * initial estimates are used when a bandwidth estimate is unavailable.
+     *
+     * @param countryCode The ISO 3166-1 alpha-2 country code of the country whose default bitrate
+     *     estimates should be used.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setInitialBitrateEstimate(String countryCode) {
+      initialBitrateEstimates =
+          DefaultBandwidthMeter.Builder.getInitialBitrateEstimatesForCountry(
+              Ascii.toUpperCase(countryCode));
+      return this;
+    }
+
+    /**
+     * Sets the clock used to estimate bandwidth from data transfers. Should only be set for testing
+     * purposes.
+     *
+     * @param clock The clock used to estimate bandwidth from data transfers.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /**
+     * Builds the bandwidth meter.
+     *
+     * @return A bandwidth meter with the configured properties.
+     */
+    public QuantileSketchBandwidthMeter build() {
+      return new QuantileSketchBandwidthMeter(this);
+    }
+  }
+
+  private static final int ELAPSED_MILLIS_FOR_ESTIMATE = 2000;
+  private static final int BYTES_TRANSFERRED_FOR_ESTIMATE = 512 * 1024;
+  /** The smallest transfer rate that's distinguished, in bits per second. */
+  private static final double MIN_BITRATE = 1_000;
+  /** The largest transfer rate that's distinguished, in bits per second. */
+  private static final double MAX_BITRATE = 100_000_000_000d;
+
+  private final ImmutableMap<Integer, Long> initialBitrateEstimates;
+  private final float estimateQuantile;
+  private final long halfLifeMs;
+  private final double relativeAccuracy;
+  private final EventDispatcher eventDispatcher;
+  private final Clock clock;
+  private final Map<Integer, NetworkState> networkStates;
+
+  private int streamCount;
+  private long sampleStartTimeMs;
+  private long sampleBytesTransferred;
+
+  private @C.NetworkType int networkType;
+  private NetworkState networkState;
+  private long bitrateEstimate;
+  private long lastReportedBitrateEstimate;
+
+  private boolean networkTypeOverrideSet;
+  private @C.NetworkType int networkTypeOverride;
+
+  private QuantileSketchBandwidthMeter(Builder builder) {
+    initialBitrateEstimates = ImmutableMap.copyOf(builder.initialBitrateEstimates);
+    estimateQuantile = builder.estimateQuantile;
+    halfLifeMs = builder.halfLifeMs;
+    relativeAccuracy = builder.relativeAccuracy;
+    clock = builder.clock;
+    eventDispatcher = new EventDispatcher();
+    networkStates = new HashMap<>();
+    NetworkTypeObserver networkTypeObserver = NetworkTypeObserver.getInstance(builder.context);
+    networkType = networkTypeObserver.getNetworkType();
+    networkState = getNetworkState(networkType);
+    bitrateEstimate = getInitialBitrateEstimateForNetworkType(networkType);
+    networkTypeObserver.register(/* listener= */ this::onNetworkTypeChanged);
+  }
+
+  /**
+   * Overrides the network type. Handled in the same way as if the meter had detected a change from
+   * the current network type to the specified network type internally.
+   *
+   * <p>Applications should not normally call this method. It is intended for testing purposes.
+   *
+   * @param networkType The overriding network type.
+   */
+  public synchronized void setNetworkTypeOverride(@C.NetworkType int networkType) {
+    networkTypeOverride = networkType;
+    networkTypeOverrideSet = true;
+    onNetworkTypeChanged(networkType);
+  }
+
+  @Override
+  public synchronized long getBitrateEstimate() {
+    return bitrateEstimate;
+  }
+
+  /**
+   * Returns estimates of several quantiles of the transfer rates observed on the current network
+   * type, in bits per second.
+   *
+   * <p>If too few transfers have been observed on the current network type, all estimates are
+   * equal to {@link #getBitrateEstimate()}.
+   *
+   * @param quantiles The quantiles, in ascending order and in the range [0, 1].
+   * @return The estimates, in the same order as {@code quantiles}.
+   */
+  public synchronized long[] getBitrateEstimates(double[] quantiles) {
+    long[] estimates = new long[quantiles.length];
+    if (!networkState.hasEnoughData()) {
+      for (int i = 0; i < estimates.length; i++) {
+        estimates[i] = bitrateEstimate;
+      }
+      return estimates;
+    }
+    double[] values = new double[quantiles.length];
+    networkState.sketch.getQuantiles(quantiles, values);
+    for (int i = 0; i < estimates.length; i++) {
+      estimates[i] = (long) values[i];
+    }
+    return estimates;
+  }
+
+  @Override
+  public TransferListener getTransferListener() {
+    return this;
+  }
+
+  @Override
+  public void addEventListener(Handler eventHandler, EventListener eventListener) {
+    Assertions.checkNotNull(eventHandler);
+    Assertions.checkNotNull(eventListener);
+    eventDispatcher.addListener(eventHandler, eventListener);
+  }
+
+  @Override
+  public void removeEventListener(EventListener eventListener) {
+    eventDispatcher.removeListener(eventListener);
+  }
+
+  @Override
+  public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    // Do nothing.
+  }
+
+  @Override
+  public synchronized void onTransferStart(
+      DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
+      return;
+    }
+    if (streamCount == 0) {
+      sampleStartTimeMs = clock.elapsedRealtime();
+    }
+    streamCount++;
+  }
+
+  @Override
+  public synchronized void onBytesTransferred(
+      DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+    if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
+      return;
+    }
+    sampleBytesTransferred += bytesTransferred;
+  }
+
+  @Override
+  public synchronized void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
+      return;
+    }
+    Assertions.checkState(streamCount > 0);
+    long nowMs = clock.elapsedRealtime();
+    int sampleElapsedTimeMs = (int) (nowMs - sampleStartTimeMs);
+    networkState.totalElapsedTimeMs += sampleElapsedTimeMs;
+    networkState.totalBytesTransferred += sampleBytesTransferred;
+    if (sampleElapsedTimeMs > 0) {
+      double bitsPerSecond = (sampleBytesTransferred * 8000d) / sampleElapsedTimeMs;
+      networkState.sketch.addSample(Math.sqrt(sampleBytesTransferred), bitsPerSecond, nowMs);
+      if (networkState.hasEnoughData()) {
+        bitrateEstimate = (long) networkState.sketch.getQuantile(estimateQuantile);
+      }
+      maybeNotifyBandwidthSample(sampleElapsedTimeMs, sampleBytesTransferred, bitrateEstimate);
+      sampleStartTimeMs = nowMs;
+      sampleBytesTransferred = 0;
+    } // Else any sample bytes transferred will be carried forward into the next sample.
+    streamCount--;
+  }
+
+  private synchronized void onNetworkTypeChanged(@C.NetworkType int networkType) {
+    if (networkTypeOverrideSet) {
+      networkType = networkTypeOverride;
+    }
+    if (this.networkType == networkType) {
+      return;
+    }
+
+    this.networkType = networkType;
+    if (networkType == C.NETWORK_TYPE_OFFLINE
+        || networkType == C.NETWORK_TYPE_UNKNOWN
+        || networkType == C.NETWORK_TYPE_OTHER) {
+      // It's better to keep the state of the previous network type for these network types.
+      return;
+    }
+
+    // Continue from the state of the new network type, and report the estimate along with any
+    // bytes transferred.
+    networkState = getNetworkState(networkType);
+    bitrateEstimate =
+        networkState.hasEnoughData()
+            ? (long) networkState.sketch.getQuantile(estimateQuantile)
+            : getInitialBitrateEstimateForNetworkType(networkType);
+    long nowMs = clock.elapsedRealtime();
+    int sampleElapsedTimeMs = streamCount > 0 ? (int) (nowMs - sampleStartTimeMs) : 0;
+    maybeNotifyBandwidthSample(sampleElapsedTimeMs, sampleBytesTransferred, bitrateEstimate);
+
+    // Discard the bytes transferred in the current sample, which straddles both network types.
+    sampleStartTimeMs = nowMs;
+    sampleBytesTransferred = 0;
+  }
+
+  private NetworkState getNetworkState(@C.NetworkType int networkType) {
+    @Nullable NetworkState networkState = networkStates.get(networkType);
+    if (networkState == null) {
+      networkState =
+          new NetworkState(
+              new DecayingQuantileSketch(relativeAccuracy, halfLifeMs, MIN_BITRATE, MAX_BITRATE));
+      networkStates.put(networkType, networkState);
+    }
+    return networkState;
+  }
+
+  private void maybeNotifyBandwidthSample(
+      int elapsedMs, long bytesTransferred, long bitrateEstimate) {
+    if (elapsedMs == 0 && bytesTransferred == 0 && bitrateEstimate == lastReportedBitrateEstimate) {
+      return;
+    }
+    lastReportedBitrateEstimate = bitrateEstimate;
+    eventDispatcher.bandwidthSample(elapsedMs, bytesTransferred, bitrateEstimate);
+  }
+
+  private long getInitialBitrateEstimateForNetworkType(@C.NetworkType int networkType) {
+    Long initialBitrateEstimate = initialBitrateEstimates.get(networkType);
+    if (initialBitrateEstimate == null) {
+      initialBitrateEstimate = initialBitrateEstimates.get(C.NETWORK_TYPE_UNKNOWN);
+    }
+    if (initialBitrateEstimate == null) {
+      initialBitrateEstimate = DefaultBandwidthMeter.DEFAULT_INITIAL_BITRATE_ESTIMATE;
+    }
+    return initialBitrateEstimate;
+  }
+
+  private static boolean isTransferAtFullNetworkSpeed(DataSpec dataSpec, boolean isNetwork) {
+    return isNetwork && !dataSpec.isFlagSet(DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED);
+  }
+
+  /** The transfers observed on a network type. */
+  private static final class NetworkState {
+
+    public final DecayingQuantileSketch sketch;
+
+    public long totalElapsedTimeMs;
+    public long totalBytesTransferred;
+
+    public NetworkState(DecayingQuantileSketch sketch) {
+      this.sketch = sketch;
+    }
+
+    public boolean hasEnoughData() {
+      return !sketch.isEmpty()
+          && (totalElapsedTimeMs >= ELAPSED_MILLIS_FOR_ESTIMATE
+              || totalBytesTransferred >= BYTES_TRANSFERRED_FOR_ESTIMATE);
+    }
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import java.util.concurrent.Executor;
+
+/** An {@link Executor} that can be released once it's no longer needed by its owner. */
+public interface ReleasableExecutor extends Executor {
+
+  /**
+   * Releases the executor.
+   *
+   * <p>Tasks that were passed to {@link #execute} before this method is called must still be run.
+   * No further tasks will be passed to the executor after this method is called.
+   */
+  void release();
+}
@@ -17,7 +17,7 @@ package com.google.android.exoplayer2.video.spherical;
 
 import android.opengl.Matrix;
 import com.google.android.exoplayer2.util.GlUtil;
-import com.google.android.exoplayer2.util.TimedValueQueue;
+import com.google.android.exoplayer2.util.LockFreeTimedValueQueue;
 
 /**
  * This class serves multiple purposes:
@@ -31,13 +31,13 @@ import com.google.android.exoplayer2.util.TimedValueQueue;
 /* package */ final class FrameRotationQueue {
   private final float[] recenterMatrix;
   private final float[] rotationMatrix;
-  private final TimedValueQueue<float[]> rotations;
+  private final LockFreeTimedValueQueue<float[]> rotations;
   private boolean recenterMatrixComputed;
 
   public FrameRotationQueue() {
     recenterMatrix = new float[16];
     rotationMatrix = new float[16];
-    rotations = new TimedValueQueue<>();
+    rotations = new LockFreeTimedValueQueue<>();
   }
 
   /**
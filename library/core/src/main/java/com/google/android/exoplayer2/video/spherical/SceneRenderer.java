@@ -26,8 +26,8 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.GlUtil;
+import com.google.android.exoplayer2.util.LockFreeTimedValueQueue;
 import com.google.android.exoplayer2.util.Log;
-import com.google.android.exoplayer2.util.TimedValueQueue;
 import com.google.android.exoplayer2.video.VideoFrameMetadataListener;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -43,8 +43,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private final AtomicBoolean resetRotationAtNextFrame;
   private final ProjectionRenderer projectionRenderer;
   private final FrameRotationQueue frameRotationQueue;
-  private final TimedValueQueue<Long> sampleTimestampQueue;
-  private final TimedValueQueue<Projection> projectionQueue;
+  private final LockFreeTimedValueQueue<Long> sampleTimestampQueue;
+  private final LockFreeTimedValueQueue<Projection> projectionQueue;
   private final float[] rotationMatrix;
   private final float[] tempMatrix;
 
@@ -64,8 +64,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     resetRotationAtNextFrame = new AtomicBoolean(true);
     projectionRenderer = new ProjectionRenderer();
     frameRotationQueue = new FrameRotationQueue();
-    sampleTimestampQueue = new TimedValueQueue<>();
-    projectionQueue = new TimedValueQueue<>();
+    sampleTimestampQueue = new LockFreeTimedValueQueue<>();
+    projectionQueue = new LockFreeTimedValueQueue<>();
     rotationMatrix = new float[16];
     tempMatrix = new float[16];
     defaultStereoMode = C.STEREO_MODE_MONO;
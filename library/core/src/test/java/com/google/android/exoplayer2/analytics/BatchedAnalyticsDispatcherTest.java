@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.analytics;
+
+import static com.google.android.exoplayer2.robolectric.TestPlayerRunHelper.runUntilPendingCommandsAreFullyHandled;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.analytics.AnalyticsListener.EventTime;
+import com.google.android.exoplayer2.testutil.TestExoPlayerBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link BatchedAnalyticsDispatcher}. */
+@RunWith(AndroidJUnit4.class)
+public final class BatchedAnalyticsDispatcherTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+  private static final int CAPACITY = 8;
+
+  private final List<Integer> eventFlags = new ArrayList<>();
+  private final List<Long> droppedEventCounts = new ArrayList<>();
+  private final List<String> threadNames = new ArrayList<>();
+  private final CountDownLatch batchStarted = new CountDownLatch(1);
+  private final CountDownLatch batchUnblocked = new CountDownLatch(1);
+
+  private CountDownLatch remainingEvents;
+  private BatchedAnalyticsDispatcher dispatcher;
+
+  @After
+  public void tearDown() {
+    batchUnblocked.countDown();
+    if (dispatcher != null) {
+      dispatcher.release();
+    }
+  }
+
+  @Test
+  public void offer_deliversEventsInOrderOnConsumerThread() throws Exception {
+    AnalyticsListener listener = mock(AnalyticsListener.class);
+    EventTime eventTime = createEventTime();
+    remainingEvents = new CountDownLatch(3);
+    batchUnblocked.countDown();
+    dispatcher =
+        new BatchedAnalyticsDispatcher(
+            CAPACITY,
+            batch -> {
+              recordBatch(batch);
+              batch.dispatchAll(listener);
+            });
+
+    dispatcher.offer(eventTime, /* eventFlag= */ 1, l -> l.onVolumeChanged(eventTime, 0.1f));
+    dispatcher.offer(eventTime, /* eventFlag= */ 2, l -> l.onVolumeChanged(eventTime, 0.2f));
+    dispatcher.offer(eventTime, C.INDEX_UNSET, l -> l.onVolumeChanged(eventTime, 0.3f));
+
+    assertThat(remainingEvents.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    synchronized (eventFlags) {
+      assertThat(eventFlags).containsExactly(1, 2, C.INDEX_UNSET).inOrder();
+      assertThat(threadNames).doesNotContain(Thread.currentThread().getName());
+    }
+    verify(listener).onVolumeChanged(eventTime, 0.1f);
+    verify(listener).onVolumeChanged(eventTime, 0.2f);
+    verify(listener).onVolumeChanged(eventTime, 0.3f);
+    assertThat(dispatcher.getDroppedEventCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void offer_withFullBuffer_dropsAndCountsEvents() throws Exception {
+    EventTime eventTime = createEventTime();
+    remainingEvents = new CountDownLatch(CAPACITY);
+    dispatcher = new BatchedAnalyticsDispatcher(CAPACITY, this::recordBatchAndBlock);
+
+    assertThat(dispatcher.offer(eventTime, /* eventFlag= */ 0, listener -> {})).isTrue();
+    // The consumer holds on to the first event until it's unblocked, so that CAPACITY - 1 more
+    // events fit into the buffer.
+    assertThat(batchStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    int acceptedEventCount = 0;
+    for (int i = 1; i <= CAPACITY + 3; i++) {
+      if (dispatcher.offer(eventTime, /* eventFlag= */ i, listener -> {})) {
+        acceptedEventCount++;
+      }
+    }
+    batchUnblocked.countDown();
+
+    assertThat(remainingEvents.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(acceptedEventCount).isEqualTo(CAPACITY - 1);
+    assertThat(dispatcher.getDroppedEventCount()).isEqualTo(4);
+    assertThat(dispatcher.getMaxQueuedEventCount()).isEqualTo(CAPACITY);
+    synchronized (eventFlags) {
+      assertThat(eventFlags).containsExactly(0, 1, 2, 3, 4, 5, 6, 7).inOrder();
+      assertThat(droppedEventCounts).containsExactly(0L, 4L).inOrder();
+    }
+  }
+
+  @Test
+  public void offer_withThrowingListener_deliversLaterBatches() throws Exception {
+    EventTime eventTime = createEventTime();
+    remainingEvents = new CountDownLatch(2);
+    dispatcher =
+        new BatchedAnalyticsDispatcher(
+            CAPACITY,
+            batch -> {
+              recordBatch(batch);
+              batchStarted.countDown();
+              if (batch.getEventFlag(0) == 0) {
+                throw new IllegalStateException();
+              }
+            });
+
+    dispatcher.offer(eventTime, /* eventFlag= */ 0, listener -> {});
+    assertThat(batchStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    dispatcher.offer(eventTime, /* eventFlag= */ 1, listener -> {});
+
+    assertThat(remainingEvents.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    synchronized (eventFlags) {
+      assertThat(eventFlags).containsExactly(0, 1).inOrder();
+    }
+  }
+
+  @Test
+  public void release_deliversPendingEventsAndDropsLaterEvents() throws Exception {
+    EventTime eventTime = createEventTime();
+    remainingEvents = new CountDownLatch(2);
+    dispatcher = new BatchedAnalyticsDispatcher(CAPACITY, this::recordBatchAndBlock);
+
+    dispatcher.offer(eventTime, /* eventFlag= */ 0, listener -> {});
+    assertThat(batchStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    dispatcher.offer(eventTime, /* eventFlag= */ 1, listener -> {});
+    dispatcher.release();
+    boolean offeredAfterRelease = dispatcher.offer(eventTime, /* eventFlag= */ 2, listener -> {});
+    batchUnblocked.countDown();
+
+    assertThat(remainingEvents.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(offeredAfterRelease).isFalse();
+    synchronized (eventFlags) {
+      assertThat(eventFlags).containsExactly(0, 1).inOrder();
+    }
+  }
+
+  @Test
+  public void defaultAnalyticsCollector_withDispatcher_handsOffEvents() throws Exception {
+    AtomicReference<Float> volume = new AtomicReference<>();
+    CountDownLatch volumeChanged = new CountDownLatch(1);
+    AnalyticsListener listener =
+        new AnalyticsListener() {
+          @Override
+          public void onVolumeChanged(EventTime eventTime, float newVolume) {
+            volume.set(newVolume);
+            volumeChanged.countDown();
+          }
+        };
+    dispatcher =
+        new BatchedAnalyticsDispatcher(/* capacity= */ 64, batch -> batch.dispatchAll(listener));
+    ExoPlayer player =
+        new TestExoPlayerBuilder(ApplicationProvider.getApplicationContext()).build();
+    ((DefaultAnalyticsCollector) player.getAnalyticsCollector())
+        .setBatchedAnalyticsDispatcher(dispatcher);
+
+    player.setVolume(0.5f);
+    runUntilPendingCommandsAreFullyHandled(player);
+    boolean volumeChangedOnConsumerThread =
+        volumeChanged.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    player.release();
+
+    assertThat(volumeChangedOnConsumerThread).isTrue();
+    assertThat(volume.get()).isEqualTo(0.5f);
+  }
+
+  private void recordBatch(BatchedAnalyticsDispatcher.EventBatch batch) {
+    synchronized (eventFlags) {
+      for (int i = 0; i < batch.size(); i++) {
+        eventFlags.add(batch.getEventFlag(i));
+      }
+      droppedEventCounts.add(batch.getDroppedEventCount());
+      threadNames.add(Thread.currentThread().getName());
+    }
+    for (int i = 0; i < batch.size(); i++) {
+      remainingEvents.countDown();
+    }
+  }
+
+  private void recordBatchAndBlock(BatchedAnalyticsDispatcher.EventBatch batch) {
+    batchStarted.countDown();
+    try {
+      batchUnblocked.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    recordBatch(batch);
+  }
+
+  private static EventTime createEventTime() {
+    return new EventTime(
+        /* realtimeMs= */ 0,
+        Timeline.EMPTY,
+        /* windowIndex= */ 0,
+        /* mediaPeriodId= */ null,
+        /* eventPlaybackPositionMs= */ 0,
+        Timeline.EMPTY,
+        /* currentWindowIndex= */ 0,
+        /* currentMediaPeriodId= */ null,
+        /* currentPlaybackPositionMs= */ 0,
+        /* totalBufferedDurationMs= */ 0);
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.analytics;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ParserException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link PlaybackStatsAggregator}. */
+@RunWith(AndroidJUnit4.class)
+public final class PlaybackStatsAggregatorTest {
+
+  @Test
+  public void toPlaybackStats_withoutStats_equalsEmptyStats() throws Exception {
+    PlaybackStatsAggregator aggregator = new PlaybackStatsAggregator();
+
+    assertScalarFieldsEqual(aggregator.toPlaybackStats(), PlaybackStats.EMPTY);
+    assertThat(aggregator.getJoinTimeMsHistogram().getCount()).isEqualTo(0);
+    assertThat(aggregator.getJoinTimeMsHistogram().getQuantile(0.5)).isEqualTo(C.TIME_UNSET);
+  }
+
+  @Test
+  public void toPlaybackStats_equalsMergedStats() throws Exception {
+    List<PlaybackStats> playbackStats = createPlaybackStats(/* count= */ 1_000);
+    PlaybackStatsAggregator aggregator = new PlaybackStatsAggregator();
+
+    for (PlaybackStats stats : playbackStats) {
+      aggregator.add(stats);
+    }
+
+    assertScalarFieldsEqual(
+        aggregator.toPlaybackStats(),
+        PlaybackStats.merge(playbackStats.toArray(new PlaybackStats[0])));
+  }
+
+  @Test
+  public void aggregate_inParallel_equalsSequentialAggregation() throws Exception {
+    List<PlaybackStats> playbackStats = createPlaybackStats(/* count= */ 50_000);
+    PlaybackStatsAggregator sequentialAggregator = new PlaybackStatsAggregator();
+    for (PlaybackStats stats : playbackStats) {
+      sequentialAggregator.add(stats);
+    }
+    ForkJoinPool pool = new ForkJoinPool(/* parallelism= */ 4);
+
+    PlaybackStatsAggregator parallelAggregator =
+        PlaybackStatsAggregator.aggregate(playbackStats, pool);
+    pool.shutdown();
+
+    assertScalarFieldsEqual(
+        parallelAggregator.toPlaybackStats(), sequentialAggregator.toPlaybackStats());
+    assertThat(parallelAggregator.toByteArray()).isEqualTo(sequentialAggregator.toByteArray());
+  }
+
+  @Test
+  public void aggregate_withStatsCreatedOnDemand_equalsSequentialAggregation() throws Exception {
+    int count = 50_000;
+    // Stats that are created while they're iterated, so that they're never all held in memory.
+    Iterable<PlaybackStats> playbackStats =
+        () ->
+            new Iterator<PlaybackStats>() {
+              private final Random random = new Random(/* seed= */ 0);
+              private int remainingCount = count;
+
+              @Override
+              public boolean hasNext() {
+                return remainingCount > 0;
+              }
+
+              @Override
+              public PlaybackStats next() {
+                remainingCount--;
+                return createPlaybackStats(random);
+              }
+            };
+    PlaybackStatsAggregator sequentialAggregator = new PlaybackStatsAggregator();
+    for (PlaybackStats stats : playbackStats) {
+      sequentialAggregator.add(stats);
+    }
+    ForkJoinPool pool = new ForkJoinPool(/* parallelism= */ 2);
+
+    PlaybackStatsAggregator parallelAggregator =
+        PlaybackStatsAggregator.aggregate(playbackStats, pool);
+    pool.shutdown();
+
+    assertThat(parallelAggregator.toPlaybackStats().playbackCount).isEqualTo(count);
+    assertThat(parallelAggregator.toByteArray()).isEqualTo(sequentialAggregator.toByteArray());
+  }
+
+  @Test
+  public void histograms_estimateQuantilesOfPlaybacks() {
+    PlaybackStatsAggregator aggregator = new PlaybackStatsAggregator();
+
+    for (int i = 1; i <= 1_000; i++) {
+      aggregator.add(
+          createPlaybackStats(
+              /* joinTimeMs= */ i, /* rebufferTimeMs= */ 10 * i, /* videoBitrate= */ 1_000 * i));
+    }
+    // A playback without valid join time and video format.
+    aggregator.add(
+        createPlaybackStats(
+            /* joinTimeMs= */ C.TIME_UNSET,
+            /* rebufferTimeMs= */ 0,
+            /* videoBitrate= */ C.LENGTH_UNSET));
+
+    assertThat(aggregator.getJoinTimeMsHistogram().getCount()).isEqualTo(1_000);
+    assertThat(aggregator.getRebufferTimeMsHistogram().getCount()).isEqualTo(1_001);
+    assertThat(aggregator.getVideoFormatBitrateHistogram().getCount()).isEqualTo(1_000);
+    // Buckets are at most 12.5% wide, so the middle of a bucket is within 6.25% of its values.
+    assertThat((double) aggregator.getJoinTimeMsHistogram().getQuantile(0.5))
+        .isWithin(500 * 0.0625)
+        .of(500);
+    assertThat((double) aggregator.getRebufferTimeMsHistogram().getQuantile(0.9))
+        .isWithin(9_000 * 0.0625)
+        .of(9_000);
+    assertThat((double) aggregator.getVideoFormatBitrateHistogram().getQuantile(0.1))
+        .isWithin(100_000 * 0.0625)
+        .of(100_000);
+    assertThat(aggregator.getRebufferTimeMsHistogram().getQuantile(0)).isEqualTo(0);
+  }
+
+  @Test
+  public void fromByteArray_withSerializedAggregator_restoresAggregator() throws Exception {
+    PlaybackStatsAggregator aggregator = new PlaybackStatsAggregator();
+    for (PlaybackStats stats : createPlaybackStats(/* count= */ 10_000)) {
+      aggregator.add(stats);
+    }
+
+    byte[] data = aggregator.toByteArray();
+    PlaybackStatsAggregator restoredAggregator = PlaybackStatsAggregator.fromByteArray(data);
+
+    assertThat(data.length).isLessThan(2_048);
+    assertScalarFieldsEqual(restoredAggregator.toPlaybackStats(), aggregator.toPlaybackStats());
+    assertThat(restoredAggregator.getJoinTimeMsHistogram().getQuantile(0.5))
+        .isEqualTo(aggregator.getJoinTimeMsHistogram().getQuantile(0.5));
+    assertThat(restoredAggregator.toByteArray()).isEqualTo(data);
+  }
+
+  @Test
+  public void fromByteArray_withInvalidData_throwsParserException() {
+    byte[] data = new PlaybackStatsAggregator().toByteArray();
+    byte[] truncatedData = new byte[data.length - 1];
+    System.arraycopy(data, 0, truncatedData, 0, truncatedData.length);
+
+    assertThrows(
+        ParserException.class, () -> PlaybackStatsAggregator.fromByteArray(new byte[] {1, 2, 3}));
+    assertThrows(ParserException.class, () -> PlaybackStatsAggregator.fromByteArray(truncatedData));
+  }
+
+  private static void assertScalarFieldsEqual(PlaybackStats actual, PlaybackStats expected)
+      throws IllegalAccessException {
+    for (Field field : PlaybackStats.class.getFields()) {
+      if (!Modifier.isStatic(field.getModifiers()) && field.getType().isPrimitive()) {
+        assertWithMessage(field.getName()).that(field.get(actual)).isEqualTo(field.get(expected));
+      }
+    }
+    for (int i = 0; i < PlaybackStats.PLAYBACK_STATE_COUNT; i++) {
+      assertThat(actual.getPlaybackStateDurationMs(i))
+          .isEqualTo(expected.getPlaybackStateDurationMs(i));
+    }
+  }
+
+  private static List<PlaybackStats> createPlaybackStats(int count) {
+    Random random = new Random(/* seed= */ 0);
+    List<PlaybackStats> playbackStats = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      playbackStats.add(createPlaybackStats(random));
+    }
+    return playbackStats;
+  }
+
+  private static PlaybackStats createPlaybackStats(Random random) {
+    long joinTimeMs = random.nextInt(10) != 0 ? random.nextInt(5_000) : C.TIME_UNSET;
+    long rebufferTimeMs = random.nextInt(3) == 0 ? random.nextInt(20_000) : 0;
+    int videoBitrate =
+        random.nextInt(10) != 0 ? 100_000 + random.nextInt(10_000_000) : C.LENGTH_UNSET;
+    return createPlaybackStats(random, joinTimeMs, rebufferTimeMs, videoBitrate);
+  }
+
+  private static PlaybackStats createPlaybackStats(
+      long joinTimeMs, long rebufferTimeMs, int videoBitrate) {
+    return createPlaybackStats(new Random(/* seed= */ 0), joinTimeMs, rebufferTimeMs, videoBitrate);
+  }
+
+  /**
+   * Creates the stats of a single playback that are consistent with the given values, with other
+   * values chosen at random.
+   */
+  private static PlaybackStats createPlaybackStats(
+      Random random, long joinTimeMs, long rebufferTimeMs, int videoBitrate) {
+    long[] playbackStateDurationsMs = new long[PlaybackStats.PLAYBACK_STATE_COUNT];
+    playbackStateDurationsMs[PlaybackStats.PLAYBACK_STATE_JOINING_FOREGROUND] =
+        joinTimeMs == C.TIME_UNSET ? random.nextInt(1_000) : joinTimeMs;
+    playbackStateDurationsMs[PlaybackStats.PLAYBACK_STATE_PLAYING] = random.nextInt(600_000);
+    playbackStateDurationsMs[PlaybackStats.PLAYBACK_STATE_BUFFERING] = rebufferTimeMs;
+    playbackStateDurationsMs[PlaybackStats.PLAYBACK_STATE_PAUSED] = random.nextInt(60_000);
+    long videoFormatTimeMs = videoBitrate == C.LENGTH_UNSET ? 0 : 1 + random.nextInt(600_000);
+    long audioFormatTimeMs = random.nextInt(600_000);
+    int fatalErrorCount = random.nextInt(20) == 0 ? 1 : 0;
+    return new PlaybackStats(
+        /* playbackCount= */ 1,
+        playbackStateDurationsMs,
+        /* playbackStateHistory= */ Collections.emptyList(),
+        /* mediaTimeHistory= */ Collections.emptyList(),
+        /* firstReportedTimeMs= */ random.nextInt(1_000_000),
+        /* foregroundPlaybackCount= */ 1,
+        /* abandonedBeforeReadyCount= */ joinTimeMs == C.TIME_UNSET ? 1 : 0,
+        /* endedCount= */ random.nextInt(2),
+        /* backgroundJoiningCount= */ 0,
+        /* totalValidJoinTimeMs= */ joinTimeMs,
+        /* validJoinTimeCount= */ joinTimeMs == C.TIME_UNSET ? 0 : 1,
+        /* totalPauseCount= */ random.nextInt(5),
+        /* totalPauseBufferCount= */ random.nextInt(2),
+        /* totalSeekCount= */ random.nextInt(5),
+        /* totalRebufferCount= */ rebufferTimeMs == 0 ? 0 : 1 + random.nextInt(3),
+        /* maxRebufferTimeMs= */ rebufferTimeMs == 0 ? C.TIME_UNSET : rebufferTimeMs,
+        /* adPlaybackCount= */ random.nextInt(2),
+        /* videoFormatHistory= */ Collections.emptyList(),
+        /* audioFormatHistory= */ Collections.emptyList(),
+        /* totalVideoFormatHeightTimeMs= */ videoFormatTimeMs,
+        /* totalVideoFormatHeightTimeProduct= */ videoFormatTimeMs * 720,
+        /* totalVideoFormatBitrateTimeMs= */ videoFormatTimeMs,
+        /* totalVideoFormatBitrateTimeProduct= */ videoFormatTimeMs * Math.max(0, videoBitrate),
+        /* totalAudioFormatTimeMs= */ audioFormatTimeMs,
+        /* totalAudioFormatBitrateTimeProduct= */ audioFormatTimeMs * 128_000,
+        /* initialVideoFormatHeightCount= */ videoBitrate == C.LENGTH_UNSET ? 0 : 1,
+        /* initialVideoFormatBitrateCount= */ videoBitrate == C.LENGTH_UNSET ? 0 : 1,
+        /* totalInitialVideoFormatHeight= */ videoBitrate == C.LENGTH_UNSET ? C.LENGTH_UNSET : 720,
+        /* totalInitialVideoFormatBitrate= */ videoBitrate,
+        /* initialAudioFormatBitrateCount= */ 1,
+        /* totalInitialAudioFormatBitrate= */ 128_000,
+        /* totalBandwidthTimeMs= */ random.nextInt(100_000),
+        /* totalBandwidthBytes= */ random.nextInt(100_000_000),
+        /* totalDroppedFrames= */ random.nextInt(100),
+        /* totalAudioUnderruns= */ random.nextInt(3),
+        /* fatalErrorPlaybackCount= */ fatalErrorCount,
+        fatalErrorCount,
+        /* nonFatalErrorCount= */ random.nextInt(3),
+        /* fatalErrorHistory= */ Collections.emptyList(),
+        /* nonFatalErrorHistory= */ Collections.emptyList());
+  }
+}
@@ -380,6 +380,44 @@ public final class DefaultAudioSinkTest {
     assertThat(defaultAudioSink.getPlaybackParameters().speed).isEqualTo(1);
   }
 
+  @Config(minSdk = 21)
+  @Test
+  public void setPlaybackParameters_withFloatOutput_appliesSpeedToFloatPcm() throws Exception {
+    SonicAudioProcessor sonicAudioProcessor = new SonicAudioProcessor();
+    defaultAudioSink =
+        new DefaultAudioSink.Builder()
+            .setAudioProcessorChain(
+                new DefaultAudioProcessorChain(
+                    /* audioProcessors= */ new AudioProcessor[0],
+                    new SilenceSkippingAudioProcessor(),
+                    sonicAudioProcessor))
+            .setEnableFloatOutput(true)
+            .setOffloadMode(DefaultAudioSink.OFFLOAD_MODE_DISABLED)
+            .build();
+    Format floatFormat =
+        STEREO_44_1_FORMAT
+            .buildUpon()
+            .setSampleMimeType(MimeTypes.AUDIO_RAW)
+            .setPcmEncoding(C.ENCODING_PCM_FLOAT)
+            .build();
+    defaultAudioSink.setPlaybackParameters(new PlaybackParameters(2));
+    defaultAudioSink.configure(
+        floatFormat, /* specifiedBufferSize= */ 0, /* outputChannels= */ null);
+    // One second of silence.
+    ByteBuffer floatSilenceBuffer =
+        ByteBuffer.allocateDirect(SAMPLE_RATE_44_1 * CHANNEL_COUNT_STEREO * 4)
+            .order(ByteOrder.nativeOrder());
+    assertThat(
+            defaultAudioSink.handleBuffer(
+                floatSilenceBuffer,
+                /* presentationTimeUs= */ 0,
+                /* encodedAccessUnitCount= */ 1))
+        .isTrue();
+
+    assertThat(sonicAudioProcessor.isActive()).isTrue();
+    assertThat(defaultAudioSink.getPlaybackParameters().speed).isEqualTo(2);
+  }
+
   private void configureDefaultAudioSink(int channelCount) throws AudioSink.ConfigurationException {
     configureDefaultAudioSink(channelCount, /* trimStartFrames= */ 0, /* trimEndFrames= */ 0);
   }
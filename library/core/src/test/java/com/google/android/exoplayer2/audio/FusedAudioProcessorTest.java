@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link FusedAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class FusedAudioProcessorTest {
+
+  @Test
+  public void configure_withNoActiveProcessors_isNotActive() throws Exception {
+    FusedAudioProcessor fusedAudioProcessor =
+        new FusedAudioProcessor(
+            new ResamplingAudioProcessor(),
+            createChannelMappingAudioProcessor(/* outputChannels= */ null),
+            createTrimmingAudioProcessor(/* trimStartFrames= */ 0, /* trimEndFrames= */ 0));
+
+    fusedAudioProcessor.configure(
+        new AudioFormat(
+            /* sampleRate= */ 44100, /* channelCount= */ 2, /* encoding= */ C.ENCODING_PCM_16BIT));
+
+    assertThat(fusedAudioProcessor.isActive()).isFalse();
+  }
+
+  @Test
+  public void configure_returnsOutputFormatOfLastActiveProcessor() throws Exception {
+    FusedAudioProcessor fusedAudioProcessor =
+        new FusedAudioProcessor(
+            new ResamplingAudioProcessor(),
+            createChannelMappingAudioProcessor(new int[] {0, 1}),
+            createTrimmingAudioProcessor(/* trimStartFrames= */ 0, /* trimEndFrames= */ 0));
+
+    AudioFormat outputAudioFormat =
+        fusedAudioProcessor.configure(
+            new AudioFormat(
+                /* sampleRate= */ 48000,
+                /* channelCount= */ 6,
+                /* encoding= */ C.ENCODING_PCM_24BIT));
+
+    assertThat(fusedAudioProcessor.isActive()).isTrue();
+    assertThat(outputAudioFormat)
+        .isEqualTo(
+            new AudioFormat(
+                /* sampleRate= */ 48000,
+                /* channelCount= */ 2,
+                /* encoding= */ C.ENCODING_PCM_16BIT));
+  }
+
+  @Test
+  public void process_withShrinkingStages_matchesSequentialProcessing() throws Exception {
+    assertFusedOutputMatchesSequentialOutput(
+        C.ENCODING_PCM_24BIT,
+        /* channelCount= */ 6,
+        /* outputChannels= */ new int[] {1, 0, 2},
+        /* trimStartFrames= */ 1000,
+        /* trimEndFrames= */ 2000);
+    assertFusedOutputMatchesSequentialOutput(
+        C.ENCODING_PCM_FLOAT,
+        /* channelCount= */ 2,
+        /* outputChannels= */ new int[] {1, 0},
+        /* trimStartFrames= */ 0,
+        /* trimEndFrames= */ 500);
+  }
+
+  @Test
+  public void process_withGrowingStages_matchesSequentialProcessing() throws Exception {
+    assertFusedOutputMatchesSequentialOutput(
+        C.ENCODING_PCM_8BIT,
+        /* channelCount= */ 1,
+        /* outputChannels= */ new int[] {0, 0},
+        /* trimStartFrames= */ 300,
+        /* trimEndFrames= */ 700);
+  }
+
+  @Test
+  public void process_withSomeInactiveStages_matchesSequentialProcessing() throws Exception {
+    assertFusedOutputMatchesSequentialOutput(
+        C.ENCODING_PCM_16BIT,
+        /* channelCount= */ 2,
+        /* outputChannels= */ null,
+        /* trimStartFrames= */ 1024,
+        /* trimEndFrames= */ 2048);
+    assertFusedOutputMatchesSequentialOutput(
+        C.ENCODING_PCM_32BIT,
+        /* channelCount= */ 2,
+        /* outputChannels= */ null,
+        /* trimStartFrames= */ 0,
+        /* trimEndFrames= */ 0);
+  }
+
+  private static void assertFusedOutputMatchesSequentialOutput(
+      @C.PcmEncoding int encoding,
+      int channelCount,
+      @Nullable int[] outputChannels,
+      int trimStartFrames,
+      int trimEndFrames)
+      throws Exception {
+    AudioFormat inputAudioFormat =
+        new AudioFormat(/* sampleRate= */ 44100, channelCount, encoding);
+    AudioProcessor[] sequentialAudioProcessors =
+        new AudioProcessor[] {
+          new ResamplingAudioProcessor(),
+          createChannelMappingAudioProcessor(outputChannels),
+          createTrimmingAudioProcessor(trimStartFrames, trimEndFrames)
+        };
+    FusedAudioProcessor fusedAudioProcessor =
+        new FusedAudioProcessor(
+            new ResamplingAudioProcessor(),
+            createChannelMappingAudioProcessor(outputChannels),
+            createTrimmingAudioProcessor(trimStartFrames, trimEndFrames));
+    AudioFormat audioFormat = inputAudioFormat;
+    for (AudioProcessor audioProcessor : sequentialAudioProcessors) {
+      AudioFormat outputAudioFormat = audioProcessor.configure(audioFormat);
+      if (audioProcessor.isActive()) {
+        audioFormat = outputAudioFormat;
+      }
+      audioProcessor.flush();
+    }
+    fusedAudioProcessor.configure(inputAudioFormat);
+    fusedAudioProcessor.flush();
+    Random random = new Random(/* seed= */ 0);
+    byte[] input = new byte[inputAudioFormat.bytesPerFrame * 10_000];
+    random.nextBytes(input);
+
+    byte[] sequentialOutput =
+        processAll(
+            getActiveAudioProcessors(sequentialAudioProcessors),
+            input,
+            inputAudioFormat.bytesPerFrame,
+            new Random(/* seed= */ 1));
+    byte[] fusedOutput =
+        processAll(
+            new AudioProcessor[] {fusedAudioProcessor},
+            input,
+            inputAudioFormat.bytesPerFrame,
+            new Random(/* seed= */ 1));
+
+    assertThat(fusedOutput).isNotEmpty();
+    assertThat(fusedOutput).isEqualTo(sequentialOutput);
+  }
+
+  private static AudioProcessor[] getActiveAudioProcessors(AudioProcessor[] audioProcessors) {
+    List<AudioProcessor> activeAudioProcessors = new ArrayList<>();
+    for (AudioProcessor audioProcessor : audioProcessors) {
+      if (audioProcessor.isActive()) {
+        activeAudioProcessors.add(audioProcessor);
+      }
+    }
+    return activeAudioProcessors.toArray(new AudioProcessor[0]);
+  }
+
+  /**
+   * Passes {@code input} through the processors in chunks of random numbers of frames, queues the
+   * end of stream, and returns the output.
+   */
+  private static byte[] processAll(
+      AudioProcessor[] audioProcessors, byte[] input, int bytesPerFrame, Random random) {
+    ByteBuffer output = ByteBuffer.allocate(input.length * 4);
+    int position = 0;
+    while (position < input.length) {
+      int chunkSize = min(input.length - position, bytesPerFrame * (1 + random.nextInt(1500)));
+      ByteBuffer chunk = ByteBuffer.allocateDirect(chunkSize).order(ByteOrder.nativeOrder());
+      chunk.put(input, position, chunkSize).flip();
+      position += chunkSize;
+      processChunk(audioProcessors, /* firstIndex= */ 0, chunk, output);
+    }
+    for (int i = 0; i < audioProcessors.length; i++) {
+      audioProcessors[i].queueEndOfStream();
+      while (!audioProcessors[i].isEnded()) {
+        ByteBuffer endOfStreamOutput = audioProcessors[i].getOutput();
+        processChunk(audioProcessors, /* firstIndex= */ i + 1, endOfStreamOutput, output);
+      }
+    }
+    byte[] result = new byte[output.position()];
+    output.flip();
+    output.get(result);
+    return result;
+  }
+
+  private static void processChunk(
+      AudioProcessor[] audioProcessors, int firstIndex, ByteBuffer chunk, ByteBuffer output) {
+    for (int i = firstIndex; i < audioProcessors.length; i++) {
+      audioProcessors[i].queueInput(chunk);
+      assertThat(chunk.hasRemaining()).isFalse();
+      chunk = audioProcessors[i].getOutput();
+    }
+    output.put(chunk);
+  }
+
+  private static ChannelMappingAudioProcessor createChannelMappingAudioProcessor(
+      @Nullable int[] outputChannels) {
+    ChannelMappingAudioProcessor channelMappingAudioProcessor = new ChannelMappingAudioProcessor();
+    channelMappingAudioProcessor.setChannelMap(outputChannels);
+    return channelMappingAudioProcessor;
+  }
+
+  private static TrimmingAudioProcessor createTrimmingAudioProcessor(
+      int trimStartFrames, int trimEndFrames) {
+    TrimmingAudioProcessor trimmingAudioProcessor = new TrimmingAudioProcessor();
+    trimmingAudioProcessor.setTrimFrameCount(trimStartFrames, trimEndFrames);
+    return trimmingAudioProcessor;
+  }
+}
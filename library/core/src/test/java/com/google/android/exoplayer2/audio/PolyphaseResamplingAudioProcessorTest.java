@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assume.assumeTrue;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import com.google.android.exoplayer2.audio.AudioProcessor.UnhandledAudioFormatException;
+import com.google.android.exoplayer2.testutil.AllocationCounter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link PolyphaseResamplingAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class PolyphaseResamplingAudioProcessorTest {
+
+  private static final AudioFormat AUDIO_FORMAT_44100_HZ =
+      new AudioFormat(
+          /* sampleRate= */ 44100, /* channelCount= */ 2, /* encoding= */ C.ENCODING_PCM_FLOAT);
+
+  @Test
+  public void configure_withSameSampleRate_isNotActive() throws Exception {
+    PolyphaseResamplingAudioProcessor resamplingAudioProcessor =
+        new PolyphaseResamplingAudioProcessor();
+
+    resamplingAudioProcessor.configure(AUDIO_FORMAT_44100_HZ);
+    boolean isActiveWithoutOutputSampleRate = resamplingAudioProcessor.isActive();
+    resamplingAudioProcessor.setOutputSampleRateHz(44100);
+    resamplingAudioProcessor.configure(AUDIO_FORMAT_44100_HZ);
+
+    assertThat(isActiveWithoutOutputSampleRate).isFalse();
+    assertThat(resamplingAudioProcessor.isActive()).isFalse();
+  }
+
+  @Test
+  public void configure_withDifferentSampleRate_outputsSampleRate() throws Exception {
+    PolyphaseResamplingAudioProcessor resamplingAudioProcessor =
+        new PolyphaseResamplingAudioProcessor();
+    resamplingAudioProcessor.setOutputSampleRateHz(48000);
+
+    AudioFormat outputAudioFormat = resamplingAudioProcessor.configure(AUDIO_FORMAT_44100_HZ);
+
+    assertThat(resamplingAudioProcessor.isActive()).isTrue();
+    assertThat(outputAudioFormat)
+        .isEqualTo(
+            new AudioFormat(
+                /* sampleRate= */ 48000,
+                /* channelCount= */ 2,
+                /* encoding= */ C.ENCODING_PCM_FLOAT));
+  }
+
+  @Test
+  public void configure_withRatioTooLargeForFilter_isNotActive() throws Exception {
+    PolyphaseResamplingAudioProcessor resamplingAudioProcessor =
+        new PolyphaseResamplingAudioProcessor();
+    resamplingAudioProcessor.setOutputSampleRateHz(48001);
+
+    AudioFormat outputAudioFormat = resamplingAudioProcessor.configure(AUDIO_FORMAT_44100_HZ);
+
+    assertThat(resamplingAudioProcessor.isActive()).isFalse();
+    assertThat(outputAudioFormat).isEqualTo(AudioFormat.NOT_SET);
+  }
+
+  @Test
+  public void configure_withUnsupportedEncoding_throws() {
+    PolyphaseResamplingAudioProcessor resamplingAudioProcessor =
+        new PolyphaseResamplingAudioProcessor();
+    resamplingAudioProcessor.setOutputSampleRateHz(48000);
+
+    assertThrows(
+        UnhandledAudioFormatException.class,
+        () ->
+            resamplingAudioProcessor.configure(
+                new AudioFormat(
+                    /* sampleRate= */ 44100,
+                    /* channelCount= */ 2,
+                    /* encoding= */ C.ENCODING_PCM_24BIT)));
+  }
+
+  @Test
+  public void process_upsampling_outputsExpectedFrameCountAndAccurateSineWave() throws Exception {
+    float[] input = createSineWave(/* frequencyHz= */ 997, /* sampleRate= */ 44100, 44100);
+
+    float[] output =
+        resample(
+            input,
+            /* inputSampleRate= */ 44100,
+            /* outputSampleRate= */ 48000,
+            C.ENCODING_PCM_FLOAT,
+            new Random(/* seed= */ 0));
+
+    assertThat(output).hasLength(48000);
+    float[] expectedOutput =
+        createSineWave(/* frequencyHz= */ 997, /* sampleRate= */ 48000, output.length);
+    // The first and last frames are affected by the silence assumed outside of the input.
+    assertThat(getMaxDifference(output, expectedOutput, /* skippedFrameCount= */ 100))
+        .isLessThan(1e-4f);
+  }
+
+  @Test
+  public void process_downsampling_outputsExpectedFrameCountAndAccurateSineWave()
+      throws Exception {
+    float[] input = createSineWave(/* frequencyHz= */ 997, /* sampleRate= */ 48000, 48001);
+
+    float[] output =
+        resample(
+            input,
+            /* inputSampleRate= */ 48000,
+            /* outputSampleRate= */ 44100,
+            C.ENCODING_PCM_FLOAT,
+            new Random(/* seed= */ 0));
+
+    // ceil(48001 * 147 / 160).
+    assertThat(output).hasLength(44101);
+    float[] expectedOutput =
+        createSineWave(/* frequencyHz= */ 997, /* sampleRate= */ 44100, output.length);
+    assertThat(getMaxDifference(output, expectedOutput, /* skippedFrameCount= */ 100))
+        .isLessThan(1e-4f);
+  }
+
+  @Test
+  public void process_downsampling_attenuatesFrequenciesAboveOutputNyquistFrequency()
+      throws Exception {
+    float[] input = createSineWave(/* frequencyHz= */ 23000, /* sampleRate= */ 48000, 48000);
+
+    float[] output =
+        resample(
+            input,
+            /* inputSampleRate= */ 48000,
+            /* outputSampleRate= */ 44100,
+            C.ENCODING_PCM_FLOAT,
+            new Random(/* seed= */ 0));
+
+    // The tone would alias to 21.1 kHz. It should be attenuated by at least 70 dB.
+    float[] silence = new float[output.length];
+    assertThat(getMaxDifference(output, silence, /* skippedFrameCount= */ 100)).isLessThan(1e-4f);
+  }
+
+  @Test
+  public void process_inChunks_matchesProcessingAtOnce() throws Exception {
+    float[] input = createSineWave(/* frequencyHz= */ 440, /* sampleRate= */ 44100, 20000);
+
+    float[] outputInRandomChunks =
+        resample(
+            input,
+            /* inputSampleRate= */ 44100,
+            /* outputSampleRate= */ 48000,
+            C.ENCODING_PCM_FLOAT,
+            new Random(/* seed= */ 0));
+    float[] outputAtOnce =
+        resample(
+            input,
+            /* inputSampleRate= */ 44100,
+            /* outputSampleRate= */ 48000,
+            C.ENCODING_PCM_FLOAT,
+            /* random= */ null);
+
+    assertThat(outputInRandomChunks).isEqualTo(outputAtOnce);
+  }
+
+  @Test
+  public void process16BitInput_matchesFloatInput() throws Exception {
+    float[] input = createSineWave(/* frequencyHz= */ 440, /* sampleRate= */ 44100, 20000);
+    for (int i = 0; i < input.length; i++) {
+      input[i] = Math.round(input[i] * Short.MAX_VALUE) / (float) Short.MAX_VALUE;
+    }
+
+    float[] shortOutput =
+        resample(
+            input,
+            /* inputSampleRate= */ 44100,
+            /* outputSampleRate= */ 48000,
+            C.ENCODING_PCM_16BIT,
+            new Random(/* seed= */ 0));
+    float[] floatOutput =
+        resample(
+            input,
+            /* inputSampleRate= */ 44100,
+            /* outputSampleRate= */ 48000,
+            C.ENCODING_PCM_FLOAT,
+            new Random(/* seed= */ 0));
+
+    assertThat(shortOutput).hasLength(floatOutput.length);
+    // Allow for rounding to 16-bit integers.
+    assertThat(getMaxDifference(shortOutput, floatOutput, /* skippedFrameCount= */ 0))
+        .isLessThan(1f / Short.MAX_VALUE);
+  }
+
+  @Test
+  public void flush_discardsBufferedInput() throws Exception {
+    float[] input = createSineWave(/* frequencyHz= */ 440, /* sampleRate= */ 44100, 10000);
+    PolyphaseResamplingAudioProcessor resamplingAudioProcessor =
+        new PolyphaseResamplingAudioProcessor();
+    resamplingAudioProcessor.setOutputSampleRateHz(48000);
+    resamplingAudioProcessor.configure(
+        new AudioFormat(/* sampleRate= */ 44100, /* channelCount= */ 1, C.ENCODING_PCM_FLOAT));
+    resamplingAudioProcessor.flush();
+    resamplingAudioProcessor.queueInput(createFloatBuffer(input, 0, 1234));
+    resamplingAudioProcessor.getOutput();
+
+    resamplingAudioProcessor.flush();
+    float[] outputAfterFlush = processAll(resamplingAudioProcessor, input, /* random= */ null);
+
+    assertThat(outputAfterFlush)
+        .isEqualTo(
+            resample(
+                input,
+                /* inputSampleRate= */ 44100,
+                /* outputSampleRate= */ 48000,
+                C.ENCODING_PCM_FLOAT,
+                /* random= */ null));
+  }
+
+  @Test
+  public void queueInput_afterWarmUp_doesNotAllocate() throws Exception {
+    assumeTrue(AllocationCounter.isSupported());
+    PolyphaseResamplingAudioProcessor resamplingAudioProcessor =
+        new PolyphaseResamplingAudioProcessor();
+    resamplingAudioProcessor.setOutputSampleRateHz(48000);
+    resamplingAudioProcessor.configure(AUDIO_FORMAT_44100_HZ);
+    resamplingAudioProcessor.flush();
+    ByteBuffer inputBuffer =
+        createFloatBuffer(
+            createSineWave(/* frequencyHz= */ 440, /* sampleRate= */ 44100, 2048), 0, 2048);
+    int bufferCount = 1_000;
+
+    // Warm up, so that the output buffer has reached its final size.
+    for (int i = 0; i < 10; i++) {
+      inputBuffer.rewind();
+      resamplingAudioProcessor.queueInput(inputBuffer);
+      resamplingAudioProcessor.getOutput();
+    }
+    long allocatedBytesBefore = AllocationCounter.getCurrentThreadAllocatedBytes();
+    for (int i = 0; i < bufferCount; i++) {
+      inputBuffer.rewind();
+      resamplingAudioProcessor.queueInput(inputBuffer);
+      resamplingAudioProcessor.getOutput();
+    }
+    long allocatedBytes =
+        AllocationCounter.getCurrentThreadAllocatedBytes() - allocatedBytesBefore;
+
+    // Allow for the constant number of bytes allocated when counting allocations.
+    assertThat(allocatedBytes).isLessThan(bufferCount);
+  }
+
+  /**
+   * Resamples mono audio, queueing it in chunks of random sizes, or in a single chunk if {@code
+   * random} is null, and returns the output.
+   */
+  private static float[] resample(
+      float[] input,
+      int inputSampleRate,
+      int outputSampleRate,
+      @C.PcmEncoding int encoding,
+      @Nullable Random random)
+      throws Exception {
+    PolyphaseResamplingAudioProcessor resamplingAudioProcessor =
+        new PolyphaseResamplingAudioProcessor();
+    resamplingAudioProcessor.setOutputSampleRateHz(outputSampleRate);
+    resamplingAudioProcessor.configure(
+        new AudioFormat(inputSampleRate, /* channelCount= */ 1, encoding));
+    resamplingAudioProcessor.flush();
+    return processAll(resamplingAudioProcessor, input, random);
+  }
+
+  private static float[] processAll(
+      PolyphaseResamplingAudioProcessor resamplingAudioProcessor,
+      float[] input,
+      @Nullable Random random) {
+    boolean isFloat = resamplingAudioProcessor.inputAudioFormat.encoding == C.ENCODING_PCM_FLOAT;
+    float[] output = new float[input.length * 2];
+    int outputLength = 0;
+    int position = 0;
+    while (position < input.length) {
+      int chunkSize =
+          random == null ? input.length : min(input.length - position, 1 + random.nextInt(3000));
+      resamplingAudioProcessor.queueInput(
+          isFloat
+              ? createFloatBuffer(input, position, chunkSize)
+              : createShortBuffer(input, position, chunkSize));
+      position += chunkSize;
+      outputLength =
+          readOutput(resamplingAudioProcessor.getOutput(), isFloat, output, outputLength);
+    }
+    resamplingAudioProcessor.queueEndOfStream();
+    while (!resamplingAudioProcessor.isEnded()) {
+      outputLength =
+          readOutput(resamplingAudioProcessor.getOutput(), isFloat, output, outputLength);
+    }
+    float[] result = new float[outputLength];
+    System.arraycopy(output, 0, result, 0, outputLength);
+    return result;
+  }
+
+  private static int readOutput(
+      ByteBuffer buffer, boolean isFloat, float[] output, int outputLength) {
+    while (buffer.hasRemaining()) {
+      output[outputLength++] =
+          isFloat ? buffer.getFloat() : buffer.getShort() / (float) Short.MAX_VALUE;
+    }
+    return outputLength;
+  }
+
+  private static ByteBuffer createFloatBuffer(float[] samples, int offset, int length) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(length * 4).order(ByteOrder.nativeOrder());
+    for (int i = offset; i < offset + length; i++) {
+      buffer.putFloat(samples[i]);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static ByteBuffer createShortBuffer(float[] samples, int offset, int length) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(length * 2).order(ByteOrder.nativeOrder());
+    for (int i = offset; i < offset + length; i++) {
+      buffer.putShort((short) Math.round(samples[i] * Short.MAX_VALUE));
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static float[] createSineWave(int frequencyHz, int sampleRate, int length) {
+    float[] samples = new float[length];
+    for (int i = 0; i < length; i++) {
+      samples[i] = (float) (0.5 * Math.sin(2 * Math.PI * frequencyHz * i / sampleRate));
+    }
+    return samples;
+  }
+
+  /**
+   * Returns the maximum absolute difference between samples of {@code actual} and {@code
+   * expected}, ignoring {@code skippedFrameCount} frames at either end.
+   */
+  private static float getMaxDifference(float[] actual, float[] expected, int skippedFrameCount) {
+    float maxDifference = 0;
+    for (int i = skippedFrameCount; i < actual.length - skippedFrameCount; i++) {
+      maxDifference = Math.max(maxDifference, Math.abs(actual[i] - expected[i]));
+    }
+    return maxDifference;
+  }
+}
@@ -22,6 +22,10 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
 import com.google.android.exoplayer2.audio.AudioProcessor.UnhandledAudioFormatException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -39,6 +43,9 @@ public final class SonicAudioProcessorTest {
   private static final AudioFormat AUDIO_FORMAT_48000_HZ =
       new AudioFormat(
           /* sampleRate= */ 48000, /* channelCount= */ 2, /* encoding= */ C.ENCODING_PCM_16BIT);
+  private static final AudioFormat AUDIO_FORMAT_44100_HZ_FLOAT =
+      new AudioFormat(
+          /* sampleRate= */ 44100, /* channelCount= */ 2, /* encoding= */ C.ENCODING_PCM_FLOAT);
 
   private SonicAudioProcessor sonicAudioProcessor;
 
@@ -91,6 +98,58 @@ public final class SonicAudioProcessorTest {
     assertThat(sonicAudioProcessor.isActive()).isFalse();
   }
 
+  @Test
+  public void configure_withFloatInput_outputsFloat() throws Exception {
+    sonicAudioProcessor.setOutputSampleRateHz(48000);
+
+    AudioFormat outputAudioFormat = sonicAudioProcessor.configure(AUDIO_FORMAT_44100_HZ_FLOAT);
+
+    assertThat(sonicAudioProcessor.isActive()).isTrue();
+    assertThat(outputAudioFormat.sampleRate).isEqualTo(48000);
+    assertThat(outputAudioFormat.encoding).isEqualTo(C.ENCODING_PCM_FLOAT);
+  }
+
+  @Test
+  public void processFloatInput_withSpeedAndPitchChange_matches16BitOutput() throws Exception {
+    int frameCount = 44100;
+    float[] samples = createSineWave(frameCount, AUDIO_FORMAT_44100_HZ.channelCount);
+    ByteBuffer shortInput =
+        ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder());
+    ByteBuffer floatInput =
+        ByteBuffer.allocateDirect(samples.length * 4).order(ByteOrder.nativeOrder());
+    for (float sample : samples) {
+      shortInput.putShort((short) (sample * Short.MAX_VALUE));
+      floatInput.putFloat(sample);
+    }
+    shortInput.flip();
+    floatInput.flip();
+    SonicAudioProcessor floatSonicAudioProcessor = new SonicAudioProcessor();
+    sonicAudioProcessor.setSpeed(2f);
+    sonicAudioProcessor.setPitch(1.2f);
+    floatSonicAudioProcessor.setSpeed(2f);
+    floatSonicAudioProcessor.setPitch(1.2f);
+    sonicAudioProcessor.configure(AUDIO_FORMAT_44100_HZ);
+    floatSonicAudioProcessor.configure(AUDIO_FORMAT_44100_HZ_FLOAT);
+    sonicAudioProcessor.flush();
+    floatSonicAudioProcessor.flush();
+
+    ByteBuffer shortOutput = processAll(sonicAudioProcessor, shortInput);
+    ByteBuffer floatOutput = processAll(floatSonicAudioProcessor, floatInput);
+
+    ShortBuffer shortSamples = shortOutput.asShortBuffer();
+    FloatBuffer floatSamples = floatOutput.asFloatBuffer();
+    int outputSampleCount = shortSamples.remaining();
+    assertThat(floatSamples.remaining()).isEqualTo(outputSampleCount);
+    assertThat(outputSampleCount).isGreaterThan(samples.length * 2 / 5);
+    assertThat(outputSampleCount).isLessThan(samples.length * 3 / 5);
+    double totalDifference = 0;
+    while (shortSamples.hasRemaining()) {
+      totalDifference +=
+          Math.abs(floatSamples.get() - (float) shortSamples.get() / Short.MAX_VALUE);
+    }
+    assertThat(totalDifference / outputSampleCount).isLessThan(0.001);
+  }
+
   @Test
   public void doesNotSupportNon16BitInput() throws Exception {
     try {
@@ -122,4 +181,32 @@ public final class SonicAudioProcessorTest {
       // Expected.
     }
   }
+
+  private static float[] createSineWave(int frameCount, int channelCount) {
+    float[] samples = new float[frameCount * channelCount];
+    for (int i = 0; i < frameCount; i++) {
+      float sample = (float) (0.5 * Math.sin(2 * Math.PI * 220 * i / 44100));
+      for (int j = 0; j < channelCount; j++) {
+        samples[i * channelCount + j] = sample;
+      }
+    }
+    return samples;
+  }
+
+  private static ByteBuffer processAll(AudioProcessor audioProcessor, ByteBuffer input) {
+    ByteBuffer output = ByteBuffer.allocate(input.remaining() * 2).order(ByteOrder.nativeOrder());
+    while (input.hasRemaining()) {
+      ByteBuffer chunk = input.slice().order(ByteOrder.nativeOrder());
+      chunk.limit(Math.min(chunk.limit(), 4096));
+      audioProcessor.queueInput(chunk);
+      input.position(input.position() + chunk.position());
+      output.put(audioProcessor.getOutput());
+    }
+    audioProcessor.queueEndOfStream();
+    while (!audioProcessor.isEnded()) {
+      output.put(audioProcessor.getOutput());
+    }
+    output.flip();
+    return output;
+  }
 }
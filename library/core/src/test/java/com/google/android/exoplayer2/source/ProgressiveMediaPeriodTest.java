@@ -30,6 +30,8 @@ import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
 import com.google.android.exoplayer2.upstream.AssetDataSource;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
 import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
+import com.google.android.exoplayer2.util.ReleasableExecutor;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.Test;
@@ -53,6 +55,63 @@ public final class ProgressiveMediaPeriodTest {
         new MediaParserExtractorAdapter(PlayerId.UNSET));
   }
 
+  @Test
+  public void prepare_withSharedSingleThreadPool_waitingLoadDoesNotBlockOtherPeriods()
+      throws TimeoutException {
+    LoaderThreadPool loaderThreadPool = new LoaderThreadPool(/* maxThreadCount= */ 1);
+    // A period whose loading isn't continued, as when its player is paused with a full buffer.
+    AtomicBoolean continueWaitingPeriodLoading = new AtomicBoolean(false);
+    AtomicBoolean waitingPeriodPrepared = new AtomicBoolean(false);
+    ProgressiveMediaPeriod waitingPeriod =
+        createMediaPeriod(
+            loaderThreadPool.createExecutor(), /* continueLoadingCheckIntervalBytes= */ 1);
+    waitingPeriod.prepare(
+        new MediaPeriod.Callback() {
+          @Override
+          public void onPrepared(MediaPeriod mediaPeriod) {
+            waitingPeriodPrepared.set(true);
+          }
+
+          @Override
+          public void onContinueLoadingRequested(MediaPeriod source) {
+            if (continueWaitingPeriodLoading.get()) {
+              source.continueLoading(/* positionUs= */ 0);
+            }
+          }
+        },
+        /* positionUs= */ 0);
+    runMainLooperUntil(() -> !waitingPeriod.isLoading());
+
+    AtomicBoolean otherPeriodPrepared = new AtomicBoolean(false);
+    ProgressiveMediaPeriod otherPeriod =
+        createMediaPeriod(
+            loaderThreadPool.createExecutor(),
+            ProgressiveMediaSource.DEFAULT_LOADING_CHECK_INTERVAL_BYTES);
+    otherPeriod.prepare(
+        new MediaPeriod.Callback() {
+          @Override
+          public void onPrepared(MediaPeriod mediaPeriod) {
+            otherPeriodPrepared.set(true);
+          }
+
+          @Override
+          public void onContinueLoadingRequested(MediaPeriod source) {
+            source.continueLoading(/* positionUs= */ 0);
+          }
+        },
+        /* positionUs= */ 0);
+    runMainLooperUntil(otherPeriodPrepared::get);
+    continueWaitingPeriodLoading.set(true);
+    waitingPeriod.continueLoading(/* positionUs= */ 0);
+    runMainLooperUntil(waitingPeriodPrepared::get);
+    waitingPeriod.release();
+    otherPeriod.release();
+    loaderThreadPool.release();
+
+    assertThat(otherPeriodPrepared.get()).isTrue();
+    assertThat(waitingPeriodPrepared.get()).isTrue();
+  }
+
   private static void testExtractorsUpdatesSourceInfoBeforeOnPreparedCallback(
       ProgressiveMediaExtractor extractor) throws TimeoutException {
     AtomicBoolean sourceInfoRefreshCalled = new AtomicBoolean(false);
@@ -96,4 +155,24 @@ public final class ProgressiveMediaPeriodTest {
 
     assertThat(sourceInfoRefreshCalledBeforeOnPrepared.get()).isTrue();
   }
+
+  private static ProgressiveMediaPeriod createMediaPeriod(
+      ReleasableExecutor downloadExecutor, int continueLoadingCheckIntervalBytes) {
+    MediaPeriodId mediaPeriodId = new MediaPeriodId(/* periodUid= */ new Object());
+    return new ProgressiveMediaPeriod(
+        Uri.parse("asset://android_asset/media/mp4/sample.mp4"),
+        new AssetDataSource(ApplicationProvider.getApplicationContext()),
+        new BundledExtractorsAdapter(Mp4Extractor.FACTORY),
+        DrmSessionManager.DRM_UNSUPPORTED,
+        new DrmSessionEventListener.EventDispatcher()
+            .withParameters(/* windowIndex= */ 0, mediaPeriodId),
+        new DefaultLoadErrorHandlingPolicy(),
+        new MediaSourceEventListener.EventDispatcher()
+            .withParameters(/* windowIndex= */ 0, mediaPeriodId, /* mediaTimeOffsetMs= */ 0),
+        (durationUs, isSeekable, isLive) -> {},
+        new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+        /* customCacheKey= */ null,
+        continueLoadingCheckIntervalBytes,
+        downloadExecutor);
+  }
 }
@@ -25,6 +25,7 @@ import static com.google.android.exoplayer2.source.SampleStream.FLAG_PEEK;
 import static com.google.common.truth.Truth.assertThat;
 import static java.lang.Long.MAX_VALUE;
 import static java.lang.Long.MIN_VALUE;
+import static java.lang.Math.min;
 import static java.util.Arrays.copyOfRange;
 import static org.junit.Assert.assertArrayEquals;
 import static org.mockito.Mockito.when;
@@ -46,11 +47,13 @@ import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.testutil.FakeCryptoConfig;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DataReader;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.common.primitives.Bytes;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
@@ -377,6 +380,98 @@ public final class SampleQueueTest {
     assertAllocationCount(0);
   }
 
+  @Test
+  public void readMultiSamples_withDirectBufferAllocations() {
+    allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ false,
+            ALLOCATION_SIZE,
+            /* initialAllocationCount= */ 0,
+            /* useThreadCaches= */ false,
+            /* useDirectBuffers= */ true);
+    sampleQueue = new SampleQueue(allocator, mockDrmSessionManager, eventDispatcher);
+    inputBuffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DIRECT);
+
+    writeTestData();
+    assertAllocationCount(10);
+    assertReadTestData();
+    sampleQueue.discardToRead();
+    assertAllocationCount(0);
+  }
+
+  @Test
+  public void readEncryptedSamples_withDirectBufferAllocations() {
+    allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ false,
+            ALLOCATION_SIZE,
+            /* initialAllocationCount= */ 4,
+            /* useThreadCaches= */ false,
+            /* useDirectBuffers= */ true);
+    sampleQueue = new SampleQueue(allocator, mockDrmSessionManager, eventDispatcher);
+    when(mockDrmSession.getState()).thenReturn(DrmSession.STATE_OPENED_WITH_KEYS);
+    writeTestDataWithEncryptedSections();
+
+    assertReadFormat(/* formatRequired= */ false, FORMAT_ENCRYPTED_WITH_EXO_MEDIA_CRYPTO_TYPE);
+    assertReadEncryptedSample(/* sampleIndex= */ 0);
+    assertReadEncryptedSample(/* sampleIndex= */ 1);
+  }
+
+  @Test
+  public void sampleDataFromDataReader_withDirectBufferAllocations_readsIntoAllocations()
+      throws Exception {
+    allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ false,
+            ALLOCATION_SIZE,
+            /* initialAllocationCount= */ 0,
+            /* useThreadCaches= */ false,
+            /* useDirectBuffers= */ true);
+    sampleQueue = new SampleQueue(allocator, mockDrmSessionManager, eventDispatcher);
+    inputBuffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DIRECT);
+    ByteBuffer data = ByteBuffer.wrap(DATA);
+    DataReader dataReader =
+        new DataReader() {
+          @Override
+          public int read(byte[] buffer, int offset, int length) {
+            throw new UnsupportedOperationException();
+          }
+
+          @Override
+          public int read(ByteBuffer buffer, int length) {
+            int bytesRead = min(length, data.remaining());
+            for (int i = 0; i < bytesRead; i++) {
+              buffer.put(data.get());
+            }
+            return bytesRead;
+          }
+        };
+
+    sampleQueue.format(FORMAT_1);
+    int bytesWritten = 0;
+    while (bytesWritten < DATA.length) {
+      bytesWritten +=
+          sampleQueue.sampleData(
+              dataReader, DATA.length - bytesWritten, /* allowEndOfInput= */ false);
+    }
+    sampleQueue.sampleMetadata(
+        /* timeUs= */ 0,
+        C.BUFFER_FLAG_KEY_FRAME,
+        /* size= */ DATA.length,
+        /* offset= */ 0,
+        /* cryptoData= */ null);
+
+    assertReadFormat(/* formatRequired= */ false, FORMAT_1);
+    assertReadSample(
+        /* timeUs= */ 0,
+        /* isKeyFrame= */ true,
+        /* isDecodeOnly= */ false,
+        /* isEncrypted= */ false,
+        DATA,
+        /* offset= */ 0,
+        DATA.length);
+  }
+
   @Test
   public void readMultiWithSeek() {
     writeTestData();
@@ -0,0 +1,457 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.FakeMediaChunk;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.BurstAwareBandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Simulates playbacks of adaptive streams over network traces, to check the behavior of {@link
+ * BolaTrackSelection} with a {@link BurstAwareBandwidthMeter}.
+ *
+ * <p>The simulation replays a trace of the network capacity over time. Segments are downloaded one
+ * at a time in reads of 10 ms of data, which are reported to the {@link TransferListener} of the
+ * bandwidth meter, and {@link FakeMediaChunk FakeMediaChunks} are queued for the downloaded
+ * segments. For low-latency live streams, the segments are made of parts that become available in
+ * real time at the live edge and are sent as soon as they're available, as with chunked transfer
+ * encoding.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class BolaTrackSelectionSimulationTest {
+
+  private static final String TAG = "BolaSimulation";
+
+  private static final int[] BITRATES = new int[] {400_000, 1_000_000, 2_500_000, 5_000_000};
+  private static final long INITIAL_BITRATE_ESTIMATE = 1_000_000;
+
+  private FakeClock clock;
+  private TrackGroup trackGroup;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+    Format[] formats = new Format[BITRATES.length];
+    for (int i = 0; i < BITRATES.length; i++) {
+      formats[i] =
+          new Format.Builder()
+              .setSampleMimeType(MimeTypes.VIDEO_H264)
+              .setAverageBitrate(BITRATES[i])
+              .build();
+    }
+    trackGroup = new TrackGroup(formats);
+  }
+
+  @Test
+  public void lowLatencyLive_withAmpleBandwidth_reachesHighestBitrateWithoutRebuffering() {
+    NetworkTrace trace = NetworkTrace.constant(/* bitrate= */ 10_000_000);
+
+    SimulationResult result =
+        simulateLowLatencyLive(trace, createBurstAwareBandwidthMeter(), /* durationMs= */ 60_000);
+
+    assertThat(result.getFinalBitrate()).isEqualTo(5_000_000);
+    assertThat(result.rebufferingTimeMs).isEqualTo(0);
+  }
+
+  @Test
+  public void lowLatencyLive_burstAwareBandwidthMeter_selectsHigherBitratesThanDefaultMeter() {
+    NetworkTrace trace = NetworkTrace.constant(/* bitrate= */ 10_000_000);
+
+    SimulationResult burstAwareResult =
+        simulateLowLatencyLive(trace, createBurstAwareBandwidthMeter(), /* durationMs= */ 60_000);
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+    SimulationResult defaultResult =
+        simulateLowLatencyLive(
+            trace,
+            new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+                .setInitialBitrateEstimate(INITIAL_BITRATE_ESTIMATE)
+                .setClock(clock)
+                .build(),
+            /* durationMs= */ 60_000);
+
+    // The default meter divides the bytes of each transfer by its duration, which is limited by
+    // the rate at which parts become available rather than by the network.
+    assertThat(burstAwareResult.getMeanBitrate()).isGreaterThan(defaultResult.getMeanBitrate());
+  }
+
+  @Test
+  public void lowLatencyLive_withBandwidthDrop_switchesDownAndRecovers() {
+    NetworkTrace trace =
+        new NetworkTrace(
+            /* changeTimesMs= */ new long[] {0, 30_000},
+            /* bitrates= */ new long[] {10_000_000, 1_500_000});
+
+    SimulationResult result =
+        simulateLowLatencyLive(trace, createBurstAwareBandwidthMeter(), /* durationMs= */ 90_000);
+
+    assertThat(result.getFinalBitrate()).isAtMost(1_000_000);
+    assertThat(result.getRebufferingCountAfter(/* timeMs= */ 45_000)).isEqualTo(0);
+  }
+
+  @Test
+  public void onDemand_withVaryingBandwidth_doesNotRebufferAndUsesBandwidth() {
+    NetworkTrace trace =
+        NetworkTrace.randomWalk(
+            new Random(/* seed= */ 0),
+            /* minBitrate= */ 1_500_000,
+            /* maxBitrate= */ 12_000_000,
+            /* intervalMs= */ 5_000,
+            /* durationMs= */ 300_000);
+
+    SimulationResult result =
+        simulateOnDemand(trace, createBurstAwareBandwidthMeter(), /* durationMs= */ 300_000);
+
+    assertThat(result.rebufferingTimeMs).isEqualTo(0);
+    assertThat(result.getMeanBitrate()).isAtLeast(2_500_000);
+  }
+
+  private BurstAwareBandwidthMeter createBurstAwareBandwidthMeter() {
+    return new BurstAwareBandwidthMeter.Builder()
+        .setInitialBitrateEstimate(INITIAL_BITRATE_ESTIMATE)
+        .setClock(clock)
+        .build();
+  }
+
+  private SimulationResult simulateLowLatencyLive(
+      NetworkTrace trace, BandwidthMeter bandwidthMeter, long durationMs) {
+    Simulator simulator =
+        new Simulator(
+            clock,
+            trace,
+            createTrackSelection(bandwidthMeter),
+            bandwidthMeter.getTransferListener(),
+            /* segmentDurationUs= */ 2_000_000,
+            /* partDurationUs= */ 500_000,
+            /* liveLatencyUs= */ 3_000_000);
+    SimulationResult result = simulator.run(durationMs);
+    Log.i(TAG, result.toString());
+    return result;
+  }
+
+  private SimulationResult simulateOnDemand(
+      NetworkTrace trace, BandwidthMeter bandwidthMeter, long durationMs) {
+    Simulator simulator =
+        new Simulator(
+            clock,
+            trace,
+            createTrackSelection(bandwidthMeter),
+            bandwidthMeter.getTransferListener(),
+            /* segmentDurationUs= */ 4_000_000,
+            /* partDurationUs= */ 4_000_000,
+            /* liveLatencyUs= */ C.TIME_UNSET);
+    SimulationResult result = simulator.run(durationMs);
+    Log.i(TAG, result.toString());
+    return result;
+  }
+
+  private BolaTrackSelection createTrackSelection(BandwidthMeter bandwidthMeter) {
+    int[] tracks = new int[trackGroup.length];
+    for (int i = 0; i < tracks.length; i++) {
+      tracks[i] = i;
+    }
+    return new BolaTrackSelection(
+        trackGroup,
+        tracks,
+        TrackSelection.TYPE_UNSET,
+        bandwidthMeter,
+        BolaTrackSelection.DEFAULT_MIN_BUFFER_MS,
+        BolaTrackSelection.DEFAULT_BUFFER_TARGET_MS,
+        BolaTrackSelection.DEFAULT_BANDWIDTH_FRACTION,
+        clock);
+  }
+
+  /** The capacity of a network over time. */
+  private static final class NetworkTrace {
+
+    private final long[] changeTimesMs;
+    private final long[] bitrates;
+
+    /**
+     * Creates a trace.
+     *
+     * @param changeTimesMs The times at which the capacity changes, in ascending order and starting
+     *     with 0.
+     * @param bitrates The capacity from each change time, in bits per second.
+     */
+    public NetworkTrace(long[] changeTimesMs, long[] bitrates) {
+      this.changeTimesMs = changeTimesMs;
+      this.bitrates = bitrates;
+    }
+
+    public static NetworkTrace constant(long bitrate) {
+      return new NetworkTrace(new long[] {0}, new long[] {bitrate});
+    }
+
+    /** Creates a trace whose capacity changes by a random factor at regular intervals. */
+    public static NetworkTrace randomWalk(
+        Random random, long minBitrate, long maxBitrate, long intervalMs, long durationMs) {
+      int changeCount = (int) (durationMs / intervalMs) + 1;
+      long[] changeTimesMs = new long[changeCount];
+      long[] bitrates = new long[changeCount];
+      double bitrate = Math.sqrt((double) minBitrate * maxBitrate);
+      for (int i = 0; i < changeCount; i++) {
+        changeTimesMs[i] = i * intervalMs;
+        bitrate *= Math.exp(random.nextGaussian() * 0.3);
+        bitrate = max(minBitrate, min(maxBitrate, bitrate));
+        bitrates[i] = (long) bitrate;
+      }
+      return new NetworkTrace(changeTimesMs, bitrates);
+    }
+
+    public long getBitrate(long timeMs) {
+      int index = Arrays.binarySearch(changeTimesMs, timeMs);
+      return bitrates[index >= 0 ? index : -index - 2];
+    }
+  }
+
+  /** The outcome of a simulated playback. */
+  private static final class SimulationResult {
+
+    public final List<Integer> segmentBitrates;
+    public final List<Long> rebufferingEndTimesMs;
+    public long rebufferingTimeMs;
+
+    public SimulationResult() {
+      segmentBitrates = new ArrayList<>();
+      rebufferingEndTimesMs = new ArrayList<>();
+    }
+
+    public int getFinalBitrate() {
+      return segmentBitrates.get(segmentBitrates.size() - 1);
+    }
+
+    public double getMeanBitrate() {
+      double sum = 0;
+      for (int bitrate : segmentBitrates) {
+        sum += bitrate;
+      }
+      return sum / segmentBitrates.size();
+    }
+
+    public int getRebufferingCountAfter(long timeMs) {
+      int count = 0;
+      for (long endTimeMs : rebufferingEndTimesMs) {
+        if (endTimeMs > timeMs) {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    @Override
+    public String toString() {
+      int switchCount = 0;
+      for (int i = 1; i < segmentBitrates.size(); i++) {
+        if (!segmentBitrates.get(i).equals(segmentBitrates.get(i - 1))) {
+          switchCount++;
+        }
+      }
+      return String.format(
+          Locale.US,
+          "Mean bitrate: %.0f, switches: %d, rebuffering: %d ms",
+          getMeanBitrate(),
+          switchCount,
+          rebufferingTimeMs);
+    }
+  }
+
+  /** Simulates the loading and playback of a stream over a {@link NetworkTrace}. */
+  private static final class Simulator {
+
+    private static final long READ_INTERVAL_MS = 10;
+    private static final long TIME_TO_FIRST_BYTE_MS = 50;
+    private static final long MAX_BUFFER_US = 30_000_000;
+    private static final long BUFFER_FOR_PLAYBACK_US = 500_000;
+
+    private final FakeClock clock;
+    private final NetworkTrace trace;
+    private final ExoTrackSelection trackSelection;
+    private final TransferListener transferListener;
+    private final long segmentDurationUs;
+    private final long partDurationUs;
+    private final long liveLatencyUs;
+    private final DataSource dataSource;
+    private final DataSpec dataSpec;
+    private final MediaChunkIterator[] mediaChunkIterators;
+    private final List<MediaChunk> queue;
+    private final SimulationResult result;
+
+    private long playbackPositionUs;
+    private long bufferedPositionUs;
+    private boolean isPlaying;
+    private long rebufferingStartTimeMs;
+
+    /**
+     * Creates a simulator.
+     *
+     * @param clock The clock, which is advanced by the simulation.
+     * @param trace The network trace.
+     * @param trackSelection The track selection.
+     * @param transferListener The listener to report the downloads to.
+     * @param segmentDurationUs The duration of a segment.
+     * @param partDurationUs The duration of a part of a segment, which is sent as soon as it's
+     *     available when loading from the live edge.
+     * @param liveLatencyUs The initial distance to the live edge, or {@link C#TIME_UNSET} for an
+     *     on-demand stream.
+     */
+    public Simulator(
+        FakeClock clock,
+        NetworkTrace trace,
+        ExoTrackSelection trackSelection,
+        TransferListener transferListener,
+        long segmentDurationUs,
+        long partDurationUs,
+        long liveLatencyUs) {
+      this.clock = clock;
+      this.trace = trace;
+      this.trackSelection = trackSelection;
+      this.transferListener = transferListener;
+      this.segmentDurationUs = segmentDurationUs;
+      this.partDurationUs = partDurationUs;
+      this.liveLatencyUs = liveLatencyUs;
+      dataSource = new FakeDataSource();
+      // The low-latency flag isn't set, so that DefaultBandwidthMeter doesn't ignore the loads.
+      dataSpec = new DataSpec(Uri.parse("https://test.com"));
+      mediaChunkIterators = new MediaChunkIterator[trackSelection.length()];
+      Arrays.fill(mediaChunkIterators, MediaChunkIterator.EMPTY);
+      queue = new ArrayList<>();
+      result = new SimulationResult();
+      rebufferingStartTimeMs = C.TIME_UNSET;
+    }
+
+    public SimulationResult run(long durationMs) {
+      long startTimeMs = clock.elapsedRealtime();
+      trackSelection.enable();
+      while (clock.elapsedRealtime() - startTimeMs < durationMs) {
+        if (liveLatencyUs == C.TIME_UNSET
+            && bufferedPositionUs - playbackPositionUs >= MAX_BUFFER_US) {
+          advanceTime(READ_INTERVAL_MS);
+          continue;
+        }
+        loadSegment();
+      }
+      trackSelection.disable();
+      return result;
+    }
+
+    private void loadSegment() {
+      long segmentStartUs = bufferedPositionUs;
+      long availableDurationUs =
+          liveLatencyUs == C.TIME_UNSET
+              ? C.TIME_UNSET
+              : getLiveEdgeUs() - playbackPositionUs;
+      trackSelection.updateSelectedTrack(
+          playbackPositionUs,
+          bufferedPositionUs - playbackPositionUs,
+          availableDurationUs,
+          queue,
+          mediaChunkIterators);
+      Format format = trackSelection.getSelectedFormat();
+      result.segmentBitrates.add(format.bitrate);
+
+      advanceTime(TIME_TO_FIRST_BYTE_MS);
+      transferListener.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+      for (long partStartUs = segmentStartUs;
+          partStartUs < segmentStartUs + segmentDurationUs;
+          partStartUs += partDurationUs) {
+        long partEndUs = partStartUs + partDurationUs;
+        if (liveLatencyUs != C.TIME_UNSET) {
+          // Wait until the part is available at the live edge.
+          while (getLiveEdgeUs() < partEndUs) {
+            advanceTime(min(READ_INTERVAL_MS, (partEndUs - getLiveEdgeUs() + 999) / 1000));
+          }
+        }
+        loadPart((long) format.bitrate * partDurationUs / 8_000_000);
+        bufferedPositionUs = partEndUs;
+      }
+      transferListener.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+      queue.add(
+          new FakeMediaChunk(
+              format,
+              segmentStartUs,
+              segmentStartUs + segmentDurationUs,
+              trackSelection.getSelectionReason()));
+    }
+
+    private void loadPart(long bytes) {
+      double pendingTimeMs = 0;
+      while (bytes > 0) {
+        long bitrate = trace.getBitrate(clock.elapsedRealtime());
+        long readBytes = min(bytes, bitrate * READ_INTERVAL_MS / 8_000);
+        pendingTimeMs += readBytes * 8_000d / bitrate;
+        long readTimeMs = (long) pendingTimeMs;
+        pendingTimeMs -= readTimeMs;
+        advanceTime(readTimeMs);
+        transferListener.onBytesTransferred(
+            dataSource, dataSpec, /* isNetwork= */ true, (int) readBytes);
+        bytes -= readBytes;
+      }
+    }
+
+    /** Advances the clock, playing the buffered media. */
+    private void advanceTime(long timeMs) {
+      clock.advanceTime(timeMs);
+      long bufferedDurationUs = bufferedPositionUs - playbackPositionUs;
+      if (!isPlaying && bufferedDurationUs >= BUFFER_FOR_PLAYBACK_US) {
+        isPlaying = true;
+        if (rebufferingStartTimeMs != C.TIME_UNSET) {
+          long nowMs = clock.elapsedRealtime();
+          result.rebufferingTimeMs += nowMs - rebufferingStartTimeMs;
+          result.rebufferingEndTimesMs.add(nowMs);
+        }
+      }
+      if (isPlaying) {
+        playbackPositionUs += min(timeMs * 1000, bufferedDurationUs);
+        if (playbackPositionUs == bufferedPositionUs) {
+          isPlaying = false;
+          rebufferingStartTimeMs = clock.elapsedRealtime();
+        }
+      }
+    }
+
+    private long getLiveEdgeUs() {
+      return liveLatencyUs + clock.elapsedRealtime() * 1000;
+    }
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeMediaChunk;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.common.collect.ImmutableList;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+/** Unit test for {@link BolaTrackSelection}. */
+@RunWith(AndroidJUnit4.class)
+public final class BolaTrackSelectionTest {
+
+  private static final int MIN_BUFFER_MS = 2_000;
+  private static final int BUFFER_TARGET_MS = 15_000;
+
+  @Mock private BandwidthMeter mockBandwidthMeter;
+  private FakeClock fakeClock;
+  private Format format1;
+  private Format format2;
+  private Format format3;
+  private TrackGroup trackGroup;
+
+  @Before
+  public void setUp() {
+    initMocks(this);
+    fakeClock = new FakeClock(0);
+    format1 = videoFormat(/* bitrate= */ 500);
+    format2 = videoFormat(/* bitrate= */ 1000);
+    format3 = videoFormat(/* bitrate= */ 2000);
+    trackGroup = new TrackGroup(format1, format2, format3);
+  }
+
+  @Test
+  public void initial_updateSelectedTrack_selectsHighestBitrateWithinBandwidthFraction() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+
+    BolaTrackSelection trackSelection =
+        prepareTrackSelectionWithBandwidthFraction(/* bandwidthFraction= */ 0.6f);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void updateSelectedTrack_withBufferBelowMinBuffer_selectsHighestBitrateWithinBandwidth() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(600L, 1000L);
+    BolaTrackSelection trackSelection = prepareTrackSelection();
+
+    updateSelectedTrack(
+        trackSelection, /* bufferedDurationMs= */ MIN_BUFFER_MS - 1, /* availableDurationMs= */ 0);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_withBufferAtMinBuffer_selectsLowestBitrate() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(10_000L);
+    BolaTrackSelection trackSelection = prepareTrackSelection();
+
+    updateSelectedTrack(
+        trackSelection, /* bufferedDurationMs= */ MIN_BUFFER_MS, /* availableDurationMs= */ 0);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format1);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_withBufferAtTarget_selectsHighestBitrate() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(600L, 10_000L);
+    BolaTrackSelection trackSelection = prepareTrackSelection();
+
+    updateSelectedTrack(
+        trackSelection, /* bufferedDurationMs= */ BUFFER_TARGET_MS, /* availableDurationMs= */ 0);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format3);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_withBufferAtTarget_doesNotSwitchUpBeyondBandwidth() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(600L, 1200L);
+    BolaTrackSelection trackSelection = prepareTrackSelection();
+
+    updateSelectedTrack(
+        trackSelection, /* bufferedDurationMs= */ BUFFER_TARGET_MS, /* availableDurationMs= */ 0);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_withBufferAtTarget_keepsPreviousTrackIfAboveBandwidth() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(600L);
+    BolaTrackSelection trackSelection = prepareTrackSelection();
+    FakeMediaChunk chunk =
+        new FakeMediaChunk(
+            format2,
+            /* startTimeUs= */ 0,
+            /* endTimeUs= */ 2_000_000,
+            C.SELECTION_REASON_ADAPTIVE);
+
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ BUFFER_TARGET_MS * 1000L,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ ImmutableList.of(chunk),
+        createMediaChunkIterators());
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_liveStream_limitsBufferTargetToLiveEdge() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(10_000L);
+    BolaTrackSelection liveTrackSelection = prepareTrackSelection();
+    BolaTrackSelection onDemandTrackSelection = prepareTrackSelection();
+
+    updateSelectedTrack(
+        liveTrackSelection, /* bufferedDurationMs= */ 2_500, /* availableDurationMs= */ 3_000);
+    updateSelectedTrack(
+        onDemandTrackSelection, /* bufferedDurationMs= */ 2_500, /* availableDurationMs= */ 0);
+
+    // The buffer target of the live stream is three quarters of the available duration.
+    assertThat(liveTrackSelection.getSelectedFormat()).isEqualTo(format3);
+    assertThat(onDemandTrackSelection.getSelectedFormat()).isEqualTo(format1);
+  }
+
+  @Test
+  public void updateSelectedTrack_withExcludedTracks_selectsAllowedTrack() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(10_000L);
+    BolaTrackSelection trackSelection = prepareTrackSelection();
+
+    trackSelection.blacklist(
+        trackSelection.indexOf(format3), /* exclusionDurationMs= */ BUFFER_TARGET_MS);
+    updateSelectedTrack(
+        trackSelection, /* bufferedDurationMs= */ BUFFER_TARGET_MS, /* availableDurationMs= */ 0);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+  }
+
+  private BolaTrackSelection prepareTrackSelection() {
+    return prepareTrackSelectionWithBandwidthFraction(/* bandwidthFraction= */ 1f);
+  }
+
+  private BolaTrackSelection prepareTrackSelectionWithBandwidthFraction(float bandwidthFraction) {
+    int[] tracks = new int[trackGroup.length];
+    for (int i = 0; i < tracks.length; i++) {
+      tracks[i] = i;
+    }
+    BolaTrackSelection trackSelection =
+        new BolaTrackSelection(
+            trackGroup,
+            tracks,
+            TrackSelection.TYPE_UNSET,
+            mockBandwidthMeter,
+            MIN_BUFFER_MS,
+            BUFFER_TARGET_MS,
+            bandwidthFraction,
+            fakeClock);
+    trackSelection.enable();
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 0,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        createMediaChunkIterators());
+    return trackSelection;
+  }
+
+  /**
+   * Updates the selected track with an empty queue.
+   *
+   * @param trackSelection The track selection.
+   * @param bufferedDurationMs The buffered duration, in milliseconds.
+   * @param availableDurationMs The duration between the playback position and the live edge, in
+   *     milliseconds, or 0 for an on-demand stream.
+   */
+  private void updateSelectedTrack(
+      BolaTrackSelection trackSelection, long bufferedDurationMs, long availableDurationMs) {
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        bufferedDurationMs * 1000,
+        availableDurationMs == 0 ? C.TIME_UNSET : availableDurationMs * 1000,
+        /* queue= */ Collections.emptyList(),
+        createMediaChunkIterators());
+  }
+
+  private MediaChunkIterator[] createMediaChunkIterators() {
+    MediaChunkIterator[] iterators = new MediaChunkIterator[trackGroup.length];
+    Arrays.fill(iterators, MediaChunkIterator.EMPTY);
+    return iterators;
+  }
+
+  private static Format videoFormat(int bitrate) {
+    return new Format.Builder()
+        .setSampleMimeType(MimeTypes.VIDEO_H264)
+        .setAverageBitrate(bitrate)
+        .build();
+  }
+}
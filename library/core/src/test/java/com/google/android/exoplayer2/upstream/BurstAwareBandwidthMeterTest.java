@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link BurstAwareBandwidthMeter}. */
+@RunWith(AndroidJUnit4.class)
+public final class BurstAwareBandwidthMeterTest {
+
+  private static final long INITIAL_BITRATE_ESTIMATE = 123_456;
+  /** The maximum relative error of the estimates, including the resolution of the clock. */
+  private static final double ACCURACY = 0.05;
+
+  private FakeClock clock;
+  private DataSource dataSource;
+  private DataSpec dataSpec;
+  private BurstAwareBandwidthMeter bandwidthMeter;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+    dataSource = new FakeDataSource();
+    dataSpec = new DataSpec(Uri.parse("https://test.com"));
+    bandwidthMeter =
+        new BurstAwareBandwidthMeter.Builder()
+            .setInitialBitrateEstimate(INITIAL_BITRATE_ESTIMATE)
+            .setClock(clock)
+            .build();
+  }
+
+  @Test
+  public void getBitrateEstimate_withoutTransfers_returnsInitialEstimate() {
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(INITIAL_BITRATE_ESTIMATE);
+  }
+
+  @Test
+  public void getBitrateEstimate_afterContinuousTransfer_returnsTransferRate() {
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    // 10 kB every 10 ms is 8 Mbps.
+    transferBurst(/* readCount= */ 100, /* bytesPerRead= */ 10_000, /* timeBetweenReadsMs= */ 10);
+    bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+
+    assertBitrateEstimateIsWithinAccuracyOf(8_000_000);
+  }
+
+  @Test
+  public void getBitrateEstimate_afterChunkedTransferWithIdleGaps_excludesIdleTime() {
+    DataSpec lowLatencyDataSpec =
+        new DataSpec.Builder()
+            .setUri("https://test.com")
+            .setFlags(DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED)
+            .build();
+    bandwidthMeter.onTransferStart(dataSource, lowLatencyDataSpec, /* isNetwork= */ true);
+    for (int i = 0; i < 10; i++) {
+      // Bursts at 8 Mbps, with more idle time than transfer time in between.
+      clock.advanceTime(400);
+      transferBurst(/* readCount= */ 10, /* bytesPerRead= */ 10_000, /* timeBetweenReadsMs= */ 10);
+    }
+    bandwidthMeter.onTransferEnd(dataSource, lowLatencyDataSpec, /* isNetwork= */ true);
+
+    assertBitrateEstimateIsWithinAccuracyOf(8_000_000);
+  }
+
+  @Test
+  public void getBitrateEstimate_afterBurstsShorterThanMinSampleDuration_combinesBursts() {
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    for (int i = 0; i < 100; i++) {
+      // Bursts of 10 ms at 4 Mbps.
+      clock.advanceTime(200);
+      transferBurst(/* readCount= */ 3, /* bytesPerRead= */ 2_500, /* timeBetweenReadsMs= */ 5);
+    }
+    bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+
+    assertBitrateEstimateIsWithinAccuracyOf(4_000_000);
+  }
+
+  @Test
+  public void getBitrateEstimate_afterRateChange_followsNewRate() {
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    transferBurst(/* readCount= */ 100, /* bytesPerRead= */ 10_000, /* timeBetweenReadsMs= */ 10);
+    for (int i = 0; i < 10; i++) {
+      // Bursts at 2 Mbps, ten half-lives later.
+      clock.advanceTime(BurstAwareBandwidthMeter.DEFAULT_HALF_LIFE_MS);
+      transferBurst(/* readCount= */ 100, /* bytesPerRead= */ 2_500, /* timeBetweenReadsMs= */ 10);
+    }
+    bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+
+    assertBitrateEstimateIsWithinAccuracyOf(2_000_000);
+  }
+
+  @Test
+  public void getBitrateEstimate_afterLocalTransfer_returnsInitialEstimate() {
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ false);
+    for (int i = 0; i < 100; i++) {
+      clock.advanceTime(10);
+      bandwidthMeter.onBytesTransferred(
+          dataSource, dataSpec, /* isNetwork= */ false, /* bytesTransferred= */ 10_000);
+    }
+    bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ false);
+
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(INITIAL_BITRATE_ESTIMATE);
+  }
+
+  private void transferBurst(int readCount, int bytesPerRead, long timeBetweenReadsMs) {
+    // The first read of a burst ends an idle period, so it isn't counted.
+    bandwidthMeter.onBytesTransferred(
+        dataSource, dataSpec, /* isNetwork= */ true, /* bytesTransferred= */ bytesPerRead);
+    for (int i = 0; i < readCount; i++) {
+      clock.advanceTime(timeBetweenReadsMs);
+      bandwidthMeter.onBytesTransferred(
+          dataSource, dataSpec, /* isNetwork= */ true, /* bytesTransferred= */ bytesPerRead);
+    }
+  }
+
+  private void assertBitrateEstimateIsWithinAccuracyOf(long bitrate) {
+    assertThat((double) bandwidthMeter.getBitrateEstimate())
+        .isWithin(bitrate * ACCURACY)
+        .of(bitrate);
+  }
+}
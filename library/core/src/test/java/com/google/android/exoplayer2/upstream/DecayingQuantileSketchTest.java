@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link DecayingQuantileSketch}. */
+@RunWith(AndroidJUnit4.class)
+public final class DecayingQuantileSketchTest {
+
+  private static final double RELATIVE_ACCURACY = 0.01;
+  private static final long HALF_LIFE_MS = 1000;
+
+  @Test
+  public void getQuantile_withoutSamples_returnsNaN() {
+    DecayingQuantileSketch sketch = createSketch();
+
+    assertThat(sketch.isEmpty()).isTrue();
+    assertThat(sketch.getQuantile(0.5)).isNaN();
+  }
+
+  @Test
+  public void getQuantile_withSamplesAtSameTime_isWithinRelativeAccuracy() {
+    DecayingQuantileSketch sketch = createSketch();
+    for (int i = 1; i <= 1000; i++) {
+      sketch.addSample(/* weight= */ 1, /* value= */ i, /* timeMs= */ 0);
+    }
+
+    assertThat(sketch.getQuantile(0.1)).isWithin(100 * RELATIVE_ACCURACY).of(100);
+    assertThat(sketch.getQuantile(0.5)).isWithin(500 * RELATIVE_ACCURACY).of(500);
+    assertThat(sketch.getQuantile(0.9)).isWithin(900 * RELATIVE_ACCURACY).of(900);
+    assertThat(sketch.getQuantile(0)).isWithin(RELATIVE_ACCURACY).of(1);
+    assertThat(sketch.getQuantile(1)).isWithin(1000 * RELATIVE_ACCURACY).of(1000);
+  }
+
+  @Test
+  public void getQuantile_withWeightedSamples_takesWeightsIntoAccount() {
+    DecayingQuantileSketch sketch = createSketch();
+    sketch.addSample(/* weight= */ 3, /* value= */ 100, /* timeMs= */ 0);
+    sketch.addSample(/* weight= */ 1, /* value= */ 1000, /* timeMs= */ 0);
+
+    assertThat(sketch.getQuantile(0.7)).isWithin(100 * RELATIVE_ACCURACY).of(100);
+    assertThat(sketch.getQuantile(0.8)).isWithin(1000 * RELATIVE_ACCURACY).of(1000);
+  }
+
+  @Test
+  public void getQuantile_withOlderSamples_decaysTheirWeight() {
+    DecayingQuantileSketch sketch = createSketch();
+    sketch.addSample(/* weight= */ 3, /* value= */ 100, /* timeMs= */ 0);
+    // After two half-lives, the first sample has a quarter of the weight of a new sample.
+    sketch.addSample(/* weight= */ 1, /* value= */ 1000, /* timeMs= */ 2 * HALF_LIFE_MS);
+
+    assertThat(sketch.getQuantile(0.4)).isWithin(100 * RELATIVE_ACCURACY).of(100);
+    assertThat(sketch.getQuantile(0.5)).isWithin(1000 * RELATIVE_ACCURACY).of(1000);
+  }
+
+  @Test
+  public void getQuantile_afterManyHalfLives_returnsRecentValues() {
+    DecayingQuantileSketch sketch = createSketch();
+    for (int i = 0; i < 100; i++) {
+      sketch.addSample(/* weight= */ 1, /* value= */ 100, /* timeMs= */ i * HALF_LIFE_MS);
+    }
+    for (int i = 100; i < 1000; i++) {
+      sketch.addSample(/* weight= */ 1, /* value= */ 1000, /* timeMs= */ i * HALF_LIFE_MS);
+    }
+
+    assertThat(sketch.getQuantile(0.01)).isWithin(1000 * RELATIVE_ACCURACY).of(1000);
+  }
+
+  @Test
+  public void getQuantile_withValuesOutsideRange_clampsValues() {
+    DecayingQuantileSketch sketch =
+        new DecayingQuantileSketch(
+            RELATIVE_ACCURACY, HALF_LIFE_MS, /* minValue= */ 10, /* maxValue= */ 1000);
+    sketch.addSample(/* weight= */ 1, /* value= */ 0, /* timeMs= */ 0);
+    sketch.addSample(/* weight= */ 1, /* value= */ 1_000_000, /* timeMs= */ 0);
+
+    assertThat(sketch.getQuantile(0)).isWithin(10 * RELATIVE_ACCURACY).of(10);
+    assertThat(sketch.getQuantile(1)).isWithin(1000 * RELATIVE_ACCURACY).of(1000);
+  }
+
+  @Test
+  public void getQuantiles_returnsSameValuesAsGetQuantile() {
+    DecayingQuantileSketch sketch = createSketch();
+    for (int i = 1; i <= 100; i++) {
+      sketch.addSample(/* weight= */ i % 7 + 1, /* value= */ i * i, /* timeMs= */ i * 100L);
+    }
+    double[] quantiles = new double[] {0, 0.1, 0.25, 0.5, 0.5, 0.9, 1};
+    double[] values = new double[quantiles.length];
+
+    sketch.getQuantiles(quantiles, values);
+
+    for (int i = 0; i < quantiles.length; i++) {
+      assertThat(values[i]).isEqualTo(sketch.getQuantile(quantiles[i]));
+    }
+  }
+
+  @Test
+  public void reset_removesAllSamples() {
+    DecayingQuantileSketch sketch = createSketch();
+    sketch.addSample(/* weight= */ 1, /* value= */ 100, /* timeMs= */ 0);
+
+    sketch.reset();
+    sketch.addSample(/* weight= */ 1, /* value= */ 1000, /* timeMs= */ 0);
+
+    assertThat(sketch.getQuantile(0)).isWithin(1000 * RELATIVE_ACCURACY).of(1000);
+  }
+
+  private static DecayingQuantileSketch createSketch() {
+    return new DecayingQuantileSketch(
+        RELATIVE_ACCURACY, HALF_LIFE_MS, /* minValue= */ 1, /* maxValue= */ 1_000_000);
+  }
+}
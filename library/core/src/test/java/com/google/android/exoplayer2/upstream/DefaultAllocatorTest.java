@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DefaultAllocator}. */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultAllocatorTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+
+  @Test
+  public void allocateAndRelease_updatesTotalBytesAllocated() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ true, ALLOCATION_SIZE, /* initialAllocationCount= */ 0);
+
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+    int bytesAllocatedBeforeRelease = allocator.getTotalBytesAllocated();
+    allocator.release(allocation1);
+
+    assertThat(bytesAllocatedBeforeRelease).isEqualTo(2 * ALLOCATION_SIZE);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(ALLOCATION_SIZE);
+    assertThat(allocator.allocate()).isSameInstanceAs(allocation1);
+    assertThat(allocation2.data).hasLength(ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void allocateAndRelease_withThreadCaches_reusesAllocations() {
+    DefaultAllocator allocator = createAllocatorWithThreadCaches(/* initialAllocationCount= */ 0);
+
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+    int bytesAllocatedBeforeRelease = allocator.getTotalBytesAllocated();
+    allocator.release(allocation1);
+
+    assertThat(bytesAllocatedBeforeRelease).isEqualTo(2 * ALLOCATION_SIZE);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(ALLOCATION_SIZE);
+    assertThat(allocator.allocate()).isSameInstanceAs(allocation1);
+    assertThat(allocator.allocate()).isNotSameInstanceAs(allocation2);
+  }
+
+  @Test
+  public void allocate_withThreadCaches_usesInitialAllocations() {
+    DefaultAllocator allocator = createAllocatorWithThreadCaches(/* initialAllocationCount= */ 4);
+
+    List<Allocation> allocations = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      allocations.add(allocator.allocate());
+    }
+
+    // All initial allocations are backed by the same block.
+    for (Allocation allocation : allocations) {
+      assertThat(allocation.data).isSameInstanceAs(allocations.get(0).data);
+    }
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(4 * ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void releaseAllocationNode_withThreadCaches_releasesAllAllocations() {
+    DefaultAllocator allocator = createAllocatorWithThreadCaches(/* initialAllocationCount= */ 0);
+    int allocationCount = DefaultAllocator.THREAD_CACHE_CAPACITY * 3;
+    List<Allocation> allocations = new ArrayList<>();
+    for (int i = 0; i < allocationCount; i++) {
+      allocations.add(allocator.allocate());
+    }
+
+    allocator.release(new TestAllocationNode(allocations, /* index= */ 0));
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+    // Every released allocation should be reused before any new ones are created.
+    List<Allocation> reallocations = new ArrayList<>();
+    for (int i = 0; i < allocationCount; i++) {
+      reallocations.add(allocator.allocate());
+    }
+    assertThat(reallocations).containsExactlyElementsIn(allocations);
+  }
+
+  @Test
+  public void trim_withThreadCaches_discardsAllocationsInSharedPool() {
+    DefaultAllocator allocator = createAllocatorWithThreadCaches(/* initialAllocationCount= */ 0);
+    int allocationCount = DefaultAllocator.THREAD_CACHE_CAPACITY * 4;
+    List<Allocation> allocations = new ArrayList<>();
+    for (int i = 0; i < allocationCount; i++) {
+      allocations.add(allocator.allocate());
+    }
+    for (Allocation allocation : allocations) {
+      allocator.release(allocation);
+    }
+
+    allocator.trim();
+
+    // At most THREAD_CACHE_CAPACITY allocations are retained by this thread's cache. All others
+    // should have been discarded, so allocating again must create new allocations.
+    int reusedCount = 0;
+    for (int i = 0; i < allocationCount; i++) {
+      if (allocations.contains(allocator.allocate())) {
+        reusedCount++;
+      }
+    }
+    assertThat(reusedCount).isAtMost(DefaultAllocator.THREAD_CACHE_CAPACITY);
+  }
+
+  @Test
+  public void allocateOnOneThreadAndReleaseOnAnother_withThreadCaches_keepsAccurateCount()
+      throws Exception {
+    DefaultAllocator allocator = createAllocatorWithThreadCaches(/* initialAllocationCount= */ 8);
+    int allocationCount = 10_000;
+    BlockingQueue<Allocation> queue = new ArrayBlockingQueue<>(/* capacity= */ 32);
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    Thread producer =
+        new Thread(
+            () -> {
+              try {
+                for (int i = 0; i < allocationCount; i++) {
+                  queue.put(allocator.allocate());
+                }
+              } catch (Throwable e) {
+                error.set(e);
+              }
+            });
+    Thread consumer =
+        new Thread(
+            () -> {
+              try {
+                for (int i = 0; i < allocationCount; i++) {
+                  allocator.release(queue.take());
+                }
+              } catch (Throwable e) {
+                error.set(e);
+              }
+            });
+
+    producer.start();
+    consumer.start();
+    producer.join();
+    consumer.join();
+
+    assertThat(error.get()).isNull();
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  @Test
+  public void allocate_withDirectBuffers_returnsDistinctRegionsOfDirectSlab() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ true,
+            ALLOCATION_SIZE,
+            /* initialAllocationCount= */ 0,
+            /* useThreadCaches= */ false,
+            /* useDirectBuffers= */ true);
+
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+
+    assertThat(allocation1.buffer).isNotNull();
+    assertThat(allocation1.buffer.isDirect()).isTrue();
+    assertThat(allocation1.data).isEmpty();
+    assertThat(allocation2.buffer).isSameInstanceAs(allocation1.buffer);
+    assertThat(allocation2.offset).isNotEqualTo(allocation1.offset);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(2 * ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void trim_withDirectBuffers_keepsInitialAllocations() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ true,
+            ALLOCATION_SIZE,
+            /* initialAllocationCount= */ 2,
+            /* useThreadCaches= */ false,
+            /* useDirectBuffers= */ true);
+    Allocation initialAllocation1 = allocator.allocate();
+    Allocation initialAllocation2 = allocator.allocate();
+    Allocation slabAllocation = allocator.allocate();
+    allocator.release(initialAllocation1);
+    allocator.release(slabAllocation);
+    allocator.release(initialAllocation2);
+
+    allocator.trim();
+
+    List<Allocation> allocations = new ArrayList<>();
+    allocations.add(allocator.allocate());
+    allocations.add(allocator.allocate());
+    assertThat(allocations).containsExactly(initialAllocation1, initialAllocation2);
+    assertThat(allocator.allocate()).isNotSameInstanceAs(slabAllocation);
+  }
+
+  private static DefaultAllocator createAllocatorWithThreadCaches(int initialAllocationCount) {
+    return new DefaultAllocator(
+        /* trimOnReset= */ true,
+        ALLOCATION_SIZE,
+        initialAllocationCount,
+        /* useThreadCaches= */ true);
+  }
+
+  private static final class TestAllocationNode implements Allocator.AllocationNode {
+
+    private final List<Allocation> allocations;
+    private final int index;
+
+    public TestAllocationNode(List<Allocation> allocations, int index) {
+      this.allocations = allocations;
+      this.index = index;
+    }
+
+    @Override
+    public Allocation getAllocation() {
+      return allocations.get(index);
+    }
+
+    @Override
+    @Nullable
+    public Allocator.AllocationNode next() {
+      return index + 1 < allocations.size() ? new TestAllocationNode(allocations, index + 1) : null;
+    }
+  }
+}
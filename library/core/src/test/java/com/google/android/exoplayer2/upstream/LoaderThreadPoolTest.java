@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.util.ReleasableExecutor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link LoaderThreadPool}. */
+@RunWith(AndroidJUnit4.class)
+public final class LoaderThreadPoolTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+
+  private LoaderThreadPool loaderThreadPool;
+
+  @Before
+  public void setUp() {
+    loaderThreadPool = new LoaderThreadPool(/* maxThreadCount= */ 2);
+  }
+
+  @After
+  public void tearDown() {
+    loaderThreadPool.release();
+  }
+
+  @Test
+  public void createExecutor_runsTasksSequentiallyInOrder() throws Exception {
+    ReleasableExecutor executor = loaderThreadPool.createExecutor();
+    List<Integer> executionOrder = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger runningTaskCount = new AtomicInteger();
+    AtomicInteger maxRunningTaskCount = new AtomicInteger();
+    CountDownLatch finished = new CountDownLatch(10);
+
+    for (int i = 0; i < 10; i++) {
+      int taskIndex = i;
+      executor.execute(
+          () -> {
+            int running = runningTaskCount.incrementAndGet();
+            maxRunningTaskCount.set(Math.max(maxRunningTaskCount.get(), running));
+            executionOrder.add(taskIndex);
+            runningTaskCount.decrementAndGet();
+            finished.countDown();
+          });
+    }
+
+    assertThat(finished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(executionOrder).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9).inOrder();
+    assertThat(maxRunningTaskCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void executorsCreatedByPool_runInParallel() throws Exception {
+    ReleasableExecutor executor1 = loaderThreadPool.createExecutor();
+    ReleasableExecutor executor2 = loaderThreadPool.createExecutor();
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    CountDownLatch finished = new CountDownLatch(2);
+    Runnable task =
+        () -> {
+          bothStarted.countDown();
+          try {
+            // Only returns if the other task is running at the same time.
+            if (bothStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+              finished.countDown();
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        };
+
+    executor1.execute(task);
+    executor2.execute(task);
+
+    assertThat(finished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+  }
+
+  @Test
+  public void tasksBeyondMaxThreadCount_waitInQueue() throws Exception {
+    CountDownLatch blockingTasksStarted = new CountDownLatch(2);
+    CountDownLatch unblock = new CountDownLatch(1);
+    CountDownLatch finished = new CountDownLatch(3);
+    Runnable blockingTask =
+        () -> {
+          blockingTasksStarted.countDown();
+          try {
+            unblock.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          finished.countDown();
+        };
+    loaderThreadPool.createExecutor().execute(blockingTask);
+    loaderThreadPool.createExecutor().execute(blockingTask);
+    assertThat(blockingTasksStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+
+    loaderThreadPool.createExecutor().execute(finished::countDown);
+    int queuedTaskCount = loaderThreadPool.getQueuedTaskCount();
+    unblock.countDown();
+
+    assertThat(finished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(queuedTaskCount).isEqualTo(1);
+    assertThat(loaderThreadPool.getExecutedTaskCount()).isEqualTo(3);
+    assertThat(loaderThreadPool.getMaxQueueWaitTimeMs())
+        .isAtLeast(loaderThreadPool.getAverageQueueWaitTimeMs());
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.util.NetworkTypeObserver;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link QuantileSketchBandwidthMeter}. */
+@RunWith(AndroidJUnit4.class)
+public final class QuantileSketchBandwidthMeterTest {
+
+  private static final long INITIAL_BITRATE_ESTIMATE = 123_456;
+  private static final double RELATIVE_ACCURACY =
+      QuantileSketchBandwidthMeter.DEFAULT_RELATIVE_ACCURACY;
+  private static final int TRACE_COUNT = 20;
+  private static final int TRANSFERS_PER_TRACE = 2000;
+  private static final int WARM_UP_TRANSFER_COUNT = 10;
+  /** The maximum ratio between the prediction error of the sketch and of the sliding percentile. */
+  private static final double MAX_RELATIVE_PREDICTION_ERROR = 1.1;
+
+  private FakeClock clock;
+  private QuantileSketchBandwidthMeter bandwidthMeter;
+
+  @Before
+  public void setUp() {
+    NetworkTypeObserver.resetForTests();
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+    bandwidthMeter =
+        new QuantileSketchBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setInitialBitrateEstimate(INITIAL_BITRATE_ESTIMATE)
+            .setClock(clock)
+            .build();
+    bandwidthMeter.setNetworkTypeOverride(C.NETWORK_TYPE_4G);
+  }
+
+  @Test
+  public void getBitrateEstimate_withoutTransfers_returnsInitialEstimate() {
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(INITIAL_BITRATE_ESTIMATE);
+    assertThat(bandwidthMeter.getBitrateEstimates(new double[] {0.1, 0.9}))
+        .asList()
+        .containsExactly(INITIAL_BITRATE_ESTIMATE, INITIAL_BITRATE_ESTIMATE);
+  }
+
+  @Test
+  public void getBitrateEstimate_afterTransfers_returnsTransferRate() {
+    simulateTransfers(/* count= */ 10, /* bitsPerSecond= */ 2_000_000);
+
+    assertBitrateEstimateIsWithinAccuracyOf(2_000_000);
+  }
+
+  @Test
+  public void getBitrateEstimates_afterTransfersAtDifferentRates_returnsQuantiles() {
+    simulateTransfers(/* count= */ 5, /* bitsPerSecond= */ 1_000_000);
+    simulateTransfers(/* count= */ 5, /* bitsPerSecond= */ 4_000_000);
+
+    long[] estimates = bandwidthMeter.getBitrateEstimates(new double[] {0.1, 0.9});
+
+    assertThat((double) estimates[0]).isWithin(1_000_000 * RELATIVE_ACCURACY).of(1_000_000);
+    assertThat((double) estimates[1]).isWithin(4_000_000 * RELATIVE_ACCURACY).of(4_000_000);
+  }
+
+  @Test
+  public void getBitrateEstimate_withLaterTransfersAtDifferentRate_followsNewRate() {
+    simulateTransfers(/* count= */ 10, /* bitsPerSecond= */ 1_000_000);
+    clock.advanceTime(QuantileSketchBandwidthMeter.DEFAULT_HALF_LIFE_MS * 10);
+
+    simulateTransfers(/* count= */ 2, /* bitsPerSecond= */ 4_000_000);
+
+    assertBitrateEstimateIsWithinAccuracyOf(4_000_000);
+  }
+
+  @Test
+  public void networkTypeChange_keepsStatePerNetworkType() {
+    simulateTransfers(/* count= */ 10, /* bitsPerSecond= */ 1_000_000);
+
+    bandwidthMeter.setNetworkTypeOverride(C.NETWORK_TYPE_WIFI);
+    long wifiInitialEstimate = bandwidthMeter.getBitrateEstimate();
+    simulateTransfers(/* count= */ 10, /* bitsPerSecond= */ 8_000_000);
+    long wifiEstimate = bandwidthMeter.getBitrateEstimate();
+    bandwidthMeter.setNetworkTypeOverride(C.NETWORK_TYPE_4G);
+    long cellularEstimate = bandwidthMeter.getBitrateEstimate();
+
+    assertThat(wifiInitialEstimate).isEqualTo(INITIAL_BITRATE_ESTIMATE);
+    assertThat((double) wifiEstimate).isWithin(8_000_000 * RELATIVE_ACCURACY).of(8_000_000);
+    assertThat((double) cellularEstimate).isWithin(1_000_000 * RELATIVE_ACCURACY).of(1_000_000);
+  }
+
+  @Test
+  public void estimateBandwidth_onTransferTraces_sketchIsAsAccurateAsSlidingPercentile() {
+    double slidingPercentileError = 0;
+    double sketchError = 0;
+    for (int i = 0; i < TRACE_COUNT; i++) {
+      TransferTrace trace = TransferTrace.create(new Random(/* seed= */ i), TRANSFERS_PER_TRACE);
+      slidingPercentileError +=
+          getMeanPredictionError(
+              trace,
+              new SlidingPercentileEstimator(
+                  DefaultBandwidthMeter.DEFAULT_SLIDING_WINDOW_MAX_WEIGHT));
+      sketchError += getMeanPredictionError(trace, new SketchEstimator());
+    }
+    slidingPercentileError /= TRACE_COUNT;
+    sketchError /= TRACE_COUNT;
+
+    assertThat(sketchError).isAtMost(slidingPercentileError * MAX_RELATIVE_PREDICTION_ERROR);
+  }
+
+  private void simulateTransfers(int count, long bitsPerSecond) {
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://test.com"));
+    for (int i = 0; i < count; i++) {
+      bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+      clock.advanceTime(1000);
+      bandwidthMeter.onBytesTransferred(
+          dataSource,
+          dataSpec,
+          /* isNetwork= */ true,
+          /* bytesTransferred= */ (int) (bitsPerSecond / 8));
+      bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+    }
+  }
+
+  private void assertBitrateEstimateIsWithinAccuracyOf(long bitrate) {
+    assertThat((double) bandwidthMeter.getBitrateEstimate())
+        .isWithin(bitrate * RELATIVE_ACCURACY)
+        .of(bitrate);
+  }
+
+  /**
+   * Returns the mean absolute difference between the logarithm of the median transfer rate
+   * estimated before each transfer and the logarithm of the actual rate of that transfer.
+   */
+  private static double getMeanPredictionError(TransferTrace trace, Estimator estimator) {
+    double totalError = 0;
+    for (int i = 0; i < trace.transferCount; i++) {
+      if (i >= WARM_UP_TRANSFER_COUNT) {
+        double actualBitsPerSecond = (trace.bytes[i] * 8000d) / trace.durationsMs[i];
+        totalError += Math.abs(Math.log(estimator.getMedian() / actualBitsPerSecond));
+      }
+      estimator.addTransfer(trace.bytes[i], trace.durationsMs[i], trace.endTimesMs[i]);
+    }
+    return totalError / (trace.transferCount - WARM_UP_TRANSFER_COUNT);
+  }
+
+  private interface Estimator {
+
+    void addTransfer(long bytes, long durationMs, long endTimeMs);
+
+    double getMedian();
+  }
+
+  /** Estimates bandwidth in the same way as {@link DefaultBandwidthMeter}. */
+  private static final class SlidingPercentileEstimator implements Estimator {
+
+    private final SlidingPercentile slidingPercentile;
+
+    public SlidingPercentileEstimator(int maxWeight) {
+      slidingPercentile = new SlidingPercentile(maxWeight);
+    }
+
+    @Override
+    public void addTransfer(long bytes, long durationMs, long endTimeMs) {
+      float bitsPerSecond = (bytes * 8000f) / durationMs;
+      slidingPercentile.addSample((int) Math.sqrt(bytes), bitsPerSecond);
+    }
+
+    @Override
+    public double getMedian() {
+      return slidingPercentile.getPercentile(0.5f);
+    }
+  }
+
+  /** Estimates bandwidth in the same way as {@link QuantileSketchBandwidthMeter}. */
+  private static final class SketchEstimator implements Estimator {
+
+    private final DecayingQuantileSketch sketch =
+        new DecayingQuantileSketch(
+            QuantileSketchBandwidthMeter.DEFAULT_RELATIVE_ACCURACY,
+            QuantileSketchBandwidthMeter.DEFAULT_HALF_LIFE_MS,
+            /* minValue= */ 1_000,
+            /* maxValue= */ 100_000_000_000d);
+
+    @Override
+    public void addTransfer(long bytes, long durationMs, long endTimeMs) {
+      double bitsPerSecond = (bytes * 8000d) / durationMs;
+      sketch.addSample(Math.sqrt(bytes), bitsPerSecond, endTimeMs);
+    }
+
+    @Override
+    public double getMedian() {
+      return sketch.getQuantile(0.5);
+    }
+  }
+
+  /** A sequence of transfers. */
+  private static final class TransferTrace {
+
+    public final int transferCount;
+    public final long[] bytes;
+    public final long[] durationsMs;
+    public final long[] endTimesMs;
+
+    private TransferTrace(int transferCount) {
+      this.transferCount = transferCount;
+      bytes = new long[transferCount];
+      durationsMs = new long[transferCount];
+      endTimesMs = new long[transferCount];
+    }
+
+    /**
+     * Creates a trace of segment downloads of 1 to 2 MB, requested every 4 seconds once the
+     * previous segment has been downloaded.
+     */
+    public static TransferTrace create(Random random, int transferCount) {
+      TransferTrace trace = new TransferTrace(transferCount);
+      // The logarithm of the bandwidth reverts to a mean, which occasionally jumps to a value
+      // between 500 kbps and 20 Mbps.
+      double logMeanBandwidth = Math.log(3_000_000);
+      double logBandwidth = logMeanBandwidth;
+      long timeMs = 0;
+      for (int i = 0; i < transferCount; i++) {
+        if (random.nextInt(50) == 0) {
+          logMeanBandwidth = Math.log(500_000) + random.nextDouble() * Math.log(40);
+        }
+        logBandwidth += 0.2 * (logMeanBandwidth - logBandwidth) + 0.15 * random.nextGaussian();
+        long segmentBytes = 1_000_000 + random.nextInt(1_000_000);
+        double transferRate = Math.exp(logBandwidth + random.nextGaussian() * 0.3);
+        if (random.nextInt(20) == 0) {
+          // Simulate a stall.
+          transferRate /= 10;
+        }
+        long durationMs = Math.max(1, (long) (segmentBytes * 8000 / transferRate));
+        timeMs += durationMs;
+        trace.bytes[i] = segmentBytes;
+        trace.durationsMs[i] = durationMs;
+        trace.endTimesMs[i] = timeMs;
+        timeMs += Math.max(0, 4000 - durationMs);
+      }
+      return trace;
+    }
+  }
+}
@@ -55,6 +55,7 @@ import com.google.android.exoplayer2.source.SequenceableLoader;
 import com.google.android.exoplayer2.source.dash.PlayerEmsgHandler.PlayerEmsgCallback;
 import com.google.android.exoplayer2.source.dash.manifest.AdaptationSet;
 import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestDiffer;
 import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
 import com.google.android.exoplayer2.source.dash.manifest.Period;
 import com.google.android.exoplayer2.source.dash.manifest.Representation;
@@ -600,7 +601,13 @@ public final class DashMediaSource extends BaseMediaSource {
       staleManifestReloadAttempt = 0;
     }
 
-    manifest = newManifest;
+    // Reuse the periods, adaptation sets and representations that haven't changed, so that the
+    // media periods and chunk sources can keep using their existing segment indexes.
+    manifest =
+        manifest == null
+            ? newManifest
+            : DashManifestDiffer.reuseUnchangedObjects(
+                /* previousManifest= */ manifest, newManifest);
     manifestLoadPending &= manifest.dynamic;
     manifestLoadStartTimestampMs = elapsedRealtimeMs - loadDurationMs;
     manifestLoadEndTimestampMs = elapsedRealtimeMs;
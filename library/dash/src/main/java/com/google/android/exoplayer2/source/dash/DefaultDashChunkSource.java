@@ -260,8 +260,15 @@ public class DefaultDashChunkSource implements DashChunkSource {
       List<Representation> representations = getRepresentations();
       for (int i = 0; i < representationHolders.length; i++) {
         Representation representation = representations.get(trackSelection.getIndexInTrackGroup(i));
+        RepresentationHolder representationHolder = representationHolders[i];
+        if (representationHolder.representation == representation
+            && representationHolder.periodDurationUs == periodDurationUs) {
+          // The representation was reused from the previous manifest, so its segment index and
+          // segment number shift are unchanged.
+          continue;
+        }
         representationHolders[i] =
-            representationHolders[i].copyWithNewRepresentation(periodDurationUs, representation);
+            representationHolder.copyWithNewRepresentation(periodDurationUs, representation);
       }
     } catch (BehindLiveWindowException e) {
       fatalError = e;
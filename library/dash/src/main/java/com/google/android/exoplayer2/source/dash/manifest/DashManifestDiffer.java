@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.source.dash.manifest.Representation.MultiSegmentRepresentation;
+import com.google.android.exoplayer2.source.dash.manifest.Representation.SingleSegmentRepresentation;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.MultiSegmentBase;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentList;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTemplate;
+import com.google.android.exoplayer2.util.Util;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares a refreshed {@link DashManifest} with the previous one, so that the {@link Period
+ * Periods}, {@link AdaptationSet AdaptationSets} and {@link Representation Representations} that
+ * haven't changed can be reused.
+ *
+ * <p>Reusing unchanged objects means that the previous objects, and the {@link
+ * com.google.android.exoplayer2.source.dash.DashSegmentIndex DashSegmentIndex} instances that
+ * belong to them, stay bound to the components that use them, and that the objects parsed from
+ * the refreshed manifest can be garbage collected straight away. This is particularly effective
+ * for multi-period live streams, where all but the last period are typically unchanged.
+ */
+public final class DashManifestDiffer {
+
+  private DashManifestDiffer() {}
+
+  /**
+   * Returns a manifest equivalent to {@code manifest}, in which the periods, adaptation sets and
+   * representations that are identical to ones in {@code previousManifest} are replaced by the
+   * instances from {@code previousManifest}.
+   *
+   * <p>Periods are matched by their id, or by their start time if they don't have an id.
+   * Adaptation sets are matched by their id and type, and representations by their id.
+   *
+   * @param previousManifest The previous manifest.
+   * @param manifest The refreshed manifest.
+   * @return {@code manifest} if no objects could be reused, or a copy of {@code manifest} that
+   *     reuses objects from {@code previousManifest}.
+   */
+  public static DashManifest reuseUnchangedObjects(
+      DashManifest previousManifest, DashManifest manifest) {
+    List<Period> periods = new ArrayList<>(manifest.getPeriodCount());
+    boolean reusedObjects = false;
+    for (int i = 0; i < manifest.getPeriodCount(); i++) {
+      Period period = manifest.getPeriod(i);
+      @Nullable Period previousPeriod = findPreviousPeriod(previousManifest, period);
+      Period newPeriod = previousPeriod != null ? reusePeriod(previousPeriod, period) : period;
+      reusedObjects |= newPeriod != period;
+      periods.add(newPeriod);
+    }
+    if (!reusedObjects) {
+      return manifest;
+    }
+    return new DashManifest(
+        manifest.availabilityStartTimeMs,
+        manifest.durationMs,
+        manifest.minBufferTimeMs,
+        manifest.dynamic,
+        manifest.minUpdatePeriodMs,
+        manifest.timeShiftBufferDepthMs,
+        manifest.suggestedPresentationDelayMs,
+        manifest.publishTimeMs,
+        manifest.programInformation,
+        manifest.utcTiming,
+        manifest.serviceDescription,
+        manifest.location,
+        periods);
+  }
+
+  @Nullable
+  private static Period findPreviousPeriod(DashManifest previousManifest, Period period) {
+    for (int i = 0; i < previousManifest.getPeriodCount(); i++) {
+      Period previousPeriod = previousManifest.getPeriod(i);
+      if (period.id != null
+          ? period.id.equals(previousPeriod.id)
+          : previousPeriod.id == null && period.startMs == previousPeriod.startMs) {
+        return previousPeriod;
+      }
+    }
+    return null;
+  }
+
+  private static Period reusePeriod(Period previousPeriod, Period period) {
+    List<AdaptationSet> adaptationSets = new ArrayList<>(period.adaptationSets.size());
+    boolean reusedAnyAdaptationSet = false;
+    for (int i = 0; i < period.adaptationSets.size(); i++) {
+      AdaptationSet adaptationSet = period.adaptationSets.get(i);
+      @Nullable
+      AdaptationSet previousAdaptationSet =
+          findPreviousAdaptationSet(previousPeriod.adaptationSets, adaptationSet, i);
+      AdaptationSet newAdaptationSet =
+          previousAdaptationSet != null
+              ? reuseAdaptationSet(previousAdaptationSet, adaptationSet)
+              : adaptationSet;
+      reusedAnyAdaptationSet |= newAdaptationSet != adaptationSet;
+      adaptationSets.add(newAdaptationSet);
+    }
+    // Adaptation sets don't override equals, so this checks that all of them have been reused.
+    if (adaptationSets.equals(previousPeriod.adaptationSets)
+        && period.startMs == previousPeriod.startMs
+        && Util.areEqual(period.assetIdentifier, previousPeriod.assetIdentifier)
+        && areEventStreamsEqual(period.eventStreams, previousPeriod.eventStreams)) {
+      return previousPeriod;
+    }
+    if (!reusedAnyAdaptationSet) {
+      return period;
+    }
+    return new Period(
+        period.id, period.startMs, adaptationSets, period.eventStreams, period.assetIdentifier);
+  }
+
+  @Nullable
+  private static AdaptationSet findPreviousAdaptationSet(
+      List<AdaptationSet> previousAdaptationSets, AdaptationSet adaptationSet, int index) {
+    if (index < previousAdaptationSets.size()
+        && isSameAdaptationSetId(previousAdaptationSets.get(index), adaptationSet)) {
+      return previousAdaptationSets.get(index);
+    }
+    if (adaptationSet.id == AdaptationSet.ID_UNSET) {
+      return null;
+    }
+    for (int i = 0; i < previousAdaptationSets.size(); i++) {
+      if (isSameAdaptationSetId(previousAdaptationSets.get(i), adaptationSet)) {
+        return previousAdaptationSets.get(i);
+      }
+    }
+    return null;
+  }
+
+  private static boolean isSameAdaptationSetId(AdaptationSet adaptationSet, AdaptationSet other) {
+    return adaptationSet.id == other.id && adaptationSet.type == other.type;
+  }
+
+  private static AdaptationSet reuseAdaptationSet(
+      AdaptationSet previousAdaptationSet, AdaptationSet adaptationSet) {
+    List<Representation> representations = new ArrayList<>(adaptationSet.representations.size());
+    boolean reusedAnyRepresentation = false;
+    for (int i = 0; i < adaptationSet.representations.size(); i++) {
+      Representation representation = adaptationSet.representations.get(i);
+      @Nullable
+      Representation previousRepresentation =
+          findPreviousRepresentation(previousAdaptationSet.representations, representation, i);
+      boolean reuseRepresentation =
+          previousRepresentation != null
+              && isSameRepresentation(previousRepresentation, representation);
+      reusedAnyRepresentation |= reuseRepresentation;
+      representations.add(reuseRepresentation ? previousRepresentation : representation);
+    }
+    // Representations don't override equals, so this checks that all of them have been reused.
+    if (representations.equals(previousAdaptationSet.representations)
+        && adaptationSet.accessibilityDescriptors.equals(
+            previousAdaptationSet.accessibilityDescriptors)
+        && adaptationSet.essentialProperties.equals(previousAdaptationSet.essentialProperties)
+        && adaptationSet.supplementalProperties.equals(
+            previousAdaptationSet.supplementalProperties)) {
+      return previousAdaptationSet;
+    }
+    if (!reusedAnyRepresentation) {
+      return adaptationSet;
+    }
+    return new AdaptationSet(
+        adaptationSet.id,
+        adaptationSet.type,
+        representations,
+        adaptationSet.accessibilityDescriptors,
+        adaptationSet.essentialProperties,
+        adaptationSet.supplementalProperties);
+  }
+
+  @Nullable
+  private static Representation findPreviousRepresentation(
+      List<Representation> previousRepresentations, Representation representation, int index) {
+    @Nullable String id = representation.format.id;
+    if (index < previousRepresentations.size()
+        && Util.areEqual(previousRepresentations.get(index).format.id, id)) {
+      return previousRepresentations.get(index);
+    }
+    if (id == null) {
+      return null;
+    }
+    for (int i = 0; i < previousRepresentations.size(); i++) {
+      if (id.equals(previousRepresentations.get(i).format.id)) {
+        return previousRepresentations.get(i);
+      }
+    }
+    return null;
+  }
+
+  private static boolean isSameRepresentation(Representation representation, Representation other) {
+    if (representation.getClass() != other.getClass()
+        || representation.revisionId != other.revisionId
+        || representation.presentationTimeOffsetUs != other.presentationTimeOffsetUs
+        || !representation.format.equals(other.format)
+        || !representation.baseUrls.equals(other.baseUrls)
+        || !representation.inbandEventStreams.equals(other.inbandEventStreams)
+        || !representation.essentialProperties.equals(other.essentialProperties)
+        || !representation.supplementalProperties.equals(other.supplementalProperties)
+        || !Util.areEqual(representation.getInitializationUri(), other.getInitializationUri())) {
+      return false;
+    }
+    if (representation instanceof SingleSegmentRepresentation) {
+      SingleSegmentRepresentation singleSegmentRepresentation =
+          (SingleSegmentRepresentation) representation;
+      SingleSegmentRepresentation otherSingleSegmentRepresentation =
+          (SingleSegmentRepresentation) other;
+      return singleSegmentRepresentation.uri.equals(otherSingleSegmentRepresentation.uri)
+          && singleSegmentRepresentation.contentLength
+              == otherSingleSegmentRepresentation.contentLength
+          && Util.areEqual(
+              singleSegmentRepresentation.getCacheKey(),
+              otherSingleSegmentRepresentation.getCacheKey())
+          && Util.areEqual(
+              singleSegmentRepresentation.getIndexUri(),
+              otherSingleSegmentRepresentation.getIndexUri());
+    } else if (representation instanceof MultiSegmentRepresentation) {
+      return isSameSegmentBase(
+          ((MultiSegmentRepresentation) representation).segmentBase,
+          ((MultiSegmentRepresentation) other).segmentBase);
+    }
+    // Unknown representation type.
+    return false;
+  }
+
+  private static boolean isSameSegmentBase(MultiSegmentBase segmentBase, MultiSegmentBase other) {
+    if (segmentBase.getClass() != other.getClass()
+        || !Util.areEqual(segmentBase.initialization, other.initialization)
+        || segmentBase.timescale != other.timescale
+        || segmentBase.presentationTimeOffset != other.presentationTimeOffset
+        || segmentBase.startNumber != other.startNumber
+        || segmentBase.duration != other.duration
+        || segmentBase.availabilityTimeOffsetUs != other.availabilityTimeOffsetUs
+        || segmentBase.timeShiftBufferDepthUs != other.timeShiftBufferDepthUs
+        || segmentBase.periodStartUnixTimeUs != other.periodStartUnixTimeUs
+        || !Util.areEqual(segmentBase.segmentTimeline, other.segmentTimeline)) {
+      return false;
+    }
+    if (segmentBase instanceof SegmentTemplate) {
+      SegmentTemplate segmentTemplate = (SegmentTemplate) segmentBase;
+      SegmentTemplate otherSegmentTemplate = (SegmentTemplate) other;
+      return segmentTemplate.endNumber == otherSegmentTemplate.endNumber
+          && Util.areEqual(
+              segmentTemplate.initializationTemplate, otherSegmentTemplate.initializationTemplate)
+          && Util.areEqual(segmentTemplate.mediaTemplate, otherSegmentTemplate.mediaTemplate);
+    } else if (segmentBase instanceof SegmentList) {
+      return Util.areEqual(
+          ((SegmentList) segmentBase).mediaSegments, ((SegmentList) other).mediaSegments);
+    }
+    // Unknown segment base type.
+    return false;
+  }
+
+  private static boolean areEventStreamsEqual(
+      List<EventStream> eventStreams, List<EventStream> otherEventStreams) {
+    if (eventStreams.size() != otherEventStreams.size()) {
+      return false;
+    }
+    for (int i = 0; i < eventStreams.size(); i++) {
+      EventStream eventStream = eventStreams.get(i);
+      EventStream otherEventStream = otherEventStreams.get(i);
+      if (eventStream != otherEventStream
+          && (!eventStream.schemeIdUri.equals(otherEventStream.schemeIdUri)
+              || !eventStream.value.equals(otherEventStream.value)
+              || eventStream.timescale != otherEventStream.timescale
+              || !Arrays.equals(
+                  eventStream.presentationTimesUs, otherEventStream.presentationTimesUs)
+              || !Arrays.equals(eventStream.events, otherEventStream.events))) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
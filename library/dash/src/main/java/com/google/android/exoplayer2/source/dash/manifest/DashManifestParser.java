@@ -99,7 +99,7 @@ public class DashManifestParser extends DefaultHandler
   @Override
   public DashManifest parse(Uri uri, InputStream inputStream) throws IOException {
     try {
-      XmlPullParser xpp = xmlParserFactory.newPullParser();
+      XmlPullParser xpp = createXmlPullParser();
       xpp.setInput(inputStream, null);
       int eventType = xpp.next();
       if (eventType != XmlPullParser.START_TAG || !"MPD".equals(xpp.getName())) {
@@ -113,6 +113,16 @@ public class DashManifestParser extends DefaultHandler
     }
   }
 
+  /**
+   * Returns a new {@link XmlPullParser} for parsing a manifest. Namespace processing must be
+   * disabled.
+   *
+   * @throws XmlPullParserException If the parser can't be created.
+   */
+  protected XmlPullParser createXmlPullParser() throws XmlPullParserException {
+    return xmlParserFactory.newPullParser();
+  }
+
   protected DashManifest parseMediaPresentationDescription(XmlPullParser xpp, Uri documentBaseUri)
       throws XmlPullParserException, IOException {
     boolean dvbProfileDeclared =
@@ -1256,7 +1266,7 @@ public class DashManifestParser extends DefaultHandler
   protected List<SegmentTimelineElement> parseSegmentTimeline(
       XmlPullParser xpp, long timescale, long periodDurationMs)
       throws XmlPullParserException, IOException {
-    List<SegmentTimelineElement> segmentTimeline = new ArrayList<>();
+    List<SegmentTimelineElement> segmentTimeline = new RunLengthSegmentTimeline();
     long startTime = 0;
     long elementDuration = C.TIME_UNSET;
     int elementRepeatCount = 0;
@@ -1317,11 +1327,33 @@ public class DashManifestParser extends DefaultHandler
         elementRepeatCount >= 0
             ? 1 + elementRepeatCount
             : (int) Util.ceilDivide(endTime - startTime, elementDuration);
+    if (count <= 0) {
+      return startTime;
+    }
+    addSegmentTimelineRun(segmentTimeline, startTime, elementDuration, count);
+    return startTime + count * elementDuration;
+  }
+
+  /**
+   * Adds a run of consecutive timeline elements with the same duration, described by one S tag, to
+   * the segment timeline.
+   *
+   * <p>The default implementation adds the element returned by {@link
+   * #buildSegmentTimelineElement(long, long)} for each segment of the run. Consecutive elements
+   * that continue a run of the same duration are stored as part of that run, so the elements
+   * themselves aren't retained.
+   *
+   * @param segmentTimeline The segment timeline to add the elements to.
+   * @param startTime Start time of the first timeline element of the run.
+   * @param duration Duration of each timeline element of the run.
+   * @param count Number of timeline elements in the run. Always positive.
+   */
+  protected void addSegmentTimelineRun(
+      List<SegmentTimelineElement> segmentTimeline, long startTime, long duration, int count) {
     for (int i = 0; i < count; i++) {
-      segmentTimeline.add(buildSegmentTimelineElement(startTime, elementDuration));
-      startTime += elementDuration;
+      segmentTimeline.add(buildSegmentTimelineElement(startTime, duration));
+      startTime += duration;
     }
-    return startTime;
   }
 
   protected SegmentTimelineElement buildSegmentTimelineElement(long startTime, long duration) {
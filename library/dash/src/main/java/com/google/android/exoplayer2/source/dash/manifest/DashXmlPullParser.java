@@ -0,0 +1,1039 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+import androidx.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * A minimal, non-validating and namespace unaware {@link XmlPullParser} that's optimized for
+ * parsing large DASH manifests.
+ *
+ * <p>The input is decoded into a reusable character buffer and scanned in bulk. Element and
+ * attribute names are interned in a small per-parser cache, so that the names that are repeated
+ * throughout a manifest (for example those of SegmentTimeline S elements and their attributes)
+ * don't allocate a new string for each occurrence, and attribute lookups usually succeed on a
+ * reference comparison.
+ *
+ * <p>The parser reports the same events as the platform parser with namespace processing
+ * disabled. Only the predefined and character entities are supported. Line and column numbers
+ * aren't tracked.
+ */
+/* package */ final class DashXmlPullParser implements XmlPullParser {
+
+  private static final int BUFFER_SIZE = 8192;
+  private static final int ENCODING_DETECTION_LENGTH = 1024;
+  private static final int NAME_CACHE_SIZE = 512;
+  private static final int MAX_ENTITY_NAME_LENGTH = 32;
+
+  private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+
+  private final String[] nameCache;
+  private char[] buffer;
+  private int position;
+  private int limit;
+
+  @Nullable private Reader reader;
+  @Nullable private String inputEncoding;
+  private boolean started;
+
+  private int eventType;
+  private int depth;
+  private String[] elementStack;
+  @Nullable private String name;
+  private boolean isEmptyElementTag;
+  private boolean pendingEndTag;
+
+  private int attributeCount;
+  private String[] attributeNames;
+  private String[] attributeValues;
+
+  private char[] text;
+  private int textLength;
+  @Nullable private String textString;
+  private boolean isWhitespace;
+
+  private char[] scratch;
+  private int scratchLength;
+
+  public DashXmlPullParser() {
+    nameCache = new String[NAME_CACHE_SIZE];
+    buffer = new char[BUFFER_SIZE];
+    elementStack = new String[16];
+    attributeNames = new String[16];
+    attributeValues = new String[16];
+    text = new char[256];
+    scratch = new char[64];
+    attributeCount = -1;
+  }
+
+  // Input.
+
+  @Override
+  public void setInput(Reader reader) throws XmlPullParserException {
+    this.reader = reader;
+    inputEncoding = null;
+    reset();
+  }
+
+  @Override
+  public void setInput(InputStream inputStream, @Nullable String inputEncoding)
+      throws XmlPullParserException {
+    if (inputStream == null) {
+      throw new IllegalArgumentException();
+    }
+    Charset charset;
+    InputStream input = inputStream;
+    try {
+      if (inputEncoding != null) {
+        charset = Charset.forName(inputEncoding);
+      } else {
+        input = new BufferedInputStream(inputStream, ENCODING_DETECTION_LENGTH);
+        charset = detectCharset(input);
+      }
+    } catch (IOException | RuntimeException e) {
+      throw new XmlPullParserException("Invalid stream or encoding: " + e, this, e);
+    }
+    this.reader = new InputStreamReader(input, charset);
+    this.inputEncoding = charset.name();
+    reset();
+  }
+
+  @Override
+  @Nullable
+  public String getInputEncoding() {
+    return inputEncoding;
+  }
+
+  // Features and properties.
+
+  @Override
+  public void setFeature(String name, boolean state) throws XmlPullParserException {
+    if (state) {
+      throw new XmlPullParserException("Unsupported feature: " + name);
+    }
+  }
+
+  @Override
+  public boolean getFeature(String name) {
+    return false;
+  }
+
+  @Override
+  public void setProperty(String name, Object value) throws XmlPullParserException {
+    throw new XmlPullParserException("Unsupported property: " + name);
+  }
+
+  @Override
+  @Nullable
+  public Object getProperty(String name) {
+    return null;
+  }
+
+  @Override
+  public void defineEntityReplacementText(String entityName, String replacementText)
+      throws XmlPullParserException {
+    throw new XmlPullParserException("Entity replacement text can't be defined");
+  }
+
+  // Namespaces.
+
+  @Override
+  public int getNamespaceCount(int depth) {
+    return 0;
+  }
+
+  @Override
+  public String getNamespacePrefix(int pos) {
+    throw new IndexOutOfBoundsException();
+  }
+
+  @Override
+  public String getNamespaceUri(int pos) {
+    throw new IndexOutOfBoundsException();
+  }
+
+  @Override
+  @Nullable
+  public String getNamespace(String prefix) {
+    return "xml".equals(prefix) ? XML_NAMESPACE : null;
+  }
+
+  // Current event.
+
+  @Override
+  public int getDepth() {
+    return depth;
+  }
+
+  @Override
+  public String getPositionDescription() {
+    StringBuilder description = new StringBuilder(TYPES[eventType]);
+    if (eventType == START_TAG || eventType == END_TAG) {
+      description.append(eventType == START_TAG ? " <" : " </").append(name).append('>');
+    }
+    return description.append(" (depth ").append(depth).append(')').toString();
+  }
+
+  @Override
+  public int getLineNumber() {
+    return -1;
+  }
+
+  @Override
+  public int getColumnNumber() {
+    return -1;
+  }
+
+  @Override
+  public boolean isWhitespace() throws XmlPullParserException {
+    if (eventType != TEXT && eventType != IGNORABLE_WHITESPACE && eventType != CDSECT) {
+      throw new XmlPullParserException("Not a text event", this, /* chain= */ null);
+    }
+    return isWhitespace;
+  }
+
+  @Override
+  @Nullable
+  public String getText() {
+    if (eventType == START_DOCUMENT
+        || eventType == END_DOCUMENT
+        || eventType == START_TAG
+        || eventType == END_TAG) {
+      return null;
+    }
+    if (textString == null) {
+      textString = new String(text, 0, textLength);
+    }
+    return textString;
+  }
+
+  @Override
+  @Nullable
+  public char[] getTextCharacters(int[] holderForStartAndLength) {
+    @Nullable String text = getText();
+    if (text == null) {
+      holderForStartAndLength[0] = -1;
+      holderForStartAndLength[1] = -1;
+      return null;
+    }
+    holderForStartAndLength[0] = 0;
+    holderForStartAndLength[1] = text.length();
+    return text.toCharArray();
+  }
+
+  @Override
+  @Nullable
+  public String getNamespace() {
+    return eventType == START_TAG || eventType == END_TAG ? NO_NAMESPACE : null;
+  }
+
+  @Override
+  @Nullable
+  public String getName() {
+    return eventType == START_TAG || eventType == END_TAG || eventType == ENTITY_REF
+        ? name
+        : null;
+  }
+
+  @Override
+  @Nullable
+  public String getPrefix() {
+    return null;
+  }
+
+  @Override
+  public boolean isEmptyElementTag() throws XmlPullParserException {
+    if (eventType != START_TAG) {
+      throw new XmlPullParserException("Not a start tag", this, /* chain= */ null);
+    }
+    return isEmptyElementTag;
+  }
+
+  @Override
+  public int getAttributeCount() {
+    return eventType == START_TAG ? attributeCount : -1;
+  }
+
+  @Override
+  public String getAttributeNamespace(int index) {
+    checkAttributeIndex(index);
+    return NO_NAMESPACE;
+  }
+
+  @Override
+  public String getAttributeName(int index) {
+    checkAttributeIndex(index);
+    return attributeNames[index];
+  }
+
+  @Override
+  @Nullable
+  public String getAttributePrefix(int index) {
+    checkAttributeIndex(index);
+    return null;
+  }
+
+  @Override
+  public String getAttributeType(int index) {
+    checkAttributeIndex(index);
+    return "CDATA";
+  }
+
+  @Override
+  public boolean isAttributeDefault(int index) {
+    checkAttributeIndex(index);
+    return false;
+  }
+
+  @Override
+  public String getAttributeValue(int index) {
+    checkAttributeIndex(index);
+    return attributeValues[index];
+  }
+
+  @Override
+  @Nullable
+  public String getAttributeValue(@Nullable String namespace, String name) {
+    if (eventType != START_TAG) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (namespace != null && !namespace.isEmpty()) {
+      return null;
+    }
+    // Names are interned, so a reference comparison usually succeeds for constant names.
+    for (int i = 0; i < attributeCount; i++) {
+      if (attributeNames[i] == name) {
+        return attributeValues[i];
+      }
+    }
+    for (int i = 0; i < attributeCount; i++) {
+      if (attributeNames[i].equals(name)) {
+        return attributeValues[i];
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public int getEventType() {
+    return eventType;
+  }
+
+  // Parsing.
+
+  @Override
+  public int next() throws XmlPullParserException, IOException {
+    onNextEvent();
+    while (true) {
+      int type = readToken(/* mergeText= */ true);
+      if (type == TEXT) {
+        if (textLength == 0 || (depth == 0 && isWhitespace)) {
+          // Ignore empty text and whitespace outside of the root element.
+          clearText();
+          continue;
+        }
+      } else if (type == COMMENT || type == PROCESSING_INSTRUCTION || type == DOCDECL) {
+        clearText();
+        continue;
+      }
+      eventType = type;
+      return type;
+    }
+  }
+
+  @Override
+  public int nextToken() throws XmlPullParserException, IOException {
+    onNextEvent();
+    eventType = readToken(/* mergeText= */ false);
+    return eventType;
+  }
+
+  @Override
+  public void require(int type, @Nullable String namespace, @Nullable String name)
+      throws XmlPullParserException {
+    if (type != eventType
+        || (namespace != null && !namespace.equals(getNamespace()))
+        || (name != null && !name.equals(getName()))) {
+      throw new XmlPullParserException(
+          "expected " + TYPES[type] + getPositionDescription(), this, /* chain= */ null);
+    }
+  }
+
+  @Override
+  public String nextText() throws XmlPullParserException, IOException {
+    if (eventType != START_TAG) {
+      throw new XmlPullParserException("Precondition: START_TAG", this, /* chain= */ null);
+    }
+    next();
+    String result;
+    if (eventType == TEXT) {
+      result = getText();
+      next();
+    } else {
+      result = "";
+    }
+    if (eventType != END_TAG) {
+      throw new XmlPullParserException("END_TAG expected", this, /* chain= */ null);
+    }
+    return result;
+  }
+
+  @Override
+  public int nextTag() throws XmlPullParserException, IOException {
+    next();
+    if (eventType == TEXT && isWhitespace) {
+      next();
+    }
+    if (eventType != END_TAG && eventType != START_TAG) {
+      throw new XmlPullParserException("unexpected type", this, /* chain= */ null);
+    }
+    return eventType;
+  }
+
+  // Internal methods.
+
+  private void reset() {
+    position = 0;
+    limit = 0;
+    started = false;
+    eventType = START_DOCUMENT;
+    depth = 0;
+    name = null;
+    isEmptyElementTag = false;
+    pendingEndTag = false;
+    attributeCount = -1;
+    clearText();
+  }
+
+  private void onNextEvent() throws XmlPullParserException {
+    if (reader == null) {
+      throw new XmlPullParserException("No input specified", this, /* chain= */ null);
+    }
+    if (eventType == END_TAG) {
+      depth--;
+    }
+    attributeCount = -1;
+    clearText();
+  }
+
+  private void clearText() {
+    textLength = 0;
+    textString = null;
+    isWhitespace = true;
+  }
+
+  private int readToken(boolean mergeText) throws XmlPullParserException, IOException {
+    if (eventType == END_DOCUMENT) {
+      return END_DOCUMENT;
+    }
+    if (pendingEndTag) {
+      pendingEndTag = false;
+      return END_TAG;
+    }
+    if (!started) {
+      started = true;
+      maybeSkipByteOrderMarkAndXmlDeclaration();
+    }
+    if (position == limit && !fill()) {
+      if (depth > 0) {
+        throw new XmlPullParserException(
+            "Unexpected EOF inside <" + elementStack[depth - 1] + ">", this, /* chain= */ null);
+      }
+      return END_DOCUMENT;
+    }
+    char c = buffer[position];
+    if (c == '<') {
+      if (!ensure(2)) {
+        throw new XmlPullParserException("Unexpected EOF", this, /* chain= */ null);
+      }
+      char next = buffer[position + 1];
+      if (next == '/') {
+        return readEndTag();
+      } else if (next == '!') {
+        if (startsWith("<!--")) {
+          if (mergeText) {
+            return readText(/* mergeText= */ true);
+          }
+          position += 4;
+          readUntil("-->", /* storeText= */ true);
+          return COMMENT;
+        } else if (startsWith("<![CDATA[")) {
+          if (mergeText) {
+            return readText(/* mergeText= */ true);
+          }
+          position += 9;
+          readUntil("]]>", /* storeText= */ true);
+          return CDSECT;
+        } else if (startsWith("<!DOCTYPE")) {
+          position += 9;
+          readDoctype();
+          return DOCDECL;
+        }
+        throw new XmlPullParserException("Unexpected markup", this, /* chain= */ null);
+      } else if (next == '?') {
+        if (mergeText) {
+          return readText(/* mergeText= */ true);
+        }
+        position += 2;
+        readUntil("?>", /* storeText= */ true);
+        return PROCESSING_INSTRUCTION;
+      } else {
+        return readStartTag();
+      }
+    } else if (c == '&' && !mergeText) {
+      name = readEntity(/* inAttributeValue= */ false);
+      return ENTITY_REF;
+    } else {
+      int type = readText(mergeText);
+      return !mergeText && depth == 0 && isWhitespace ? IGNORABLE_WHITESPACE : type;
+    }
+  }
+
+  private int readStartTag() throws XmlPullParserException, IOException {
+    position++; // Skip '<'.
+    String elementName = readName();
+    attributeCount = 0;
+    while (true) {
+      skipWhitespace();
+      if (position == limit && !fill()) {
+        throw new XmlPullParserException("Unexpected EOF in start tag", this, /* chain= */ null);
+      }
+      char c = buffer[position];
+      if (c == '>') {
+        position++;
+        isEmptyElementTag = false;
+        break;
+      } else if (c == '/') {
+        position++;
+        requireChar('>');
+        isEmptyElementTag = true;
+        break;
+      }
+      String attributeName = readName();
+      skipWhitespace();
+      requireChar('=');
+      skipWhitespace();
+      if (position == limit && !fill()) {
+        throw new XmlPullParserException("Unexpected EOF in start tag", this, /* chain= */ null);
+      }
+      char quote = buffer[position++];
+      if (quote != '"' && quote != '\'') {
+        throw new XmlPullParserException(
+            "Attribute value must be quoted: " + attributeName, this, /* chain= */ null);
+      }
+      String attributeValue = readAttributeValue(quote);
+      if (attributeCount == attributeNames.length) {
+        attributeNames = Arrays.copyOf(attributeNames, attributeCount * 2);
+        attributeValues = Arrays.copyOf(attributeValues, attributeCount * 2);
+      }
+      attributeNames[attributeCount] = attributeName;
+      attributeValues[attributeCount] = attributeValue;
+      attributeCount++;
+    }
+    if (depth == elementStack.length) {
+      elementStack = Arrays.copyOf(elementStack, depth * 2);
+    }
+    elementStack[depth++] = elementName;
+    name = elementName;
+    pendingEndTag = isEmptyElementTag;
+    return START_TAG;
+  }
+
+  private int readEndTag() throws XmlPullParserException, IOException {
+    position += 2; // Skip "</".
+    String elementName = readName();
+    skipWhitespace();
+    requireChar('>');
+    if (depth == 0) {
+      throw new XmlPullParserException(
+          "Unexpected end tag </" + elementName + ">", this, /* chain= */ null);
+    }
+    String expectedName = elementStack[depth - 1];
+    if (!expectedName.equals(elementName)) {
+      throw new XmlPullParserException(
+          "expected: /" + expectedName + " read: " + elementName, this, /* chain= */ null);
+    }
+    name = elementName;
+    return END_TAG;
+  }
+
+  /**
+   * Reads character data up to the next tag. If {@code mergeText} is true, entity references and
+   * CDATA sections are added to the text, and comments and processing instructions are skipped.
+   * Otherwise the text ends at the next markup or entity reference.
+   */
+  private int readText(boolean mergeText) throws XmlPullParserException, IOException {
+    while (position < limit || fill()) {
+      char c = buffer[position];
+      if (c == '<') {
+        if (!mergeText || !ensure(2)) {
+          break;
+        }
+        if (startsWith("<![CDATA[")) {
+          position += 9;
+          readUntil("]]>", /* storeText= */ true);
+        } else if (startsWith("<!--")) {
+          position += 4;
+          readUntil("-->", /* storeText= */ false);
+        } else if (buffer[position + 1] == '?') {
+          position += 2;
+          readUntil("?>", /* storeText= */ false);
+        } else {
+          break;
+        }
+      } else if (c == '&') {
+        if (!mergeText) {
+          break;
+        }
+        readEntity(/* inAttributeValue= */ false);
+      } else if (c == '\r') {
+        position++;
+        skipLineFeed();
+        appendText('\n');
+      } else {
+        int start = position;
+        boolean whitespace = isWhitespace;
+        while (position < limit) {
+          c = buffer[position];
+          if (c == '<' || c == '&' || c == '\r') {
+            break;
+          }
+          whitespace &= c <= ' ';
+          position++;
+        }
+        isWhitespace = whitespace;
+        appendText(buffer, start, position - start);
+      }
+    }
+    return TEXT;
+  }
+
+  private String readAttributeValue(char quote) throws XmlPullParserException, IOException {
+    scratchLength = 0;
+    while (true) {
+      if (position == limit && !fill()) {
+        throw new XmlPullParserException(
+            "Unexpected EOF in attribute value", this, /* chain= */ null);
+      }
+      int start = position;
+      while (position < limit) {
+        char c = buffer[position];
+        if (c == quote || c == '&' || c == '\r' || c == '\n' || c == '\t') {
+          break;
+        }
+        position++;
+      }
+      if (position < limit && buffer[position] == quote && scratchLength == 0) {
+        // Fast path for values that are in the buffer and don't need to be modified.
+        String value = new String(buffer, start, position - start);
+        position++;
+        return value;
+      }
+      appendScratch(buffer, start, position - start);
+      if (position == limit) {
+        continue;
+      }
+      char c = buffer[position];
+      if (c == quote) {
+        position++;
+        return new String(scratch, 0, scratchLength);
+      } else if (c == '&') {
+        readEntity(/* inAttributeValue= */ true);
+      } else {
+        // Line breaks and tabs are normalized to a single space.
+        position++;
+        if (c == '\r') {
+          skipLineFeed();
+        }
+        appendScratch(' ');
+      }
+    }
+  }
+
+  /**
+   * Reads an entity reference, appending its replacement text to the attribute value or to the
+   * text, and returns its name.
+   */
+  private String readEntity(boolean inAttributeValue) throws XmlPullParserException, IOException {
+    position++; // Skip '&'.
+    StringBuilder entityName = new StringBuilder();
+    while (true) {
+      if (position == limit && !fill()) {
+        throw new XmlPullParserException("Unterminated entity reference", this, /* chain= */ null);
+      }
+      char c = buffer[position++];
+      if (c == ';') {
+        break;
+      }
+      if (c <= ' ' || c == '<' || c == '&' || entityName.length() == MAX_ENTITY_NAME_LENGTH) {
+        throw new XmlPullParserException("Unterminated entity reference", this, /* chain= */ null);
+      }
+      entityName.append(c);
+    }
+    String entity = entityName.toString();
+    int codePoint = resolveEntity(entity);
+    if (codePoint == -1) {
+      throw new XmlPullParserException(
+          "unresolved: &" + entity + ";", this, /* chain= */ null);
+    }
+    if (inAttributeValue) {
+      if (Character.isBmpCodePoint(codePoint)) {
+        appendScratch((char) codePoint);
+      } else {
+        appendScratch(Character.highSurrogate(codePoint));
+        appendScratch(Character.lowSurrogate(codePoint));
+      }
+    } else {
+      if (Character.isBmpCodePoint(codePoint)) {
+        appendText((char) codePoint);
+      } else {
+        appendText(Character.highSurrogate(codePoint));
+        appendText(Character.lowSurrogate(codePoint));
+      }
+      isWhitespace = false;
+    }
+    return entity;
+  }
+
+  private static int resolveEntity(String entity) {
+    switch (entity) {
+      case "lt":
+        return '<';
+      case "gt":
+        return '>';
+      case "amp":
+        return '&';
+      case "quot":
+        return '"';
+      case "apos":
+        return '\'';
+      default:
+        break;
+    }
+    if (entity.length() < 2 || entity.charAt(0) != '#') {
+      return -1;
+    }
+    try {
+      int codePoint =
+          entity.charAt(1) == 'x'
+              ? Integer.parseInt(entity.substring(2), 16)
+              : Integer.parseInt(entity.substring(1));
+      return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Reads up to and including the given terminator, storing the characters before the terminator
+   * as text if {@code storeText} is true.
+   */
+  private void readUntil(String terminator, boolean storeText)
+      throws XmlPullParserException, IOException {
+    char firstTerminatorChar = terminator.charAt(0);
+    while (true) {
+      if (position == limit && !fill()) {
+        throw new XmlPullParserException(
+            "Unexpected EOF, expected " + terminator, this, /* chain= */ null);
+      }
+      int start = position;
+      while (position < limit) {
+        char c = buffer[position];
+        if (c == firstTerminatorChar || c == '\r') {
+          break;
+        }
+        position++;
+      }
+      if (storeText) {
+        appendTextAndUpdateWhitespace(start, position - start);
+      }
+      if (position == limit) {
+        continue;
+      }
+      if (buffer[position] == '\r') {
+        position++;
+        skipLineFeed();
+        if (storeText) {
+          appendText('\n');
+        }
+      } else if (startsWith(terminator)) {
+        position += terminator.length();
+        return;
+      } else {
+        if (storeText) {
+          appendTextAndUpdateWhitespace(position, 1);
+        }
+        position++;
+      }
+    }
+  }
+
+  private void readDoctype() throws XmlPullParserException, IOException {
+    int bracketDepth = 0;
+    while (true) {
+      if (position == limit && !fill()) {
+        throw new XmlPullParserException("Unexpected EOF in DOCTYPE", this, /* chain= */ null);
+      }
+      char c = buffer[position++];
+      if (c == '[') {
+        bracketDepth++;
+      } else if (c == ']') {
+        bracketDepth--;
+      } else if (c == '>' && bracketDepth <= 0) {
+        return;
+      }
+      appendText(c);
+    }
+  }
+
+  private String readName() throws XmlPullParserException, IOException {
+    scratchLength = 0;
+    while (position < limit || fill()) {
+      int start = position;
+      while (position < limit && isNameChar(buffer[position])) {
+        position++;
+      }
+      if (position < limit) {
+        if (scratchLength == 0) {
+          if (position == start) {
+            break;
+          }
+          return intern(buffer, start, position - start);
+        }
+        appendScratch(buffer, start, position - start);
+        return intern(scratch, 0, scratchLength);
+      }
+      appendScratch(buffer, start, position - start);
+    }
+    if (scratchLength == 0) {
+      throw new XmlPullParserException("Name expected", this, /* chain= */ null);
+    }
+    return intern(scratch, 0, scratchLength);
+  }
+
+  private String intern(char[] chars, int offset, int length) {
+    int hash = 0;
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + chars[offset + i];
+    }
+    int index = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+    @Nullable String cachedName = nameCache[index];
+    if (cachedName != null && cachedName.length() == length) {
+      boolean matches = true;
+      for (int i = 0; i < length; i++) {
+        if (cachedName.charAt(i) != chars[offset + i]) {
+          matches = false;
+          break;
+        }
+      }
+      if (matches) {
+        return cachedName;
+      }
+    }
+    String name = new String(chars, offset, length).intern();
+    nameCache[index] = name;
+    return name;
+  }
+
+  private static boolean isNameChar(char c) {
+    return c > ' ' && c != '>' && c != '/' && c != '=' && c != '<' && c != '"' && c != '\'';
+  }
+
+  private void skipWhitespace() throws IOException {
+    while ((position < limit || fill()) && buffer[position] <= ' ') {
+      position++;
+    }
+  }
+
+  private void skipLineFeed() throws IOException {
+    if ((position < limit || fill()) && buffer[position] == '\n') {
+      position++;
+    }
+  }
+
+  private void requireChar(char expected) throws XmlPullParserException, IOException {
+    if ((position == limit && !fill()) || buffer[position] != expected) {
+      throw new XmlPullParserException("Expected '" + expected + "'", this, /* chain= */ null);
+    }
+    position++;
+  }
+
+  private void maybeSkipByteOrderMarkAndXmlDeclaration()
+      throws XmlPullParserException, IOException {
+    if ((position < limit || fill()) && buffer[position] == '\uFEFF') {
+      position++;
+    }
+    if (startsWith("<?xml") && ensure(6) && buffer[position + 5] <= ' ') {
+      position += 5;
+      readUntil("?>", /* storeText= */ false);
+    }
+  }
+
+  private boolean startsWith(String prefix) throws IOException {
+    int length = prefix.length();
+    if (!ensure(length)) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (buffer[position + i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Ensures that at least {@code count} characters are available in the buffer, returning whether
+   * this is possible before the end of the input.
+   */
+  private boolean ensure(int count) throws IOException {
+    if (limit - position >= count) {
+      return true;
+    }
+    Reader reader = this.reader;
+    if (reader == null) {
+      return false;
+    }
+    System.arraycopy(buffer, position, buffer, 0, limit - position);
+    limit -= position;
+    position = 0;
+    while (limit < count) {
+      int read = reader.read(buffer, limit, buffer.length - limit);
+      if (read == -1) {
+        return false;
+      }
+      limit += read;
+    }
+    return true;
+  }
+
+  /** Reads more input once the buffer has been consumed, returning false at the end of input. */
+  private boolean fill() throws IOException {
+    Reader reader = this.reader;
+    if (reader == null) {
+      return false;
+    }
+    int read;
+    do {
+      read = reader.read(buffer, 0, buffer.length);
+    } while (read == 0);
+    if (read == -1) {
+      position = 0;
+      limit = 0;
+      return false;
+    }
+    position = 0;
+    limit = read;
+    return true;
+  }
+
+  private void appendText(char c) {
+    if (textLength == text.length) {
+      text = Arrays.copyOf(text, textLength * 2);
+    }
+    text[textLength++] = c;
+  }
+
+  private void appendText(char[] chars, int offset, int length) {
+    if (textLength + length > text.length) {
+      text = Arrays.copyOf(text, Math.max(textLength + length, textLength * 2));
+    }
+    System.arraycopy(chars, offset, text, textLength, length);
+    textLength += length;
+  }
+
+  private void appendTextAndUpdateWhitespace(int offset, int length) {
+    for (int i = offset; isWhitespace && i < offset + length; i++) {
+      isWhitespace = buffer[i] <= ' ';
+    }
+    appendText(buffer, offset, length);
+  }
+
+  private void appendScratch(char c) {
+    if (scratchLength == scratch.length) {
+      scratch = Arrays.copyOf(scratch, scratchLength * 2);
+    }
+    scratch[scratchLength++] = c;
+  }
+
+  private void appendScratch(char[] chars, int offset, int length) {
+    if (scratchLength + length > scratch.length) {
+      scratch = Arrays.copyOf(scratch, Math.max(scratchLength + length, scratchLength * 2));
+    }
+    System.arraycopy(chars, offset, scratch, scratchLength, length);
+    scratchLength += length;
+  }
+
+  private void checkAttributeIndex(int index) {
+    if (eventType != START_TAG || index < 0 || index >= attributeCount) {
+      throw new IndexOutOfBoundsException();
+    }
+  }
+
+  /**
+   * Detects the encoding of the input from its byte order mark or XML declaration, defaulting to
+   * UTF-8.
+   */
+  private static Charset detectCharset(InputStream input) throws IOException {
+    input.mark(ENCODING_DETECTION_LENGTH);
+    byte[] prefix = new byte[ENCODING_DETECTION_LENGTH];
+    int length = 0;
+    int read;
+    while (length < prefix.length
+        && (read = input.read(prefix, length, prefix.length - length)) != -1) {
+      length += read;
+    }
+    input.reset();
+    if (length >= 2) {
+      int first = prefix[0] & 0xFF;
+      int second = prefix[1] & 0xFF;
+      if ((first == 0xFE && second == 0xFF) || (first == 0 && second == '<')) {
+        return StandardCharsets.UTF_16BE;
+      } else if ((first == 0xFF && second == 0xFE) || (first == '<' && second == 0)) {
+        return StandardCharsets.UTF_16LE;
+      }
+    }
+    String declaration = new String(prefix, 0, length, StandardCharsets.ISO_8859_1);
+    if (declaration.startsWith("<?xml")) {
+      int declarationEnd = declaration.indexOf("?>");
+      int encodingIndex = declaration.indexOf("encoding");
+      if (encodingIndex != -1 && (declarationEnd == -1 || encodingIndex < declarationEnd)) {
+        int quoteIndex = encodingIndex + 8;
+        while (quoteIndex < length && declaration.charAt(quoteIndex) != '"'
+            && declaration.charAt(quoteIndex) != '\'') {
+          quoteIndex++;
+        }
+        if (quoteIndex < length) {
+          int endQuoteIndex = declaration.indexOf(declaration.charAt(quoteIndex), quoteIndex + 1);
+          if (endQuoteIndex != -1) {
+            return Charset.forName(declaration.substring(quoteIndex + 1, endQuoteIndex));
+          }
+        }
+      }
+    }
+    return StandardCharsets.UTF_8;
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTimelineElement;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A segment timeline that stores runs of consecutive segments with the same duration, rather than
+ * one {@link SegmentTimelineElement} per segment.
+ *
+ * <p>A SegmentTimeline S element with a repeat count, or a sequence of S elements with the same
+ * duration, is stored as a single run. The {@link SegmentTimelineElement SegmentTimelineElements}
+ * returned by {@link #get(int)} are created on demand. {@link #getStartTime(int)} and {@link
+ * #getDuration(int)} don't allocate, and look up the run of a segment using binary search.
+ *
+ * <p>Segments are appended whilst the timeline is parsed, either individually using {@link
+ * #add(SegmentTimelineElement)} or as runs. The timeline mustn't be modified once it's been passed
+ * to a {@link SegmentBase.MultiSegmentBase}.
+ */
+/* package */ final class RunLengthSegmentTimeline extends AbstractList<SegmentTimelineElement>
+    implements RandomAccess {
+
+  private static final int INITIAL_RUN_CAPACITY = 4;
+
+  private long[] runStartTimes;
+  private long[] runDurations;
+  private int[] runStartIndices;
+  private int runCount;
+  private int size;
+
+  /** Creates an empty instance. */
+  public RunLengthSegmentTimeline() {
+    runStartTimes = new long[INITIAL_RUN_CAPACITY];
+    runDurations = new long[INITIAL_RUN_CAPACITY];
+    runStartIndices = new int[INITIAL_RUN_CAPACITY];
+  }
+
+  /**
+   * Returns a {@link RunLengthSegmentTimeline} containing the given elements. Returns the given
+   * list if it's already a {@link RunLengthSegmentTimeline}.
+   */
+  public static RunLengthSegmentTimeline copyOf(List<SegmentTimelineElement> elements) {
+    if (elements instanceof RunLengthSegmentTimeline) {
+      return (RunLengthSegmentTimeline) elements;
+    }
+    RunLengthSegmentTimeline timeline = new RunLengthSegmentTimeline();
+    for (int i = 0; i < elements.size(); i++) {
+      SegmentTimelineElement element = elements.get(i);
+      timeline.appendRun(element.startTime, element.duration, /* count= */ 1);
+    }
+    return timeline;
+  }
+
+  /**
+   * Appends a run of consecutive segments with the same duration. The run is merged into the
+   * previous one if it continues it.
+   *
+   * @param startTime The start time of the first segment of the run. The value in seconds is the
+   *     division of this value and the {@code timescale} of the enclosing element.
+   * @param duration The duration of each segment of the run. The value in seconds is the division
+   *     of this value and the {@code timescale} of the enclosing element.
+   * @param count The number of segments in the run. Nothing is appended if it's not positive.
+   */
+  public void appendRun(long startTime, long duration, int count) {
+    if (count <= 0) {
+      return;
+    }
+    if (runCount > 0) {
+      int lastRun = runCount - 1;
+      long lastRunEndTime =
+          runStartTimes[lastRun] + (size - runStartIndices[lastRun]) * runDurations[lastRun];
+      if (runDurations[lastRun] == duration && lastRunEndTime == startTime) {
+        size += count;
+        return;
+      }
+    }
+    if (runCount == runStartTimes.length) {
+      int newCapacity = runCount * 2;
+      runStartTimes = Arrays.copyOf(runStartTimes, newCapacity);
+      runDurations = Arrays.copyOf(runDurations, newCapacity);
+      runStartIndices = Arrays.copyOf(runStartIndices, newCapacity);
+    }
+    runStartTimes[runCount] = startTime;
+    runDurations[runCount] = duration;
+    runStartIndices[runCount] = size;
+    runCount++;
+    size += count;
+  }
+
+  /**
+   * Appends a single segment. The segment is merged into the previous run if it continues it.
+   *
+   * @param element The element describing the segment.
+   * @return Always {@code true}.
+   */
+  @Override
+  public boolean add(SegmentTimelineElement element) {
+    appendRun(element.startTime, element.duration, /* count= */ 1);
+    return true;
+  }
+
+  /** Returns the number of runs of segments with the same duration. */
+  public int getRunCount() {
+    return runCount;
+  }
+
+  /**
+   * Returns the start time of the segment with the given index, in the units of the {@code
+   * timescale} of the enclosing element.
+   */
+  public long getStartTime(int index) {
+    int run = getRunIndex(index);
+    return runStartTimes[run] + (index - runStartIndices[run]) * runDurations[run];
+  }
+
+  /**
+   * Returns the duration of the segment with the given index, in the units of the {@code
+   * timescale} of the enclosing element.
+   */
+  public long getDuration(int index) {
+    return runDurations[getRunIndex(index)];
+  }
+
+  @Override
+  public SegmentTimelineElement get(int index) {
+    int run = getRunIndex(index);
+    long startTime = runStartTimes[run] + (index - runStartIndices[run]) * runDurations[run];
+    return new SegmentTimelineElement(startTime, runDurations[run]);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof RunLengthSegmentTimeline)) {
+      return super.equals(o);
+    }
+    // Runs are always merged when possible, so equal timelines consist of the same runs.
+    RunLengthSegmentTimeline that = (RunLengthSegmentTimeline) o;
+    if (size != that.size || runCount != that.runCount) {
+      return false;
+    }
+    for (int i = 0; i < runCount; i++) {
+      if (runStartTimes[i] != that.runStartTimes[i]
+          || runDurations[i] != that.runDurations[i]
+          || runStartIndices[i] != that.runStartIndices[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    // Overridden alongside equals, which is consistent with the hash code of the list elements.
+    return super.hashCode();
+  }
+
+  private int getRunIndex(int index) {
+    checkElementIndex(index, size);
+    int run = Arrays.binarySearch(runStartIndices, /* fromIndex= */ 0, runCount, index);
+    // If the index isn't the first of a run, binarySearch returns (-(insertion point) - 1), and
+    // the index belongs to the run before the insertion point.
+    return run >= 0 ? run : -run - 2;
+  }
+}
@@ -115,9 +115,9 @@ public abstract class SegmentBase {
 
     /* package */ final long startNumber;
     /* package */ final long duration;
-    @Nullable /* package */ final List<SegmentTimelineElement> segmentTimeline;
-    private final long timeShiftBufferDepthUs;
-    private final long periodStartUnixTimeUs;
+    @Nullable /* package */ final RunLengthSegmentTimeline segmentTimeline;
+    /* package */ final long timeShiftBufferDepthUs;
+    /* package */ final long periodStartUnixTimeUs;
 
     /**
      * Offset to the current realtime at which segments become available, in microseconds, or {@link
@@ -160,7 +160,8 @@ public abstract class SegmentBase {
       super(initialization, timescale, presentationTimeOffset);
       this.startNumber = startNumber;
       this.duration = duration;
-      this.segmentTimeline = segmentTimeline;
+      this.segmentTimeline =
+          segmentTimeline != null ? RunLengthSegmentTimeline.copyOf(segmentTimeline) : null;
       this.availabilityTimeOffsetUs = availabilityTimeOffsetUs;
       this.timeShiftBufferDepthUs = timeShiftBufferDepthUs;
       this.periodStartUnixTimeUs = periodStartUnixTimeUs;
@@ -184,7 +185,8 @@ public abstract class SegmentBase {
                 ? segmentNum
                 : min(segmentNum, firstSegmentNum + segmentCount - 1);
       } else {
-        // The index cannot be unbounded. Identify the segment using binary search.
+        // The index cannot be unbounded. Identify the segment using binary search. The start time
+        // of each probed segment is itself found using binary search over the timeline's runs.
         long lowIndex = firstSegmentNum;
         long highIndex = firstSegmentNum + segmentCount - 1;
         while (lowIndex <= highIndex) {
@@ -205,7 +207,7 @@ public abstract class SegmentBase {
     /** See {@link DashSegmentIndex#getDurationUs(long, long)}. */
     public final long getSegmentDurationUs(long sequenceNumber, long periodDurationUs) {
       if (segmentTimeline != null) {
-        long duration = segmentTimeline.get((int) (sequenceNumber - startNumber)).duration;
+        long duration = segmentTimeline.getDuration((int) (sequenceNumber - startNumber));
         return (duration * C.MICROS_PER_SECOND) / timescale;
       } else {
         long segmentCount = getSegmentCount(periodDurationUs);
@@ -221,7 +223,7 @@ public abstract class SegmentBase {
       long unscaledSegmentTime;
       if (segmentTimeline != null) {
         unscaledSegmentTime =
-            segmentTimeline.get((int) (sequenceNumber - startNumber)).startTime
+            segmentTimeline.getStartTime((int) (sequenceNumber - startNumber))
                 - presentationTimeOffset;
       } else {
         unscaledSegmentTime = (sequenceNumber - startNumber) * duration;
@@ -439,7 +441,7 @@ public abstract class SegmentBase {
     public RangedUri getSegmentUrl(Representation representation, long sequenceNumber) {
       long time;
       if (segmentTimeline != null) {
-        time = segmentTimeline.get((int) (sequenceNumber - startNumber)).startTime;
+        time = segmentTimeline.getStartTime((int) (sequenceNumber - startNumber));
       } else {
         time = (sequenceNumber - startNumber) * duration;
       }
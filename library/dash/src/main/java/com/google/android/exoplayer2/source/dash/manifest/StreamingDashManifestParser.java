@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * A {@link DashManifestParser} that reads the manifest using a lightweight streaming XML
+ * tokenizer, rather than the platform {@link XmlPullParser}.
+ *
+ * <p>The tokenizer is non-validating and namespace unaware, and only supports the predefined and
+ * character entities, which is sufficient for DASH manifests. It decodes the input into a
+ * reusable buffer and avoids allocating a new string for each occurrence of an element or
+ * attribute name, which significantly reduces parsing time and garbage for large manifests, such
+ * as those of long live streams with many periods or long segment timelines.
+ *
+ * <p>The resulting {@link DashManifest} is the same as that produced by {@link
+ * DashManifestParser}. Use {@link
+ * com.google.android.exoplayer2.source.dash.DashMediaSource.Factory#setManifestParser} to use
+ * this parser for playback.
+ */
+public class StreamingDashManifestParser extends DashManifestParser {
+
+  @Override
+  protected XmlPullParser createXmlPullParser() {
+    return new DashXmlPullParser();
+  }
+}
@@ -15,6 +15,8 @@
  */
 package com.google.android.exoplayer2.source.dash.manifest;
 
+import androidx.annotation.Nullable;
+import java.util.Arrays;
 import java.util.Locale;
 
 /**
@@ -96,6 +98,30 @@ public final class UrlTemplate {
     return builder.toString();
   }
 
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    UrlTemplate that = (UrlTemplate) o;
+    return identifierCount == that.identifierCount
+        && Arrays.equals(urlPieces, that.urlPieces)
+        && Arrays.equals(identifiers, that.identifiers)
+        && Arrays.equals(identifierFormatTags, that.identifierFormatTags);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = identifierCount;
+    result = 31 * result + Arrays.hashCode(urlPieces);
+    result = 31 * result + Arrays.hashCode(identifiers);
+    result = 31 * result + Arrays.hashCode(identifierFormatTags);
+    return result;
+  }
+
   /**
    * Parses {@code template}, placing the decomposed components into the provided arrays.
    *
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link DashManifestDiffer}. */
+@RunWith(AndroidJUnit4.class)
+public final class DashManifestDifferTest {
+
+  private static final String MANIFEST_START =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<MPD xmlns=\"urn:mpeg:DASH:schema:MPD:2011\" type=\"dynamic\""
+          + " availabilityStartTime=\"2023-01-01T00:00:00Z\" minimumUpdatePeriod=\"PT2S\">\n";
+  private static final String MANIFEST_END = "</MPD>\n";
+
+  @Test
+  public void reuseUnchangedObjects_withUnchangedPeriod_reusesPeriod() throws IOException {
+    DashManifest previousManifest =
+        parse(
+            MANIFEST_START
+                + createPeriod("p0", /* startS= */ 0, /* segmentCount= */ 5)
+                + createPeriod("p1", /* startS= */ 10, /* segmentCount= */ 2)
+                + MANIFEST_END);
+    DashManifest manifest =
+        parse(
+            MANIFEST_START
+                + createPeriod("p0", /* startS= */ 0, /* segmentCount= */ 5)
+                + createPeriod("p1", /* startS= */ 10, /* segmentCount= */ 3)
+                + MANIFEST_END);
+
+    DashManifest mergedManifest =
+        DashManifestDiffer.reuseUnchangedObjects(previousManifest, manifest);
+
+    assertThat(mergedManifest.getPeriodCount()).isEqualTo(2);
+    assertThat(mergedManifest.getPeriod(0)).isSameInstanceAs(previousManifest.getPeriod(0));
+    // The timeline of the video representation of the second period has changed, whereas the
+    // audio adaptation set is unchanged.
+    Period period = mergedManifest.getPeriod(1);
+    Period previousPeriod = previousManifest.getPeriod(1);
+    assertThat(period).isNotSameInstanceAs(previousPeriod);
+    assertThat(period.adaptationSets.get(0))
+        .isSameInstanceAs(manifest.getPeriod(1).adaptationSets.get(0));
+    assertThat(period.adaptationSets.get(1)).isSameInstanceAs(previousPeriod.adaptationSets.get(1));
+  }
+
+  @Test
+  public void reuseUnchangedObjects_withChangedRepresentation_reusesOtherRepresentations()
+      throws IOException {
+    DashManifest previousManifest =
+        parse(
+            MANIFEST_START
+                + "<Period id=\"p0\" start=\"PT0S\">\n"
+                + "<AdaptationSet id=\"0\" mimeType=\"video/mp4\">\n"
+                + "<SegmentTemplate timescale=\"1000\" duration=\"2000\" media=\"$Number$.mp4\"/>\n"
+                + "<Representation id=\"v0\" bandwidth=\"1000000\"/>\n"
+                + "<Representation id=\"v1\" bandwidth=\"2000000\"/>\n"
+                + "</AdaptationSet>\n"
+                + "</Period>\n"
+                + MANIFEST_END);
+    DashManifest manifest =
+        parse(
+            MANIFEST_START
+                + "<Period id=\"p0\" start=\"PT0S\">\n"
+                + "<AdaptationSet id=\"0\" mimeType=\"video/mp4\">\n"
+                + "<SegmentTemplate timescale=\"1000\" duration=\"2000\" media=\"$Number$.mp4\"/>\n"
+                + "<Representation id=\"v0\" bandwidth=\"1000000\"/>\n"
+                + "<Representation id=\"v1\" bandwidth=\"3000000\"/>\n"
+                + "</AdaptationSet>\n"
+                + "</Period>\n"
+                + MANIFEST_END);
+
+    DashManifest mergedManifest =
+        DashManifestDiffer.reuseUnchangedObjects(previousManifest, manifest);
+
+    AdaptationSet adaptationSet = mergedManifest.getPeriod(0).adaptationSets.get(0);
+    AdaptationSet previousAdaptationSet = previousManifest.getPeriod(0).adaptationSets.get(0);
+    assertThat(adaptationSet.representations.get(0))
+        .isSameInstanceAs(previousAdaptationSet.representations.get(0));
+    assertThat(adaptationSet.representations.get(1).format.bitrate).isEqualTo(3000000);
+    assertThat(mergedManifest.publishTimeMs).isEqualTo(manifest.publishTimeMs);
+  }
+
+  @Test
+  public void reuseUnchangedObjects_withNoMatchingPeriods_returnsManifest() throws IOException {
+    DashManifest previousManifest =
+        parse(
+            MANIFEST_START
+                + createPeriod("p0", /* startS= */ 0, /* segmentCount= */ 5)
+                + MANIFEST_END);
+    DashManifest manifest =
+        parse(
+            MANIFEST_START
+                + createPeriod("p1", /* startS= */ 10, /* segmentCount= */ 5)
+                + MANIFEST_END);
+
+    assertThat(DashManifestDiffer.reuseUnchangedObjects(previousManifest, manifest))
+        .isSameInstanceAs(manifest);
+  }
+
+  private static String createPeriod(String id, int startS, int segmentCount) {
+    return "<Period id=\""
+        + id
+        + "\" start=\"PT"
+        + startS
+        + "S\">\n"
+        + "<AdaptationSet id=\"0\" mimeType=\"video/mp4\">\n"
+        + "<SegmentTemplate timescale=\"1000\" media=\"video-$Time$.mp4\">\n"
+        + "<SegmentTimeline><S t=\"0\" d=\"2000\" r=\""
+        + (segmentCount - 1)
+        + "\"/></SegmentTimeline>\n"
+        + "</SegmentTemplate>\n"
+        + "<Representation id=\"v0\" bandwidth=\"1000000\"/>\n"
+        + "</AdaptationSet>\n"
+        + "<AdaptationSet id=\"1\" mimeType=\"audio/mp4\">\n"
+        + "<SegmentTemplate timescale=\"1000\" duration=\"2000\" media=\"audio-$Number$.mp4\"/>\n"
+        + "<Representation id=\"a0\" bandwidth=\"128000\"/>\n"
+        + "</AdaptationSet>\n"
+        + "</Period>\n";
+  }
+
+  private static DashManifest parse(String manifestString) throws IOException {
+    return new DashManifestParser()
+        .parse(
+            Uri.parse("https://example.com/test.mpd"),
+            new ByteArrayInputStream(Util.getUtf8Bytes(manifestString)));
+  }
+}
@@ -35,6 +35,7 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import org.junit.Test;
@@ -429,6 +430,69 @@ public class DashManifestParserTest {
     assertNextTag(xpp);
   }
 
+  @Test
+  public void parseSegmentTimeline_longTimeline_storesRunsOfEqualDurations() throws Exception {
+    DashManifestParser parser = new DashManifestParser();
+    XmlPullParser xpp = XmlPullParserFactory.newInstance().newPullParser();
+    xpp.setInput(
+        new StringReader(
+            "<SegmentTimeline><S t=\"0\" d=\"2000\" r=\"43199\"/><S d=\"2000\"/>"
+                + "<S d=\"1000\"/></SegmentTimeline>"
+                + NEXT_TAG));
+    xpp.next();
+
+    List<SegmentTimelineElement> elements =
+        parser.parseSegmentTimeline(xpp, /* timescale= */ 1000, /* periodDurationMs= */ 0);
+
+    assertThat(elements).hasSize(43202);
+    assertThat(((RunLengthSegmentTimeline) elements).getRunCount()).isEqualTo(2);
+    assertThat(elements.get(43200))
+        .isEqualTo(new SegmentTimelineElement(/* startTime= */ 86_400_000, /* duration= */ 2000));
+    assertThat(elements.get(43201))
+        .isEqualTo(new SegmentTimelineElement(/* startTime= */ 86_402_000, /* duration= */ 1000));
+    assertNextTag(xpp);
+  }
+
+  @Test
+  public void parseSegmentTimeline_callsBuildSegmentTimelineElementForEachSegment()
+      throws Exception {
+    List<Long> builtElementStartTimes = new ArrayList<>();
+    List<Integer> addedRunCounts = new ArrayList<>();
+    DashManifestParser parser =
+        new DashManifestParser() {
+          @Override
+          protected void addSegmentTimelineRun(
+              List<SegmentTimelineElement> segmentTimeline,
+              long startTime,
+              long duration,
+              int count) {
+            addedRunCounts.add(count);
+            super.addSegmentTimelineRun(segmentTimeline, startTime, duration, count);
+          }
+
+          @Override
+          protected SegmentTimelineElement buildSegmentTimelineElement(
+              long startTime, long duration) {
+            builtElementStartTimes.add(startTime);
+            return super.buildSegmentTimelineElement(startTime, duration);
+          }
+        };
+    XmlPullParser xpp = XmlPullParserFactory.newInstance().newPullParser();
+    xpp.setInput(
+        new StringReader(
+            "<SegmentTimeline><S t=\"0\" d=\"2000\" r=\"2\"/><S d=\"1000\"/></SegmentTimeline>"
+                + NEXT_TAG));
+    xpp.next();
+
+    List<SegmentTimelineElement> elements =
+        parser.parseSegmentTimeline(xpp, /* timescale= */ 1000, /* periodDurationMs= */ 0);
+
+    assertThat(elements).hasSize(4);
+    assertThat(addedRunCounts).containsExactly(3, 1).inOrder();
+    assertThat(builtElementStartTimes).containsExactly(0L, 2000L, 4000L, 6000L).inOrder();
+    assertNextTag(xpp);
+  }
+
   @Test
   public void parseLabel() throws Exception {
     DashManifestParser parser = new DashManifestParser();
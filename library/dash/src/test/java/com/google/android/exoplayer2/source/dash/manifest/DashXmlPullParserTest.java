@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import java.io.ByteArrayInputStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/** Unit test for {@link DashXmlPullParser}. */
+@RunWith(AndroidJUnit4.class)
+public final class DashXmlPullParserTest {
+
+  @Test
+  public void next_reportsElementsAndAttributes() throws Exception {
+    XmlPullParser parser =
+        createParser(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<!-- Comment -->\n"
+                + "<MPD type='static'>\n"
+                + "  <S t=\"0\" d=\"2000\" />\n"
+                + "</MPD>\n");
+
+    assertThat(parser.getEventType()).isEqualTo(XmlPullParser.START_DOCUMENT);
+    assertThat(parser.next()).isEqualTo(XmlPullParser.START_TAG);
+    assertThat(parser.getName()).isEqualTo("MPD");
+    assertThat(parser.getDepth()).isEqualTo(1);
+    assertThat(parser.getAttributeValue(null, "type")).isEqualTo("static");
+    assertThat(parser.next()).isEqualTo(XmlPullParser.TEXT);
+    assertThat(parser.isWhitespace()).isTrue();
+    assertThat(parser.next()).isEqualTo(XmlPullParser.START_TAG);
+    assertThat(parser.getName()).isEqualTo("S");
+    assertThat(parser.getDepth()).isEqualTo(2);
+    assertThat(parser.isEmptyElementTag()).isTrue();
+    assertThat(parser.getAttributeCount()).isEqualTo(2);
+    assertThat(parser.getAttributeName(1)).isEqualTo("d");
+    assertThat(parser.getAttributeValue(1)).isEqualTo("2000");
+    assertThat(parser.getAttributeValue(null, "t")).isEqualTo("0");
+    assertThat(parser.getAttributeValue(null, "r")).isNull();
+    assertThat(parser.next()).isEqualTo(XmlPullParser.END_TAG);
+    assertThat(parser.getName()).isEqualTo("S");
+    assertThat(parser.getDepth()).isEqualTo(2);
+    assertThat(parser.next()).isEqualTo(XmlPullParser.TEXT);
+    assertThat(parser.next()).isEqualTo(XmlPullParser.END_TAG);
+    assertThat(parser.getName()).isEqualTo("MPD");
+    assertThat(parser.getDepth()).isEqualTo(1);
+    assertThat(parser.next()).isEqualTo(XmlPullParser.END_DOCUMENT);
+    assertThat(parser.getDepth()).isEqualTo(0);
+  }
+
+  @Test
+  public void next_withEntitiesCdataAndComments_mergesText() throws Exception {
+    XmlPullParser parser =
+        createParser(
+            "<Title>a &amp; b<!-- c --><![CDATA[ <d> ]]>&#x41;&#66;\r\ne</Title>");
+
+    parser.next();
+
+    assertThat(parser.nextText()).isEqualTo("a & b <d> AB\ne");
+    assertThat(parser.getEventType()).isEqualTo(XmlPullParser.END_TAG);
+  }
+
+  @Test
+  public void next_withEntitiesAndLineBreaksInAttribute_normalizesValue() throws Exception {
+    XmlPullParser parser = createParser("<a value=\"&lt;x&gt;&quot;\r\ny&apos;\tz\"/>");
+
+    parser.next();
+
+    assertThat(parser.getAttributeValue(null, "value")).isEqualTo("<x>\" y' z");
+  }
+
+  @Test
+  public void next_withPrefixedNames_doesNotProcessNamespaces() throws Exception {
+    XmlPullParser parser =
+        createParser("<MPD xmlns:cenc=\"urn:mpeg:cenc:2013\"><cenc:pssh>AAAA</cenc:pssh></MPD>");
+
+    parser.next();
+    assertThat(parser.getAttributeName(0)).isEqualTo("xmlns:cenc");
+    parser.next();
+
+    assertThat(parser.getName()).isEqualTo("cenc:pssh");
+    assertThat(parser.getNamespace()).isEmpty();
+    assertThat(parser.getPrefix()).isNull();
+    assertThat(parser.nextText()).isEqualTo("AAAA");
+  }
+
+  @Test
+  public void next_withValuesLongerThanBuffer_readsCompleteValues() throws Exception {
+    String longValue = Strings.repeat("0123456789", 2000);
+    XmlPullParser parser =
+        createParser("<a value=\"" + longValue + "\">" + longValue + "</a>");
+
+    parser.next();
+
+    assertThat(parser.getAttributeValue(null, "value")).isEqualTo(longValue);
+    assertThat(parser.nextText()).isEqualTo(longValue);
+  }
+
+  @Test
+  public void nextToken_reportsAllTokens() throws Exception {
+    XmlPullParser parser =
+        createParser("<a><!--c--><![CDATA[d]]>&amp;<?pi x?></a>\n");
+
+    assertThat(parser.nextToken()).isEqualTo(XmlPullParser.START_TAG);
+    assertThat(parser.nextToken()).isEqualTo(XmlPullParser.COMMENT);
+    assertThat(parser.getText()).isEqualTo("c");
+    assertThat(parser.nextToken()).isEqualTo(XmlPullParser.CDSECT);
+    assertThat(parser.getText()).isEqualTo("d");
+    assertThat(parser.nextToken()).isEqualTo(XmlPullParser.ENTITY_REF);
+    assertThat(parser.getName()).isEqualTo("amp");
+    assertThat(parser.getText()).isEqualTo("&");
+    assertThat(parser.nextToken()).isEqualTo(XmlPullParser.PROCESSING_INSTRUCTION);
+    assertThat(parser.getText()).isEqualTo("pi x");
+    assertThat(parser.nextToken()).isEqualTo(XmlPullParser.END_TAG);
+    assertThat(parser.nextToken()).isEqualTo(XmlPullParser.IGNORABLE_WHITESPACE);
+    assertThat(parser.nextToken()).isEqualTo(XmlPullParser.END_DOCUMENT);
+  }
+
+  @Test
+  public void setInput_withUtf16InputStream_detectsEncoding() throws Exception {
+    XmlPullParser parser = new DashXmlPullParser();
+    byte[] data = "\uFEFF<a b=\"\u00E9\"/>".getBytes(Charsets.UTF_16BE);
+
+    parser.setInput(new ByteArrayInputStream(data), /* inputEncoding= */ null);
+    parser.next();
+
+    assertThat(parser.getInputEncoding()).isEqualTo("UTF-16BE");
+    assertThat(parser.getAttributeValue(null, "b")).isEqualTo("\u00E9");
+  }
+
+  @Test
+  public void next_withMismatchedEndTag_throws() throws Exception {
+    XmlPullParser parser = createParser("<a><b></a>");
+    parser.next();
+    parser.next();
+
+    assertThrows(XmlPullParserException.class, parser::next);
+  }
+
+  @Test
+  public void next_withUnterminatedElement_throws() throws Exception {
+    XmlPullParser parser = createParser("<a><b/>");
+    parser.next();
+    parser.next();
+    parser.next();
+
+    assertThrows(XmlPullParserException.class, parser::next);
+  }
+
+  @Test
+  public void next_withUnknownEntity_throws() throws Exception {
+    XmlPullParser parser = createParser("<a>&nbsp;</a>");
+    parser.next();
+
+    assertThrows(XmlPullParserException.class, parser::next);
+  }
+
+  @Test
+  public void next_withUnquotedAttributeValue_throws() throws Exception {
+    XmlPullParser parser = createParser("<a b=c/>");
+
+    assertThrows(XmlPullParserException.class, parser::next);
+  }
+
+  private static XmlPullParser createParser(String xml) throws XmlPullParserException {
+    XmlPullParser parser = new DashXmlPullParser();
+    parser.setInput(new ByteArrayInputStream(Util.getUtf8Bytes(xml)), /* inputEncoding= */ null);
+    return parser;
+  }
+}
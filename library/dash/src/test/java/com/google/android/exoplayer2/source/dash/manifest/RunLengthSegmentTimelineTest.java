@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTimelineElement;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link RunLengthSegmentTimeline}. */
+@RunWith(AndroidJUnit4.class)
+public final class RunLengthSegmentTimelineTest {
+
+  @Test
+  public void appendRun_returnsElementsOfAllRuns() {
+    RunLengthSegmentTimeline timeline = new RunLengthSegmentTimeline();
+
+    timeline.appendRun(/* startTime= */ 100, /* duration= */ 10, /* count= */ 3);
+    timeline.appendRun(/* startTime= */ 200, /* duration= */ 20, /* count= */ 2);
+
+    assertThat(timeline)
+        .containsExactly(
+            new SegmentTimelineElement(/* startTime= */ 100, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 110, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 120, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 200, /* duration= */ 20),
+            new SegmentTimelineElement(/* startTime= */ 220, /* duration= */ 20))
+        .inOrder();
+    assertThat(timeline.getRunCount()).isEqualTo(2);
+    assertThat(timeline.getStartTime(2)).isEqualTo(120);
+    assertThat(timeline.getDuration(2)).isEqualTo(10);
+    assertThat(timeline.getStartTime(4)).isEqualTo(220);
+    assertThat(timeline.getDuration(4)).isEqualTo(20);
+  }
+
+  @Test
+  public void appendRun_continuingPreviousRun_mergesRuns() {
+    RunLengthSegmentTimeline timeline = new RunLengthSegmentTimeline();
+
+    for (int i = 0; i < 1000; i++) {
+      timeline.appendRun(/* startTime= */ i * 2000L, /* duration= */ 2000, /* count= */ 1);
+    }
+
+    assertThat(timeline).hasSize(1000);
+    assertThat(timeline.getRunCount()).isEqualTo(1);
+    assertThat(timeline.getStartTime(999)).isEqualTo(1_998_000);
+  }
+
+  @Test
+  public void appendRun_withGapOrNonPositiveCount_doesNotMergeOrAppend() {
+    RunLengthSegmentTimeline timeline = new RunLengthSegmentTimeline();
+
+    timeline.appendRun(/* startTime= */ 0, /* duration= */ 10, /* count= */ 2);
+    timeline.appendRun(/* startTime= */ 30, /* duration= */ 10, /* count= */ 0);
+    timeline.appendRun(/* startTime= */ 30, /* duration= */ 10, /* count= */ 1);
+
+    assertThat(timeline)
+        .containsExactly(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 10, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 30, /* duration= */ 10))
+        .inOrder();
+    assertThat(timeline.getRunCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void copyOf_returnsEqualTimeline() {
+    ImmutableList<SegmentTimelineElement> elements =
+        ImmutableList.of(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 10, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 20, /* duration= */ 5));
+
+    RunLengthSegmentTimeline timeline = RunLengthSegmentTimeline.copyOf(elements);
+
+    assertThat(timeline).isEqualTo(elements);
+    assertThat(timeline.getRunCount()).isEqualTo(2);
+    assertThat(RunLengthSegmentTimeline.copyOf(timeline)).isSameInstanceAs(timeline);
+  }
+
+  @Test
+  public void get_withIndexOutOfBounds_throws() {
+    RunLengthSegmentTimeline timeline = new RunLengthSegmentTimeline();
+    timeline.appendRun(/* startTime= */ 0, /* duration= */ 10, /* count= */ 2);
+
+    assertThrows(IndexOutOfBoundsException.class, () -> timeline.get(2));
+    assertThrows(IndexOutOfBoundsException.class, () -> timeline.getStartTime(-1));
+  }
+}
@@ -183,6 +183,44 @@ public final class SegmentBaseTest {
         .isEqualTo(19_500_000);
   }
 
+  @Test
+  public void getSegmentNumAndTimeUs_withSegmentTimeline_usesTimelineRuns() {
+    RunLengthSegmentTimeline segmentTimeline = new RunLengthSegmentTimeline();
+    segmentTimeline.appendRun(/* startTime= */ 0, /* duration= */ 2000, /* count= */ 10_000);
+    segmentTimeline.appendRun(/* startTime= */ 20_000_000, /* duration= */ 1000, /* count= */ 2);
+    SegmentBase.SegmentTemplate segmentTemplate =
+        new SegmentBase.SegmentTemplate(
+            /* initialization= */ null,
+            /* timescale= */ 1000,
+            /* presentationTimeOffset= */ 0,
+            /* startNumber= */ 5,
+            /* endNumber= */ C.INDEX_UNSET,
+            /* duration= */ 0,
+            segmentTimeline,
+            /* availabilityTimeOffsetUs= */ C.TIME_UNSET,
+            /* initializationTemplate= */ null,
+            /* mediaTemplate= */ null,
+            /* timeShiftBufferDepthUs= */ C.TIME_UNSET,
+            /* periodStartUnixTimeUs= */ C.TIME_UNSET);
+
+    assertThat(segmentTemplate.getSegmentCount(/* periodDurationUs= */ C.TIME_UNSET))
+        .isEqualTo(10_002);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 0, C.TIME_UNSET)).isEqualTo(5);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 3_999_999, C.TIME_UNSET)).isEqualTo(6);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 20_000_500_000L, C.TIME_UNSET))
+        .isEqualTo(10_005);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 30_000_000_000L, C.TIME_UNSET))
+        .isEqualTo(10_006);
+    assertThat(segmentTemplate.getSegmentTimeUs(/* sequenceNumber= */ 10_004))
+        .isEqualTo(19_998_000_000L);
+    assertThat(segmentTemplate.getSegmentTimeUs(/* sequenceNumber= */ 10_006))
+        .isEqualTo(20_001_000_000L);
+    assertThat(segmentTemplate.getSegmentDurationUs(/* sequenceNumber= */ 10_004, C.TIME_UNSET))
+        .isEqualTo(2_000_000);
+    assertThat(segmentTemplate.getSegmentDurationUs(/* sequenceNumber= */ 10_005, C.TIME_UNSET))
+        .isEqualTo(1_000_000);
+  }
+
   /** Regression test for https://github.com/google/ExoPlayer/issues/8804. */
   @Test
   public void getSegmentCount_withSegmentTemplate_avoidsIncorrectRounding() {
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import android.util.Base64;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.extractor.mp4.PsshAtomUtil;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.ParsingLoadable;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link StreamingDashManifestParser}. */
+@RunWith(AndroidJUnit4.class)
+public final class StreamingDashManifestParserTest {
+
+  private static final Uri MANIFEST_URI = Uri.parse("https://example.com/test.mpd");
+  private static final int PERIOD_COUNT = 10;
+  private static final int SEGMENTS_PER_PERIOD = 300;
+
+  private static final ImmutableList<String> SAMPLE_MANIFESTS =
+      ImmutableList.of(
+          "media/mpd/sample_mpd_asset_identifier",
+          "media/mpd/sample_mpd_availabilityTimeOffset_baseUrl",
+          "media/mpd/sample_mpd_availabilityTimeOffset_segmentList",
+          "media/mpd/sample_mpd_availabilityTimeOffset_segmentTemplate",
+          "media/mpd/sample_mpd_clear_key_license_url",
+          "media/mpd/sample_mpd_essential_supplemental_properties",
+          "media/mpd/sample_mpd_event_stream",
+          "media/mpd/sample_mpd_images",
+          "media/mpd/sample_mpd_labels",
+          "media/mpd/sample_mpd_live",
+          "media/mpd/sample_mpd_multiple_baseUrls",
+          "media/mpd/sample_mpd_segment_template",
+          "media/mpd/sample_mpd_service_description_low_latency",
+          "media/mpd/sample_mpd_text",
+          "media/mpd/sample_mpd_trick_play",
+          "media/mpd/sample_mpd_unknown_mime_type",
+          "media/mpd/sample_mpd_vod");
+
+  @Test
+  public void parse_sampleManifests_matchesDashManifestParser() throws IOException {
+    for (String fileName : SAMPLE_MANIFESTS) {
+      DashManifest expectedManifest =
+          new DashManifestParser()
+              .parse(
+                  MANIFEST_URI,
+                  TestUtil.getInputStream(ApplicationProvider.getApplicationContext(), fileName));
+      DashManifest manifest =
+          new StreamingDashManifestParser()
+              .parse(
+                  MANIFEST_URI,
+                  TestUtil.getInputStream(ApplicationProvider.getApplicationContext(), fileName));
+
+      assertManifestsEquivalent(expectedManifest, manifest);
+    }
+  }
+
+  @Test
+  public void parse_eventStreamManifest_parsesEventMessageData() throws IOException {
+    DashManifest manifest =
+        new StreamingDashManifestParser()
+            .parse(
+                MANIFEST_URI,
+                TestUtil.getInputStream(
+                    ApplicationProvider.getApplicationContext(),
+                    "media/mpd/sample_mpd_event_stream"));
+
+    EventStream eventStream = manifest.getPeriod(0).eventStreams.get(3);
+    assertThat(eventStream.schemeIdUri).isEqualTo("urn:scte:scte35:2014:xml+bin");
+    assertThat(Util.fromUtf8Bytes(eventStream.events[0].messageData))
+        .contains("<scte35:Binary>");
+  }
+
+  @Test
+  public void parse_largeManifest_streamingParserMatchesDashManifestParser() throws IOException {
+    byte[] data = createLargeManifest(PERIOD_COUNT, SEGMENTS_PER_PERIOD);
+
+    DashManifest expectedManifest = parse(new DashManifestParser(), data);
+    DashManifest manifest = parse(new StreamingDashManifestParser(), data);
+
+    assertThat(manifest.getPeriodCount()).isEqualTo(PERIOD_COUNT);
+    Representation representation =
+        manifest.getPeriod(0).adaptationSets.get(0).representations.get(0);
+    assertThat(checkNotNull(representation.format.drmInitData).schemeDataCount).isEqualTo(3);
+    assertThat(checkNotNull(representation.getIndex()).getSegmentCount(C.TIME_UNSET))
+        .isEqualTo(SEGMENTS_PER_PERIOD);
+    assertManifestsEquivalent(expectedManifest, manifest);
+  }
+
+  @Test
+  public void parse_invalidManifest_throwsParserException() {
+    StreamingDashManifestParser parser = new StreamingDashManifestParser();
+
+    assertThrows(
+        ParserException.class,
+        () ->
+            parser.parse(
+                MANIFEST_URI,
+                new ByteArrayInputStream(Util.getUtf8Bytes("<MPD><Period></MPD>"))));
+  }
+
+  /**
+   * Asserts that two manifests are equivalent, using {@link DashManifestDiffer} to compare their
+   * periods.
+   */
+  private static void assertManifestsEquivalent(
+      DashManifest expectedManifest, DashManifest manifest) {
+    assertThat(manifest.availabilityStartTimeMs)
+        .isEqualTo(expectedManifest.availabilityStartTimeMs);
+    assertThat(manifest.durationMs).isEqualTo(expectedManifest.durationMs);
+    assertThat(manifest.minBufferTimeMs).isEqualTo(expectedManifest.minBufferTimeMs);
+    assertThat(manifest.dynamic).isEqualTo(expectedManifest.dynamic);
+    assertThat(manifest.minUpdatePeriodMs).isEqualTo(expectedManifest.minUpdatePeriodMs);
+    assertThat(manifest.timeShiftBufferDepthMs)
+        .isEqualTo(expectedManifest.timeShiftBufferDepthMs);
+    assertThat(manifest.suggestedPresentationDelayMs)
+        .isEqualTo(expectedManifest.suggestedPresentationDelayMs);
+    assertThat(manifest.publishTimeMs).isEqualTo(expectedManifest.publishTimeMs);
+    assertThat(manifest.programInformation).isEqualTo(expectedManifest.programInformation);
+    assertThat(String.valueOf(manifest.utcTiming))
+        .isEqualTo(String.valueOf(expectedManifest.utcTiming));
+    if (expectedManifest.serviceDescription == null) {
+      assertThat(manifest.serviceDescription).isNull();
+    } else {
+      ServiceDescriptionElement expected = expectedManifest.serviceDescription;
+      ServiceDescriptionElement actual = checkNotNull(manifest.serviceDescription);
+      assertThat(actual.targetOffsetMs).isEqualTo(expected.targetOffsetMs);
+      assertThat(actual.minOffsetMs).isEqualTo(expected.minOffsetMs);
+      assertThat(actual.maxOffsetMs).isEqualTo(expected.maxOffsetMs);
+      assertThat(actual.minPlaybackSpeed).isEqualTo(expected.minPlaybackSpeed);
+      assertThat(actual.maxPlaybackSpeed).isEqualTo(expected.maxPlaybackSpeed);
+    }
+    assertThat(manifest.location).isEqualTo(expectedManifest.location);
+    assertThat(manifest.getPeriodCount()).isEqualTo(expectedManifest.getPeriodCount());
+    // All periods of the expected manifest are reused if and only if they're identical.
+    DashManifest mergedManifest =
+        DashManifestDiffer.reuseUnchangedObjects(expectedManifest, manifest);
+    for (int i = 0; i < expectedManifest.getPeriodCount(); i++) {
+      assertThat(mergedManifest.getPeriod(i)).isSameInstanceAs(expectedManifest.getPeriod(i));
+    }
+  }
+
+  private static DashManifest parse(ParsingLoadable.Parser<DashManifest> parser, byte[] data)
+      throws IOException {
+    return parser.parse(MANIFEST_URI, new ByteArrayInputStream(data));
+  }
+
+  /**
+   * Creates a live manifest with the given number of periods. Each period has a video and two
+   * audio adaptation sets, each protected by three DRM schemes and using a segment timeline in
+   * which the segment durations vary, as they do for many live streams.
+   */
+  private static byte[] createLargeManifest(int periodCount, int segmentsPerPeriod) {
+    String widevinePssh =
+        Base64.encodeToString(
+            PsshAtomUtil.buildPsshAtom(C.WIDEVINE_UUID, Util.getUtf8Bytes("widevine")),
+            Base64.NO_WRAP);
+    String playReadyPro = Base64.encodeToString(Util.getUtf8Bytes("playready"), Base64.NO_WRAP);
+    StringBuilder manifest = new StringBuilder();
+    manifest
+        .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\"")
+        .append(" xmlns:cenc=\"urn:mpeg:cenc:2013\" xmlns:mspr=\"urn:microsoft:playready\"")
+        .append(" type=\"dynamic\" availabilityStartTime=\"2023-01-01T00:00:00Z\"")
+        .append(" publishTime=\"2023-01-01T12:00:00Z\" minimumUpdatePeriod=\"PT2S\"")
+        .append(" timeShiftBufferDepth=\"PT24H\" minBufferTime=\"PT4S\"")
+        .append(" profiles=\"urn:mpeg:dash:profile:isoff-live:2011\">\n");
+    StringBuilder segmentTimeline = new StringBuilder("<SegmentTimeline>\n");
+    long time = 0;
+    for (int segment = 0; segment < segmentsPerPeriod; segment++) {
+      long duration = segment % 3 == 0 ? 180_180 : 179_820;
+      segmentTimeline.append("<S t=\"").append(time).append("\" d=\"").append(duration);
+      segmentTimeline.append("\"/>\n");
+      time += duration;
+    }
+    segmentTimeline.append("</SegmentTimeline>\n");
+    long periodDurationS = time / 90_000;
+    for (int period = 0; period < periodCount; period++) {
+      manifest
+          .append("<Period id=\"p")
+          .append(period)
+          .append("\" start=\"PT")
+          .append(period * periodDurationS)
+          .append("S\">\n");
+      appendAdaptationSet(
+          manifest,
+          /* id= */ 0,
+          /* contentType= */ "video",
+          /* representationCount= */ 6,
+          segmentTimeline,
+          widevinePssh,
+          playReadyPro);
+      appendAdaptationSet(
+          manifest,
+          /* id= */ 1,
+          /* contentType= */ "audio",
+          /* representationCount= */ 2,
+          segmentTimeline,
+          widevinePssh,
+          playReadyPro);
+      appendAdaptationSet(
+          manifest,
+          /* id= */ 2,
+          /* contentType= */ "audio",
+          /* representationCount= */ 2,
+          segmentTimeline,
+          widevinePssh,
+          playReadyPro);
+      manifest.append("</Period>\n");
+    }
+    manifest.append("</MPD>\n");
+    return Util.getUtf8Bytes(manifest.toString());
+  }
+
+  private static void appendAdaptationSet(
+      StringBuilder manifest,
+      int id,
+      String contentType,
+      int representationCount,
+      CharSequence segmentTimeline,
+      String widevinePssh,
+      String playReadyPro) {
+    boolean isVideo = contentType.equals("video");
+    manifest
+        .append("<AdaptationSet id=\"")
+        .append(id)
+        .append("\" contentType=\"")
+        .append(contentType)
+        .append("\" mimeType=\"")
+        .append(contentType)
+        .append("/mp4\" segmentAlignment=\"true\"")
+        .append(isVideo ? "" : " lang=\"" + (id == 1 ? "en" : "fr") + "\"")
+        .append(">\n")
+        .append("<ContentProtection schemeIdUri=\"urn:mpeg:dash:mp4protection:2011\"")
+        .append(" value=\"cenc\" cenc:default_KID=\"10000000-1000-1000-1000-100000000001\"/>\n")
+        .append("<ContentProtection")
+        .append(" schemeIdUri=\"urn:uuid:edef8ba9-79d6-4ace-a3c8-27dcd51d21ed\">")
+        .append("<cenc:pssh>")
+        .append(widevinePssh)
+        .append("</cenc:pssh></ContentProtection>\n")
+        .append("<ContentProtection")
+        .append(" schemeIdUri=\"urn:uuid:9a04f079-9840-4286-ab92-e65be0885f95\">")
+        .append("<mspr:pro>")
+        .append(playReadyPro)
+        .append("</mspr:pro></ContentProtection>\n")
+        .append("<SegmentTemplate timescale=\"90000\"")
+        .append(" initialization=\"$RepresentationID$/init.mp4\"")
+        .append(" media=\"$RepresentationID$/$Time$.m4s\">\n")
+        .append(segmentTimeline)
+        .append("</SegmentTemplate>\n");
+    for (int i = 0; i < representationCount; i++) {
+      manifest
+          .append("<Representation id=\"")
+          .append(contentType)
+          .append(id)
+          .append('-')
+          .append(i)
+          .append("\" bandwidth=\"")
+          .append(isVideo ? 500_000 * (i + 1) : 64_000 * (i + 1));
+      if (isVideo) {
+        manifest
+            .append("\" codecs=\"avc1.640028\" width=\"")
+            .append(320 * (i + 1))
+            .append("\" height=\"")
+            .append(180 * (i + 1))
+            .append("\" frameRate=\"30000/1001\"/>\n");
+      } else {
+        manifest
+            .append("\" codecs=\"mp4a.40.2\" audioSamplingRate=\"48000\">\n")
+            .append("<AudioChannelConfiguration")
+            .append(" schemeIdUri=\"urn:mpeg:dash:23003:3:audio_channel_configuration:2011\"")
+            .append(" value=\"2\"/>\n")
+            .append("</Representation>\n");
+      }
+    }
+    manifest.append("</AdaptationSet>\n");
+  }
+}
@@ -34,7 +34,9 @@ import com.google.android.exoplayer2.offline.DownloadException;
 import com.google.android.exoplayer2.offline.DownloadRequest;
 import com.google.android.exoplayer2.offline.Downloader;
 import com.google.android.exoplayer2.offline.DownloaderFactory;
+import com.google.android.exoplayer2.offline.SegmentDownloader;
 import com.google.android.exoplayer2.offline.StreamKey;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
 import com.google.android.exoplayer2.testutil.CacheAsserts.RequestSet;
 import com.google.android.exoplayer2.testutil.FakeDataSet;
 import com.google.android.exoplayer2.testutil.FakeDataSource;
@@ -51,6 +53,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -154,6 +158,45 @@ public class DashDownloaderTest {
     assertCachedData(cache, new RequestSet(fakeDataSet).useBoundedDataSpecFor("audio_init_data"));
   }
 
+  @Test
+  public void downloadRepresentations_withParallelDownloadsLimitedPerHost() throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .setRandomData("audio_segment_2", 5)
+            .setRandomData("audio_segment_3", 6)
+            .setRandomData("text_segment_1", 1)
+            .setRandomData("text_segment_2", 2)
+            .setRandomData("text_segment_3", 3);
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(new FakeDataSource.Factory().setFakeDataSet(fakeDataSet));
+    ExecutorService executorService = Executors.newFixedThreadPool(/* nThreads= */ 4);
+
+    try {
+      DashDownloader dashDownloader =
+          new DashDownloader(
+              new MediaItem.Builder()
+                  .setUri(TEST_MPD_URI)
+                  .setStreamKeys(keysList(new StreamKey(0, 0, 0), new StreamKey(0, 1, 0)))
+                  .build(),
+              new DashManifestParser(),
+              cacheDataSourceFactory,
+              executorService,
+              SegmentDownloader.DEFAULT_MAX_MERGED_SEGMENT_START_TIME_DIFF_MS,
+              /* maxParallelSegmentDownloadsPerHost= */ 2);
+      dashDownloader.download(progressListener);
+    } finally {
+      executorService.shutdown();
+    }
+
+    assertCachedData(cache, new RequestSet(fakeDataSet).useBoundedDataSpecFor("audio_init_data"));
+    progressListener.assertBytesDownloaded(10 + 4 + 5 + 6 + 1 + 2 + 3);
+  }
+
   @Test
   public void downloadAllRepresentations() throws Exception {
     FakeDataSet fakeDataSet =
@@ -24,6 +24,7 @@ import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.Util;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -267,6 +268,11 @@ public final class DefaultDataSource implements DataSource {
     return Assertions.checkNotNull(dataSource).read(buffer, offset, length);
   }
 
+  @Override
+  public int read(ByteBuffer buffer, int length) throws IOException {
+    return Assertions.checkNotNull(dataSource).read(buffer, length);
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
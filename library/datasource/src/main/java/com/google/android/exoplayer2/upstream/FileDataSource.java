@@ -33,6 +33,7 @@ import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 /** A {@link DataSource} for reading local files. */
 public final class FileDataSource extends BaseDataSource {
@@ -155,6 +156,33 @@ public final class FileDataSource extends BaseDataSource {
     }
   }
 
+  @Override
+  public int read(ByteBuffer buffer, int length) throws FileDataSourceException {
+    if (length == 0) {
+      return 0;
+    } else if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    } else {
+      int bytesRead;
+      int limit = buffer.limit();
+      try {
+        buffer.limit(buffer.position() + (int) min(bytesRemaining, length));
+        bytesRead = castNonNull(file).getChannel().read(buffer);
+      } catch (IOException e) {
+        throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED);
+      } finally {
+        buffer.limit(limit);
+      }
+
+      if (bytesRead > 0) {
+        bytesRemaining -= bytesRead;
+        bytesTransferred(bytesRead);
+      }
+
+      return bytesRead;
+    }
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
@@ -21,6 +21,7 @@ import static com.google.android.exoplayer2.util.Assertions.checkState;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
+import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Log;
@@ -28,7 +29,13 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.TreeSet;
 
-/** Defines the cached content for a single resource. */
+/**
+ * Defines the cached content for a single resource.
+ *
+ * <p>The cached spans are guarded by this instance's monitor. {@link SimpleCache} mutates them
+ * whilst also holding its own lock, which allows read-only queries for a resource to synchronize on
+ * the {@link CachedContent} alone, without contending with operations on other resources.
+ */
 /* package */ final class CachedContent {
 
   private static final String TAG = "CachedContent";
@@ -38,12 +45,13 @@ import java.util.TreeSet;
   /** The cache key that uniquely identifies the resource. */
   public final String key;
   /** The cached spans of this content. */
+  @GuardedBy("this")
   private final TreeSet<SimpleCacheSpan> cachedSpans;
   /** Currently locked ranges. */
   private final ArrayList<Range> lockedRanges;
 
   /** Metadata values. */
-  private DefaultContentMetadata metadata;
+  private volatile DefaultContentMetadata metadata;
 
   /**
    * Creates a CachedContent.
@@ -134,15 +142,23 @@ import java.util.TreeSet;
   }
 
   /** Adds the given {@link SimpleCacheSpan} which contains a part of the content. */
-  public void addSpan(SimpleCacheSpan span) {
+  public synchronized void addSpan(SimpleCacheSpan span) {
     cachedSpans.add(span);
   }
 
-  /** Returns a set of all {@link SimpleCacheSpan}s. */
-  public TreeSet<SimpleCacheSpan> getSpans() {
+  /**
+   * Returns a set of all {@link SimpleCacheSpan}s. The returned set is backed by this instance, and
+   * so must not be iterated without holding a lock that excludes concurrent modification.
+   */
+  public synchronized TreeSet<SimpleCacheSpan> getSpans() {
     return cachedSpans;
   }
 
+  /** Returns a copy of the set of all {@link SimpleCacheSpan}s. */
+  public synchronized TreeSet<CacheSpan> copySpans() {
+    return new TreeSet<CacheSpan>(cachedSpans);
+  }
+
   /**
    * Returns the cache span corresponding to the provided range. See {@link
    * Cache#startReadWrite(String, long, long)} for detailed descriptions of the returned spans.
@@ -151,7 +167,7 @@ import java.util.TreeSet;
    * @param length The length of the span, or {@link C#LENGTH_UNSET} if unbounded.
    * @return The corresponding cache {@link SimpleCacheSpan}.
    */
-  public SimpleCacheSpan getSpan(long position, long length) {
+  public synchronized SimpleCacheSpan getSpan(long position, long length) {
     SimpleCacheSpan lookupSpan = SimpleCacheSpan.createLookup(key, position);
     SimpleCacheSpan floorSpan = cachedSpans.floor(lookupSpan);
     if (floorSpan != null && floorSpan.position + floorSpan.length > position) {
@@ -176,7 +192,7 @@ import java.util.TreeSet;
    * @return The length of continuously cached data, or {@code -holeLength} if {@code position}
    *     isn't cached.
    */
-  public long getCachedBytesLength(long position, long length) {
+  public synchronized long getCachedBytesLength(long position, long length) {
     checkArgument(position >= 0);
     checkArgument(length >= 0);
     SimpleCacheSpan span = getSpan(position, length);
@@ -217,7 +233,7 @@ import java.util.TreeSet;
    *     last touch time.
    * @return A span with the updated last touch timestamp.
    */
-  public SimpleCacheSpan setLastTouchTimestamp(
+  public synchronized SimpleCacheSpan setLastTouchTimestamp(
       SimpleCacheSpan cacheSpan, long lastTouchTimestamp, boolean updateFile) {
     checkState(cachedSpans.remove(cacheSpan));
     File file = checkNotNull(cacheSpan.file);
@@ -238,12 +254,12 @@ import java.util.TreeSet;
   }
 
   /** Returns whether there are any spans cached. */
-  public boolean isEmpty() {
+  public synchronized boolean isEmpty() {
     return cachedSpans.isEmpty();
   }
 
   /** Removes the given span from cache. */
-  public boolean removeSpan(CacheSpan span) {
+  public synchronized boolean removeSpan(CacheSpan span) {
     if (cachedSpans.remove(span)) {
       if (span.file != null) {
         span.file.delete();
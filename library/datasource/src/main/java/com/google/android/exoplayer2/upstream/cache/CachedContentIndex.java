@@ -18,6 +18,7 @@ package com.google.android.exoplayer2.upstream.cache;
 import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
 import static com.google.android.exoplayer2.util.Assertions.checkState;
 import static com.google.android.exoplayer2.util.Util.castNonNull;
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 
 import android.annotation.SuppressLint;
@@ -39,14 +40,19 @@ import com.google.android.exoplayer2.util.AtomicFile;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableSet;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -57,6 +63,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
@@ -73,7 +81,11 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
   private static final int INCREMENTAL_METADATA_READ_LENGTH = 10 * 1024 * 1024;
 
-  private final HashMap<String, CachedContent> keyToContent;
+  /**
+   * Maps keys to their corresponding content. Structural modifications are only made by the owning
+   * cache whilst holding its lock, but lookups may be performed concurrently.
+   */
+  private final ConcurrentHashMap<String, CachedContent> keyToContent;
   /**
    * Maps assigned ids to their corresponding keys. Also contains (id -> null) entries for ids that
    * have been removed from the index since it was last stored. This prevents reuse of these ids,
@@ -160,7 +172,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       boolean legacyStorageEncrypt,
       boolean preferLegacyStorage) {
     checkState(databaseProvider != null || legacyStorageDir != null);
-    keyToContent = new HashMap<>();
+    keyToContent = new ConcurrentHashMap<>();
     idToKey = new SparseArray<>();
     removedIds = new SparseBooleanArray();
     newIds = new SparseBooleanArray();
@@ -222,13 +234,21 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   @WorkerThread
   public void store() throws IOException {
     storage.storeIncremental(keyToContent);
-    // Make ids that were removed since the index was last stored eligible for re-use.
-    int removedIdCount = removedIds.size();
-    for (int i = 0; i < removedIdCount; i++) {
-      idToKey.remove(removedIds.keyAt(i));
-    }
-    removedIds.clear();
-    newIds.clear();
+    onStored();
+  }
+
+  /**
+   * Stores the index data if there is a change, additionally compacting any incrementally stored
+   * changes so that the persisted index is self-contained.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @throws IOException If an error occurs storing the index data.
+   */
+  @WorkerThread
+  public void storeAndCompact() throws IOException {
+    storage.storeCompacted(keyToContent);
+    onStored();
   }
 
   /**
@@ -334,6 +354,16 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     return cachedContent != null ? cachedContent.getMetadata() : DefaultContentMetadata.EMPTY;
   }
 
+  private void onStored() {
+    // Make ids that were removed since the index was last stored eligible for re-use.
+    int removedIdCount = removedIds.size();
+    for (int i = 0; i < removedIdCount; i++) {
+      idToKey.remove(removedIds.keyAt(i));
+    }
+    removedIds.clear();
+    newIds.clear();
+  }
+
   private CachedContent addNew(String key) {
     int id = getNewId(idToKey);
     CachedContent cachedContent = new CachedContent(id, key);
@@ -461,7 +491,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
      * @param idToKey The id to key map to populate with persisted data.
      * @throws IOException If an error occurs loading the index.
      */
-    void load(HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+    void load(Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException;
 
     /**
@@ -471,17 +501,26 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
      * @param content The key to content map to persist.
      * @throws IOException If an error occurs persisting the index.
      */
-    void storeFully(HashMap<String, CachedContent> content) throws IOException;
+    void storeFully(Map<String, CachedContent> content) throws IOException;
 
     /**
      * Ensures incremental changes to the index since the initial {@link #initialize(long)} or last
-     * {@link #storeFully(HashMap)} are persisted. The storage will have been notified of all such
+     * {@link #storeFully(Map)} are persisted. The storage will have been notified of all such
      * changes via {@link #onUpdate(CachedContent)} and {@link #onRemove(CachedContent, boolean)}.
      *
      * @param content The key to content map to persist.
      * @throws IOException If an error occurs persisting the index.
      */
-    void storeIncremental(HashMap<String, CachedContent> content) throws IOException;
+    void storeIncremental(Map<String, CachedContent> content) throws IOException;
+
+    /**
+     * Equivalent to {@link #storeIncremental(Map)}, except that the persisted index is additionally
+     * compacted if the storage persists incremental changes separately from the rest of the index.
+     *
+     * @param content The key to content map to persist.
+     * @throws IOException If an error occurs persisting the index.
+     */
+    void storeCompacted(Map<String, CachedContent> content) throws IOException;
 
     /**
      * Called when a {@link CachedContent} is added or updated.
@@ -500,22 +539,48 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     void onRemove(CachedContent cachedContent, boolean neverStored);
   }
 
-  /** {@link Storage} implementation that uses an {@link AtomicFile}. */
+  /**
+   * {@link Storage} implementation that uses an {@link AtomicFile}.
+   *
+   * <p>If the index is not encrypted, incremental changes are appended to a journal file alongside
+   * the {@link AtomicFile}, so that the cost of storing them is proportional to the number of
+   * changes rather than to the size of the index. The journal is compacted into the {@link
+   * AtomicFile} once it contains more records than the index contains entries, or when {@link
+   * #storeCompacted(Map)} is called.
+   */
   private static class LegacyStorage implements Storage {
 
     private static final int VERSION = 2;
     private static final int VERSION_METADATA_INTRODUCED = 2;
     private static final int FLAG_ENCRYPTED_INDEX = 1;
 
+    private static final String JOURNAL_FILE_SUFFIX = ".journal";
+    private static final int JOURNAL_VERSION = 1;
+    private static final int JOURNAL_RECORD_TYPE_UPDATE = 1;
+    private static final int JOURNAL_RECORD_TYPE_REMOVE = 2;
+    /** The minimum number of journal records that can be accumulated before compacting. */
+    private static final int MIN_JOURNAL_RECORDS_BEFORE_COMPACTION = 1024;
+
     private final boolean encrypt;
     @Nullable private final Cipher cipher;
     @Nullable private final SecretKeySpec secretKeySpec;
     @Nullable private final SecureRandom random;
     private final AtomicFile atomicFile;
+    private final File journalFile;
+    private final SparseArray<@NullableType CachedContent> pendingUpdates;
 
     private boolean changed;
     @Nullable private ReusableBufferedOutputStream bufferedOutputStream;
 
+    /** Whether the {@link AtomicFile} holds an unencrypted snapshot that can be journaled onto. */
+    private boolean hasJournalableSnapshot;
+    /** The number of entries in the snapshot held by the {@link AtomicFile}. */
+    private int snapshotCount;
+    /** The hash code of the snapshot held by the {@link AtomicFile}. */
+    private int snapshotHashCode;
+    /** The number of records in the journal file. */
+    private int journalRecordCount;
+
     public LegacyStorage(File file, @Nullable byte[] secretKey, boolean encrypt) {
       checkState(secretKey != null || !encrypt);
       @Nullable Cipher cipher = null;
@@ -536,6 +601,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       this.secretKeySpec = secretKeySpec;
       random = encrypt ? new SecureRandom() : null;
       atomicFile = new AtomicFile(file);
+      journalFile = new File(file.getPath() + JOURNAL_FILE_SUFFIX);
+      pendingUpdates = new SparseArray<>();
     }
 
     @Override
@@ -551,45 +618,77 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     @Override
     public void delete() {
       atomicFile.delete();
+      deleteJournal();
     }
 
     @Override
     public void load(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
       checkState(!changed);
       if (!readFile(content, idToKey)) {
         content.clear();
         idToKey.clear();
         atomicFile.delete();
+        deleteJournal();
+        hasJournalableSnapshot = false;
+      } else if (hasJournalableSnapshot) {
+        readJournal(content, idToKey);
+      } else {
+        // A journal is only valid alongside an unencrypted snapshot.
+        deleteJournal();
       }
     }
 
     @Override
-    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
       writeFile(content);
       changed = false;
+      pendingUpdates.clear();
+      // Delete the journal only after the snapshot has been committed. If the process dies in
+      // between, the journal header won't match the new snapshot and the journal will be ignored.
+      deleteJournal();
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
-      if (!changed) {
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
+      if (!changed && pendingUpdates.size() == 0) {
         return;
       }
-      storeFully(content);
+      if (changed
+          || encrypt
+          || !hasJournalableSnapshot
+          || journalRecordCount + pendingUpdates.size()
+              > max(MIN_JOURNAL_RECORDS_BEFORE_COMPACTION, content.size())) {
+        storeFully(content);
+      } else {
+        appendToJournal();
+      }
+    }
+
+    @Override
+    public void storeCompacted(Map<String, CachedContent> content) throws IOException {
+      if (changed || pendingUpdates.size() != 0 || journalRecordCount != 0) {
+        storeFully(content);
+      }
     }
 
     @Override
     public void onUpdate(CachedContent cachedContent) {
-      changed = true;
+      pendingUpdates.put(cachedContent.id, cachedContent);
     }
 
     @Override
     public void onRemove(CachedContent cachedContent, boolean neverStored) {
-      changed = true;
+      if (neverStored) {
+        pendingUpdates.delete(cachedContent.id);
+      } else {
+        pendingUpdates.put(cachedContent.id, null);
+      }
     }
 
     private boolean readFile(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+      hasJournalableSnapshot = false;
       if (!atomicFile.exists()) {
         return true;
       }
@@ -604,7 +703,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         }
 
         int flags = input.readInt();
-        if ((flags & FLAG_ENCRYPTED_INDEX) != 0) {
+        boolean encrypted = (flags & FLAG_ENCRYPTED_INDEX) != 0;
+        if (encrypted) {
           if (cipher == null) {
             return false;
           }
@@ -634,6 +734,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         if (fileHashCode != hashCode || !isEOF) {
           return false;
         }
+        hasJournalableSnapshot = !encrypted && version == VERSION;
+        snapshotCount = count;
+        snapshotHashCode = hashCode;
       } catch (IOException e) {
         return false;
       } finally {
@@ -644,7 +747,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       return true;
     }
 
-    private void writeFile(HashMap<String, CachedContent> content) throws IOException {
+    private void writeFile(Map<String, CachedContent> content) throws IOException {
       @Nullable DataOutputStream output = null;
       try {
         OutputStream outputStream = atomicFile.startWrite();
@@ -686,11 +789,180 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         // Avoid calling close twice. Duplicate CipherOutputStream.close calls did
         // not used to be no-ops: https://android-review.googlesource.com/#/c/272799/
         output = null;
+        hasJournalableSnapshot = !encrypt;
+        snapshotCount = content.size();
+        snapshotHashCode = hashCode;
       } finally {
         Util.closeQuietly(output);
       }
     }
 
+    /**
+     * Applies the records in the journal file to {@code content} and {@code idToKey}. If the
+     * journal belongs to a different snapshot it's deleted. If the journal ends with an incomplete
+     * or corrupt record, the records preceding it are applied and the index is marked as changed,
+     * so that the next store rewrites it fully.
+     */
+    private void readJournal(
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+      journalRecordCount = 0;
+      if (!journalFile.exists()) {
+        return;
+      }
+      long journalLength = journalFile.length();
+      @Nullable DataInputStream input = null;
+      try {
+        input = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+        if (input.readInt() != JOURNAL_VERSION
+            || input.readInt() != snapshotCount
+            || input.readInt() != snapshotHashCode) {
+          Util.closeQuietly(input);
+          input = null;
+          deleteJournal();
+          return;
+        }
+        CRC32 crc = new CRC32();
+        while (true) {
+          int recordLength;
+          try {
+            recordLength = input.readInt();
+          } catch (EOFException e) {
+            // End of the journal.
+            break;
+          }
+          if (recordLength <= 0 || recordLength > journalLength) {
+            // The record length is corrupt.
+            changed = true;
+            break;
+          }
+          byte[] record = new byte[recordLength];
+          input.readFully(record);
+          int recordCrc = input.readInt();
+          crc.reset();
+          crc.update(record, 0, recordLength);
+          if ((int) crc.getValue() != recordCrc) {
+            changed = true;
+            break;
+          }
+          applyJournalRecord(
+              new DataInputStream(new ByteArrayInputStream(record)), content, idToKey);
+          journalRecordCount++;
+        }
+      } catch (IOException e) {
+        // Either a truncated record or an unreadable journal. Keep the records applied so far, and
+        // force a full store to replace the journal.
+        changed = true;
+      } finally {
+        Util.closeQuietly(input);
+      }
+    }
+
+    private void applyJournalRecord(
+        DataInputStream input,
+        Map<String, CachedContent> content,
+        SparseArray<@NullableType String> idToKey)
+        throws IOException {
+      int type = input.readByte();
+      int id = input.readInt();
+      @Nullable String previousKey = idToKey.get(id);
+      if (previousKey != null) {
+        content.remove(previousKey);
+        idToKey.remove(id);
+      }
+      if (type == JOURNAL_RECORD_TYPE_UPDATE) {
+        String key = input.readUTF();
+        DefaultContentMetadata metadata = readContentMetadata(input);
+        @Nullable CachedContent replacedContent = content.get(key);
+        if (replacedContent != null) {
+          idToKey.remove(replacedContent.id);
+        }
+        content.put(key, new CachedContent(id, key, metadata));
+        idToKey.put(id, key);
+      } else if (type != JOURNAL_RECORD_TYPE_REMOVE) {
+        throw new IOException("Unexpected journal record type: " + type);
+      }
+    }
+
+    private void appendToJournal() throws IOException {
+      boolean writeHeader = journalRecordCount == 0 || !journalFile.exists();
+      if (writeHeader) {
+        journalRecordCount = 0;
+      }
+      long journalLength = writeHeader ? 0 : journalFile.length();
+      ByteArrayOutputStream recordOutputStream = new ByteArrayOutputStream();
+      DataOutputStream recordOutput = new DataOutputStream(recordOutputStream);
+      CRC32 crc = new CRC32();
+      FileOutputStream fileOutputStream =
+          new FileOutputStream(journalFile, /* append= */ !writeHeader);
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+      boolean appended = false;
+      try {
+        if (writeHeader) {
+          output.writeInt(JOURNAL_VERSION);
+          output.writeInt(snapshotCount);
+          output.writeInt(snapshotHashCode);
+        }
+        for (int i = 0; i < pendingUpdates.size(); i++) {
+          @Nullable CachedContent cachedContent = pendingUpdates.valueAt(i);
+          recordOutputStream.reset();
+          if (cachedContent == null) {
+            recordOutput.writeByte(JOURNAL_RECORD_TYPE_REMOVE);
+            recordOutput.writeInt(pendingUpdates.keyAt(i));
+          } else {
+            recordOutput.writeByte(JOURNAL_RECORD_TYPE_UPDATE);
+            writeCachedContent(cachedContent, recordOutput);
+          }
+          recordOutput.flush();
+          byte[] record = recordOutputStream.toByteArray();
+          crc.reset();
+          crc.update(record);
+          output.writeInt(record.length);
+          output.write(record);
+          output.writeInt((int) crc.getValue());
+        }
+        output.flush();
+        fileOutputStream.getFD().sync();
+        appended = true;
+      } finally {
+        Util.closeQuietly(output);
+        if (!appended) {
+          onJournalAppendFailed(journalLength);
+        }
+      }
+      journalRecordCount += pendingUpdates.size();
+      pendingUpdates.clear();
+    }
+
+    /**
+     * Removes any partially written record from the end of the journal after an append has failed,
+     * as reading the journal stops at the first corrupt record and would drop the records appended
+     * after it. The index is also marked as changed, so that the next store replaces the journal
+     * even if it can't be truncated.
+     *
+     * @param journalLength The length of the journal before the failed append.
+     */
+    private void onJournalAppendFailed(long journalLength) {
+      changed = true;
+      if (journalLength == 0) {
+        deleteJournal();
+        return;
+      }
+      @Nullable RandomAccessFile journal = null;
+      try {
+        journal = new RandomAccessFile(journalFile, "rw");
+        journal.setLength(journalLength);
+      } catch (IOException e) {
+        // Ignore. The journal is replaced by the next store.
+      } finally {
+        Util.closeQuietly(journal);
+      }
+    }
+
+    private void deleteJournal() {
+      journalFile.delete();
+      journalRecordCount = 0;
+    }
+
     /**
      * Calculates a hash code for a {@link CachedContent} which is compatible with a particular
      * index version.
@@ -812,7 +1084,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
     @Override
     public void load(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException {
       checkState(pendingUpdates.size() == 0);
       try {
@@ -855,7 +1127,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     @Override
-    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
       try {
         SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
         writableDatabase.beginTransactionNonExclusive();
@@ -875,7 +1147,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
       if (pendingUpdates.size() == 0) {
         return;
       }
@@ -901,6 +1173,11 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       }
     }
 
+    @Override
+    public void storeCompacted(Map<String, CachedContent> content) throws IOException {
+      storeIncremental(content);
+    }
+
     @Override
     public void onUpdate(CachedContent cachedContent) {
       pendingUpdates.put(cachedContent.id, cachedContent);
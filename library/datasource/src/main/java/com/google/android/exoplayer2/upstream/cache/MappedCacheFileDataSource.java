@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.util.Util.castNonNull;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.PlaybackException;
+import com.google.android.exoplayer2.upstream.BaseDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.FileDataSource;
+import com.google.android.exoplayer2.upstream.FileDataSource.FileDataSourceException;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link DataSource} for reading committed cache files through memory mappings obtained from a
+ * {@link MappingCacheEvictor}. Reading from a mapped file avoids a system call per read, which
+ * reduces the cost of repeatedly reading the same cached content.
+ *
+ * <p>Files that are too large to be mapped are read using a {@link FileDataSource}.
+ *
+ * <p>To use this data source, construct the {@link SimpleCache} with a {@link MappingCacheEvictor}
+ * and pass a {@link Factory} using the same evictor to {@link
+ * CacheDataSource.Factory#setCacheReadDataSourceFactory(DataSource.Factory)}.
+ */
+public final class MappedCacheFileDataSource extends BaseDataSource {
+
+  /** {@link DataSource.Factory} for {@link MappedCacheFileDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    private final MappingCacheEvictor mappingCacheEvictor;
+    @Nullable private TransferListener listener;
+
+    /**
+     * Creates an instance.
+     *
+     * @param mappingCacheEvictor The {@link MappingCacheEvictor} of the cache being read from.
+     */
+    public Factory(MappingCacheEvictor mappingCacheEvictor) {
+      this.mappingCacheEvictor = mappingCacheEvictor;
+    }
+
+    /**
+     * Sets a {@link TransferListener} for {@link MappedCacheFileDataSource} instances created by
+     * this factory.
+     *
+     * @param listener The {@link TransferListener}.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setListener(@Nullable TransferListener listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    @Override
+    public MappedCacheFileDataSource createDataSource() {
+      MappedCacheFileDataSource dataSource = new MappedCacheFileDataSource(mappingCacheEvictor);
+      if (listener != null) {
+        dataSource.addTransferListener(listener);
+      }
+      return dataSource;
+    }
+  }
+
+  private final MappingCacheEvictor mappingCacheEvictor;
+
+  @Nullable private FileDataSource fileDataSource;
+  @Nullable private DataSource currentFileDataSource;
+  @Nullable private ByteBuffer buffer;
+  @Nullable private Uri uri;
+  private long bytesRemaining;
+  private boolean opened;
+
+  /**
+   * Creates an instance.
+   *
+   * @param mappingCacheEvictor The {@link MappingCacheEvictor} of the cache being read from.
+   */
+  public MappedCacheFileDataSource(MappingCacheEvictor mappingCacheEvictor) {
+    super(/* isNetwork= */ false);
+    this.mappingCacheEvictor = mappingCacheEvictor;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    Uri uri = dataSpec.uri;
+    this.uri = uri;
+    transferInitializing(dataSpec);
+    File file = new File(Assertions.checkNotNull(uri.getPath()));
+    @Nullable ByteBuffer buffer;
+    try {
+      buffer = mappingCacheEvictor.getMapping(file);
+    } catch (FileNotFoundException e) {
+      throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_FILE_NOT_FOUND);
+    } catch (IOException e) {
+      throw new FileDataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED);
+    }
+    if (buffer == null) {
+      // The file is too large to be mapped.
+      if (fileDataSource == null) {
+        fileDataSource = new FileDataSource();
+      }
+      currentFileDataSource = fileDataSource;
+      bytesRemaining = fileDataSource.open(dataSpec);
+    } else {
+      if (dataSpec.position > buffer.limit()) {
+        throw new FileDataSourceException(
+            /* message= */ null,
+            /* cause= */ null,
+            PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE);
+      }
+      buffer.position((int) dataSpec.position);
+      bytesRemaining =
+          dataSpec.length == C.LENGTH_UNSET ? buffer.remaining() : dataSpec.length;
+      this.buffer = buffer;
+    }
+
+    opened = true;
+    transferStarted(dataSpec);
+
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    } else if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    int bytesRead;
+    if (currentFileDataSource != null) {
+      bytesRead = currentFileDataSource.read(buffer, offset, (int) min(bytesRemaining, length));
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        return C.RESULT_END_OF_INPUT;
+      }
+    } else {
+      ByteBuffer mappedBuffer = castNonNull(this.buffer);
+      if (!mappedBuffer.hasRemaining()) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      bytesRead = (int) min(min(bytesRemaining, length), mappedBuffer.remaining());
+      mappedBuffer.get(buffer, offset, bytesRead);
+    }
+
+    if (bytesRead > 0) {
+      bytesRemaining -= bytesRead;
+      bytesTransferred(bytesRead);
+    }
+
+    return bytesRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public void close() throws IOException {
+    uri = null;
+    buffer = null;
+    try {
+      if (currentFileDataSource != null) {
+        currentFileDataSource.close();
+      }
+    } finally {
+      currentFileDataSource = null;
+      if (opened) {
+        opened = false;
+        transferEnded();
+      }
+    }
+  }
+}
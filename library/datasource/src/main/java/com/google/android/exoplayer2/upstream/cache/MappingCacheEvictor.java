@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link CacheEvictor} that delegates eviction decisions to another evictor, and additionally
+ * maintains a bounded pool of memory mappings of committed cache files for use by {@link
+ * MappedCacheFileDataSource}.
+ *
+ * <p>Committed cache files are immutable, so a mapping remains valid until the corresponding span
+ * is removed from the cache. Mappings are dropped from the pool when this happens, and the least
+ * recently used mappings are dropped when the total size of mapped files exceeds the configured
+ * maximum. Note that the underlying memory is only unmapped once the mapping is garbage collected.
+ */
+public final class MappingCacheEvictor implements CacheEvictor {
+
+  private final CacheEvictor evictor;
+  private final long maxMappedBytes;
+  private final LinkedHashMap<File, MappedByteBuffer> mappings;
+
+  private long mappedBytes;
+
+  /**
+   * Creates an instance.
+   *
+   * @param evictor The {@link CacheEvictor} to which eviction decisions are delegated.
+   * @param maxMappedBytes The maximum total size of the files that are mapped at any one time.
+   *     Files larger than this size are never mapped.
+   */
+  public MappingCacheEvictor(CacheEvictor evictor, long maxMappedBytes) {
+    this.evictor = evictor;
+    this.maxMappedBytes = maxMappedBytes;
+    mappings = new LinkedHashMap<>(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f, true);
+  }
+
+  /**
+   * Returns a read-only buffer over the whole of a committed cache file, mapping the file if it's
+   * not already mapped. The returned buffer has an independent position and limit.
+   *
+   * @param file The cache file.
+   * @return The buffer, or {@code null} if the file is too large to be mapped.
+   * @throws IOException If an error occurs mapping the file.
+   */
+  @Nullable
+  public synchronized ByteBuffer getMapping(File file) throws IOException {
+    @Nullable MappedByteBuffer mapping = mappings.get(file);
+    if (mapping == null) {
+      long length = file.length();
+      if (length > maxMappedBytes || length > Integer.MAX_VALUE) {
+        return null;
+      }
+      try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+        // The mapping remains valid after the channel is closed.
+        mapping = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+      }
+      mappings.put(file, mapping);
+      mappedBytes += length;
+      trimToSize();
+    }
+    return mapping.asReadOnlyBuffer();
+  }
+
+  /** Returns the total size of the files that are currently mapped. */
+  public synchronized long getMappedBytes() {
+    return mappedBytes;
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return evictor.requiresCacheSpanTouches();
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    evictor.onCacheInitialized();
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    evictor.onStartFile(cache, key, position, length);
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    evictor.onSpanAdded(cache, span);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    if (span.file != null) {
+      removeMapping(span.file);
+    }
+    evictor.onSpanRemoved(cache, span);
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    File oldFile = Assertions.checkNotNull(oldSpan.file);
+    File newFile = Assertions.checkNotNull(newSpan.file);
+    if (!oldFile.equals(newFile)) {
+      // The file was renamed to reflect the new last touch timestamp.
+      renameMapping(oldFile, newFile);
+    }
+    evictor.onSpanTouched(cache, oldSpan, newSpan);
+  }
+
+  private synchronized void removeMapping(File file) {
+    @Nullable MappedByteBuffer mapping = mappings.remove(file);
+    if (mapping != null) {
+      mappedBytes -= mapping.capacity();
+    }
+  }
+
+  private synchronized void renameMapping(File oldFile, File newFile) {
+    @Nullable MappedByteBuffer mapping = mappings.remove(oldFile);
+    if (mapping != null) {
+      mappings.put(newFile, mapping);
+    }
+  }
+
+  private void trimToSize() {
+    Iterator<Map.Entry<File, MappedByteBuffer>> iterator = mappings.entrySet().iterator();
+    while (mappedBytes > maxMappedBytes && iterator.hasNext()) {
+      mappedBytes -= iterator.next().getValue().capacity();
+      iterator.remove();
+    }
+  }
+}
@@ -42,6 +42,11 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
  *
  * <p>Only one instance of SimpleCache is allowed for a given directory at a given time.
  *
+ * <p>Operations that modify the cache are serialized on the cache instance. Read-only queries
+ * ({@link #getCachedSpans}, {@link #isCached}, {@link #getCachedLength}, {@link #getCachedBytes}
+ * and {@link #getContentMetadata}) only lock the state of the resource being queried, so they do
+ * not contend with each other or with modifications of other resources.
+ *
  * <p>To delete a SimpleCache, use {@link #delete(File, DatabaseProvider)} rather than deleting the
  * directory and its contents directly. This is necessary to ensure that associated index data is
  * also removed.
@@ -68,10 +73,12 @@ public final class SimpleCache implements Cache {
   private final HashMap<String, ArrayList<Listener>> listeners;
   private final Random random;
   private final boolean touchCacheSpans;
+  private final ConditionVariable initializationCondition;
 
   private long uid;
   private long totalSpace;
-  private boolean released;
+  private volatile boolean released;
+  private volatile boolean initialized;
   private @MonotonicNonNull CacheException initializationException;
 
   /**
@@ -257,6 +264,7 @@ public final class SimpleCache implements Cache {
     random = new Random();
     touchCacheSpans = evictor.requiresCacheSpanTouches();
     uid = UID_UNSET;
+    initializationCondition = new ConditionVariable();
 
     // Start cache initialization.
     final ConditionVariable conditionVariable = new ConditionVariable();
@@ -265,8 +273,13 @@ public final class SimpleCache implements Cache {
       public void run() {
         synchronized (SimpleCache.this) {
           conditionVariable.open();
-          initialize();
-          SimpleCache.this.evictor.onCacheInitialized();
+          try {
+            initialize();
+            SimpleCache.this.evictor.onCacheInitialized();
+          } finally {
+            initialized = true;
+            initializationCondition.open();
+          }
         }
       }
     }.start();
@@ -297,7 +310,7 @@ public final class SimpleCache implements Cache {
     listeners.clear();
     removeStaleSpans();
     try {
-      contentIndex.store();
+      contentIndex.storeAndCompact();
     } catch (IOException e) {
       Log.e(TAG, "Storing index file failed", e);
     } finally {
@@ -335,12 +348,11 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
     Assertions.checkState(!released);
-    CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent == null || cachedContent.isEmpty()
-        ? new TreeSet<>()
-        : new TreeSet<CacheSpan>(cachedContent.getSpans());
+    blockUntilInitialized();
+    @Nullable CachedContent cachedContent = contentIndex.get(key);
+    return cachedContent == null ? new TreeSet<>() : cachedContent.copySpans();
   }
 
   @Override
@@ -488,15 +500,17 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized boolean isCached(String key, long position, long length) {
+  public boolean isCached(String key, long position, long length) {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     @Nullable CachedContent cachedContent = contentIndex.get(key);
     return cachedContent != null && cachedContent.getCachedBytesLength(position, length) >= length;
   }
 
   @Override
-  public synchronized long getCachedLength(String key, long position, long length) {
+  public long getCachedLength(String key, long position, long length) {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     if (length == C.LENGTH_UNSET) {
       length = Long.MAX_VALUE;
     }
@@ -505,7 +519,7 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized long getCachedBytes(String key, long position, long length) {
+  public long getCachedBytes(String key, long position, long length) {
     long endPosition = length == C.LENGTH_UNSET ? Long.MAX_VALUE : position + length;
     if (endPosition < 0) {
       // The calculation rolled over (length is probably Long.MAX_VALUE).
@@ -542,11 +556,23 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized ContentMetadata getContentMetadata(String key) {
+  public ContentMetadata getContentMetadata(String key) {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     return contentIndex.getContentMetadata(key);
   }
 
+  /**
+   * Blocks until the initialization thread has loaded the cache's in-memory representation. Queries
+   * that don't hold the cache lock must call this before reading the content index, since the
+   * constructor returns as soon as the initialization thread holds the lock.
+   */
+  private void blockUntilInitialized() {
+    if (!initialized) {
+      initializationCondition.block();
+    }
+  }
+
   /** Ensures that the cache's in-memory representation has been initialized. */
   private void initialize() {
     if (!cacheDir.exists()) {
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.C;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+/**
+ * Evicts cache files based on both how recently and how frequently they've been used, using the
+ * W-TinyLFU policy.
+ *
+ * <p>Newly added files enter a small admission window, which is ordered by recency. When a file
+ * leaves the window it's only admitted to the main region of the cache if it has been used more
+ * frequently than the files that would need to be evicted to make room for it. Otherwise it's
+ * evicted itself. Usage frequencies are estimated by a compact sketch whose counters are
+ * periodically halved, so that files that were popular in the past eventually become eligible for
+ * eviction. This prevents large one-off sequential reads from flushing frequently used files out of
+ * the cache, which is what happens with {@link LeastRecentlyUsedCacheEvictor}.
+ */
+public final class TinyLfuCacheEvictor implements CacheEvictor {
+
+  /** The default fraction of the cache size used for the admission window. */
+  public static final float DEFAULT_WINDOW_FRACTION = 0.01f;
+
+  /** The fraction of the main region that may be used by spans that have been used repeatedly. */
+  private static final float PROTECTED_FRACTION = 0.8f;
+
+  private final long maxBytes;
+  private final long windowMaxBytes;
+  private final long protectedMaxBytes;
+  private final FrequencySketch sketch;
+  // Each of the following sets is ordered from least to most recently used.
+  private final LinkedHashSet<CacheSpan> window;
+  private final LinkedHashSet<CacheSpan> probation;
+  private final LinkedHashSet<CacheSpan> protectedSpans;
+
+  private long windowBytes;
+  private long probationBytes;
+  private long protectedBytes;
+
+  /**
+   * Creates an instance using {@link #DEFAULT_WINDOW_FRACTION}.
+   *
+   * @param maxBytes The maximum size of the cache in bytes.
+   */
+  public TinyLfuCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_WINDOW_FRACTION);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxBytes The maximum size of the cache in bytes.
+   * @param windowFraction The fraction of {@code maxBytes} to use for the admission window. Larger
+   *     values favor recency over frequency.
+   */
+  public TinyLfuCacheEvictor(long maxBytes, float windowFraction) {
+    this.maxBytes = maxBytes;
+    windowMaxBytes = (long) (maxBytes * windowFraction);
+    protectedMaxBytes = (long) ((maxBytes - windowMaxBytes) * PROTECTED_FRACTION);
+    sketch = new FrequencySketch();
+    window = new LinkedHashSet<>();
+    probation = new LinkedHashSet<>();
+    protectedSpans = new LinkedHashSet<>();
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    if (length != C.LENGTH_UNSET) {
+      evictCache(cache, length);
+    }
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    sketch.ensureCapacity(window.size() + probation.size() + protectedSpans.size() + 1);
+    sketch.increment(hash(span));
+    window.add(span);
+    windowBytes += span.length;
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    if (window.remove(span)) {
+      windowBytes -= span.length;
+    } else if (probation.remove(span)) {
+      probationBytes -= span.length;
+    } else if (protectedSpans.remove(span)) {
+      protectedBytes -= span.length;
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    sketch.increment(hash(newSpan));
+    if (window.remove(oldSpan)) {
+      window.add(newSpan);
+      windowBytes += newSpan.length - oldSpan.length;
+    } else if (probation.remove(oldSpan)) {
+      // The span has been used again since it was admitted, so promote it.
+      probationBytes -= oldSpan.length;
+      protectedSpans.add(newSpan);
+      protectedBytes += newSpan.length;
+      while (protectedBytes > protectedMaxBytes && protectedSpans.size() > 1) {
+        CacheSpan demotedSpan = protectedSpans.iterator().next();
+        protectedSpans.remove(demotedSpan);
+        protectedBytes -= demotedSpan.length;
+        probation.add(demotedSpan);
+        probationBytes += demotedSpan.length;
+      }
+    } else if (protectedSpans.remove(oldSpan)) {
+      protectedSpans.add(newSpan);
+      protectedBytes += newSpan.length - oldSpan.length;
+    } else {
+      window.add(newSpan);
+      windowBytes += newSpan.length;
+    }
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    // The most recently added span stays in the window even if it's larger than the window, so that
+    // data that has just been written isn't evicted straight away. When making room for a span that
+    // is about to be written, that span takes the place of the most recently added one.
+    int minWindowSize = requiredSpace > 0 ? 0 : 1;
+    // Move spans out of the window into the main region, if they're admitted, while the window or
+    // the whole cache overflows.
+    while (window.size() > minWindowSize
+        && (windowBytes > windowMaxBytes
+            || windowBytes + probationBytes + protectedBytes + requiredSpace > maxBytes)) {
+      CacheSpan candidate = window.iterator().next();
+      window.remove(candidate);
+      windowBytes -= candidate.length;
+      admitOrEvict(cache, candidate, requiredSpace);
+    }
+    // Make room for the required space, if there still isn't enough.
+    while (windowBytes + probationBytes + protectedBytes + requiredSpace > maxBytes) {
+      @Nullable CacheSpan victim = getLeastRecentlyUsed(probation);
+      if (victim == null) {
+        victim = getLeastRecentlyUsed(protectedSpans);
+      }
+      if (victim == null && window.size() > minWindowSize) {
+        victim = getLeastRecentlyUsed(window);
+      }
+      if (victim == null) {
+        break;
+      }
+      removeSpan(cache, victim);
+    }
+  }
+
+  /**
+   * Admits a span that has left the window to the main region unless one of the spans that need to
+   * be evicted to make room for it is used more frequently. Else evicts the span.
+   */
+  private void admitOrEvict(Cache cache, CacheSpan candidate, long requiredSpace) {
+    // The main region is smaller while the window holds a span that's larger than the window.
+    long mainMaxBytes = maxBytes - max(windowMaxBytes, windowBytes + requiredSpace);
+    long requiredBytes = probationBytes + protectedBytes + candidate.length - mainMaxBytes;
+    if (requiredBytes > 0) {
+      int candidateFrequency = sketch.frequency(hash(candidate));
+      ArrayList<CacheSpan> victims = new ArrayList<>();
+      long victimBytes = collectVictims(probation, candidateFrequency, requiredBytes, victims);
+      if (victimBytes >= 0 && victimBytes < requiredBytes) {
+        long protectedVictimBytes =
+            collectVictims(
+                protectedSpans, candidateFrequency, requiredBytes - victimBytes, victims);
+        victimBytes = protectedVictimBytes < 0 ? -1 : victimBytes + protectedVictimBytes;
+      }
+      if (victimBytes < requiredBytes) {
+        // At least one of the victims is used more frequently than the candidate, or the candidate
+        // doesn't fit in the main region.
+        cache.removeSpan(candidate);
+        return;
+      }
+      for (int i = 0; i < victims.size(); i++) {
+        removeSpan(cache, victims.get(i));
+      }
+    }
+    probation.add(candidate);
+    probationBytes += candidate.length;
+  }
+
+  /**
+   * Adds the least recently used spans in {@code spans} to {@code victims} until their total size
+   * is at least {@code requiredBytes}.
+   *
+   * @return The total size of the added spans, or -1 if a span used more frequently than {@code
+   *     candidateFrequency} would need to be added.
+   */
+  private long collectVictims(
+      LinkedHashSet<CacheSpan> spans,
+      int candidateFrequency,
+      long requiredBytes,
+      ArrayList<CacheSpan> victims) {
+    long victimBytes = 0;
+    for (CacheSpan span : spans) {
+      if (victimBytes >= requiredBytes) {
+        break;
+      }
+      if (sketch.frequency(hash(span)) > candidateFrequency) {
+        return -1;
+      }
+      victims.add(span);
+      victimBytes += span.length;
+    }
+    return victimBytes;
+  }
+
+  private void removeSpan(Cache cache, CacheSpan span) {
+    cache.removeSpan(span);
+    // The cache normally calls onSpanRemoved synchronously, but ensure that the span is no longer
+    // tracked so that eviction always makes progress.
+    onSpanRemoved(cache, span);
+  }
+
+  @Nullable
+  private static CacheSpan getLeastRecentlyUsed(LinkedHashSet<CacheSpan> spans) {
+    return spans.isEmpty() ? null : spans.iterator().next();
+  }
+
+  private static int hash(CacheSpan span) {
+    return 31 * span.key.hashCode() + (int) (span.position ^ (span.position >>> 32));
+  }
+
+  /**
+   * A count-min sketch of usage frequencies, with 4-bit counters that are halved after a number of
+   * increments proportional to the number of tracked spans.
+   */
+  @VisibleForTesting
+  /* package */ static final class FrequencySketch {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int MAX_FREQUENCY = 15;
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    /** Each element holds sixteen 4-bit counters. */
+    private long[] table;
+
+    private int sampleSize;
+    private int incrementCount;
+
+    public FrequencySketch() {
+      table = new long[0];
+      ensureCapacity(MIN_CAPACITY);
+    }
+
+    /**
+     * Increases the size of the sketch, if necessary, so that it can accurately track the given
+     * number of elements. Increasing the size discards all previously recorded frequencies.
+     */
+    public void ensureCapacity(int maximumSize) {
+      int tableLength =
+          Integer.highestOneBit(min(max(maximumSize, MIN_CAPACITY), MAX_CAPACITY) - 1) << 1;
+      if (table.length >= tableLength) {
+        return;
+      }
+      table = new long[tableLength];
+      sampleSize = 10 * tableLength;
+      incrementCount = 0;
+    }
+
+    /** Returns the estimated frequency of the element with the given hash, between 0 and 15. */
+    public int frequency(int hash) {
+      int frequency = MAX_FREQUENCY;
+      for (int i = 0; i < SEEDS.length; i++) {
+        int counterIndex = counterIndex(hash, i);
+        int shift = (counterIndex & 15) << 2;
+        frequency = min(frequency, (int) ((table[counterIndex >>> 4] >>> shift) & 0xF));
+      }
+      return frequency;
+    }
+
+    /** Increments the estimated frequency of the element with the given hash. */
+    public void increment(int hash) {
+      boolean incremented = false;
+      for (int i = 0; i < SEEDS.length; i++) {
+        int counterIndex = counterIndex(hash, i);
+        int tableIndex = counterIndex >>> 4;
+        int shift = (counterIndex & 15) << 2;
+        if (((table[tableIndex] >>> shift) & 0xF) != MAX_FREQUENCY) {
+          table[tableIndex] += 1L << shift;
+          incremented = true;
+        }
+      }
+      if (incremented && ++incrementCount >= sampleSize) {
+        reset();
+      }
+    }
+
+    private void reset() {
+      for (int i = 0; i < table.length; i++) {
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      incrementCount /= 2;
+    }
+
+    private int counterIndex(int hash, int i) {
+      long h = (hash + SEEDS[i]) * SEEDS[i];
+      h += h >>> 32;
+      return (int) h & (table.length * 16 - 1);
+    }
+  }
+}
@@ -18,6 +18,7 @@ package com.google.android.exoplayer2.upstream.cache;
 import static com.google.android.exoplayer2.testutil.TestUtil.createTestFile;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assertWithMessage;
+import static org.junit.Assert.assertThrows;
 
 import android.net.Uri;
 import android.util.SparseArray;
@@ -324,6 +325,116 @@ public class CachedContentIndexTest {
     assertThat(ContentMetadata.getContentLength(metadata2)).isEqualTo(2560);
   }
 
+  @Test
+  public void legacyStoreIncremental_appendsToJournal() throws Exception {
+    CachedContentIndex index = newLegacyInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("ABCDE");
+    index.store();
+    File indexFile = new File(cacheDir, CachedContentIndex.FILE_NAME_ATOMIC);
+    long indexFileLength = indexFile.length();
+
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataMutations.setContentLength(mutations, 10);
+    index.applyContentMetadataMutations("ABCDE", mutations);
+    index.getOrAdd("KLMNO");
+    index.store();
+
+    assertThat(indexFile.length()).isEqualTo(indexFileLength);
+    assertThat(getJournalFile().exists()).isTrue();
+    CachedContentIndex index2 = newLegacyInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.getKeys()).containsExactly("ABCDE", "KLMNO");
+    assertThat(index2.get("ABCDE")).isEqualTo(index.get("ABCDE"));
+    assertThat(index2.get("KLMNO")).isEqualTo(index.get("KLMNO"));
+  }
+
+  @Test
+  public void legacyStoreIncremental_withRemovedContent_removesContentOnLoad() throws Exception {
+    CachedContentIndex index = newLegacyInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("ABCDE");
+    index.getOrAdd("KLMNO");
+    index.store();
+
+    index.maybeRemove("ABCDE");
+    index.store();
+
+    CachedContentIndex index2 = newLegacyInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.getKeys()).containsExactly("KLMNO");
+    assertThat(index2.get("KLMNO")).isEqualTo(index.get("KLMNO"));
+  }
+
+  @Test
+  public void legacyStoreAndCompact_deletesJournal() throws Exception {
+    CachedContentIndex index = newLegacyInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("ABCDE");
+    index.store();
+    index.getOrAdd("KLMNO");
+    index.store();
+
+    index.storeAndCompact();
+
+    assertThat(getJournalFile().exists()).isFalse();
+    CachedContentIndex index2 = newLegacyInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.getKeys()).containsExactly("ABCDE", "KLMNO");
+  }
+
+  @Test
+  public void legacyLoad_withTruncatedJournal_ignoresIncompleteRecord() throws Exception {
+    CachedContentIndex index = newLegacyInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("ABCDE");
+    index.store();
+    index.getOrAdd("KLMNO");
+    index.store();
+    index.getOrAdd("FGHIJ");
+    index.store();
+    File journalFile = getJournalFile();
+    byte[] journal = Util.toByteArray(new FileInputStream(journalFile));
+    try (FileOutputStream outputStream = new FileOutputStream(journalFile)) {
+      outputStream.write(journal, /* off= */ 0, /* len= */ journal.length - 2);
+    }
+
+    CachedContentIndex index2 = newLegacyInstance();
+    index2.initialize(/* uid= */ 0);
+    index2.store();
+
+    assertThat(index2.getKeys()).containsExactly("ABCDE", "KLMNO");
+    assertThat(journalFile.exists()).isFalse();
+  }
+
+  @Test
+  public void legacyStoreIncremental_afterFailedAppend_keepsLaterRecords() throws Exception {
+    CachedContentIndex index = newLegacyInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("ABCDE");
+    index.store();
+    index.getOrAdd("KLMNO");
+    index.store();
+    File journalFile = getJournalFile();
+    long journalLength = journalFile.length();
+    // Fail the next append after its first record has been written, as a key this long can't be
+    // encoded.
+    index.getOrAdd("FGHIJ");
+    String unencodableKey = new String(new char[70_000]).replace('\0', 'a');
+    index.getOrAdd(unencodableKey);
+    assertThrows(IOException.class, index::store);
+
+    assertThat(journalFile.length()).isEqualTo(journalLength);
+    index.maybeRemove(unencodableKey);
+    index.getOrAdd("PQRST");
+    index.store();
+
+    assertThat(journalFile.exists()).isFalse();
+    CachedContentIndex index2 = newLegacyInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.getKeys()).containsExactly("ABCDE", "KLMNO", "FGHIJ", "PQRST");
+  }
+
   @Test
   public void assignIdForKeyAndGetKeyForId() {
     CachedContentIndex index = newInstance();
@@ -461,6 +572,10 @@ public class CachedContentIndexTest {
     }
   }
 
+  private File getJournalFile() {
+    return new File(cacheDir, CachedContentIndex.FILE_NAME_ATOMIC + ".journal");
+  }
+
   private CachedContentIndex newInstance() {
     return new CachedContentIndex(TestUtil.getInMemoryDatabaseProvider());
   }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.DataSourceContractTest;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+/** {@link DataSource} contract tests for {@link MappedCacheFileDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public class MappedCacheFileDataSourceContractTest extends DataSourceContractTest {
+
+  private static final byte[] DATA = TestUtil.buildTestData(20);
+  private static final byte[] LARGE_DATA = TestUtil.buildTestData(50);
+
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Uri uri;
+  private Uri largeUri;
+
+  @Before
+  public void writeFiles() throws Exception {
+    File file = tempFolder.newFile();
+    Files.write(Paths.get(file.getAbsolutePath()), DATA);
+    uri = Uri.fromFile(file);
+    File largeFile = tempFolder.newFile();
+    Files.write(Paths.get(largeFile.getAbsolutePath()), LARGE_DATA);
+    largeUri = Uri.fromFile(largeFile);
+  }
+
+  @Override
+  protected ImmutableList<TestResource> getTestResources() {
+    return ImmutableList.of(
+        new TestResource.Builder().setName("mapped").setUri(uri).setExpectedBytes(DATA).build(),
+        new TestResource.Builder()
+            .setName("too large to map")
+            .setUri(largeUri)
+            .setExpectedBytes(LARGE_DATA)
+            .build());
+  }
+
+  @Override
+  protected Uri getNotFoundUri() {
+    return Uri.fromFile(tempFolder.getRoot().toPath().resolve("nonexistent").toFile());
+  }
+
+  @Override
+  protected DataSource createDataSource() {
+    return new MappedCacheFileDataSource(
+        new MappingCacheEvictor(new NoOpCacheEvictor(), /* maxMappedBytes= */ 30));
+  }
+}
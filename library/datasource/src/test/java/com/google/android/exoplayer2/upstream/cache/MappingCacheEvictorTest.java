@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MappingCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public class MappingCacheEvictorTest {
+
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void getMapping_returnsFileContent() throws Exception {
+    byte[] data = TestUtil.buildTestData(10);
+    File file = createFile(data);
+    MappingCacheEvictor evictor =
+        new MappingCacheEvictor(new NoOpCacheEvictor(), /* maxMappedBytes= */ 100);
+
+    ByteBuffer mapping = evictor.getMapping(file);
+
+    byte[] mappedData = new byte[mapping.remaining()];
+    mapping.get(mappedData);
+    assertThat(mappedData).isEqualTo(data);
+    assertThat(evictor.getMappedBytes()).isEqualTo(10);
+  }
+
+  @Test
+  public void getMapping_fileLargerThanMaxMappedBytes_returnsNull() throws Exception {
+    File file = createFile(TestUtil.buildTestData(20));
+    MappingCacheEvictor evictor =
+        new MappingCacheEvictor(new NoOpCacheEvictor(), /* maxMappedBytes= */ 10);
+
+    assertThat(evictor.getMapping(file)).isNull();
+    assertThat(evictor.getMappedBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void getMapping_exceedingMaxMappedBytes_dropsLeastRecentlyUsedMapping() throws Exception {
+    File file1 = createFile(TestUtil.buildTestData(10));
+    File file2 = createFile(TestUtil.buildTestData(10));
+    File file3 = createFile(TestUtil.buildTestData(10));
+    MappingCacheEvictor evictor =
+        new MappingCacheEvictor(new NoOpCacheEvictor(), /* maxMappedBytes= */ 25);
+
+    evictor.getMapping(file1);
+    evictor.getMapping(file2);
+    evictor.getMapping(file1);
+    evictor.getMapping(file3);
+
+    assertThat(evictor.getMappedBytes()).isEqualTo(20);
+  }
+
+  @Test
+  public void onSpanRemoved_dropsMappingAndNotifiesDelegate() throws Exception {
+    File file = createFile(TestUtil.buildTestData(10));
+    CacheEvictor delegate = mock(CacheEvictor.class);
+    Cache cache = mock(Cache.class);
+    MappingCacheEvictor evictor = new MappingCacheEvictor(delegate, /* maxMappedBytes= */ 100);
+    evictor.getMapping(file);
+    CacheSpan span =
+        new CacheSpan(
+            "key", /* position= */ 0, /* length= */ 10, /* lastTouchTimestamp= */ 0, file);
+
+    evictor.onSpanRemoved(cache, span);
+
+    assertThat(evictor.getMappedBytes()).isEqualTo(0);
+    verify(delegate).onSpanRemoved(cache, span);
+  }
+
+  private File createFile(byte[] data) throws Exception {
+    File file = tempFolder.newFile();
+    Files.write(file.toPath(), data);
+    return file;
+  }
+}
@@ -27,6 +27,7 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.database.DatabaseProvider;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import com.google.android.exoplayer2.util.ConditionVariable;
 import com.google.android.exoplayer2.util.Util;
 import java.io.File;
 import java.io.FileInputStream;
@@ -34,6 +35,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.NavigableSet;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -643,6 +645,96 @@ public class SimpleCacheTest {
         .isEqualTo(10);
   }
 
+  @Test
+  public void readOnlyQueries_whileCacheLockedByAnotherThread_doNotBlock() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, /* position= */ 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, /* position= */ 0, /* length= */ 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    ConditionVariable cacheLocked = new ConditionVariable();
+    ConditionVariable queriesFinished = new ConditionVariable();
+    AtomicBoolean queriesFinishedWhileLocked = new AtomicBoolean();
+    Thread lockingThread =
+        new Thread(
+            () -> {
+              synchronized (simpleCache) {
+                cacheLocked.open();
+                try {
+                  queriesFinishedWhileLocked.set(queriesFinished.block(/* timeoutMs= */ 5_000));
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+              }
+            });
+    lockingThread.start();
+    cacheLocked.block();
+
+    long cachedBytes = simpleCache.getCachedBytes(KEY_1, /* position= */ 0, LENGTH_UNSET);
+    long cachedLength = simpleCache.getCachedLength(KEY_1, /* position= */ 10, LENGTH_UNSET);
+    boolean isCached = simpleCache.isCached(KEY_1, /* position= */ 0, /* length= */ 15);
+    NavigableSet<CacheSpan> cachedSpans = simpleCache.getCachedSpans(KEY_1);
+    queriesFinished.open();
+    lockingThread.join();
+
+    assertThat(queriesFinishedWhileLocked.get()).isTrue();
+    assertThat(cachedBytes).isEqualTo(15);
+    assertThat(cachedLength).isEqualTo(5);
+    assertThat(isCached).isTrue();
+    assertThat(cachedSpans).hasSize(1);
+  }
+
+  @Test
+  public void readOnlyQueries_straightAfterConstruction_waitForInitialization() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, /* position= */ 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, /* position= */ 0, /* length= */ 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataMutations.setContentLength(mutations, 15);
+    simpleCache.applyContentMetadataMutations(KEY_1, mutations);
+    simpleCache.release();
+    // Hold up loading the index of the new instance until after the queries have been made.
+    ConditionVariable allowIndexLoad = new ConditionVariable();
+    CachedContentIndex contentIndex =
+        new CachedContentIndex(databaseProvider) {
+          @Override
+          public void initialize(long uid) throws IOException {
+            allowIndexLoad.blockUninterruptible();
+            super.initialize(uid);
+          }
+        };
+    Thread allowIndexLoadThread =
+        new Thread(
+            () -> {
+              try {
+                Thread.sleep(100);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              allowIndexLoad.open();
+            });
+
+    simpleCache =
+        new SimpleCache(
+            cacheDir,
+            new NoOpCacheEvictor(),
+            contentIndex,
+            new CacheFileMetadataIndex(databaseProvider));
+    allowIndexLoadThread.start();
+    boolean isCached = simpleCache.isCached(KEY_1, /* position= */ 0, /* length= */ 15);
+    long cachedLength = simpleCache.getCachedLength(KEY_1, /* position= */ 10, LENGTH_UNSET);
+    long cachedBytes = simpleCache.getCachedBytes(KEY_1, /* position= */ 0, LENGTH_UNSET);
+    NavigableSet<CacheSpan> cachedSpans = simpleCache.getCachedSpans(KEY_1);
+    ContentMetadata contentMetadata = simpleCache.getContentMetadata(KEY_1);
+    allowIndexLoadThread.join();
+
+    assertThat(isCached).isTrue();
+    assertThat(cachedLength).isEqualTo(5);
+    assertThat(cachedBytes).isEqualTo(15);
+    assertThat(cachedSpans).hasSize(1);
+    assertThat(ContentMetadata.getContentLength(contentMetadata)).isEqualTo(15);
+  }
+
   // Regression test for https://github.com/google/ExoPlayer/issues/3260.
   @Test
   public void exceptionDuringIndexStore_doesNotPreventEviction() throws Exception {
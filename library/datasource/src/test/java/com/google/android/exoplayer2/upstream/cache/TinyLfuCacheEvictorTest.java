@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link TinyLfuCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public class TinyLfuCacheEvictorTest {
+
+  private static final int SPAN_LENGTH = 10;
+
+  private long timestamp;
+
+  @Test
+  public void contentBiggerThanMaxSizeDoesNotThrowException() {
+    int maxBytes = 100;
+    TinyLfuCacheEvictor evictor = new TinyLfuCacheEvictor(maxBytes);
+    evictor.onCacheInitialized();
+    evictor.onStartFile(mock(Cache.class), "key", 0, maxBytes + 1);
+  }
+
+  @Test
+  public void sequentialScan_doesNotEvictFrequentlyUsedSpans() {
+    TinyLfuCacheEvictor evictor =
+        new TinyLfuCacheEvictor(/* maxBytes= */ 100, /* windowFraction= */ 0.1f);
+    Cache cache = createCache(evictor);
+
+    List<CacheSpan> hotSpans = addHotSpans(cache, evictor);
+    addScanSpans(cache, evictor);
+
+    for (int i = 0; i < hotSpans.size(); i++) {
+      verify(cache, never()).removeSpan(hotSpans.get(i));
+    }
+    verify(cache, atLeastOnce()).removeSpan(any());
+  }
+
+  @Test
+  public void sequentialScan_withLeastRecentlyUsedCacheEvictor_evictsFrequentlyUsedSpans() {
+    LeastRecentlyUsedCacheEvictor evictor = new LeastRecentlyUsedCacheEvictor(/* maxBytes= */ 100);
+    Cache cache = createCache(evictor);
+
+    List<CacheSpan> hotSpans = addHotSpans(cache, evictor);
+    addScanSpans(cache, evictor);
+
+    verify(cache).removeSpan(hotSpans.get(0));
+  }
+
+  @Test
+  public void sequentialWrites_withDefaultWindowFraction_keepRecentlyWrittenSpans() {
+    long spanLength = 2 * 1024 * 1024;
+    int spansPerCache = 50;
+    TinyLfuCacheEvictor evictor =
+        new TinyLfuCacheEvictor(/* maxBytes= */ spanLength * spansPerCache);
+    Cache cache = createCache(evictor);
+
+    // Write twice as much data as fits in the cache, as when playing a long piece of content.
+    List<CacheSpan> spans = new ArrayList<>();
+    for (int i = 0; i < spansPerCache * 2; i++) {
+      CacheSpan span =
+          addSpan(cache, evictor, "content", /* position= */ i * spanLength, spanLength);
+      verify(cache, never()).removeSpan(span);
+      spans.add(span);
+    }
+
+    verify(cache).removeSpan(spans.get(0));
+    for (int i = spansPerCache + 1; i < spans.size(); i++) {
+      verify(cache, never()).removeSpan(spans.get(i));
+    }
+  }
+
+  @Test
+  public void frequencySketch_incrementAndReset() {
+    TinyLfuCacheEvictor.FrequencySketch sketch = new TinyLfuCacheEvictor.FrequencySketch();
+    int hash = "key".hashCode();
+    for (int i = 0; i < 20; i++) {
+      sketch.increment(hash);
+    }
+
+    assertThat(sketch.frequency(hash)).isEqualTo(15);
+    assertThat(sketch.frequency("other".hashCode())).isAtMost(1);
+
+    // Incrementing other elements eventually halves all counters.
+    for (int i = 0; i < 200; i++) {
+      sketch.increment(i);
+    }
+    assertThat(sketch.frequency(hash)).isLessThan(15);
+  }
+
+  /** Returns a mock {@link Cache} that notifies {@code evictor} when spans are removed. */
+  private static Cache createCache(CacheEvictor evictor) {
+    Cache cache = mock(Cache.class);
+    doAnswer(
+            invocation -> {
+              evictor.onSpanRemoved(cache, invocation.getArgument(0));
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+    return cache;
+  }
+
+  /** Adds five spans that are each used four times. Returns the latest instance of each span. */
+  private List<CacheSpan> addHotSpans(Cache cache, CacheEvictor evictor) {
+    List<CacheSpan> hotSpans = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      CacheSpan span = addSpan(cache, evictor, "hot" + i);
+      for (int j = 0; j < 3; j++) {
+        CacheSpan touchedSpan = createSpan("hot" + i);
+        evictor.onSpanTouched(cache, span, touchedSpan);
+        span = touchedSpan;
+      }
+      hotSpans.add(span);
+    }
+    return hotSpans;
+  }
+
+  /** Adds twenty spans that are each used once. */
+  private void addScanSpans(Cache cache, CacheEvictor evictor) {
+    for (int i = 0; i < 20; i++) {
+      addSpan(cache, evictor, "scan" + i);
+    }
+  }
+
+  private CacheSpan addSpan(Cache cache, CacheEvictor evictor, String key) {
+    return addSpan(cache, evictor, key, /* position= */ 0, SPAN_LENGTH);
+  }
+
+  private CacheSpan addSpan(
+      Cache cache, CacheEvictor evictor, String key, long position, long length) {
+    evictor.onStartFile(cache, key, position, length);
+    CacheSpan span = createSpan(key, position, length);
+    evictor.onSpanAdded(cache, span);
+    return span;
+  }
+
+  private CacheSpan createSpan(String key) {
+    return createSpan(key, /* position= */ 0, SPAN_LENGTH);
+  }
+
+  private CacheSpan createSpan(String key, long position, long length) {
+    return new CacheSpan(
+        key, position, length, /* lastTouchTimestamp= */ ++timestamp, new File(key + position));
+  }
+}
@@ -25,6 +25,7 @@ import com.google.android.exoplayer2.util.Util;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /** An {@link ExtractorInput} that wraps a {@link DataReader}. */
@@ -72,6 +73,19 @@ public final class DefaultExtractorInput implements ExtractorInput {
     return bytesRead;
   }
 
+  @Override
+  public int read(ByteBuffer buffer, int length) throws IOException {
+    int bytesRead = readFromPeekBuffer(buffer, length);
+    if (bytesRead == 0) {
+      if (Thread.interrupted()) {
+        throw new InterruptedIOException();
+      }
+      bytesRead = dataReader.read(buffer, length);
+    }
+    commitBytesRead(bytesRead);
+    return bytesRead;
+  }
+
   @Override
   public boolean readFully(byte[] target, int offset, int length, boolean allowEndOfInput)
       throws IOException {
@@ -249,6 +263,23 @@ public final class DefaultExtractorInput implements ExtractorInput {
     return peekBytes;
   }
 
+  /**
+   * Reads from the peek buffer into a {@link ByteBuffer}.
+   *
+   * @param target A target buffer into which data should be written, starting at its position.
+   * @param length The maximum number of bytes to read from the peek buffer.
+   * @return The number of bytes read.
+   */
+  private int readFromPeekBuffer(ByteBuffer target, int length) {
+    if (peekBufferLength == 0) {
+      return 0;
+    }
+    int peekBytes = min(peekBufferLength, length);
+    target.put(peekBuffer, 0, peekBytes);
+    updatePeekBuffer(peekBytes);
+    return peekBytes;
+  }
+
   /**
    * Updates the peek buffer's length, position and contents after consuming data.
    *
@@ -21,6 +21,7 @@ import static com.google.android.exoplayer2.util.Assertions.checkState;
 import static com.google.android.exoplayer2.util.Util.castNonNull;
 import static com.google.android.exoplayer2.util.Util.nullSafeArrayCopy;
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.lang.annotation.ElementType.TYPE_USE;
 
 import android.util.Pair;
@@ -54,6 +55,7 @@ import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.TimestampAdjuster;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -64,6 +66,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
 
 /** Extracts data from the FMP4 container format. */
 @SuppressWarnings("ConstantField")
@@ -122,12 +128,19 @@ public class FragmentedMp4Extractor implements Extractor {
       new Format.Builder().setSampleMimeType(MimeTypes.APPLICATION_EMSG).build();
   private static final int EXTRA_TRACKS_BASE_ID = 100;
 
+  /** The maximum number of trun atom buffers that are retained for reuse by later fragments. */
+  private static final int MAX_RECYCLED_TRUN_DATA_COUNT = 8;
+
+  /** The maximum number of fragments whose moof atoms are read ahead to be parsed in parallel. */
+  private static final int MAX_PREFETCHED_FRAGMENT_COUNT = 16;
+
   // Parser states.
   private static final int STATE_READING_ATOM_HEADER = 0;
   private static final int STATE_READING_ATOM_PAYLOAD = 1;
   private static final int STATE_READING_ENCRYPTION_DATA = 2;
   private static final int STATE_READING_SAMPLE_START = 3;
   private static final int STATE_READING_SAMPLE_CONTINUE = 4;
+  private static final int STATE_PREFETCHING_FRAGMENTS = 5;
 
   // Workarounds.
   private final @Flags int flags;
@@ -155,8 +168,19 @@ public class FragmentedMp4Extractor implements Extractor {
   private final ParsableByteArray atomHeader;
   private final ArrayDeque<ContainerAtom> containerAtoms;
   private final ArrayDeque<MetadataSampleInfo> pendingMetadataSampleInfos;
+  private final ArrayDeque<ParsableByteArray> recycledTrunData;
   @Nullable private final TrackOutput additionalEmsgTrackOutput;
 
+  // Parallel fragment parsing.
+  @Nullable private final ExecutorService fragmentParsingExecutor;
+  private final ArrayDeque<PrefetchedFragment> prefetchedFragments;
+  @Nullable private ChunkIndex segmentIndex;
+  private int prefetchFragmentIndex;
+  private int prefetchEndFragmentIndex;
+  private long prefetchResumePosition;
+  private long prefetchedFragmentsStartPosition;
+  private long prefetchedFragmentsEndPosition;
+
   private int parserState;
   private int atomType;
   private long atomSize;
@@ -252,11 +276,45 @@ public class FragmentedMp4Extractor implements Extractor {
       @Nullable Track sideloadedTrack,
       List<Format> closedCaptionFormats,
       @Nullable TrackOutput additionalEmsgTrackOutput) {
+    this(
+        flags,
+        timestampAdjuster,
+        sideloadedTrack,
+        closedCaptionFormats,
+        additionalEmsgTrackOutput,
+        /* fragmentParsingExecutor= */ null);
+  }
+
+  /**
+   * @param flags Flags that control the extractor's behavior.
+   * @param timestampAdjuster Adjusts sample timestamps. May be null if no adjustment is needed.
+   * @param sideloadedTrack Sideloaded track information, in the case that the extractor will not
+   *     receive a moov box in the input data. Null if a moov box is expected.
+   * @param closedCaptionFormats For tracks that contain SEI messages, the formats of the closed
+   *     caption channels to expose.
+   * @param additionalEmsgTrackOutput An extra track output that will receive all emsg messages
+   *     targeting the player, even if {@link #FLAG_ENABLE_EMSG_TRACK} is not set. Null if special
+   *     handling of emsg messages for players is not required.
+   * @param fragmentParsingExecutor An {@link ExecutorService}, such as a {@code ForkJoinPool}, on
+   *     which to parse the moof boxes of the fragments listed in the segment index (sidx box) in
+   *     parallel, or null to parse fragments sequentially. Parsing in parallel requires the
+   *     extractor to seek ahead in the input to read the moof boxes, and so should only be used
+   *     for inputs that can be seeked efficiently, such as local files. Samples are output in the
+   *     same order in both cases. The executor isn't shut down by the extractor.
+   */
+  public FragmentedMp4Extractor(
+      @Flags int flags,
+      @Nullable TimestampAdjuster timestampAdjuster,
+      @Nullable Track sideloadedTrack,
+      List<Format> closedCaptionFormats,
+      @Nullable TrackOutput additionalEmsgTrackOutput,
+      @Nullable ExecutorService fragmentParsingExecutor) {
     this.flags = flags;
     this.timestampAdjuster = timestampAdjuster;
     this.sideloadedTrack = sideloadedTrack;
     this.closedCaptionFormats = Collections.unmodifiableList(closedCaptionFormats);
     this.additionalEmsgTrackOutput = additionalEmsgTrackOutput;
+    this.fragmentParsingExecutor = fragmentParsingExecutor;
     eventMessageEncoder = new EventMessageEncoder();
     atomHeader = new ParsableByteArray(Atom.LONG_HEADER_SIZE);
     nalStartCode = new ParsableByteArray(NalUnitUtil.NAL_START_CODE);
@@ -266,6 +324,8 @@ public class FragmentedMp4Extractor implements Extractor {
     scratch = new ParsableByteArray(scratchBytes);
     containerAtoms = new ArrayDeque<>();
     pendingMetadataSampleInfos = new ArrayDeque<>();
+    recycledTrunData = new ArrayDeque<>();
+    prefetchedFragments = new ArrayDeque<>();
     trackBundles = new SparseArray<>();
     durationUs = C.TIME_UNSET;
     pendingSeekTimeUs = C.TIME_UNSET;
@@ -317,12 +377,13 @@ public class FragmentedMp4Extractor implements Extractor {
     pendingMetadataSampleBytes = 0;
     pendingSeekTimeUs = timeUs;
     containerAtoms.clear();
+    clearPrefetchedFragments();
     enterReadingAtomHeaderState();
   }
 
   @Override
   public void release() {
-    // Do nothing
+    clearPrefetchedFragments();
   }
 
   @Override
@@ -330,10 +391,18 @@ public class FragmentedMp4Extractor implements Extractor {
     while (true) {
       switch (parserState) {
         case STATE_READING_ATOM_HEADER:
+          if (maybeStartPrefetchingFragments(input)) {
+            break;
+          }
           if (!readAtomHeader(input)) {
             return Extractor.RESULT_END_OF_INPUT;
           }
           break;
+        case STATE_PREFETCHING_FRAGMENTS:
+          if (prefetchFragments(input, seekPosition)) {
+            return RESULT_SEEK;
+          }
+          break;
         case STATE_READING_ATOM_PAYLOAD:
           readAtomPayload(input);
           break;
@@ -406,6 +475,12 @@ public class FragmentedMp4Extractor implements Extractor {
         fragment.auxiliaryDataPosition = atomPosition;
         fragment.dataPosition = atomPosition;
       }
+      if (containerAtoms.isEmpty() && maybeApplyPrefetchedFragment(atomPosition)) {
+        // The moof has already been parsed, so its payload can be skipped.
+        atomData = null;
+        parserState = STATE_READING_ATOM_PAYLOAD;
+        return true;
+      }
     }
 
     if (atomType == Atom.TYPE_mdat) {
@@ -433,7 +508,7 @@ public class FragmentedMp4Extractor implements Extractor {
         throw ParserException.createForUnsupportedContainerFeature(
             "Leaf atom with length > 2147483647 (unsupported).");
       }
-      ParsableByteArray atomData = new ParsableByteArray((int) atomSize);
+      ParsableByteArray atomData = obtainLeafAtomData(atomType, (int) atomSize);
       System.arraycopy(atomHeader.getData(), 0, atomData.getData(), 0, Atom.HEADER_SIZE);
       this.atomData = atomData;
       parserState = STATE_READING_ATOM_PAYLOAD;
@@ -449,6 +524,45 @@ public class FragmentedMp4Extractor implements Extractor {
     return true;
   }
 
+  /**
+   * Returns a buffer with the given limit into which a leaf atom of the given type can be read.
+   *
+   * <p>Every fragment contains one or more trun atoms, whose size is proportional to the number of
+   * samples in the fragment. Their data isn't needed once the containing moof has been parsed, so
+   * the buffers are reused rather than being allocated for every fragment. Other leaf atoms may be
+   * retained (e.g. pssh data is kept in {@link DrmInitData}), and so always get a new buffer.
+   */
+  private ParsableByteArray obtainLeafAtomData(int atomType, int atomSize) {
+    @Nullable
+    ParsableByteArray atomData = atomType == Atom.TYPE_trun ? recycledTrunData.pollFirst() : null;
+    if (atomData == null) {
+      return new ParsableByteArray(atomSize);
+    }
+    atomData.reset(atomSize);
+    return atomData;
+  }
+
+  /** Makes the trun atom buffers of a moof that's been fully parsed available for reuse. */
+  private void recycleTrunData(ContainerAtom moof) {
+    List<ContainerAtom> containerChildren = moof.containerChildren;
+    int containerChildrenSize = containerChildren.size();
+    for (int i = 0; i < containerChildrenSize; i++) {
+      ContainerAtom child = containerChildren.get(i);
+      if (child.type != Atom.TYPE_traf) {
+        continue;
+      }
+      List<LeafAtom> leafChildren = child.leafChildren;
+      int leafChildrenSize = leafChildren.size();
+      for (int j = 0; j < leafChildrenSize; j++) {
+        LeafAtom atom = leafChildren.get(j);
+        if (atom.type == Atom.TYPE_trun
+            && recycledTrunData.size() < MAX_RECYCLED_TRUN_DATA_COUNT) {
+          recycledTrunData.add(atom.data);
+        }
+      }
+    }
+  }
+
   private void readAtomPayload(ExtractorInput input) throws IOException {
     int atomPayloadSize = (int) atomSize - atomHeaderBytesRead;
     @Nullable ParsableByteArray atomData = this.atomData;
@@ -474,6 +588,7 @@ public class FragmentedMp4Extractor implements Extractor {
     } else if (leaf.type == Atom.TYPE_sidx) {
       Pair<Long, ChunkIndex> result = parseSidx(leaf.data, inputPosition);
       segmentIndexEarliestPresentationTimeUs = result.first;
+      segmentIndex = result.second;
       extractorOutput.seekMap(result.second);
       haveOutputSeekMap = true;
     } else if (leaf.type == Atom.TYPE_emsg) {
@@ -493,6 +608,8 @@ public class FragmentedMp4Extractor implements Extractor {
 
   private void onMoovContainerAtomRead(ContainerAtom moov) throws ParserException {
     checkState(sideloadedTrack == null, "Unexpected moov box.");
+    // Fragments parsed ahead of time may refer to the previous sample tables.
+    clearPrefetchedFragments();
 
     @Nullable DrmInitData drmInitData = getDrmInitDataFromAtoms(moov.leafChildren);
 
@@ -566,7 +683,11 @@ public class FragmentedMp4Extractor implements Extractor {
 
   private void onMoofContainerAtomRead(ContainerAtom moof) throws ParserException {
     parseMoof(moof, trackBundles, sideloadedTrack != null, flags, scratchBytes);
+    onMoofParsed(moof);
+    recycleTrunData(moof);
+  }
 
+  private void onMoofParsed(ContainerAtom moof) {
     @Nullable DrmInitData drmInitData = getDrmInitDataFromAtoms(moof.leafChildren);
     if (drmInitData != null) {
       int trackCount = trackBundles.size();
@@ -584,6 +705,177 @@ public class FragmentedMp4Extractor implements Extractor {
     }
   }
 
+  /**
+   * Starts reading the moof atoms of the next fragments listed in the segment index to parse them
+   * in parallel, if parallel parsing is enabled and the input is positioned at the start of a
+   * fragment whose moof hasn't already been read.
+   *
+   * @return Whether the extractor has entered the state for reading the moof atoms.
+   */
+  private boolean maybeStartPrefetchingFragments(ExtractorInput input) {
+    @Nullable ChunkIndex segmentIndex = this.segmentIndex;
+    if (fragmentParsingExecutor == null
+        || segmentIndex == null
+        || atomHeaderBytesRead != 0
+        || !containerAtoms.isEmpty()
+        || trackBundles.size() == 0
+        // The decode time of a fragment without a tfdt depends on the previous fragments.
+        || (flags & FLAG_WORKAROUND_IGNORE_TFDT_BOX) != 0) {
+      return false;
+    }
+    long position = input.getPosition();
+    if (position >= prefetchedFragmentsStartPosition && position < prefetchedFragmentsEndPosition) {
+      return false;
+    }
+    int fragmentIndex = Arrays.binarySearch(segmentIndex.offsets, position);
+    if (fragmentIndex < 0) {
+      return false;
+    }
+    int endFragmentIndex =
+        min(fragmentIndex + MAX_PREFETCHED_FRAGMENT_COUNT, segmentIndex.length);
+    int lastFragmentIndex = endFragmentIndex - 1;
+    prefetchFragmentIndex = fragmentIndex;
+    prefetchEndFragmentIndex = endFragmentIndex;
+    prefetchResumePosition = position;
+    prefetchedFragmentsStartPosition = position;
+    prefetchedFragmentsEndPosition =
+        segmentIndex.offsets[lastFragmentIndex] + segmentIndex.sizes[lastFragmentIndex];
+    parserState = STATE_PREFETCHING_FRAGMENTS;
+    return true;
+  }
+
+  /**
+   * Reads the moof atoms of the fragments being prefetched, and submits them to be parsed on the
+   * {@link #fragmentParsingExecutor}. Returns to reading atoms from the first prefetched fragment
+   * once all of them have been read.
+   *
+   * @return Whether {@code seekPosition} has been set to the position to read from next.
+   */
+  private boolean prefetchFragments(ExtractorInput input, PositionHolder seekPosition)
+      throws IOException {
+    ChunkIndex segmentIndex = checkNotNull(this.segmentIndex);
+    while (prefetchFragmentIndex < prefetchEndFragmentIndex) {
+      long fragmentPosition = segmentIndex.offsets[prefetchFragmentIndex];
+      long fragmentEndPosition = fragmentPosition + segmentIndex.sizes[prefetchFragmentIndex];
+      long position = input.getPosition();
+      if (position < fragmentPosition) {
+        seekPosition.position = fragmentPosition;
+        return true;
+      }
+      // Move on to the next fragment once the end of this one has been reached, for example if its
+      // reference in the segment index ends with the atoms preceding a moof.
+      if (position >= fragmentEndPosition || !prefetchNextAtom(input, fragmentEndPosition)) {
+        prefetchFragmentIndex++;
+      }
+    }
+    enterReadingAtomHeaderState();
+    if (input.getPosition() != prefetchResumePosition) {
+      seekPosition.position = prefetchResumePosition;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Reads the next top-level atom of a fragment being prefetched. A moof atom is submitted to be
+   * parsed, and other small atoms preceding it (e.g. styp) are skipped.
+   *
+   * @return Whether the fragment's moof atom may follow the atom that's been read.
+   */
+  private boolean prefetchNextAtom(ExtractorInput input, long fragmentEndPosition)
+      throws IOException {
+    long atomPosition = input.getPosition();
+    byte[] header = atomHeader.getData();
+    input.resetPeekPosition();
+    if (!input.peekFully(header, 0, Atom.HEADER_SIZE, /* allowEndOfInput= */ true)) {
+      return false;
+    }
+    atomHeader.setPosition(0);
+    long atomSize = atomHeader.readUnsignedInt();
+    int atomType = atomHeader.readInt();
+    if (atomType == Atom.TYPE_mdat
+        || atomSize < Atom.HEADER_SIZE
+        || atomSize > fragmentEndPosition - atomPosition) {
+      // Don't read ahead through sample data or atoms with an extended size.
+      return false;
+    }
+    if (atomType != Atom.TYPE_moof) {
+      input.skipFully((int) atomSize);
+      return true;
+    }
+    byte[] moofData = new byte[(int) atomSize];
+    input.readFully(moofData, 0, moofData.length);
+    submitFragmentForParsing(moofData, atomPosition);
+    return false;
+  }
+
+  private void submitFragmentForParsing(byte[] moofData, long moofPosition) {
+    int trackCount = trackBundles.size();
+    SparseArray<TrackBundle> fragmentTrackBundles = new SparseArray<>(trackCount);
+    for (int i = 0; i < trackCount; i++) {
+      fragmentTrackBundles.put(
+          trackBundles.keyAt(i), trackBundles.valueAt(i).copyForFragmentParsing(moofPosition));
+    }
+    boolean haveSideloadedTrack = sideloadedTrack != null;
+    @Flags int flags = this.flags;
+    Future<@NullableType ContainerAtom> parsedMoof =
+        checkNotNull(fragmentParsingExecutor)
+            .submit(
+                () -> parseMoofData(moofData, fragmentTrackBundles, haveSideloadedTrack, flags));
+    prefetchedFragments.add(new PrefetchedFragment(moofPosition, fragmentTrackBundles, parsedMoof));
+  }
+
+  /**
+   * If the moof at the given position has been parsed in parallel, updates the track bundles with
+   * the parsed fragments and returns true. Otherwise returns false, in which case the moof must be
+   * parsed sequentially.
+   */
+  private boolean maybeApplyPrefetchedFragment(long moofPosition) throws IOException {
+    @Nullable PrefetchedFragment prefetchedFragment = prefetchedFragments.peek();
+    while (prefetchedFragment != null && prefetchedFragment.moofPosition < moofPosition) {
+      // The fragment wasn't reached, for example because the segment index is inaccurate.
+      prefetchedFragments.remove().parsedMoof.cancel(/* mayInterruptIfRunning= */ false);
+      prefetchedFragment = prefetchedFragments.peek();
+    }
+    if (prefetchedFragment == null || prefetchedFragment.moofPosition != moofPosition) {
+      return false;
+    }
+    prefetchedFragments.remove();
+    @Nullable ContainerAtom moof;
+    try {
+      moof = prefetchedFragment.parsedMoof.get();
+    } catch (ExecutionException e) {
+      // Parse the moof sequentially, which reports the error in the same way as without parallel
+      // parsing.
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    if (moof == null) {
+      return false;
+    }
+    SparseArray<TrackBundle> fragmentTrackBundles = prefetchedFragment.trackBundles;
+    int trackCount = fragmentTrackBundles.size();
+    for (int i = 0; i < trackCount; i++) {
+      TrackBundle fragmentTrackBundle = fragmentTrackBundles.valueAt(i);
+      if (fragmentTrackBundle.currentlyInFragment) {
+        trackBundles.get(fragmentTrackBundles.keyAt(i)).setFragment(fragmentTrackBundle.fragment);
+      }
+    }
+    onMoofParsed(moof);
+    return true;
+  }
+
+  private void clearPrefetchedFragments() {
+    for (PrefetchedFragment prefetchedFragment : prefetchedFragments) {
+      prefetchedFragment.parsedMoof.cancel(/* mayInterruptIfRunning= */ false);
+    }
+    prefetchedFragments.clear();
+    prefetchedFragmentsStartPosition = 0;
+    prefetchedFragmentsEndPosition = 0;
+  }
+
   private void initExtraTracks() {
     int nextExtraTrackId = EXTRA_TRACKS_BASE_ID;
 
@@ -719,6 +1011,82 @@ public class FragmentedMp4Extractor implements Extractor {
     return version == 0 ? mehd.readUnsignedInt() : mehd.readUnsignedLongToLong();
   }
 
+  /**
+   * Parses the data of a moof atom into the fragments of the given track bundles, independently of
+   * the previous fragments. Called on the {@link #fragmentParsingExecutor}.
+   *
+   * @return The parsed moof atom, or null if the moof must be parsed sequentially because the
+   *     decode time of a track fragment depends on the previous fragments.
+   */
+  @Nullable
+  private static ContainerAtom parseMoofData(
+      byte[] moofData,
+      SparseArray<TrackBundle> trackBundles,
+      boolean haveSideloadedTrack,
+      @Flags int flags)
+      throws ParserException {
+    ContainerAtom moof = new ContainerAtom(Atom.TYPE_moof, moofData.length);
+    ParsableByteArray data = new ParsableByteArray(moofData);
+    data.setPosition(Atom.HEADER_SIZE);
+    readChildAtoms(data, moofData.length, moof);
+    int moofContainerChildrenSize = moof.containerChildren.size();
+    for (int i = 0; i < moofContainerChildrenSize; i++) {
+      ContainerAtom child = moof.containerChildren.get(i);
+      if (child.type == Atom.TYPE_traf && child.getLeafAtomOfType(Atom.TYPE_tfdt) == null) {
+        return null;
+      }
+    }
+    parseMoof(moof, trackBundles, haveSideloadedTrack, flags, new byte[16]);
+    return moof;
+  }
+
+  /**
+   * Reads the child atoms of a container atom from {@code data}, in the same way as they're read
+   * from the input when parsing sequentially.
+   *
+   * @param data The data, positioned at the start of the first child atom.
+   * @param endPosition The position in {@code data} at which the container atom ends.
+   * @param container The container atom to which the child atoms are added.
+   */
+  private static void readChildAtoms(
+      ParsableByteArray data, int endPosition, ContainerAtom container) throws ParserException {
+    while (data.getPosition() < endPosition) {
+      int atomPosition = data.getPosition();
+      if (endPosition - atomPosition < Atom.HEADER_SIZE) {
+        throw ParserException.createForMalformedContainer(
+            "Truncated atom header.", /* cause= */ null);
+      }
+      long atomSize = data.readUnsignedInt();
+      int atomType = data.readInt();
+      int atomHeaderSize = Atom.HEADER_SIZE;
+      if (atomSize == Atom.DEFINES_LARGE_SIZE) {
+        atomSize = data.readUnsignedLongToLong();
+        atomHeaderSize = Atom.LONG_HEADER_SIZE;
+      } else if (atomSize == Atom.EXTENDS_TO_END_SIZE) {
+        atomSize = endPosition - atomPosition;
+      }
+      if (atomSize < atomHeaderSize || atomSize > endPosition - atomPosition) {
+        throw ParserException.createForMalformedContainer(
+            "Invalid atom size: " + atomSize, /* cause= */ null);
+      }
+      int atomEndPosition = atomPosition + (int) atomSize;
+      if (shouldParseContainerAtom(atomType)) {
+        ContainerAtom child = new ContainerAtom(atomType, atomEndPosition);
+        readChildAtoms(data, atomEndPosition, child);
+        container.add(child);
+      } else if (shouldParseLeafAtom(atomType)) {
+        if (atomHeaderSize != Atom.HEADER_SIZE) {
+          throw ParserException.createForUnsupportedContainerFeature(
+              "Leaf atom defines extended atom size (unsupported).");
+        }
+        ParsableByteArray atomData = new ParsableByteArray((int) atomSize);
+        System.arraycopy(data.getData(), atomPosition, atomData.getData(), 0, (int) atomSize);
+        container.add(new LeafAtom(atomType, atomData));
+      }
+      data.setPosition(atomEndPosition);
+    }
+  }
+
   private static void parseMoof(
       ContainerAtom moof,
       SparseArray<TrackBundle> trackBundles,
@@ -1611,6 +1979,23 @@ public class FragmentedMp4Extractor implements Extractor {
         || atom == Atom.TYPE_edts;
   }
 
+  /** A moof atom that has been read ahead of the extraction position to be parsed in parallel. */
+  private static final class PrefetchedFragment {
+
+    public final long moofPosition;
+    public final SparseArray<TrackBundle> trackBundles;
+    public final Future<@NullableType ContainerAtom> parsedMoof;
+
+    public PrefetchedFragment(
+        long moofPosition,
+        SparseArray<TrackBundle> trackBundles,
+        Future<@NullableType ContainerAtom> parsedMoof) {
+      this.moofPosition = moofPosition;
+      this.trackBundles = trackBundles;
+      this.parsedMoof = parsedMoof;
+    }
+  }
+
   /** Holds data corresponding to a metadata sample. */
   private static final class MetadataSampleInfo {
 
@@ -1631,9 +2016,10 @@ public class FragmentedMp4Extractor implements Extractor {
     private static final int SINGLE_SUBSAMPLE_ENCRYPTION_DATA_LENGTH = 8;
 
     public final TrackOutput output;
-    public final TrackFragment fragment;
     public final ParsableByteArray scratch;
 
+    public TrackFragment fragment;
+
     public TrackSampleTable moovSampleTable;
     public DefaultSampleValues defaultSampleValues;
     public int currentSampleIndex;
@@ -1660,6 +2046,40 @@ public class FragmentedMp4Extractor implements Extractor {
       reset(moovSampleTable, defaultSampleValues);
     }
 
+    private TrackBundle(TrackBundle trackBundle) {
+      output = trackBundle.output;
+      moovSampleTable = trackBundle.moovSampleTable;
+      defaultSampleValues = trackBundle.defaultSampleValues;
+      fragment = new TrackFragment();
+      scratch = new ParsableByteArray();
+      encryptionSignalByte = new ParsableByteArray(1);
+      defaultInitializationVector = new ParsableByteArray();
+    }
+
+    /**
+     * Returns a bundle with the same sample table and default sample values as this one, into
+     * which the fragment of a moof atom at the given position can be parsed on another thread. The
+     * returned bundle must not be used to output samples.
+     */
+    public TrackBundle copyForFragmentParsing(long moofPosition) {
+      TrackBundle trackBundle = new TrackBundle(this);
+      TrackFragment fragment = trackBundle.fragment;
+      fragment.atomPosition = moofPosition;
+      fragment.auxiliaryDataPosition = moofPosition;
+      fragment.dataPosition = moofPosition;
+      return trackBundle;
+    }
+
+    /** Sets the current fragment to one that has been parsed, and resets the sample indices. */
+    public void setFragment(TrackFragment fragment) {
+      this.fragment = fragment;
+      currentSampleIndex = 0;
+      currentTrackRunIndex = 0;
+      currentSampleInTrackRun = 0;
+      firstSampleToOutputIndex = 0;
+      currentlyInFragment = true;
+    }
+
     public void reset(TrackSampleTable moovSampleTable, DefaultSampleValues defaultSampleValues) {
       this.moovSampleTable = moovSampleTable;
       this.defaultSampleValues = defaultSampleValues;
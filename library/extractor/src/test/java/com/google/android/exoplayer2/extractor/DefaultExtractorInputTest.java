@@ -28,6 +28,7 @@ import com.google.android.exoplayer2.testutil.FakeDataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -91,6 +92,24 @@ public class DefaultExtractorInputTest {
         .isEqualTo(Arrays.copyOf(target, TEST_DATA.length - 1));
   }
 
+  @Test
+  public void readIntoDirectBuffer_partiallyPeeked() throws Exception {
+    DefaultExtractorInput input = createDefaultExtractorInput();
+    ByteBuffer target = ByteBuffer.allocateDirect(TEST_DATA.length);
+
+    input.advancePeekPosition(2);
+    int bytesRead = input.read(target, TEST_DATA.length);
+    bytesRead += input.read(target, TEST_DATA.length - bytesRead);
+
+    assertThat(bytesRead).isEqualTo(3);
+    assertThat(target.position()).isEqualTo(3);
+    assertThat(input.getPosition()).isEqualTo(3);
+    byte[] targetBytes = new byte[3];
+    target.flip();
+    target.get(targetBytes);
+    assertThat(targetBytes).isEqualTo(Arrays.copyOf(TEST_DATA, 3));
+  }
+
   @Test
   public void readEndOfInputBeforeFirstByteRead() throws Exception {
     DefaultExtractorInput input = createDefaultExtractorInput();
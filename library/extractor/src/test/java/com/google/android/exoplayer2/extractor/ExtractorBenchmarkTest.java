@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
+import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer2.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer2.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.testutil.ExtractorAsserts.ExtractorFactory;
+import com.google.android.exoplayer2.testutil.ExtractorBenchmark;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests running {@link ExtractorBenchmark} with the most commonly used extractors. */
+@RunWith(AndroidJUnit4.class)
+public final class ExtractorBenchmarkTest {
+
+  @Test
+  public void run_mp4Extractor_extractsAllSamples() throws Exception {
+    assertBenchmarkExtractsAllSamples(Mp4Extractor::new, "media/mp4/sample.mp4");
+  }
+
+  @Test
+  public void run_fragmentedMp4Extractor_extractsAllSamples() throws Exception {
+    assertBenchmarkExtractsAllSamples(
+        FragmentedMp4Extractor::new, "media/mp4/sample_fragmented.mp4");
+  }
+
+  @Test
+  public void run_tsExtractor_extractsAllSamples() throws Exception {
+    assertBenchmarkExtractsAllSamples(TsExtractor::new, "media/ts/sample_h264_mpeg_audio.ts");
+  }
+
+  @Test
+  public void run_matroskaExtractor_extractsAllSamples() throws Exception {
+    assertBenchmarkExtractsAllSamples(MatroskaExtractor::new, "media/mkv/sample.mkv");
+  }
+
+  @Test
+  public void run_mp3Extractor_extractsAllSamples() throws Exception {
+    assertBenchmarkExtractsAllSamples(Mp3Extractor::new, "media/mp3/bear-vbr-xing-header.mp3");
+  }
+
+  private static void assertBenchmarkExtractsAllSamples(
+      ExtractorFactory extractorFactory, String fileName) throws Exception {
+    Context context = ApplicationProvider.getApplicationContext();
+    byte[] data = TestUtil.getByteArray(context, fileName);
+
+    ExtractorBenchmark.Result result =
+        ExtractorBenchmark.run(
+            extractorFactory, data, /* warmUpIterationCount= */ 1, /* iterationCount= */ 2);
+
+    FakeExtractorOutput expectedOutput =
+        TestUtil.extractAllSamplesFromFile(extractorFactory.create(), context, fileName);
+    int expectedSampleCount = 0;
+    for (int i = 0; i < expectedOutput.trackOutputs.size(); i++) {
+      expectedSampleCount += expectedOutput.trackOutputs.valueAt(i).getSampleCount();
+    }
+    assertThat(result.iterationCount).isEqualTo(2);
+    assertThat(result.inputLength).isEqualTo(data.length);
+    assertThat(result.sampleCount).isEqualTo(expectedSampleCount);
+    assertThat(result.throughputMbPerSecond).isGreaterThan(0);
+    assertThat(result.timeToFirstSampleMs).isAtLeast(0);
+  }
+}
@@ -15,13 +15,31 @@
  */
 package com.google.android.exoplayer2.extractor.mp4;
 
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
 import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.testutil.Dumper;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts.ExtractorFactory;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput.SimulatedIOException;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.ParameterizedRobolectricTestRunner;
@@ -39,6 +57,18 @@ public final class FragmentedMp4ExtractorTest {
 
   @Parameter public ExtractorAsserts.SimulationConfig simulationConfig;
 
+  private ExecutorService fragmentParsingExecutor;
+
+  @Before
+  public void setUp() {
+    fragmentParsingExecutor = Executors.newFixedThreadPool(/* nThreads= */ 4);
+  }
+
+  @After
+  public void tearDown() {
+    fragmentParsingExecutor.shutdownNow();
+  }
+
   @Test
   public void sample() throws Exception {
     ExtractorAsserts.assertBehavior(
@@ -131,6 +161,180 @@ public final class FragmentedMp4ExtractorTest {
         simulationConfig);
   }
 
+  @Test
+  public void sampleSeekableWithParallelFragmentParsing() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        this::createParallelParsingExtractor,
+        "media/mp4/sample_fragmented_seekable.mp4",
+        simulationConfig);
+  }
+
+  @Test
+  public void sampleWithProtectedAc4TrackAndParallelFragmentParsing() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        this::createParallelParsingExtractor,
+        "media/mp4/sample_ac4_protected.mp4",
+        simulationConfig);
+  }
+
+  @Test
+  public void multipleFragmentsWithParallelFragmentParsing_outputsSameSamplesAsSequentialParsing()
+      throws Exception {
+    byte[] data =
+        createMultipleFragmentFile(
+            TestUtil.getByteArray(
+                ApplicationProvider.getApplicationContext(),
+                "media/mp4/sample_fragmented_seekable.mp4"),
+            /* fragmentCount= */ 20,
+            /* freeAtomSize= */ 0);
+
+    String sequentialParsingDump = extractAndDump(new FragmentedMp4Extractor(), data);
+    String parallelParsingDump = extractAndDump(createParallelParsingExtractor(), data);
+
+    assertThat(parallelParsingDump).isEqualTo(sequentialParsingDump);
+  }
+
+  @Test
+  public void
+      parallelFragmentParsingWithNonMoofAtomAtSidxReferenceEnd_outputsSameSamplesAsSequential()
+          throws Exception {
+    byte[] data =
+        createMultipleFragmentFile(
+            TestUtil.getByteArray(
+                ApplicationProvider.getApplicationContext(),
+                "media/mp4/sample_fragmented_seekable.mp4"),
+            /* fragmentCount= */ 20,
+            /* freeAtomSize= */ 16);
+
+    String sequentialParsingDump = extractAndDump(new FragmentedMp4Extractor(), data);
+    String parallelParsingDump = extractAndDump(createParallelParsingExtractor(), data);
+
+    assertThat(parallelParsingDump).isEqualTo(sequentialParsingDump);
+  }
+
+  private FragmentedMp4Extractor createParallelParsingExtractor() {
+    return new FragmentedMp4Extractor(
+        /* flags= */ 0,
+        /* timestampAdjuster= */ null,
+        /* sideloadedTrack= */ null,
+        /* closedCaptionFormats= */ ImmutableList.of(),
+        /* additionalEmsgTrackOutput= */ null,
+        fragmentParsingExecutor);
+  }
+
+  /**
+   * Extracts all samples from {@code data}, and then the samples following a seek to the middle of
+   * the data, and returns a dump of both outputs.
+   */
+  private String extractAndDump(Extractor extractor, byte[] data) throws IOException {
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder()
+            .setData(data)
+            .setSimulateIOErrors(simulationConfig.simulateIOErrors)
+            .setSimulateUnknownLength(simulationConfig.simulateUnknownLength)
+            .setSimulatePartialReads(simulationConfig.simulatePartialReads)
+            .build();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    readToEnd(extractor, input);
+    Dumper dumper = new Dumper().add(output);
+
+    long seekTimeUs = output.seekMap.getDurationUs() / 2;
+    SeekMap.SeekPoints seekPoints = output.seekMap.getSeekPoints(seekTimeUs);
+    output.clearTrackOutputs();
+    extractor.seek(seekPoints.first.position, seekTimeUs);
+    input.setPosition((int) seekPoints.first.position);
+    readToEnd(extractor, input);
+    return dumper.add(output).toString();
+  }
+
+  private static void readToEnd(Extractor extractor, FakeExtractorInput input)
+      throws IOException {
+    PositionHolder seekPositionHolder = new PositionHolder();
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      try {
+        readResult = extractor.read(input, seekPositionHolder);
+        if (readResult == Extractor.RESULT_SEEK) {
+          input.setPosition((int) seekPositionHolder.position);
+        }
+      } catch (SimulatedIOException e) {
+        // Retry the read.
+      }
+    }
+  }
+
+  /**
+   * Returns a file in which the single fragment of the given file is repeated {@code
+   * fragmentCount} times, and listed in its segment index (sidx box). The decode time of each copy
+   * is offset, so that the fragments are distinct. If {@code freeAtomSize} is non-zero, each
+   * fragment is preceded by a free atom of that size, which is listed in the segment index as a
+   * separate reference.
+   */
+  private static byte[] createMultipleFragmentFile(
+      byte[] data, int fragmentCount, int freeAtomSize) {
+    ByteBuffer input = ByteBuffer.wrap(data);
+    int sidxPosition = 0;
+    while (input.getInt(sidxPosition + 4) != Atom.TYPE_sidx) {
+      sidxPosition += input.getInt(sidxPosition);
+    }
+    int sidxSize = input.getInt(sidxPosition);
+    // The sidx box ends with a 12-byte reference to the fragment, which is repeated.
+    int referenceSize = 12;
+    int sidxHeaderSize = sidxSize - referenceSize;
+    int fragmentPosition = sidxPosition + sidxSize;
+    int fragmentSize = data.length - fragmentPosition;
+    int referenceCount = freeAtomSize > 0 ? fragmentCount * 2 : fragmentCount;
+
+    ByteBuffer output =
+        ByteBuffer.allocate(
+            sidxPosition
+                + sidxHeaderSize
+                + referenceSize * referenceCount
+                + (freeAtomSize + fragmentSize) * fragmentCount);
+    output.put(data, 0, sidxPosition + sidxHeaderSize);
+    output.putInt(sidxPosition, sidxHeaderSize + referenceSize * referenceCount);
+    output.putShort(sidxPosition + sidxHeaderSize - 2, (short) referenceCount);
+    int fragmentReferencePosition = fragmentPosition - referenceSize;
+    for (int i = 0; i < fragmentCount; i++) {
+      if (freeAtomSize > 0) {
+        // A reference to the free atom only, with no duration.
+        output.putInt(freeAtomSize);
+        output.putInt(0);
+        output.putInt(input.getInt(fragmentReferencePosition + 8));
+      }
+      output.put(data, fragmentReferencePosition, referenceSize);
+    }
+    for (int i = 0; i < fragmentCount; i++) {
+      if (freeAtomSize > 0) {
+        output.putInt(freeAtomSize);
+        output.putInt(Util.getIntegerCodeForString("free"));
+        output.position(output.position() + freeAtomSize - Atom.HEADER_SIZE);
+      }
+      int moofPosition = output.position();
+      output.put(data, fragmentPosition, fragmentSize);
+      offsetDecodeTimes(output, moofPosition, /* offset= */ i * 1_000_000L);
+    }
+    return output.array();
+  }
+
+  /** Adds {@code offset} to the decode time of each track fragment in the moof at the position. */
+  private static void offsetDecodeTimes(ByteBuffer data, int moofPosition, long offset) {
+    int moofEndPosition = moofPosition + data.getInt(moofPosition);
+    for (int position = moofPosition; position < moofEndPosition; position++) {
+      if (data.getInt(position) != Atom.TYPE_tfdt) {
+        continue;
+      }
+      int version = data.get(position + 4);
+      int decodeTimePosition = position + 8;
+      if (version == 1) {
+        data.putLong(decodeTimePosition, data.getLong(decodeTimePosition) + offset);
+      } else {
+        data.putInt(decodeTimePosition, (int) (data.getInt(decodeTimePosition) + offset));
+      }
+    }
+  }
+
   private static ExtractorFactory getExtractorFactory(final List<Format> closedCaptionFormats) {
     return () ->
         new FragmentedMp4Extractor(
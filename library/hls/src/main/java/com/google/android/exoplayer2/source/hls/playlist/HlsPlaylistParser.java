@@ -18,6 +18,7 @@ package com.google.android.exoplayer2.source.hls.playlist;
 import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
 import static com.google.android.exoplayer2.util.Assertions.checkState;
 import static com.google.android.exoplayer2.util.Util.castNonNull;
+import static java.lang.Math.max;
 
 import android.net.Uri;
 import android.text.TextUtils;
@@ -35,6 +36,7 @@ import com.google.android.exoplayer2.source.hls.HlsTrackMetadataEntry.VariantInf
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Part;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.RenditionReport;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Segment;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.SegmentBase;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMultivariantPlaylist.Rendition;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMultivariantPlaylist.Variant;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
@@ -663,6 +665,8 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     long segmentByteRangeLength = C.LENGTH_UNSET;
     long partStartTimeUs = 0;
     long partByteRangeOffset = 0;
+    PartAttributes partAttributes = new PartAttributes();
+    ReusableSegments reusableSegments = new ReusableSegments(previousMediaPlaylist);
     boolean isIFrameOnly = false;
     long segmentMediaSequence = 0;
     boolean hasGapTag = false;
@@ -730,7 +734,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
               /* cause= */ null);
         }
         initializationSegment =
-            new Segment(
+            reusableSegments.reuseInitializationSegment(
                 uri,
                 segmentByteRangeOffset,
                 segmentByteRangeLength,
@@ -762,8 +766,23 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
               parseStringAttr(line, REGEX_VALUE, variableDefinitions));
         }
       } else if (line.startsWith(TAG_MEDIA_DURATION)) {
-        segmentDurationUs = parseTimeSecondsToUs(line, REGEX_MEDIA_DURATION);
-        segmentTitle = parseOptionalStringAttr(line, REGEX_MEDIA_TITLE, "", variableDefinitions);
+        int durationStartIndex = TAG_MEDIA_DURATION.length() + 1;
+        int durationEndIndex = getMediaDurationEndIndex(line);
+        long durationUs =
+            durationEndIndex == C.INDEX_UNSET
+                ? C.TIME_UNSET
+                : parseDecimalSecondsToUs(line, durationStartIndex, durationEndIndex);
+        if (durationUs != C.TIME_UNSET) {
+          segmentDurationUs = durationUs;
+          segmentTitle =
+              durationEndIndex + 1 < line.length() ? line.substring(durationEndIndex + 1) : "";
+          if (!variableDefinitions.isEmpty()) {
+            segmentTitle = replaceVariableReferences(segmentTitle, variableDefinitions);
+          }
+        } else {
+          segmentDurationUs = parseTimeSecondsToUs(line, REGEX_MEDIA_DURATION);
+          segmentTitle = parseOptionalStringAttr(line, REGEX_MEDIA_TITLE, "", variableDefinitions);
+        }
       } else if (line.startsWith(TAG_SKIP)) {
         int skippedSegmentCount = parseIntAttr(line, REGEX_SKIPPED_SEGMENTS);
         checkState(previousMediaPlaylist != null && segments.isEmpty());
@@ -775,14 +794,14 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         }
         for (int i = startIndex; i < endIndex; i++) {
           Segment segment = previousMediaPlaylist.segments.get(i);
-          if (mediaSequence != previousMediaPlaylist.mediaSequence) {
-            // If the media sequences of the playlists are not the same, we need to recreate the
-            // object with the updated relative start time and the relative discontinuity
-            // sequence. With identical playlist media sequences these values do not change.
-            int newRelativeDiscontinuitySequence =
-                previousMediaPlaylist.discontinuitySequence
-                    - playlistDiscontinuitySequence
-                    + segment.relativeDiscontinuitySequence;
+          int newRelativeDiscontinuitySequence =
+              previousMediaPlaylist.discontinuitySequence
+                  - playlistDiscontinuitySequence
+                  + segment.relativeDiscontinuitySequence;
+          if (segment.relativeStartTimeUs != segmentStartTimeUs
+              || segment.relativeDiscontinuitySequence != newRelativeDiscontinuitySequence) {
+            // The segment is reused as is unless its position relative to the start of the
+            // playlist has changed, which is typically the case if the media sequence has changed.
             segment = segment.copyWith(segmentStartTimeUs, newRelativeDiscontinuitySequence);
           }
           segments.add(segment);
@@ -832,11 +851,27 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         }
       } else if (line.startsWith(TAG_BYTERANGE)) {
-        String byteRange = parseStringAttr(line, REGEX_BYTERANGE, variableDefinitions);
-        String[] splitByteRange = Util.split(byteRange, "@");
-        segmentByteRangeLength = Long.parseLong(splitByteRange[0]);
-        if (splitByteRange.length > 1) {
-          segmentByteRangeOffset = Long.parseLong(splitByteRange[1]);
+        int byteRangeStartIndex = TAG_BYTERANGE.length() + 1;
+        int atIndex = line.indexOf('@', byteRangeStartIndex);
+        long byteRangeLength =
+            line.length() >= byteRangeStartIndex && line.charAt(byteRangeStartIndex - 1) == ':'
+                ? parseNonNegativeLong(
+                    line, byteRangeStartIndex, atIndex == -1 ? line.length() : atIndex)
+                : C.LENGTH_UNSET;
+        long byteRangeOffset =
+            atIndex == -1 ? 0 : parseNonNegativeLong(line, atIndex + 1, line.length());
+        if (byteRangeLength != C.LENGTH_UNSET && byteRangeOffset != C.LENGTH_UNSET) {
+          segmentByteRangeLength = byteRangeLength;
+          if (atIndex != -1) {
+            segmentByteRangeOffset = byteRangeOffset;
+          }
+        } else {
+          String byteRange = parseStringAttr(line, REGEX_BYTERANGE, variableDefinitions);
+          String[] splitByteRange = Util.split(byteRange, "@");
+          segmentByteRangeLength = Long.parseLong(splitByteRange[0]);
+          if (splitByteRange.length > 1) {
+            segmentByteRangeOffset = Long.parseLong(splitByteRange[1]);
+          }
         }
       } else if (line.startsWith(TAG_DISCONTINUITY_SEQUENCE)) {
         hasDiscontinuitySequence = true;
@@ -908,23 +943,16 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         String segmentEncryptionIV =
             getSegmentEncryptionIV(
                 segmentMediaSequence, fullSegmentEncryptionKeyUri, fullSegmentEncryptionIV);
-        String url = parseStringAttr(line, REGEX_URI, variableDefinitions);
-        long partDurationUs =
-            (long) (parseDoubleAttr(line, REGEX_ATTR_DURATION) * C.MICROS_PER_SECOND);
-        boolean isIndependent =
-            parseOptionalBooleanAttribute(line, REGEX_INDEPENDENT, /* defaultValue= */ false);
+        partAttributes.parse(line, variableDefinitions);
+        String url = partAttributes.url;
+        long partDurationUs = partAttributes.durationUs;
         // The first part of a segment is always independent if the segments are independent.
-        isIndependent |= hasIndependentSegmentsTag && trailingParts.isEmpty();
-        boolean isGap = parseOptionalBooleanAttribute(line, REGEX_GAP, /* defaultValue= */ false);
-        @Nullable
-        String byteRange = parseOptionalStringAttr(line, REGEX_ATTR_BYTERANGE, variableDefinitions);
-        long partByteRangeLength = C.LENGTH_UNSET;
-        if (byteRange != null) {
-          String[] splitByteRange = Util.split(byteRange, "@");
-          partByteRangeLength = Long.parseLong(splitByteRange[0]);
-          if (splitByteRange.length > 1) {
-            partByteRangeOffset = Long.parseLong(splitByteRange[1]);
-          }
+        boolean isIndependent =
+            partAttributes.isIndependent || (hasIndependentSegmentsTag && trailingParts.isEmpty());
+        boolean isGap = partAttributes.isGap;
+        long partByteRangeLength = partAttributes.byteRangeLength;
+        if (partAttributes.byteRangeOffset != C.LENGTH_UNSET) {
+          partByteRangeOffset = partAttributes.byteRangeOffset;
         }
         if (partByteRangeLength == C.LENGTH_UNSET) {
           partByteRangeOffset = 0;
@@ -937,7 +965,10 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         }
         trailingParts.add(
-            new Part(
+            reusableSegments.reusePart(
+                segmentMediaSequence,
+                /* partIndex= */ trailingParts.size(),
+                playlistDiscontinuitySequence,
                 url,
                 initializationSegment,
                 partDurationUs,
@@ -949,8 +980,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
                 partByteRangeOffset,
                 partByteRangeLength,
                 isGap,
-                isIndependent,
-                /* isPreload= */ false));
+                isIndependent));
         partStartTimeUs += partDurationUs;
         if (partByteRangeLength != C.LENGTH_UNSET) {
           partByteRangeOffset += partByteRangeLength;
@@ -973,7 +1003,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           // We assume the implicit initialization segment is unencrypted, since there's no way for
           // the playlist to provide an initialization vector for it.
           inferredInitSegment =
-              new Segment(
+              reusableSegments.reuseInitializationSegment(
                   segmentUri,
                   /* byteRangeOffset= */ 0,
                   segmentByteRangeOffset,
@@ -991,7 +1021,9 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         }
 
         segments.add(
-            new Segment(
+            reusableSegments.reuseSegment(
+                /* mediaSequence= */ segmentMediaSequence - 1,
+                playlistDiscontinuitySequence,
                 segmentUri,
                 initializationSegment != null ? initializationSegment : inferredInitSegment,
                 segmentTitle,
@@ -1209,6 +1241,101 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     return timeValue.multiply(new BigDecimal(C.MICROS_PER_SECOND)).longValue();
   }
 
+  /**
+   * Returns the end index of the duration in a {@link #TAG_MEDIA_DURATION} line of the common form
+   * {@code #EXTINF:<duration>[,<title>]} where the duration starts and ends with a digit, or {@link
+   * C#INDEX_UNSET} if the line isn't of this form and needs to be parsed using {@link
+   * #REGEX_MEDIA_DURATION} and {@link #REGEX_MEDIA_TITLE}.
+   */
+  private static int getMediaDurationEndIndex(String line) {
+    int length = line.length();
+    int startIndex = TAG_MEDIA_DURATION.length() + 1;
+    if (length <= startIndex
+        || line.charAt(startIndex - 1) != ':'
+        || !isDigit(line.charAt(startIndex))) {
+      return C.INDEX_UNSET;
+    }
+    int endIndex = startIndex + 1;
+    while (endIndex < length && isDigitOrDot(line.charAt(endIndex))) {
+      endIndex++;
+    }
+    if (!isDigit(line.charAt(endIndex - 1))
+        || (endIndex < length && line.charAt(endIndex) != ',')) {
+      return C.INDEX_UNSET;
+    }
+    for (int i = endIndex + 1; i < length; i++) {
+      char c = line.charAt(i);
+      if (c == '\r' || c == '\n' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+        // The title regex wouldn't match across line terminators.
+        return C.INDEX_UNSET;
+      }
+    }
+    return endIndex;
+  }
+
+  /**
+   * Parses a decimal number of seconds consisting of digits and dots to microseconds, truncating
+   * any sub-microsecond digits in the same way as {@link #parseTimeSecondsToUs(String, Pattern)}.
+   *
+   * @return The parsed value, or {@link C#TIME_UNSET} if the value has more than one dot or is too
+   *     large to be parsed without risk of overflow.
+   */
+  private static long parseDecimalSecondsToUs(String string, int startIndex, int endIndex) {
+    long seconds = 0;
+    int secondsDigitCount = 0;
+    long fractionUs = 0;
+    int fractionDigitCount = C.INDEX_UNSET;
+    for (int i = startIndex; i < endIndex; i++) {
+      char c = string.charAt(i);
+      if (c == '.') {
+        if (fractionDigitCount != C.INDEX_UNSET) {
+          return C.TIME_UNSET;
+        }
+        fractionDigitCount = 0;
+      } else if (fractionDigitCount == C.INDEX_UNSET) {
+        if (++secondsDigitCount > 12) {
+          return C.TIME_UNSET;
+        }
+        seconds = seconds * 10 + (c - '0');
+      } else if (fractionDigitCount < 6) {
+        fractionUs = fractionUs * 10 + (c - '0');
+        fractionDigitCount++;
+      }
+    }
+    for (int i = max(fractionDigitCount, 0); i < 6; i++) {
+      fractionUs *= 10;
+    }
+    return seconds * C.MICROS_PER_SECOND + fractionUs;
+  }
+
+  /**
+   * Parses a non-negative decimal integer, returning {@link C#LENGTH_UNSET} if the given range is
+   * empty, contains anything other than digits, or is too long to be parsed without risk of
+   * overflow.
+   */
+  private static long parseNonNegativeLong(String string, int startIndex, int endIndex) {
+    if (endIndex <= startIndex || endIndex - startIndex > 18) {
+      return C.LENGTH_UNSET;
+    }
+    long value = 0;
+    for (int i = startIndex; i < endIndex; i++) {
+      char c = string.charAt(i);
+      if (!isDigit(c)) {
+        return C.LENGTH_UNSET;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isDigitOrDot(char c) {
+    return isDigit(c) || c == '.';
+  }
+
   private static double parseDoubleAttr(String line, Pattern pattern) throws ParserException {
     return Double.parseDouble(parseStringAttr(line, pattern, Collections.emptyMap()));
   }
@@ -1282,6 +1409,506 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     return Pattern.compile(attribute + "=(" + BOOLEAN_FALSE + "|" + BOOLEAN_TRUE + ")");
   }
 
+  /**
+   * The attributes of a {@link #TAG_PART} tag. A single instance is reused for all the tags of a
+   * playlist.
+   *
+   * <p>Live playlists can contain many parts, so tags whose attribute list is well formed are
+   * tokenized directly, without using regular expressions. Other tags are parsed using the
+   * attribute regular expressions, as for other tags.
+   */
+  private static final class PartAttributes {
+
+    private static final String ATTR_URI = "URI";
+    private static final String ATTR_DURATION = "DURATION";
+    private static final String ATTR_INDEPENDENT = "INDEPENDENT";
+    private static final String ATTR_GAP = "GAP";
+    private static final String ATTR_BYTERANGE = "BYTERANGE";
+
+    private static final int FLAG_URI = 1;
+    private static final int FLAG_DURATION = 1 << 1;
+    private static final int FLAG_INDEPENDENT = 1 << 2;
+    private static final int FLAG_GAP = 1 << 3;
+    private static final int FLAG_BYTERANGE = 1 << 4;
+
+    /** The part URI, with any variable references replaced. */
+    public String url;
+    /** The part duration, in microseconds. */
+    public long durationUs;
+    /** Whether the part is independent. */
+    public boolean isIndependent;
+    /** Whether the part is a gap. */
+    public boolean isGap;
+    /** The byte range length, or {@link C#LENGTH_UNSET} if no byte range is defined. */
+    public long byteRangeLength;
+    /** The byte range offset, or {@link C#LENGTH_UNSET} if no offset is defined. */
+    public long byteRangeOffset;
+
+    public PartAttributes() {
+      url = "";
+    }
+
+    /**
+     * Parses the attributes of the given {@link #TAG_PART} line into this instance.
+     *
+     * @throws ParserException If a required attribute is missing.
+     */
+    public void parse(String line, Map<String, String> variableDefinitions) throws ParserException {
+      if (!tokenize(line)) {
+        url = parseStringAttr(line, REGEX_URI, variableDefinitions);
+        durationUs = (long) (parseDoubleAttr(line, REGEX_ATTR_DURATION) * C.MICROS_PER_SECOND);
+        isIndependent =
+            parseOptionalBooleanAttribute(line, REGEX_INDEPENDENT, /* defaultValue= */ false);
+        isGap = parseOptionalBooleanAttribute(line, REGEX_GAP, /* defaultValue= */ false);
+        byteRangeLength = C.LENGTH_UNSET;
+        byteRangeOffset = C.LENGTH_UNSET;
+        @Nullable
+        String byteRange = parseOptionalStringAttr(line, REGEX_ATTR_BYTERANGE, variableDefinitions);
+        if (byteRange != null) {
+          String[] splitByteRange = Util.split(byteRange, "@");
+          byteRangeLength = Long.parseLong(splitByteRange[0]);
+          if (splitByteRange.length > 1) {
+            byteRangeOffset = Long.parseLong(splitByteRange[1]);
+          }
+        }
+      } else if (!variableDefinitions.isEmpty()) {
+        url = replaceVariableReferences(url, variableDefinitions);
+      }
+    }
+
+    /**
+     * Tokenizes the attribute list of the given line, returning whether it was well formed and
+     * defined the required attributes. If false is returned, the fields of this instance are left
+     * in an undefined state.
+     */
+    private boolean tokenize(String line) {
+      int length = line.length();
+      int position = TAG_PART.length();
+      if (position >= length || line.charAt(position) != ':') {
+        return false;
+      }
+      position++;
+      isIndependent = false;
+      isGap = false;
+      byteRangeLength = C.LENGTH_UNSET;
+      byteRangeOffset = C.LENGTH_UNSET;
+      int parsedAttributes = 0;
+      while (position < length) {
+        int nameStartIndex = position;
+        int nameEndIndex = line.indexOf('=', nameStartIndex);
+        if (nameEndIndex == -1) {
+          return false;
+        }
+        int commaIndex = line.indexOf(',', nameStartIndex);
+        int quoteIndex = line.indexOf('"', nameStartIndex);
+        if ((commaIndex != -1 && commaIndex < nameEndIndex)
+            || (quoteIndex != -1 && quoteIndex < nameEndIndex)) {
+          return false;
+        }
+        int valueStartIndex = nameEndIndex + 1;
+        int valueEndIndex;
+        boolean isQuoted = valueStartIndex < length && line.charAt(valueStartIndex) == '"';
+        if (isQuoted) {
+          valueStartIndex++;
+          valueEndIndex = line.indexOf('"', valueStartIndex);
+          if (valueEndIndex == -1) {
+            return false;
+          }
+          position = valueEndIndex + 1;
+        } else {
+          valueEndIndex = line.indexOf(',', valueStartIndex);
+          if (valueEndIndex == -1) {
+            valueEndIndex = length;
+          }
+          for (int i = valueStartIndex; i < valueEndIndex; i++) {
+            char c = line.charAt(i);
+            if (c == '=' || c == '"') {
+              // The value may contain another attribute, which the regular expressions would find.
+              return false;
+            }
+          }
+          position = valueEndIndex;
+        }
+        if (position < length) {
+          if (line.charAt(position) != ',') {
+            return false;
+          }
+          position++;
+        }
+
+        int attributeFlag;
+        if (isAttribute(line, nameStartIndex, nameEndIndex, ATTR_URI)) {
+          if (!isQuoted || valueStartIndex == valueEndIndex) {
+            return false;
+          }
+          url = line.substring(valueStartIndex, valueEndIndex);
+          attributeFlag = FLAG_URI;
+        } else if (isAttribute(line, nameStartIndex, nameEndIndex, ATTR_DURATION)) {
+          if (isQuoted
+              || valueStartIndex == valueEndIndex
+              || !isDigit(line.charAt(valueEndIndex - 1))) {
+            return false;
+          }
+          int dotCount = 0;
+          for (int i = valueStartIndex; i < valueEndIndex; i++) {
+            char c = line.charAt(i);
+            if (!isDigitOrDot(c) || (c == '.' && ++dotCount > 1)) {
+              return false;
+            }
+          }
+          durationUs =
+              (long)
+                  (Double.parseDouble(line.substring(valueStartIndex, valueEndIndex))
+                      * C.MICROS_PER_SECOND);
+          attributeFlag = FLAG_DURATION;
+        } else if (isAttribute(line, nameStartIndex, nameEndIndex, ATTR_INDEPENDENT)) {
+          if (isQuoted || !isBooleanValue(line, valueStartIndex, valueEndIndex)) {
+            return false;
+          }
+          isIndependent = isAttribute(line, valueStartIndex, valueEndIndex, BOOLEAN_TRUE);
+          attributeFlag = FLAG_INDEPENDENT;
+        } else if (isAttribute(line, nameStartIndex, nameEndIndex, ATTR_GAP)) {
+          if (isQuoted || !isBooleanValue(line, valueStartIndex, valueEndIndex)) {
+            return false;
+          }
+          isGap = isAttribute(line, valueStartIndex, valueEndIndex, BOOLEAN_TRUE);
+          attributeFlag = FLAG_GAP;
+        } else if (isAttribute(line, nameStartIndex, nameEndIndex, ATTR_BYTERANGE)) {
+          if (!isQuoted) {
+            return false;
+          }
+          int atIndex = line.indexOf('@', valueStartIndex);
+          if (atIndex >= valueEndIndex) {
+            atIndex = -1;
+          }
+          byteRangeLength =
+              parseNonNegativeLong(line, valueStartIndex, atIndex == -1 ? valueEndIndex : atIndex);
+          if (byteRangeLength == C.LENGTH_UNSET) {
+            return false;
+          }
+          if (atIndex != -1) {
+            byteRangeOffset = parseNonNegativeLong(line, atIndex + 1, valueEndIndex);
+            if (byteRangeOffset == C.LENGTH_UNSET) {
+              return false;
+            }
+          }
+          attributeFlag = FLAG_BYTERANGE;
+        } else if (hasKnownAttributeSuffix(line, nameStartIndex, nameEndIndex)) {
+          // The regular expressions would match the end of the name as a known attribute.
+          return false;
+        } else {
+          continue;
+        }
+        if ((parsedAttributes & attributeFlag) != 0) {
+          // Duplicate attributes are resolved by the regular expressions.
+          return false;
+        }
+        parsedAttributes |= attributeFlag;
+      }
+      return (parsedAttributes & (FLAG_URI | FLAG_DURATION)) == (FLAG_URI | FLAG_DURATION);
+    }
+
+    private static boolean isAttribute(
+        String line, int startIndex, int endIndex, String expectedValue) {
+      return endIndex - startIndex == expectedValue.length()
+          && line.regionMatches(startIndex, expectedValue, 0, expectedValue.length());
+    }
+
+    private static boolean hasKnownAttributeSuffix(String line, int startIndex, int endIndex) {
+      return hasSuffix(line, startIndex, endIndex, ATTR_URI)
+          || hasSuffix(line, startIndex, endIndex, ATTR_DURATION)
+          || hasSuffix(line, startIndex, endIndex, ATTR_INDEPENDENT)
+          || hasSuffix(line, startIndex, endIndex, ATTR_GAP)
+          || hasSuffix(line, startIndex, endIndex, ATTR_BYTERANGE);
+    }
+
+    private static boolean hasSuffix(String line, int startIndex, int endIndex, String suffix) {
+      return endIndex - startIndex >= suffix.length()
+          && line.regionMatches(endIndex - suffix.length(), suffix, 0, suffix.length());
+    }
+
+    private static boolean isBooleanValue(String line, int startIndex, int endIndex) {
+      return isAttribute(line, startIndex, endIndex, BOOLEAN_TRUE)
+          || isAttribute(line, startIndex, endIndex, BOOLEAN_FALSE);
+    }
+  }
+
+  /**
+   * Reuses the segments and parts of the previous snapshot of a media playlist that overlap with a
+   * refreshed playlist.
+   *
+   * <p>On a live refresh most segments are unchanged. The segments of the refreshed playlist are
+   * matched with the ones of the previous snapshot by their media sequence number, and a segment
+   * whose tags are unchanged is reused rather than created again. If the playlist window has moved
+   * since the previous refresh, the reused segment is copied to its new position relative to the
+   * start of the playlist. New objects are therefore only created for the segments and parts that
+   * are new or whose tags have changed, and for the overlapping ones whose position has changed.
+   */
+  private static final class ReusableSegments {
+
+    @Nullable private final HlsMediaPlaylist previousMediaPlaylist;
+    private final List<Segment> previousInitializationSegments;
+
+    private boolean previousInitializationSegmentsCollected;
+
+    public ReusableSegments(@Nullable HlsMediaPlaylist previousMediaPlaylist) {
+      this.previousMediaPlaylist = previousMediaPlaylist;
+      previousInitializationSegments = new ArrayList<>();
+    }
+
+    /**
+     * Returns an identical initialization segment of the previous playlist, or a new initialization
+     * segment if there is none.
+     */
+    public Segment reuseInitializationSegment(
+        String uri,
+        long byteRangeOffset,
+        long byteRangeLength,
+        @Nullable String fullSegmentEncryptionKeyUri,
+        @Nullable String encryptionIV) {
+      if (previousMediaPlaylist != null) {
+        if (!previousInitializationSegmentsCollected) {
+          collectPreviousInitializationSegments(previousMediaPlaylist);
+        }
+        for (int i = 0; i < previousInitializationSegments.size(); i++) {
+          Segment previousInitializationSegment = previousInitializationSegments.get(i);
+          if (previousInitializationSegment.url.equals(uri)
+              && previousInitializationSegment.byteRangeOffset == byteRangeOffset
+              && previousInitializationSegment.byteRangeLength == byteRangeLength
+              && Util.areEqual(
+                  previousInitializationSegment.fullSegmentEncryptionKeyUri,
+                  fullSegmentEncryptionKeyUri)
+              && Util.areEqual(previousInitializationSegment.encryptionIV, encryptionIV)) {
+            return previousInitializationSegment;
+          }
+        }
+      }
+      return new Segment(
+          uri, byteRangeOffset, byteRangeLength, fullSegmentEncryptionKeyUri, encryptionIV);
+    }
+
+    /**
+     * Returns the segment with the given media sequence number in the previous playlist if its
+     * tags and its position in the refreshed playlist are unchanged. Returns a new segment with the
+     * given parts otherwise.
+     */
+    public Segment reuseSegment(
+        long mediaSequence,
+        int playlistDiscontinuitySequence,
+        String url,
+        @Nullable Segment initializationSegment,
+        String title,
+        long durationUs,
+        int relativeDiscontinuitySequence,
+        long relativeStartTimeUs,
+        @Nullable DrmInitData drmInitData,
+        @Nullable String fullSegmentEncryptionKeyUri,
+        @Nullable String encryptionIV,
+        long byteRangeOffset,
+        long byteRangeLength,
+        boolean hasGapTag,
+        List<Part> parts) {
+      @Nullable Segment previousSegment = getPreviousSegment(mediaSequence);
+      if (previousSegment != null
+          && previousSegment.relativeStartTimeUs == relativeStartTimeUs
+          && previousSegment.relativeDiscontinuitySequence == relativeDiscontinuitySequence
+          && previousSegment.title.equals(title)
+          && isSameSegmentBase(
+              previousSegment,
+              playlistDiscontinuitySequence,
+              url,
+              initializationSegment,
+              durationUs,
+              relativeDiscontinuitySequence,
+              drmInitData,
+              fullSegmentEncryptionKeyUri,
+              encryptionIV,
+              byteRangeOffset,
+              byteRangeLength,
+              hasGapTag)
+          && areSameParts(parts, previousSegment.parts)) {
+        return previousSegment;
+      }
+      // A segment that has moved isn't created with Segment.copyWith, as that would create its
+      // parts again rather than using the ones that were reused for it.
+      return new Segment(
+          url,
+          initializationSegment,
+          title,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          drmInitData,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byteRangeOffset,
+          byteRangeLength,
+          hasGapTag,
+          parts);
+    }
+
+    /**
+     * Returns the part with the given index in the segment with the given media sequence number in
+     * the previous playlist, at the given position in the refreshed playlist, if its tags are
+     * unchanged. Returns a new part otherwise.
+     */
+    public Part reusePart(
+        long segmentMediaSequence,
+        int partIndex,
+        int playlistDiscontinuitySequence,
+        String url,
+        @Nullable Segment initializationSegment,
+        long durationUs,
+        int relativeDiscontinuitySequence,
+        long relativeStartTimeUs,
+        @Nullable DrmInitData drmInitData,
+        @Nullable String fullSegmentEncryptionKeyUri,
+        @Nullable String encryptionIV,
+        long byteRangeOffset,
+        long byteRangeLength,
+        boolean hasGapTag,
+        boolean isIndependent) {
+      @Nullable Part previousPart = getPreviousPart(segmentMediaSequence, partIndex);
+      if (previousPart != null
+          && previousPart.isIndependent == isIndependent
+          && !previousPart.isPreload
+          && isSameSegmentBase(
+              previousPart,
+              playlistDiscontinuitySequence,
+              url,
+              initializationSegment,
+              durationUs,
+              relativeDiscontinuitySequence,
+              drmInitData,
+              fullSegmentEncryptionKeyUri,
+              encryptionIV,
+              byteRangeOffset,
+              byteRangeLength,
+              hasGapTag)) {
+        return previousPart.relativeStartTimeUs == relativeStartTimeUs
+                && previousPart.relativeDiscontinuitySequence == relativeDiscontinuitySequence
+            ? previousPart
+            : previousPart.copyWith(relativeStartTimeUs, relativeDiscontinuitySequence);
+      }
+      return new Part(
+          url,
+          initializationSegment,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          drmInitData,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byteRangeOffset,
+          byteRangeLength,
+          hasGapTag,
+          isIndependent,
+          /* isPreload= */ false);
+    }
+
+    private void collectPreviousInitializationSegments(HlsMediaPlaylist previousMediaPlaylist) {
+      @Nullable Segment lastInitializationSegment = null;
+      for (int i = 0; i < previousMediaPlaylist.segments.size(); i++) {
+        @Nullable
+        Segment initializationSegment = previousMediaPlaylist.segments.get(i).initializationSegment;
+        if (initializationSegment != null && initializationSegment != lastInitializationSegment) {
+          previousInitializationSegments.add(initializationSegment);
+          lastInitializationSegment = initializationSegment;
+        }
+      }
+      previousInitializationSegmentsCollected = true;
+    }
+
+    @Nullable
+    private Segment getPreviousSegment(long mediaSequence) {
+      if (previousMediaPlaylist == null) {
+        return null;
+      }
+      long index = mediaSequence - previousMediaPlaylist.mediaSequence;
+      return index >= 0 && index < previousMediaPlaylist.segments.size()
+          ? previousMediaPlaylist.segments.get((int) index)
+          : null;
+    }
+
+    @Nullable
+    private Part getPreviousPart(long segmentMediaSequence, int partIndex) {
+      if (previousMediaPlaylist == null) {
+        return null;
+      }
+      @Nullable Segment previousSegment = getPreviousSegment(segmentMediaSequence);
+      List<Part> previousParts;
+      if (previousSegment != null) {
+        previousParts = previousSegment.parts;
+      } else if (segmentMediaSequence
+          == previousMediaPlaylist.mediaSequence + previousMediaPlaylist.segments.size()) {
+        previousParts = previousMediaPlaylist.trailingParts;
+      } else {
+        return null;
+      }
+      return partIndex < previousParts.size() ? previousParts.get(partIndex) : null;
+    }
+
+    private boolean isSameSegmentBase(
+        SegmentBase previousSegment,
+        int playlistDiscontinuitySequence,
+        String url,
+        @Nullable Segment initializationSegment,
+        long durationUs,
+        int relativeDiscontinuitySequence,
+        @Nullable DrmInitData drmInitData,
+        @Nullable String fullSegmentEncryptionKeyUri,
+        @Nullable String encryptionIV,
+        long byteRangeOffset,
+        long byteRangeLength,
+        boolean hasGapTag) {
+      // The discontinuity sequence of the segment relative to the start of the refreshed playlist.
+      int previousDiscontinuitySequence =
+          checkNotNull(previousMediaPlaylist).discontinuitySequence
+              - playlistDiscontinuitySequence
+              + previousSegment.relativeDiscontinuitySequence;
+      // Identical initialization segments will already have been reused.
+      return previousSegment.url.equals(url)
+          && previousSegment.initializationSegment == initializationSegment
+          && previousSegment.durationUs == durationUs
+          && previousDiscontinuitySequence == relativeDiscontinuitySequence
+          && previousSegment.byteRangeOffset == byteRangeOffset
+          && previousSegment.byteRangeLength == byteRangeLength
+          && previousSegment.hasGapTag == hasGapTag
+          && Util.areEqual(previousSegment.drmInitData, drmInitData)
+          && Util.areEqual(previousSegment.fullSegmentEncryptionKeyUri, fullSegmentEncryptionKeyUri)
+          && Util.areEqual(previousSegment.encryptionIV, encryptionIV);
+    }
+
+    /**
+     * Returns whether the parts of a segment were all reused from the parts of the segment in the
+     * previous playlist, regardless of their position.
+     */
+    private static boolean areSameParts(List<Part> parts, List<Part> previousParts) {
+      if (parts.size() != previousParts.size()) {
+        return false;
+      }
+      for (int i = 0; i < parts.size(); i++) {
+        Part part = parts.get(i);
+        Part previousPart = previousParts.get(i);
+        if (part != previousPart
+            && (!part.url.equals(previousPart.url)
+                || part.initializationSegment != previousPart.initializationSegment
+                || part.durationUs != previousPart.durationUs
+                || part.byteRangeOffset != previousPart.byteRangeOffset
+                || part.byteRangeLength != previousPart.byteRangeLength
+                || part.hasGapTag != previousPart.hasGapTag
+                || part.isIndependent != previousPart.isIndependent
+                || !Util.areEqual(part.drmInitData, previousPart.drmInitData)
+                || !Util.areEqual(
+                    part.fullSegmentEncryptionKeyUri, previousPart.fullSegmentEncryptionKeyUri)
+                || !Util.areEqual(part.encryptionIV, previousPart.encryptionIV))) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
   private static class LineIterator {
 
     private final BufferedReader reader;
@@ -464,6 +464,293 @@ public class HlsMediaPlaylistParserTest {
     assertThat(playlist.trailingParts.get(0).relativeDiscontinuitySequence).isEqualTo(1);
   }
 
+  @Test
+  public void parseMediaPlaylist_withPreviousPlaylistWithSameMediaSequence_reusesUnchangedSegments()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part265.1.ts\"\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part265.2.ts\"\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence265.mp4\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part266.1.ts\"\n";
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part265.1.ts\"\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part265.2.ts\"\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence265.mp4\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part266.1.ts\"\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part266.2.ts\"\n";
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(
+                    playlistUri,
+                    new ByteArrayInputStream(Util.getUtf8Bytes(previousPlaylistString)));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser(HlsMultivariantPlaylist.EMPTY, previousPlaylist)
+                .parse(playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+
+    assertThat(playlist.segments).hasSize(2);
+    assertThat(playlist.segments.get(0)).isSameInstanceAs(previousPlaylist.segments.get(0));
+    assertThat(playlist.segments.get(1)).isSameInstanceAs(previousPlaylist.segments.get(1));
+    assertThat(playlist.trailingParts).hasSize(2);
+    assertThat(playlist.trailingParts.get(0))
+        .isSameInstanceAs(previousPlaylist.trailingParts.get(0));
+    assertThat(playlist.trailingParts.get(1).url).isEqualTo("part266.2.ts");
+    assertThat(playlist.trailingParts.get(1).initializationSegment)
+        .isSameInstanceAs(previousPlaylist.segments.get(0).initializationSegment);
+  }
+
+  @Test
+  public void parseMediaPlaylist_withUnchangedPreviousPlaylist_reusesAllInstances()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXT-X-DISCONTINUITY-SEQUENCE:3\n"
+            + "#EXT-X-KEY:METHOD=AES-128,URI=\"https://example.com/key\",IV=0x1566B\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:4.00000,title\n"
+            + "#EXT-X-BYTERANGE:1000@0\n"
+            + "fileSequence264.mp4\n"
+            + "#EXT-X-DISCONTINUITY\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part265.1.ts\",INDEPENDENT=YES\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part265.2.ts\"\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence265.mp4\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part266.1.ts\"\n";
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser(HlsMultivariantPlaylist.EMPTY, previousPlaylist)
+                .parse(playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+
+    assertThat(playlist.segments).hasSize(2);
+    for (int i = 0; i < playlist.segments.size(); i++) {
+      assertThat(playlist.segments.get(i)).isSameInstanceAs(previousPlaylist.segments.get(i));
+    }
+    assertThat(playlist.trailingParts).hasSize(1);
+    assertThat(playlist.trailingParts.get(0))
+        .isSameInstanceAs(previousPlaylist.trailingParts.get(0));
+  }
+
+  @Test
+  public void
+      parseMediaPlaylist_withPreviousPlaylistWithOtherMediaSequence_movesOverlappingSegments()
+          throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXT-X-DISCONTINUITY-SEQUENCE:0\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXT-X-DISCONTINUITY\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence265.mp4\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part266.1.ts\"\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part266.2.ts\"\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence266.mp4\n";
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:265\n"
+            + "#EXT-X-DISCONTINUITY-SEQUENCE:1\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence265.mp4\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part266.1.ts\"\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part266.2.ts\"\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence266.mp4\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence267.mp4\n";
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(
+                    playlistUri,
+                    new ByteArrayInputStream(Util.getUtf8Bytes(previousPlaylistString)));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser(HlsMultivariantPlaylist.EMPTY, previousPlaylist)
+                .parse(playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+
+    assertThat(playlist.segments).hasSize(3);
+    // The overlapping segments are moved to the start of the refreshed playlist.
+    Segment firstSegment = playlist.segments.get(0);
+    assertThat(firstSegment.url).isEqualTo("fileSequence265.mp4");
+    assertThat(firstSegment.relativeStartTimeUs).isEqualTo(0);
+    assertThat(firstSegment.relativeDiscontinuitySequence).isEqualTo(0);
+    Segment secondSegment = playlist.segments.get(1);
+    assertThat(secondSegment.url).isEqualTo("fileSequence266.mp4");
+    assertThat(secondSegment.relativeStartTimeUs).isEqualTo(4_000_000);
+    assertThat(secondSegment.parts).hasSize(2);
+    assertThat(secondSegment.parts.get(1).relativeStartTimeUs).isEqualTo(6_000_000);
+    assertThat(playlist.segments.get(2).url).isEqualTo("fileSequence267.mp4");
+    assertThat(playlist.segments.get(2).relativeStartTimeUs).isEqualTo(8_000_000);
+    // Initialization segments don't depend on the position in the playlist.
+    for (int i = 0; i < playlist.segments.size(); i++) {
+      assertThat(playlist.segments.get(i).initializationSegment)
+          .isSameInstanceAs(previousPlaylist.segments.get(0).initializationSegment);
+    }
+  }
+
+  @Test
+  public void parseMediaPlaylist_withCompletedTrailingPartsInPreviousPlaylist_reusesParts()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part265.1.ts\",INDEPENDENT=YES\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part265.2.ts\"\n";
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part265.1.ts\",INDEPENDENT=YES\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part265.2.ts\"\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence265.mp4\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part266.1.ts\",INDEPENDENT=YES\n";
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(
+                    playlistUri,
+                    new ByteArrayInputStream(Util.getUtf8Bytes(previousPlaylistString)));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser(HlsMultivariantPlaylist.EMPTY, previousPlaylist)
+                .parse(playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+
+    assertThat(playlist.segments).hasSize(2);
+    List<HlsMediaPlaylist.Part> parts = playlist.segments.get(1).parts;
+    assertThat(parts).hasSize(2);
+    assertThat(parts.get(0)).isSameInstanceAs(previousPlaylist.trailingParts.get(0));
+    assertThat(parts.get(1)).isSameInstanceAs(previousPlaylist.trailingParts.get(1));
+  }
+
+  @Test
+  public void parseMediaPlaylist_withChangedSegmentInPreviousPlaylist_createsNewSegment()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence265.mp4\n";
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence265b.mp4\n";
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(
+                    playlistUri,
+                    new ByteArrayInputStream(Util.getUtf8Bytes(previousPlaylistString)));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser(HlsMultivariantPlaylist.EMPTY, previousPlaylist)
+                .parse(playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+
+    assertThat(playlist.segments.get(0)).isSameInstanceAs(previousPlaylist.segments.get(0));
+    assertThat(playlist.segments.get(1)).isNotSameInstanceAs(previousPlaylist.segments.get(1));
+    assertThat(playlist.segments.get(1).url).isEqualTo("fileSequence265b.mp4");
+  }
+
+  @Test
+  public void parseMediaPlaylist_withSkippedSegmentsAndSameMediaSequence_reusesSegments()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-SERVER-CONTROL:CAN-SKIP-UNTIL=24.0\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence265.mp4\n";
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-SERVER-CONTROL:CAN-SKIP-UNTIL=24.0\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXT-X-SKIP:SKIPPED-SEGMENTS=1\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence265.mp4\n"
+            + "#EXTINF:4.00000,\n"
+            + "fileSequence266.mp4\n";
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(
+                    playlistUri,
+                    new ByteArrayInputStream(Util.getUtf8Bytes(previousPlaylistString)));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser(HlsMultivariantPlaylist.EMPTY, previousPlaylist)
+                .parse(playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+
+    assertThat(playlist.segments).hasSize(3);
+    assertThat(playlist.segments.get(0)).isSameInstanceAs(previousPlaylist.segments.get(0));
+    assertThat(playlist.segments.get(1)).isSameInstanceAs(previousPlaylist.segments.get(1));
+    assertThat(playlist.segments.get(2).url).isEqualTo("fileSequence266.mp4");
+    assertThat(playlist.segments.get(2).relativeStartTimeUs).isEqualTo(8_000_000);
+  }
+
   @Test
   public void parseMediaPlaylist_withParts_parsesPartWithAllAttributes() throws IOException {
     Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
@@ -516,6 +803,115 @@ public class HlsMediaPlaylistParserTest {
     assertThat(lastPart.byteRangeOffset).isEqualTo(2234);
   }
 
+  @Test
+  public void parseMediaPlaylist_withManySegmentsAndParts_parsesAllSegmentsAndParts()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    int segmentCount = 10_000;
+    StringBuilder playlistString =
+        new StringBuilder(
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-VERSION:6\n"
+                + "#EXT-X-MEDIA-SEQUENCE:0\n"
+                + "#EXT-X-PROGRAM-DATE-TIME:2020-01-01T00:00:00Z\n");
+    for (int i = 0; i < segmentCount; i++) {
+      playlistString
+          .append("#EXT-X-PART:DURATION=2.5,URI=\"part")
+          .append(i)
+          .append(".1.ts\",BYTERANGE=\"1000@0\",INDEPENDENT=YES\n")
+          .append("#EXT-X-PART:DURATION=2.5,URI=\"part")
+          .append(i)
+          .append(".2.ts\",BYTERANGE=\"1000\",GAP=NO\n")
+          .append("#EXTINF:4.004,title ")
+          .append(i)
+          .append("\n#EXT-X-BYTERANGE:2000@")
+          .append(i * 2000L)
+          .append("\nsegment.ts\n");
+    }
+    InputStream inputStream =
+        new ByteArrayInputStream(Util.getUtf8Bytes(playlistString.toString()));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist) new HlsPlaylistParser().parse(playlistUri, inputStream);
+
+    assertThat(playlist.segments).hasSize(segmentCount);
+    assertThat(playlist.durationUs).isEqualTo(segmentCount * 4_004_000L);
+    for (int i = 0; i < segmentCount; i++) {
+      Segment segment = playlist.segments.get(i);
+      assertThat(segment.durationUs).isEqualTo(4_004_000);
+      assertThat(segment.title).isEqualTo("title " + i);
+      assertThat(segment.byteRangeLength).isEqualTo(2000);
+      assertThat(segment.byteRangeOffset).isEqualTo(i * 2000L);
+      assertThat(segment.parts).hasSize(2);
+      HlsMediaPlaylist.Part firstPart = segment.parts.get(0);
+      assertThat(firstPart.url).isEqualTo("part" + i + ".1.ts");
+      assertThat(firstPart.durationUs).isEqualTo(2_500_000);
+      assertThat(firstPart.isIndependent).isTrue();
+      assertThat(firstPart.byteRangeOffset).isEqualTo(0);
+      HlsMediaPlaylist.Part secondPart = segment.parts.get(1);
+      assertThat(secondPart.hasGapTag).isFalse();
+      assertThat(secondPart.byteRangeLength).isEqualTo(1000);
+      assertThat(secondPart.byteRangeOffset).isEqualTo(1000);
+    }
+  }
+
+  @Test
+  public void parseMediaPlaylist_withUnusualTagFormatting_parsesTagsAsBefore() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:266\n"
+            + "#EXTINF:4.,title\n"
+            + "fileSequence266.mp4\n"
+            + "#EXT-X-PART:DURATION=2.00000,URI=\"part267.1.ts\",GAP=YES,GAP=NO\n";
+    InputStream inputStream = new ByteArrayInputStream(Util.getUtf8Bytes(playlistString));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist) new HlsPlaylistParser().parse(playlistUri, inputStream);
+
+    Segment segment = playlist.segments.get(0);
+    assertThat(segment.durationUs).isEqualTo(4_000_000);
+    // The title regular expression requires the duration to end with a digit.
+    assertThat(segment.title).isEmpty();
+    assertThat(playlist.trailingParts).hasSize(1);
+    // The first of duplicate attributes is used.
+    assertThat(playlist.trailingParts.get(0).hasGapTag).isTrue();
+  }
+
+  @Test
+  public void parseMediaPlaylist_withDurationWithoutLeadingDigit_parsesDurationAsBefore()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:3\n"
+            + "#EXT-X-MEDIA-SEQUENCE:266\n"
+            + "#EXTINF:0.5,title\n"
+            + "fileSequence266.ts\n"
+            + "#EXTINF:.5,title\n"
+            + "fileSequence267.ts\n"
+            + "#EXTINF:.5\n"
+            + "fileSequence268.ts\n";
+    InputStream inputStream = new ByteArrayInputStream(Util.getUtf8Bytes(playlistString));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist) new HlsPlaylistParser().parse(playlistUri, inputStream);
+
+    assertThat(playlist.segments).hasSize(3);
+    // Parsed without regular expressions.
+    assertThat(playlist.segments.get(0).durationUs).isEqualTo(500_000);
+    assertThat(playlist.segments.get(0).title).isEqualTo("title");
+    // Parsed by the regular expressions, which accept a duration without a leading digit.
+    assertThat(playlist.segments.get(1).durationUs).isEqualTo(500_000);
+    assertThat(playlist.segments.get(1).title).isEqualTo("title");
+    assertThat(playlist.segments.get(2).durationUs).isEqualTo(500_000);
+    assertThat(playlist.segments.get(2).title).isEmpty();
+  }
+
   @Test
   public void parseMediaPlaylist_withPartAndAesPlayReadyKey_correctDrmInitData()
       throws IOException {
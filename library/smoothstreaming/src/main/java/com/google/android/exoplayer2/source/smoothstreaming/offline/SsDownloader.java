@@ -133,12 +133,45 @@ public final class SsDownloader extends SegmentDownloader<SsManifest> {
       CacheDataSource.Factory cacheDataSourceFactory,
       Executor executor,
       long maxMergedSegmentStartTimeDiffMs) {
+    this(
+        mediaItem,
+        manifestParser,
+        cacheDataSourceFactory,
+        executor,
+        maxMergedSegmentStartTimeDiffMs,
+        /* maxParallelSegmentDownloadsPerHost= */ Integer.MAX_VALUE);
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param mediaItem The {@link MediaItem} to be downloaded.
+   * @param manifestParser A parser for SmoothStreaming manifests.
+   * @param cacheDataSourceFactory A {@link CacheDataSource.Factory} for the cache into which the
+   *     download will be written.
+   * @param executor An {@link Executor} used to make requests for the media being downloaded.
+   *     Providing an {@link Executor} that uses multiple threads will speed up the download by
+   *     allowing parts of it to be executed in parallel.
+   * @param maxMergedSegmentStartTimeDiffMs The maximum difference of the start time of two
+   *     segments, up to which the segments (of the same URI) should be merged into a single
+   *     download segment, in milliseconds.
+   * @param maxParallelSegmentDownloadsPerHost The maximum number of segments that are downloaded
+   *     in parallel from a single host, or {@link Integer#MAX_VALUE} for no limit.
+   */
+  public SsDownloader(
+      MediaItem mediaItem,
+      Parser<SsManifest> manifestParser,
+      CacheDataSource.Factory cacheDataSourceFactory,
+      Executor executor,
+      long maxMergedSegmentStartTimeDiffMs,
+      int maxParallelSegmentDownloadsPerHost) {
     super(
         mediaItem,
         manifestParser,
         cacheDataSourceFactory,
         executor,
-        maxMergedSegmentStartTimeDiffMs);
+        maxMergedSegmentStartTimeDiffMs,
+        maxParallelSegmentDownloadsPerHost);
   }
 
   @Override
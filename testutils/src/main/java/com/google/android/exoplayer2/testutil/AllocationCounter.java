@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+
+import androidx.annotation.Nullable;
+import java.lang.reflect.Method;
+
+/**
+ * Counts the bytes allocated by the current thread.
+ *
+ * <p>Allocations can only be counted on JVMs that provide {@code com.sun.management.ThreadMXBean},
+ * as is the case when running Robolectric tests.
+ */
+public final class AllocationCounter {
+
+  @Nullable private static final Object threadMxBean;
+  @Nullable private static final Method getThreadAllocatedBytesMethod;
+
+  static {
+    @Nullable Object bean = null;
+    @Nullable Method method = null;
+    try {
+      // Accessed reflectively because java.lang.management isn't part of the Android SDK.
+      bean =
+          Class.forName("java.lang.management.ManagementFactory")
+              .getMethod("getThreadMXBean")
+              .invoke(/* obj= */ null);
+      Class<?> threadMxBeanClass = Class.forName("com.sun.management.ThreadMXBean");
+      if (threadMxBeanClass.isInstance(bean)) {
+        method = threadMxBeanClass.getMethod("getThreadAllocatedBytes", long.class);
+      }
+    } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+      // Allocations can't be counted.
+    }
+    threadMxBean = method != null ? bean : null;
+    getThreadAllocatedBytesMethod = method;
+  }
+
+  private AllocationCounter() {}
+
+  /** Returns whether allocations can be counted on this JVM. */
+  public static boolean isSupported() {
+    return getThreadAllocatedBytesMethod != null;
+  }
+
+  /**
+   * Returns the total number of bytes allocated by the current thread since it started. Must only
+   * be called if {@link #isSupported()} returns true.
+   *
+   * <p>Each call allocates a small constant number of bytes itself, which should be amortized over
+   * many repetitions of the measured operation.
+   */
+  public static long getCurrentThreadAllocatedBytes() {
+    try {
+      return (Long)
+          checkNotNull(getThreadAllocatedBytesMethod)
+              .invoke(threadMxBean, Thread.currentThread().getId());
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
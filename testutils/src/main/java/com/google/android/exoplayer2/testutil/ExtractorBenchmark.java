@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer2.extractor.DummyTrackOutput;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.extractor.TrackOutput;
+import com.google.android.exoplayer2.testutil.ExtractorAsserts.ExtractorFactory;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DataReader;
+import com.google.android.exoplayer2.upstream.DataSourceUtil;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Measures how quickly an {@link Extractor} extracts the samples from a file that's held in memory.
+ *
+ * <p>The file is read through a {@link DefaultExtractorInput}, as during playback, and the
+ * extracted samples are discarded. The extractor is run a number of times to warm up before the
+ * measured iterations start.
+ *
+ * <p>The number of bytes allocated per sample is only measured where {@link AllocationCounter} is
+ * supported, as is the case when running Robolectric tests.
+ */
+public final class ExtractorBenchmark {
+
+  /** The results of a benchmark run. Values other than the counts are averages of the iterations. */
+  public static final class Result {
+
+    /** The number of measured iterations. */
+    public final int iterationCount;
+    /** The size of the input, in bytes. */
+    public final long inputLength;
+    /** The number of samples extracted from the input in each iteration. */
+    public final int sampleCount;
+    /** The rate at which the input was extracted, in megabytes per second. */
+    public final double throughputMbPerSecond;
+    /** The time from starting to extract the input until the first sample was output, in ms. */
+    public final double timeToFirstSampleMs;
+    /**
+     * The number of bytes allocated by the extracting thread per extracted sample, or {@link
+     * Double#NaN} if this can't be measured.
+     */
+    public final double allocatedBytesPerSample;
+
+    private Result(
+        int iterationCount,
+        long inputLength,
+        int sampleCount,
+        double throughputMbPerSecond,
+        double timeToFirstSampleMs,
+        double allocatedBytesPerSample) {
+      this.iterationCount = iterationCount;
+      this.inputLength = inputLength;
+      this.sampleCount = sampleCount;
+      this.throughputMbPerSecond = throughputMbPerSecond;
+      this.timeToFirstSampleMs = timeToFirstSampleMs;
+      this.allocatedBytesPerSample = allocatedBytesPerSample;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "%d iterations, %d bytes, %d samples: %.2f MB/s, %.3f ms to first sample, %.1f bytes"
+              + " allocated per sample",
+          iterationCount,
+          inputLength,
+          sampleCount,
+          throughputMbPerSecond,
+          timeToFirstSampleMs,
+          allocatedBytesPerSample);
+    }
+  }
+
+  private static final Uri URI = Uri.parse("data:benchmark");
+  private static final double NANOS_PER_MS = 1_000_000d;
+  private static final double NANOS_PER_SECOND = 1_000_000_000d;
+  private static final double BYTES_PER_MB = 1024d * 1024d;
+
+  private ExtractorBenchmark() {}
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param extractorFactory Creates the {@link Extractor} to benchmark. A new instance is created
+   *     for each iteration.
+   * @param data The input to extract.
+   * @param warmUpIterationCount The number of iterations to run before measuring.
+   * @param iterationCount The number of measured iterations.
+   * @return The {@link Result}.
+   * @throws IOException If an error occurs extracting the input.
+   */
+  public static Result run(
+      ExtractorFactory extractorFactory, byte[] data, int warmUpIterationCount, int iterationCount)
+      throws IOException {
+    checkArgument(warmUpIterationCount >= 0 && iterationCount > 0);
+    for (int i = 0; i < warmUpIterationCount; i++) {
+      extract(extractorFactory.create(), data, new CountingExtractorOutput());
+    }
+
+    boolean measureAllocations = AllocationCounter.isSupported();
+    long totalDurationNs = 0;
+    long totalTimeToFirstSampleNs = 0;
+    long totalAllocatedBytes = 0;
+    int sampleCount = 0;
+    for (int i = 0; i < iterationCount; i++) {
+      Extractor extractor = extractorFactory.create();
+      CountingExtractorOutput output = new CountingExtractorOutput();
+      long allocatedBytesBefore =
+          measureAllocations ? AllocationCounter.getCurrentThreadAllocatedBytes() : 0;
+      long startTimeNs = System.nanoTime();
+      extract(extractor, data, output);
+      totalDurationNs += System.nanoTime() - startTimeNs;
+      if (measureAllocations) {
+        totalAllocatedBytes +=
+            AllocationCounter.getCurrentThreadAllocatedBytes() - allocatedBytesBefore;
+      }
+      if (output.firstSampleTimeNs != C.TIME_UNSET) {
+        totalTimeToFirstSampleNs += output.firstSampleTimeNs - startTimeNs;
+      }
+      sampleCount = output.sampleCount;
+    }
+
+    double averageDurationSeconds = totalDurationNs / NANOS_PER_SECOND / iterationCount;
+    return new Result(
+        iterationCount,
+        data.length,
+        sampleCount,
+        /* throughputMbPerSecond= */ data.length / BYTES_PER_MB / averageDurationSeconds,
+        /* timeToFirstSampleMs= */ totalTimeToFirstSampleNs / NANOS_PER_MS / iterationCount,
+        /* allocatedBytesPerSample= */ measureAllocations && sampleCount > 0
+            ? (double) totalAllocatedBytes / iterationCount / sampleCount
+            : Double.NaN);
+  }
+
+  private static void extract(Extractor extractor, byte[] data, ExtractorOutput output)
+      throws IOException {
+    ByteArrayDataSource dataSource = new ByteArrayDataSource(data);
+    extractor.init(output);
+    PositionHolder positionHolder = new PositionHolder();
+    ExtractorInput input = openInput(dataSource, /* position= */ 0);
+    try {
+      int readResult = Extractor.RESULT_CONTINUE;
+      while (readResult != Extractor.RESULT_END_OF_INPUT) {
+        readResult = extractor.read(input, positionHolder);
+        if (readResult == Extractor.RESULT_SEEK) {
+          DataSourceUtil.closeQuietly(dataSource);
+          input = openInput(dataSource, positionHolder.position);
+        }
+      }
+    } finally {
+      DataSourceUtil.closeQuietly(dataSource);
+      extractor.release();
+    }
+  }
+
+  private static ExtractorInput openInput(ByteArrayDataSource dataSource, long position)
+      throws IOException {
+    long length = dataSource.open(new DataSpec(URI, position, C.LENGTH_UNSET));
+    return new DefaultExtractorInput(dataSource, position, position + length);
+  }
+
+  /** An {@link ExtractorOutput} that discards samples, recording when the first one is output. */
+  private static final class CountingExtractorOutput implements ExtractorOutput {
+
+    private final TrackOutput trackOutput;
+
+    private long firstSampleTimeNs;
+    private int sampleCount;
+
+    public CountingExtractorOutput() {
+      DummyTrackOutput dummyTrackOutput = new DummyTrackOutput();
+      firstSampleTimeNs = C.TIME_UNSET;
+      trackOutput =
+          new TrackOutput() {
+            @Override
+            public void format(Format format) {
+              // Do nothing.
+            }
+
+            @Override
+            public int sampleData(
+                DataReader input,
+                int length,
+                boolean allowEndOfInput,
+                @SampleDataPart int sampleDataPart)
+                throws IOException {
+              return dummyTrackOutput.sampleData(input, length, allowEndOfInput, sampleDataPart);
+            }
+
+            @Override
+            public void sampleData(
+                ParsableByteArray data, int length, @SampleDataPart int sampleDataPart) {
+              dummyTrackOutput.sampleData(data, length, sampleDataPart);
+            }
+
+            @Override
+            public void sampleMetadata(
+                long timeUs,
+                @C.BufferFlags int flags,
+                int size,
+                int offset,
+                @Nullable CryptoData cryptoData) {
+              if (sampleCount++ == 0) {
+                firstSampleTimeNs = System.nanoTime();
+              }
+            }
+          };
+    }
+
+    @Override
+    public TrackOutput track(int id, @C.TrackType int type) {
+      return trackOutput;
+    }
+
+    @Override
+    public void endTracks() {
+      // Do nothing.
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      // Do nothing.
+    }
+  }
+}